@@ -195,19 +195,29 @@ public class CellBackup {
 
     /**
      * Writes this CellBackup to IdWriter.
+     * CellRevision is written only if it differs from CellRevision of old CellBackup,
+     * otherwise the reader takes it from its copy of old CellBackup.
      * @param writer where to write.
+     * @param oldBackup old CellBackup of this cell or null.
      */
-    void write(IdWriter writer) throws IOException {
-        cellRevision.write(writer);
+    void write(IdWriter writer, CellBackup oldBackup) throws IOException {
+        boolean revisionChanged = oldBackup == null || oldBackup.cellRevision != cellRevision;
+        writer.writeBoolean(revisionChanged);
+        if (revisionChanged) {
+            cellRevision.write(writer);
+        }
         writer.writeBoolean(modified);
     }
 
     /**
      * Reads CellBackup from SnapshotReader.
      * @param reader where to read.
+     * @param oldBackup old CellBackup of this cell or null.
+     * @param techPool TechPool of new Snapshot.
      */
-    static CellBackup read(IdReader reader, TechPool techPool) throws IOException {
-        CellRevision newRevision = CellRevision.read(reader);
+    static CellBackup read(IdReader reader, CellBackup oldBackup, TechPool techPool) throws IOException {
+        boolean revisionChanged = reader.readBoolean();
+        CellRevision newRevision = revisionChanged ? CellRevision.read(reader) : oldBackup.cellRevision;
         boolean modified = reader.readBoolean();
         TechPool restrictedPool = techPool.restrict(newRevision.techUsages, techPool);
         return new CellBackup(newRevision, restrictedPool, modified);
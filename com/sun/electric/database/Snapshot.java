@@ -783,14 +783,11 @@ public class Snapshot {
             if (oldBackup == newBackup) {
                 continue;
             }
-            if (oldBackup == null) {
-                writer.writeInt(i);
-                newBackup.write(writer);
-            } else if (newBackup == null) {
+            if (newBackup == null) {
                 writer.writeInt(~i);
             } else {
                 writer.writeInt(i);
-                newBackup.write(writer);
+                newBackup.write(writer, oldBackup);
             }
         }
         writer.writeInt(Integer.MAX_VALUE);
@@ -866,7 +863,7 @@ public class Snapshot {
                 break;
             }
             if (cellIndex >= 0) {
-                CellBackup newBackup = CellBackup.read(reader, techPool);
+                CellBackup newBackup = CellBackup.read(reader, cellBackupsArray[cellIndex], techPool);
                 cellBackupsArray[cellIndex] = newBackup;
             } else {
                 cellIndex = ~cellIndex;
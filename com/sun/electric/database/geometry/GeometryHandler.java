@@ -41,7 +41,8 @@ public abstract class GeometryHandler {
     public enum GHMode // GH GeometryHandler mode
     {
 	    ALGO_MERGE,   // using merge structure
-	    ALGO_SWEEP; // using sweep structure
+	    ALGO_SWEEP, // using sweep structure
+	    ALGO_MANHATTAN; // using scanline structure for Manhattan geometry
     }
     public static final ShapeSort shapeSort = new ShapeSort();
     public static final AreaSort areaSort = new AreaSort();
@@ -60,6 +61,8 @@ public abstract class GeometryHandler {
                     return new PolySweepMerge(initialSize);
                 else
                     return new PolySweepMerge();
+            case ALGO_MANHATTAN:
+                return new PolyManhattanMerge();
         }
         return null;
     }
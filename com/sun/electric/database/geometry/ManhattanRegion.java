@@ -0,0 +1,927 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: ManhattanRegion.java
+ *
+ * Copyright (c) 2010 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.database.geometry;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Class to describe a region of Manhattan geometry.
+ * <P>
+ * The region is kept in primitive arrays as a list of horizontal bands, sorted by Y.
+ * Each band has a sorted list of disjoint X intervals, and adjacent bands with identical
+ * intervals are coalesced.  Boolean operations are done with a scanline sweep over
+ * rectangle edges, so one sweep of N rectangles costs O(N log N) instead of the
+ * quadratic behavior of repeated java.awt.geom.Area additions.
+ * <P>
+ * Additions and subtractions are queued and only swept when the region is queried
+ * (or when the kind of queued operation changes), so long runs of adds are merged in one pass.
+ * Only the bands that overlap the queued rectangles in Y take part in that sweep; the bands
+ * above them are moved as a block and the bands below are not touched.  A small change to a
+ * large region therefore costs O(k log k) for the k rectangles in the bands it touches plus an
+ * array copy of the bands above it, so callers that alternate subtractions with queries
+ * (as node extraction does) do not re-sweep the whole region every time.
+ */
+public class ManhattanRegion
+{
+	/** operation code for union in the sweep */			private static final int UNION = 0;
+	/** operation code for intersection in the sweep */		private static final int INTERSECT = 1;
+	/** operation code for subtraction in the sweep */		private static final int SUBTRACT = 2;
+
+	private static final double [] NODOUBLES = new double[0];
+
+	/** number of bands in the region */					private int numBands;
+	/** bottom of each band */								private double [] bandLo = NODOUBLES;
+	/** top of each band */									private double [] bandHi = NODOUBLES;
+	/** first interval of each band (numBands+1 long) */	private int [] bandStart = new int[1];
+	/** low/high X of each interval */						private double [] intervals = NODOUBLES;
+	/** rectangles waiting to be swept (4 per entry) */		private double [] pending = NODOUBLES;
+	/** number of rectangles waiting to be swept */			private int numPending;
+	/** true if the waiting rectangles are subtracted */	private boolean pendingSubtract;
+
+	/**
+	 * Constructor to create an empty region.
+	 */
+	public ManhattanRegion() {}
+
+	/**
+	 * Constructor to create a copy of another region.
+	 * @param other the region to copy.
+	 */
+	public ManhattanRegion(ManhattanRegion other)
+	{
+		other.normalize();
+		numBands = other.numBands;
+		bandLo = copyOf(other.bandLo, numBands);
+		bandHi = copyOf(other.bandHi, numBands);
+		bandStart = new int[numBands+1];
+		System.arraycopy(other.bandStart, 0, bandStart, 0, numBands+1);
+		intervals = copyOf(other.intervals, bandStart[numBands]*2);
+	}
+
+	/**
+	 * Method to tell whether a transformation keeps Manhattan geometry Manhattan.
+	 * @param trans the transformation (null is the identity).
+	 * @return true if the transformation only scales, translates, mirrors, or rotates by multiples of 90 degrees.
+	 */
+	public static boolean isManhattan(AffineTransform trans)
+	{
+		if (trans == null) return true;
+		if (trans.getShearX() == 0 && trans.getShearY() == 0) return true;
+		return trans.getScaleX() == 0 && trans.getScaleY() == 0;
+	}
+
+	/**
+	 * Method to create a region from a Shape.
+	 * @param shape the Shape to convert.
+	 * @param trans a transformation to apply to the Shape (may be null).
+	 * @return the region, or null if the Shape is not Manhattan.
+	 */
+	public static ManhattanRegion fromShape(Shape shape, AffineTransform trans)
+	{
+		ManhattanRegion region = new ManhattanRegion();
+		if (!region.add(shape, trans)) return null;
+		return region;
+	}
+
+	/****************************** MODIFICATION ******************************/
+
+	/**
+	 * Method to add a rectangle to this region.
+	 * @param rect the rectangle to add.
+	 */
+	public void add(Rectangle2D rect)
+	{
+		queue(rect.getMinX(), rect.getMinY(), rect.getMaxX(), rect.getMaxY(), false);
+	}
+
+	/**
+	 * Method to add a rectangle to this region.
+	 * @param lX the low X of the rectangle.
+	 * @param lY the low Y of the rectangle.
+	 * @param hX the high X of the rectangle.
+	 * @param hY the high Y of the rectangle.
+	 */
+	public void add(double lX, double lY, double hX, double hY)
+	{
+		queue(lX, lY, hX, hY, false);
+	}
+
+	/**
+	 * Method to subtract a rectangle from this region.
+	 * @param rect the rectangle to remove.
+	 */
+	public void subtract(Rectangle2D rect)
+	{
+		queue(rect.getMinX(), rect.getMinY(), rect.getMaxX(), rect.getMaxY(), true);
+	}
+
+	/**
+	 * Method to add a Manhattan Shape to this region.
+	 * Nothing is added if the Shape has non-Manhattan edges.
+	 * @param shape the Shape to add.
+	 * @param trans a transformation to apply to the Shape (may be null).
+	 * @return true if the Shape was Manhattan and has been added.
+	 */
+	public boolean add(Shape shape, AffineTransform trans)
+	{
+		return queueShape(shape.getPathIterator(trans), false);
+	}
+
+	/**
+	 * Method to subtract a Manhattan Shape from this region.
+	 * Nothing is subtracted if the Shape has non-Manhattan edges.
+	 * @param shape the Shape to remove.
+	 * @param trans a transformation to apply to the Shape (may be null).
+	 * @return true if the Shape was Manhattan and has been subtracted.
+	 */
+	public boolean subtract(Shape shape, AffineTransform trans)
+	{
+		return queueShape(shape.getPathIterator(trans), true);
+	}
+
+	/**
+	 * Method to add another region to this one.
+	 * @param other the region to add.
+	 * @param trans a Manhattan transformation to apply to the other region (may be null).
+	 * @see #isManhattan(AffineTransform)
+	 */
+	public void add(ManhattanRegion other, AffineTransform trans)
+	{
+		other.normalize();
+		if (other == this) return;
+		double [] corners = new double[4];
+		for(int b=0; b<other.numBands; b++)
+		{
+			for(int i=other.bandStart[b]; i<other.bandStart[b+1]; i++)
+			{
+				corners[0] = other.intervals[i*2];     corners[1] = other.bandLo[b];
+				corners[2] = other.intervals[i*2+1];   corners[3] = other.bandHi[b];
+				if (trans != null) trans.transform(corners, 0, corners, 0, 2);
+				queue(Math.min(corners[0], corners[2]), Math.min(corners[1], corners[3]),
+					Math.max(corners[0], corners[2]), Math.max(corners[1], corners[3]), false);
+			}
+		}
+	}
+
+	/**
+	 * Method to subtract another region from this one.
+	 * @param other the region to remove.
+	 */
+	public void subtract(ManhattanRegion other)
+	{
+		if (other == this)
+		{
+			clear();
+			return;
+		}
+		other.normalize();
+		for(int b=0; b<other.numBands; b++)
+		{
+			for(int i=other.bandStart[b]; i<other.bandStart[b+1]; i++)
+				queue(other.intervals[i*2], other.bandLo[b], other.intervals[i*2+1], other.bandHi[b], true);
+		}
+	}
+
+	/**
+	 * Method to intersect this region with another one.
+	 * @param other the region to intersect with.
+	 */
+	public void intersect(ManhattanRegion other)
+	{
+		if (other == this) return;
+		ManhattanRegion result = combine(this, other, INTERSECT);
+		numBands = result.numBands;
+		bandLo = result.bandLo;
+		bandHi = result.bandHi;
+		bandStart = result.bandStart;
+		intervals = result.intervals;
+	}
+
+	/**
+	 * Method to compute the intersection of two regions.
+	 * @param a the first region.
+	 * @param b the second region.
+	 * @return a new region with the area common to both.
+	 */
+	public static ManhattanRegion intersection(ManhattanRegion a, ManhattanRegion b)
+	{
+		return combine(a, b, INTERSECT);
+	}
+
+	/**
+	 * Method to compute the difference of two regions.
+	 * @param a the first region.
+	 * @param b the second region, which is removed from the first.
+	 * @return a new region with the area of "a" that is not in "b".
+	 */
+	public static ManhattanRegion difference(ManhattanRegion a, ManhattanRegion b)
+	{
+		return combine(a, b, SUBTRACT);
+	}
+
+	/**
+	 * Method to remove everything from this region.
+	 */
+	public void clear()
+	{
+		numBands = 0;
+		bandStart[0] = 0;
+		numPending = 0;
+	}
+
+	/**
+	 * Method to sweep any queued additions or subtractions into the band structure.
+	 * This is done automatically by every query.
+	 */
+	public void normalize()
+	{
+		if (numPending == 0) return;
+		boolean subtract = pendingSubtract;
+		int numNew = numPending;
+		numPending = 0;
+
+		// find the bands that overlap the queued rectangles, plus one on each side so that coalescing is redone
+		double lY = Double.MAX_VALUE, hY = -Double.MAX_VALUE;
+		for(int i=0; i<numNew; i++)
+		{
+			lY = Math.min(lY, pending[i*4+1]);
+			hY = Math.max(hY, pending[i*4+3]);
+		}
+		int fromBand = Math.max(0, findBand(lY) - 1);
+		int toBand = Math.min(numBands, findBandAbove(hY) + 1);
+
+		int numOld = bandStart[toBand] - bandStart[fromBand];
+		if (subtract && numOld == 0) return;
+		double [] rects = new double[(numOld + numNew) * 4];
+		int numRects = fillRectangles(rects, fromBand, toBand);
+		System.arraycopy(pending, 0, rects, numRects*4, numNew*4);
+		ManhattanRegion middle = new ManhattanRegion();
+		if (subtract)
+		{
+			sweep(rects, numRects, numRects + numNew, SUBTRACT, middle);
+		} else
+		{
+			sweep(rects, numRects + numNew, numRects + numNew, UNION, middle);
+		}
+		replaceBands(fromBand, toBand, middle);
+	}
+
+	/****************************** QUERIES ******************************/
+
+	/**
+	 * Method to tell whether this region is empty.
+	 * @return true if there is no geometry in this region.
+	 */
+	public boolean isEmpty()
+	{
+		normalize();
+		return numBands == 0;
+	}
+
+	/**
+	 * Method to return the number of disjoint rectangles that describe this region.
+	 * @return the number of rectangles.
+	 */
+	public int getNumRectangles()
+	{
+		normalize();
+		return bandStart[numBands];
+	}
+
+	/**
+	 * Method to return the area of this region.
+	 * @return the area of this region.
+	 */
+	public double getArea()
+	{
+		normalize();
+		double total = 0;
+		for(int b=0; b<numBands; b++)
+		{
+			double width = 0;
+			for(int i=bandStart[b]; i<bandStart[b+1]; i++)
+				width += intervals[i*2+1] - intervals[i*2];
+			total += width * (bandHi[b] - bandLo[b]);
+		}
+		return total;
+	}
+
+	/**
+	 * Method to return the area of this region that lies inside of a rectangle.
+	 * @param rect the rectangle to examine.
+	 * @return the area of this region inside of the rectangle.
+	 */
+	public double getAreaInside(Rectangle2D rect)
+	{
+		normalize();
+		double lX = rect.getMinX(), hX = rect.getMaxX(), lY = rect.getMinY(), hY = rect.getMaxY();
+		double total = 0;
+		for(int b=findBand(lY); b<numBands && bandLo[b] < hY; b++)
+		{
+			double height = Math.min(bandHi[b], hY) - Math.max(bandLo[b], lY);
+			if (height <= 0) continue;
+			double width = 0;
+			for(int i=findInterval(b, lX); i<bandStart[b+1] && intervals[i*2] < hX; i++)
+			{
+				double w = Math.min(intervals[i*2+1], hX) - Math.max(intervals[i*2], lX);
+				if (w > 0) width += w;
+			}
+			total += width * height;
+		}
+		return total;
+	}
+
+	/**
+	 * Method to return the bounds of this region.
+	 * @return the bounding box of the region (empty if there is no geometry).
+	 */
+	public Rectangle2D getBounds2D()
+	{
+		normalize();
+		if (numBands == 0) return new Rectangle2D.Double();
+		double lX = Double.MAX_VALUE, hX = -Double.MAX_VALUE;
+		for(int b=0; b<numBands; b++)
+		{
+			lX = Math.min(lX, intervals[bandStart[b]*2]);
+			hX = Math.max(hX, intervals[bandStart[b+1]*2-1]);
+		}
+		return new Rectangle2D.Double(lX, bandLo[0], hX-lX, bandHi[numBands-1]-bandLo[0]);
+	}
+
+	/**
+	 * Method to tell whether a point is inside of this region.
+	 * Points on the low edges are inside, points on the high edges are not (as with java.awt.Shape).
+	 * @param x the X coordinate of the point.
+	 * @param y the Y coordinate of the point.
+	 * @return true if the point is inside of the region.
+	 */
+	public boolean contains(double x, double y)
+	{
+		normalize();
+		int b = findBand(y);
+		if (b >= numBands || bandLo[b] > y) return false;
+		int i = findInterval(b, x);
+		return i < bandStart[b+1] && intervals[i*2] <= x;
+	}
+
+	/**
+	 * Method to tell whether a rectangle is completely inside of this region.
+	 * Empty rectangles are always contained.
+	 * @param rect the rectangle to examine.
+	 * @return true if the rectangle is inside of the region.
+	 */
+	public boolean contains(Rectangle2D rect)
+	{
+		normalize();
+		double lX = rect.getMinX(), hX = rect.getMaxX(), lY = rect.getMinY(), hY = rect.getMaxY();
+		if (!(lX < hX && lY < hY)) return true;
+		double covered = lY;
+		for(int b=findBand(lY); b<numBands; b++)
+		{
+			if (bandLo[b] > covered) return false;
+			int i = findInterval(b, lX);
+			if (i >= bandStart[b+1] || intervals[i*2] > lX || intervals[i*2+1] < hX) return false;
+			covered = bandHi[b];
+			if (covered >= hY) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method to tell whether a rectangle overlaps the interior of this region.
+	 * @param rect the rectangle to examine.
+	 * @return true if the rectangle and the region share some area.
+	 */
+	public boolean intersects(Rectangle2D rect)
+	{
+		normalize();
+		double lX = rect.getMinX(), hX = rect.getMaxX(), lY = rect.getMinY(), hY = rect.getMaxY();
+		if (!(lX < hX && lY < hY)) return false;
+		for(int b=findBand(lY); b<numBands && bandLo[b] < hY; b++)
+		{
+			int i = findInterval(b, lX);
+			if (i < bandStart[b+1] && intervals[i*2] < hX) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method to return the part of this region that lies inside of a rectangle.
+	 * @param rect the clipping rectangle.
+	 * @return a new region with the geometry clipped to the rectangle.
+	 */
+	public ManhattanRegion getClipped(Rectangle2D rect)
+	{
+		normalize();
+		double lX = rect.getMinX(), hX = rect.getMaxX(), lY = rect.getMinY(), hY = rect.getMaxY();
+		ManhattanRegion result = new ManhattanRegion();
+		for(int b=findBand(lY); b<numBands && bandLo[b] < hY; b++)
+		{
+			for(int i=findInterval(b, lX); i<bandStart[b+1] && intervals[i*2] < hX; i++)
+				result.queue(Math.max(intervals[i*2], lX), Math.max(bandLo[b], lY),
+					Math.min(intervals[i*2+1], hX), Math.min(bandHi[b], hY), false);
+		}
+		return result;
+	}
+
+	/**
+	 * Method to convert this region to a java.awt.geom.Area.
+	 * The Area is built from the disjoint rectangles in a single pass.
+	 * @return an Area with the same geometry.
+	 */
+	public Area toArea()
+	{
+		return toArea(null);
+	}
+
+	/**
+	 * Method to convert the part of this region inside of a rectangle to a java.awt.geom.Area.
+	 * @param clip the clipping rectangle (null to convert everything).
+	 * @return an Area with the geometry of the region inside of the clipping rectangle.
+	 */
+	public Area toArea(Rectangle2D clip)
+	{
+		normalize();
+		double lX = -Double.MAX_VALUE, hX = Double.MAX_VALUE, lY = -Double.MAX_VALUE, hY = Double.MAX_VALUE;
+		if (clip != null)
+		{
+			lX = clip.getMinX();   hX = clip.getMaxX();
+			lY = clip.getMinY();   hY = clip.getMaxY();
+		}
+		Path2D.Double path = new Path2D.Double(PathIterator.WIND_NON_ZERO, bandStart[numBands]*5 + 1);
+		for(int b=findBand(lY); b<numBands && bandLo[b] < hY; b++)
+		{
+			double bLY = Math.max(bandLo[b], lY), bHY = Math.min(bandHi[b], hY);
+			if (bLY >= bHY) continue;
+			for(int i=findInterval(b, lX); i<bandStart[b+1] && intervals[i*2] < hX; i++)
+			{
+				double iLX = Math.max(intervals[i*2], lX), iHX = Math.min(intervals[i*2+1], hX);
+				if (iLX >= iHX) continue;
+				path.moveTo(iLX, bLY);
+				path.lineTo(iHX, bLY);
+				path.lineTo(iHX, bHY);
+				path.lineTo(iLX, bHY);
+				path.closePath();
+			}
+		}
+		return new Area(path);
+	}
+
+	/****************************** INTERNALS ******************************/
+
+	/**
+	 * Method to find the first band whose top is above a given Y.
+	 */
+	private int findBand(double y)
+	{
+		int lo = 0, hi = numBands;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (bandHi[mid] <= y) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Method to find the first band whose bottom is at or above a given Y.
+	 */
+	private int findBandAbove(double y)
+	{
+		int lo = 0, hi = numBands;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (bandLo[mid] < y) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Method to find the first interval in a band whose right edge is beyond a given X.
+	 */
+	private int findInterval(int band, double x)
+	{
+		int lo = bandStart[band], hi = bandStart[band+1];
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (intervals[mid*2+1] <= x) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Method to write the rectangles of some bands into an array.
+	 * @param fromBand the first band to write.
+	 * @param toBand the band after the last one to write.
+	 * @return the number of rectangles written.
+	 */
+	private int fillRectangles(double [] rects, int fromBand, int toBand)
+	{
+		int k = 0;
+		for(int b=fromBand; b<toBand; b++)
+		{
+			for(int i=bandStart[b]; i<bandStart[b+1]; i++)
+			{
+				rects[k++] = intervals[i*2];
+				rects[k++] = bandLo[b];
+				rects[k++] = intervals[i*2+1];
+				rects[k++] = bandHi[b];
+			}
+		}
+		return k / 4;
+	}
+
+	/**
+	 * Method to replace a run of bands with the bands of another region.
+	 * The other region must lie between the bands below and above the run,
+	 * and it must not coalesce with them.
+	 * @param fromBand the first band to replace.
+	 * @param toBand the band after the last one to replace.
+	 * @param middle the region with the new bands.
+	 */
+	private void replaceBands(int fromBand, int toBand, ManhattanRegion middle)
+	{
+		int numMiddle = middle.numBands;
+		int numAbove = numBands - toBand;
+		int newNumBands = fromBand + numMiddle + numAbove;
+		int firstInterval = bandStart[fromBand];
+		int middleIntervals = middle.bandStart[numMiddle];
+		int aboveIntervals = bandStart[numBands] - bandStart[toBand];
+		int shift = firstInterval + middleIntervals - bandStart[toBand];
+		if (newNumBands > bandLo.length)
+		{
+			int newSize = Math.max(newNumBands, bandLo.length*2);
+			bandLo = copyOf(bandLo, newSize);
+			bandHi = copyOf(bandHi, newSize);
+			int [] newStart = new int[newSize+1];
+			System.arraycopy(bandStart, 0, newStart, 0, numBands+1);
+			bandStart = newStart;
+		}
+		int newNumIntervals = firstInterval + middleIntervals + aboveIntervals;
+		if (newNumIntervals*2 > intervals.length)
+			intervals = copyOf(intervals, Math.max(newNumIntervals*2, intervals.length*2));
+
+		// move the bands above the run (System.arraycopy handles the overlap)
+		System.arraycopy(intervals, bandStart[toBand]*2, intervals, (firstInterval + middleIntervals)*2, aboveIntervals*2);
+		System.arraycopy(bandLo, toBand, bandLo, fromBand + numMiddle, numAbove);
+		System.arraycopy(bandHi, toBand, bandHi, fromBand + numMiddle, numAbove);
+		System.arraycopy(bandStart, toBand, bandStart, fromBand + numMiddle, numAbove + 1);
+		for(int b=fromBand + numMiddle; b<=newNumBands; b++) bandStart[b] += shift;
+
+		// insert the new bands
+		System.arraycopy(middle.intervals, 0, intervals, firstInterval*2, middleIntervals*2);
+		System.arraycopy(middle.bandLo, 0, bandLo, fromBand, numMiddle);
+		System.arraycopy(middle.bandHi, 0, bandHi, fromBand, numMiddle);
+		for(int b=0; b<numMiddle; b++) bandStart[fromBand + b] = firstInterval + middle.bandStart[b];
+		numBands = newNumBands;
+	}
+
+	private void queue(double lX, double lY, double hX, double hY, boolean subtract)
+	{
+		// ignore empty rectangles (and NaN)
+		if (!(lX < hX && lY < hY)) return;
+		if (numPending > 0 && pendingSubtract != subtract) normalize();
+		if (subtract && numPending == 0 && numBands == 0) return;
+		pendingSubtract = subtract;
+		if (numPending*4 + 4 > pending.length)
+			pending = copyOf(pending, Math.max(64, pending.length*2));
+
+		// adding zero turns -0.0 into 0.0 so that all coordinates sort and compare consistently
+		int k = numPending*4;
+		pending[k] = lX + 0.0;
+		pending[k+1] = lY + 0.0;
+		pending[k+2] = hX + 0.0;
+		pending[k+3] = hY + 0.0;
+		numPending++;
+	}
+
+	/**
+	 * Method to decompose a Manhattan path into rectangles and queue them.
+	 * @return false (and queue nothing) if the path is not Manhattan.
+	 */
+	private boolean queueShape(PathIterator pi, boolean subtract)
+	{
+		// gather the vertical edges
+		boolean evenOdd = pi.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+		double [] coords = new double[6];
+		EdgeList edgeList = new EdgeList();
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		for( ; !pi.isDone(); pi.next())
+		{
+			int type = pi.currentSegment(coords);
+			double x, y;
+			switch (type)
+			{
+				case PathIterator.SEG_MOVETO:
+					// implicitly close the previous loop
+					if (!edgeList.addEdge(lastX, lastY, startX, startY)) return false;
+					startX = lastX = coords[0];
+					startY = lastY = coords[1];
+					continue;
+				case PathIterator.SEG_LINETO:
+					x = coords[0];   y = coords[1];
+					break;
+				case PathIterator.SEG_CLOSE:
+					x = startX;   y = startY;
+					break;
+				default:
+					return false;
+			}
+			if (!edgeList.addEdge(lastX, lastY, x, y)) return false;
+			lastX = x;   lastY = y;
+		}
+		if (!edgeList.addEdge(lastX, lastY, startX, startY)) return false;
+		double [] edges = edgeList.edges;
+		int numEdges = edgeList.numEdges;
+		if (numEdges == 0) return true;
+
+		// sweep the edges to find the covered intervals in each band
+		double [] ys = new double[numEdges*2];
+		for(int i=0; i<numEdges; i++)
+		{
+			ys[i*2] = edges[i*3+1];
+			ys[i*2+1] = edges[i*3+2];
+		}
+		Arrays.sort(ys);
+		int numYs = unique(ys, ys.length);
+		long [] order = new long[numEdges];
+		for(int i=0; i<numEdges; i++)
+		{
+			double lowY = Math.min(edges[i*3+1], edges[i*3+2]);
+			order[i] = ((long)Arrays.binarySearch(ys, 0, numYs, lowY) << 32) | i;
+		}
+		Arrays.sort(order);
+		int [] active = new int[numEdges];
+		double [] upX = new double[numEdges], downX = new double[numEdges];
+		int numActive = 0, nextEdge = 0;
+		for(int b=0; b<numYs-1; b++)
+		{
+			double y = ys[b];
+			int k = 0;
+			for(int i=0; i<numActive; i++)
+			{
+				int e = active[i];
+				if (Math.max(edges[e*3+1], edges[e*3+2]) > y) active[k++] = e;
+			}
+			numActive = k;
+			while (nextEdge < numEdges && (int)(order[nextEdge] >>> 32) == b)
+				active[numActive++] = (int)order[nextEdge++];
+			int numUp = 0, numDown = 0;
+			for(int i=0; i<numActive; i++)
+			{
+				int e = active[i];
+				if (edges[e*3+2] > edges[e*3+1]) upX[numUp++] = edges[e*3]; else
+					downX[numDown++] = edges[e*3];
+			}
+			Arrays.sort(upX, 0, numUp);
+			Arrays.sort(downX, 0, numDown);
+			int iu = 0, id = 0, winding = 0;
+			boolean inside = false;
+			double start = 0;
+			while (iu < numUp || id < numDown)
+			{
+				double x = Double.POSITIVE_INFINITY;
+				if (iu < numUp) x = upX[iu];
+				if (id < numDown && downX[id] < x) x = downX[id];
+				while (iu < numUp && upX[iu] == x) { winding++;   iu++; }
+				while (id < numDown && downX[id] == x) { winding += evenOdd ? 1 : -1;   id++; }
+				boolean now = evenOdd ? (winding & 1) != 0 : winding != 0;
+				if (now == inside) continue;
+				if (now) start = x; else
+					queue(start, y, x, ys[b+1], subtract);
+				inside = now;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method to combine two regions into a new one.
+	 */
+	private static ManhattanRegion combine(ManhattanRegion a, ManhattanRegion b, int op)
+	{
+		a.normalize();
+		b.normalize();
+		int numA = a.bandStart[a.numBands], numB = b.bandStart[b.numBands];
+		double [] rects = new double[(numA + numB) * 4];
+		a.fillRectangles(rects, 0, a.numBands);
+		double [] bRects = new double[numB * 4];
+		b.fillRectangles(bRects, 0, b.numBands);
+		System.arraycopy(bRects, 0, rects, numA*4, numB*4);
+		ManhattanRegion result = new ManhattanRegion();
+		sweep(rects, numA, numA + numB, op, result);
+		return result;
+	}
+
+	/**
+	 * Method to sweep a set of rectangles and store the result in a region.
+	 * @param rects the rectangles (4 values each: low X, low Y, high X, high Y).
+	 * @param numA the number of rectangles at the start of the array that are in the first operand.
+	 * @param numRects the total number of rectangles (the rest are in the second operand).
+	 * @param op the operation (UNION, INTERSECT, or SUBTRACT).
+	 * @param result the region that is filled with the result.
+	 */
+	private static void sweep(double [] rects, int numA, int numRects, int op, ManhattanRegion result)
+	{
+		result.numBands = 0;
+		result.bandStart[0] = 0;
+		if (numRects == 0) return;
+
+		// find the distinct Y coordinates
+		double [] ys = new double[numRects*2];
+		for(int i=0; i<numRects; i++)
+		{
+			ys[i*2] = rects[i*4+1];
+			ys[i*2+1] = rects[i*4+3];
+		}
+		Arrays.sort(ys);
+		int numYs = unique(ys, ys.length);
+
+		// order the rectangles by the band in which they start
+		long [] order = new long[numRects];
+		for(int i=0; i<numRects; i++)
+			order[i] = ((long)Arrays.binarySearch(ys, 0, numYs, rects[i*4+1]) << 32) | i;
+		Arrays.sort(order);
+
+		int [] active = new int[numRects];
+		int numB = numRects - numA;
+		double [] startA = new double[numA], endA = new double[numA];
+		double [] startB = new double[numB], endB = new double[numB];
+		double [] out = new double[numRects*2];
+		int numActive = 0, nextRect = 0;
+		for(int b=0; b<numYs-1; b++)
+		{
+			// update the list of rectangles that cross this band
+			double y = ys[b];
+			int k = 0;
+			for(int i=0; i<numActive; i++)
+				if (rects[active[i]*4+3] > y) active[k++] = active[i];
+			numActive = k;
+			while (nextRect < numRects && (int)(order[nextRect] >>> 32) == b)
+				active[numActive++] = (int)order[nextRect++];
+			if (numActive == 0) continue;
+
+			int nA = 0, nB = 0;
+			for(int i=0; i<numActive; i++)
+			{
+				int r = active[i];
+				if (r < numA)
+				{
+					startA[nA] = rects[r*4];
+					endA[nA++] = rects[r*4+2];
+				} else
+				{
+					startB[nB] = rects[r*4];
+					endB[nB++] = rects[r*4+2];
+				}
+			}
+			if (nA == 0 && op != UNION) continue;
+			if (nB == 0 && op == INTERSECT) continue;
+			Arrays.sort(startA, 0, nA);
+			Arrays.sort(endA, 0, nA);
+			Arrays.sort(startB, 0, nB);
+			Arrays.sort(endB, 0, nB);
+
+			// walk the edges left to right, counting coverage of each operand
+			int iA = 0, jA = 0, iB = 0, jB = 0, countA = 0, countB = 0, numOut = 0;
+			boolean inside = false;
+			double start = 0;
+			while (jA < nA || jB < nB)
+			{
+				double x = Double.POSITIVE_INFINITY;
+				if (iA < nA) x = startA[iA];
+				if (jA < nA && endA[jA] < x) x = endA[jA];
+				if (iB < nB && startB[iB] < x) x = startB[iB];
+				if (jB < nB && endB[jB] < x) x = endB[jB];
+				while (iA < nA && startA[iA] == x) { countA++;   iA++; }
+				while (jA < nA && endA[jA] == x) { countA--;   jA++; }
+				while (iB < nB && startB[iB] == x) { countB++;   iB++; }
+				while (jB < nB && endB[jB] == x) { countB--;   jB++; }
+				boolean now;
+				switch (op)
+				{
+					case INTERSECT: now = countA > 0 && countB > 0;   break;
+					case SUBTRACT:  now = countA > 0 && countB == 0;  break;
+					default:        now = countA > 0 || countB > 0;   break;
+				}
+				if (now == inside) continue;
+				if (now) start = x; else
+				{
+					out[numOut++] = start;
+					out[numOut++] = x;
+				}
+				inside = now;
+			}
+			if (numOut > 0) result.appendBand(y, ys[b+1], out, numOut);
+		}
+	}
+
+	/**
+	 * Method to add a band to the end of this region, merging it with the previous band if they match.
+	 */
+	private void appendBand(double lo, double hi, double [] out, int numOut)
+	{
+		if (numBands > 0 && bandHi[numBands-1] == lo)
+		{
+			int first = bandStart[numBands-1], count = bandStart[numBands] - first;
+			if (count*2 == numOut)
+			{
+				boolean same = true;
+				for(int i=0; i<numOut; i++)
+					if (intervals[first*2+i] != out[i]) { same = false;   break; }
+				if (same)
+				{
+					bandHi[numBands-1] = hi;
+					return;
+				}
+			}
+		}
+		if (numBands + 1 > bandLo.length)
+		{
+			int newSize = Math.max(16, bandLo.length*2);
+			bandLo = copyOf(bandLo, newSize);
+			bandHi = copyOf(bandHi, newSize);
+			int [] newStart = new int[newSize+1];
+			System.arraycopy(bandStart, 0, newStart, 0, numBands+1);
+			bandStart = newStart;
+		}
+		int numIntervals = bandStart[numBands];
+		if (numIntervals*2 + numOut > intervals.length)
+			intervals = copyOf(intervals, Math.max(numIntervals*2 + numOut, intervals.length*2));
+		System.arraycopy(out, 0, intervals, numIntervals*2, numOut);
+		bandLo[numBands] = lo;
+		bandHi[numBands] = hi;
+		numBands++;
+		bandStart[numBands] = numIntervals + numOut/2;
+	}
+
+	/**
+	 * Class to collect the vertical edges of a path (3 values each: X, starting Y, ending Y).
+	 */
+	private static class EdgeList
+	{
+		private double [] edges = new double[24];
+		private int numEdges;
+
+		/**
+		 * Method to add a path segment.
+		 * @return false if the segment is not Manhattan.
+		 */
+		private boolean addEdge(double fromX, double fromY, double toX, double toY)
+		{
+			if (fromY == toY) return true;
+			if (fromX != toX) return false;
+			if (numEdges*3 + 3 > edges.length) edges = copyOf(edges, edges.length*2);
+			edges[numEdges*3] = toX + 0.0;
+			edges[numEdges*3+1] = fromY + 0.0;
+			edges[numEdges*3+2] = toY + 0.0;
+			numEdges++;
+			return true;
+		}
+	}
+
+	private static int unique(double [] values, int len)
+	{
+		if (len == 0) return 0;
+		int k = 1;
+		for(int i=1; i<len; i++)
+			if (values[i] != values[k-1]) values[k++] = values[i];
+		return k;
+	}
+
+	private static double [] copyOf(double [] values, int len)
+	{
+		double [] newValues = new double[len];
+		System.arraycopy(values, 0, newValues, 0, Math.min(len, values.length));
+		return newValues;
+	}
+}
@@ -0,0 +1,119 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: ManhattanRegionTest.java
+ *
+ * Copyright (c) 2010 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.database.geometry;
+
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+/**
+ *  A simple regression test for the ManhattanRegion.
+ */
+public class ManhattanRegionTest {
+    public static void main(String[] s) throws Exception {
+        if (s.length != 2) {
+            System.err.println("");
+            System.err.println("usage: java " + ManhattanRegionTest.class.getName() + " <numtrials> <seed>");
+            System.err.println("");
+            System.err.println("  Runs random additions, subtractions and queries on both a ManhattanRegion and");
+            System.err.println("  a java.awt.geom.Area.  Reports any disagreements.");
+            System.err.println("");
+            System.err.println("    <numtrials> number of regions to build, or 0 for no limit");
+            System.err.println("    <seed>      seed for random number generator, in hex");
+            System.err.println("");
+            System.exit(-1);
+        }
+        Random rand = new Random(Integer.parseInt(s[1], 16));
+        int numtrials = Integer.parseInt(s[0]);
+
+        int adds=0, subtracts=0, queries=0, errors=0;
+        long lastprint=0;
+
+        for(int trial=0; numtrials==0 || trial<numtrials; trial++) {
+            if (System.currentTimeMillis()-lastprint > 200) {
+                lastprint = System.currentTimeMillis();
+                System.out.print("\r trials="+trial+" adds="+adds+" subtracts="+subtracts+" queries="+queries);
+            }
+            ManhattanRegion mr = new ManhattanRegion();
+            Area area = new Area();
+            int numops = 1 + rand.nextInt(60);
+            int grid = 4 + rand.nextInt(40);
+            for(int i=0; i<numops; i++) {
+                Rectangle2D rect = new Rectangle2D.Double(rand.nextInt(grid), rand.nextInt(grid),
+                                                          1 + rand.nextInt(grid/2), 1 + rand.nextInt(grid/2));
+                switch(rand.nextInt(10)) {
+                    case 0: case 1: case 2: case 3: case 4: case 5: // add
+                        mr.add(rect);
+                        area.add(new Area(rect));
+                        adds++;
+                        break;
+                    case 6: case 7: case 8: // subtract
+                        mr.subtract(rect);
+                        area.subtract(new Area(rect));
+                        subtracts++;
+                        break;
+                    case 9: { // query points between grid lines
+                        for(int j=0; j<5; j++) {
+                            double x = rand.nextInt(grid*2) + 0.5;
+                            double y = rand.nextInt(grid*2) + 0.5;
+                            boolean mc = mr.contains(x, y);
+                            boolean ac = area.contains(x, y);
+                            if (mc != ac) {
+                                System.out.println();
+                                System.out.println("trial "+trial+": contains("+x+","+y+") region says "+mc+", area says "+ac);
+                                errors++;
+                            }
+                        }
+                        queries++;
+                        break;
+                    }
+                }
+            }
+            if (!mr.toArea().equals(area)) {
+                System.out.println();
+                System.out.println("trial "+trial+": region has different geometry than area");
+                errors++;
+            }
+            ManhattanRegion back = ManhattanRegion.fromShape(area, null);
+            if (back.getNumRectangles() != mr.getNumRectangles()) {
+                System.out.println();
+                System.out.println("trial "+trial+": region has "+mr.getNumRectangles()+" rectangles, area converts to "+back.getNumRectangles());
+                errors++;
+            }
+            if (ManhattanRegion.difference(back, mr).getArea() != 0 || ManhattanRegion.difference(mr, back).getArea() != 0) {
+                System.out.println();
+                System.out.println("trial "+trial+": region differs from area converted back");
+                errors++;
+            }
+            if (!mr.isEmpty() && !mr.getBounds2D().equals(area.getBounds2D())) {
+                System.out.println();
+                System.out.println("trial "+trial+": region bounds "+mr.getBounds2D()+", area bounds "+area.getBounds2D());
+                errors++;
+            }
+        }
+        System.out.println();
+        System.out.println("done, "+errors+" disagreements");
+        if (errors != 0) System.exit(-1);
+    }
+}
@@ -0,0 +1,435 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: PolyManhattanMerge.java
+ *
+ * Copyright (c) 2010 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.database.geometry;
+
+import com.sun.electric.technology.Layer;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This is the Polygon Merging facility for Manhattan geometry.
+ * <P>
+ * It has the same interface as PolyMerge, but each layer is kept in a ManhattanRegion
+ * (primitive arrays swept with a scanline) instead of a java.awt.geom.Area.
+ * Once a non-Manhattan polygon is placed on a layer, that layer falls back to an Area
+ * and behaves exactly like PolyMerge.
+ */
+public class PolyManhattanMerge extends PolyMerge
+{
+	/**
+	 * Method to create a new "merge" object.
+	 */
+	public PolyManhattanMerge()
+	{
+	}
+
+	/**
+	 * Method to add a Rectangle to the merged collection.
+	 * @param layer the layer that this Poly sits on.
+	 * @param rect the Rectangle to merge.
+	 */
+	public void addRectangle(Layer layer, Rectangle2D rect)
+	{
+		ManhattanRegion region = getRegion(layer);
+		if (region != null) region.add(rect); else
+			getArea(layer).add(new Area(rect));
+	}
+
+	/**
+	 * Method to add a PolyBase to the merged collection.
+	 * @param layer the layer that this Poly sits on.
+	 * @param poly the PolyBase to merge.
+	 */
+	public void addPolygon(Layer layer, PolyBase poly)
+	{
+		ManhattanRegion region = getRegion(layer);
+		if (region != null)
+		{
+			Rectangle2D box = poly.getBox();
+			if (box != null) { region.add(box);   return; }
+			if (region.add(poly, null)) return;
+		}
+		getArea(layer).add(new Area(poly));
+	}
+
+	/**
+	 * Method to subtract a PolyBase from the merged collection.
+	 * @param layer the layer that this PolyBase sits on.
+	 * @param poly the PolyBase to merge.
+	 */
+	public void subtract(Object layer, Object poly)
+	{
+		Object value = layers.get(layer);
+		if (value == null) return;
+		PolyBase subPoly = (PolyBase)poly;
+		if (value instanceof ManhattanRegion)
+		{
+			ManhattanRegion region = (ManhattanRegion)value;
+			Rectangle2D box = subPoly.getBox();
+			if (box != null) { region.subtract(box);   return; }
+			if (region.subtract(subPoly, null)) return;
+		}
+		getArea((Layer)layer).subtract(new Area(subPoly));
+	}
+
+	/**
+	 * Method to add another Merge to this one.
+	 * @param other the other Merge to add in.
+	 * @param trans a transformation on the other Merge.
+	 */
+	public void addMerge(PolyMerge other, AffineTransform trans)
+	{
+		for(Layer subLayer : other.getKeySet())
+		{
+			Object subValue = other.layers.get(subLayer);
+			ManhattanRegion region = getRegion(subLayer);
+			if (region != null)
+			{
+				if (subValue instanceof ManhattanRegion && ManhattanRegion.isManhattan(trans))
+				{
+					region.add((ManhattanRegion)subValue, trans);
+					continue;
+				}
+				if (subValue instanceof Area && ((Area)subValue).isPolygonal() && region.add((Area)subValue, trans))
+					continue;
+			}
+			Area subArea = other.getAreaForLayer(subLayer);
+			getArea(subLayer).add(subArea.createTransformedArea(trans));
+		}
+	}
+
+	/**
+	 * Method to add one Layer to another in this merge.
+	 * @param fromLayer the other Layer to add in.
+	 * @param toLayer the destination layer that will contain the union of itself and "fromLayer".
+	 */
+	public void addLayer(Layer fromLayer, Layer toLayer)
+	{
+		Object fromValue = layers.get(fromLayer);
+		if (fromValue == null) return;
+		if (!layers.containsKey(toLayer))
+		{
+			copyLayer(fromLayer, toLayer);
+			return;
+		}
+		ManhattanRegion toRegion = getRegion(toLayer);
+		if (toRegion != null && fromValue instanceof ManhattanRegion)
+		{
+			toRegion.add((ManhattanRegion)fromValue, null);
+			return;
+		}
+		getArea(toLayer).add(getAreaForLayer(fromLayer));
+	}
+
+	/**
+	 * Method to determine whether a polygon intersects a layer in the merge.
+	 * @param layer the layer to test.
+	 * @param poly the polygon to examine.
+	 * @return true if any part of the polygon exists in that layer.
+	 */
+	public boolean intersects(Layer layer, PolyBase poly)
+	{
+		Object value = layers.get(layer);
+		if (!(value instanceof ManhattanRegion)) return super.intersects(layer, poly);
+		ManhattanRegion region = (ManhattanRegion)value;
+		Rectangle2D box = poly.getBox();
+		if (box != null) return region.intersects(box);
+
+		Area intersectArea = new Area(poly);
+		intersectArea.intersect(region.toArea(poly.getBounds2D()));
+		return !intersectArea.isEmpty();
+	}
+
+	/**
+	 * Method to intersect two layers in this merge and produce a third.
+	 * @param sourceA the first Layer to intersect.
+	 * @param sourceB the second Layer to intersect.
+	 * @param dest the destination layer to place the intersection of the first two.
+	 * If there is no intersection, all geometry on this layer is cleared.
+	 */
+	public void intersectLayers(Layer sourceA, Layer sourceB, Layer dest)
+	{
+		Object valueA = layers.get(sourceA), valueB = layers.get(sourceB);
+		if (valueA instanceof ManhattanRegion && valueB instanceof ManhattanRegion)
+		{
+			ManhattanRegion destRegion = ManhattanRegion.intersection((ManhattanRegion)valueA, (ManhattanRegion)valueB);
+			if (destRegion.isEmpty()) layers.remove(dest); else
+				layers.put(dest, destRegion);
+			return;
+		}
+		Area destArea = null;
+		if (valueA != null && valueB != null)
+		{
+			destArea = new Area(getAreaForLayer(sourceA));
+			destArea.intersect(getAreaForLayer(sourceB));
+			if (destArea.isEmpty()) destArea = null;
+		}
+		if (destArea == null) layers.remove(dest); else
+			layers.put(dest, destArea);
+	}
+
+	/**
+	 * Method to subtract one layer from another and produce a third.
+	 * @param sourceA the first Layer.
+	 * @param sourceB the second Layer, which gets subtracted from the first.
+	 * @param dest the destination layer to place the sourceA - sourceB.
+	 * If there is nothing left, all geometry on the layer is cleared.
+	 */
+	public void subtractLayers(Layer sourceA, Layer sourceB, Layer dest)
+	{
+		Object valueA = layers.get(sourceA), valueB = layers.get(sourceB);
+		if (valueA instanceof ManhattanRegion && valueB instanceof ManhattanRegion)
+		{
+			ManhattanRegion destRegion = ManhattanRegion.difference((ManhattanRegion)valueA, (ManhattanRegion)valueB);
+			if (destRegion.isEmpty()) layers.remove(dest); else
+				layers.put(dest, destRegion);
+			return;
+		}
+		Area destArea = null;
+		if (valueA != null && valueB != null)
+		{
+			destArea = new Area(getAreaForLayer(sourceA));
+			destArea.subtract(getAreaForLayer(sourceB));
+			if (destArea.isEmpty()) destArea = null;
+		}
+		if (destArea == null) layers.remove(dest); else
+			layers.put(dest, destArea);
+	}
+
+	/**
+	 * Method to subtract another Merge to this one.
+	 * @param other the other Merge to subtract.
+	 */
+	public void subtractMerge(PolyMerge other)
+	{
+		for(Layer subLayer : other.getKeySet())
+		{
+			Object value = layers.get(subLayer);
+			if (value == null) continue;
+			Object subValue = other.layers.get(subLayer);
+			if (value instanceof ManhattanRegion && subValue instanceof ManhattanRegion)
+			{
+				((ManhattanRegion)value).subtract((ManhattanRegion)subValue);
+				continue;
+			}
+			getArea(subLayer).subtract(other.getAreaForLayer(subLayer));
+		}
+	}
+
+	/**
+	 * Method to tell whether there is any valid geometry on a given layer of this merge.
+	 * @param layer the layer to test.
+	 * @return true if there is no valid geometry on the given layer in this merge.
+	 */
+	public boolean isEmpty(Layer layer)
+	{
+		Object value = layers.get(layer);
+		if (value instanceof ManhattanRegion) return ((ManhattanRegion)value).isEmpty();
+		return super.isEmpty(layer);
+	}
+
+	/**
+	 * Method to determine whether a rectangle exists in the merge.
+	 * @param layer the layer being tested.
+	 * @param rect the rectangle being tested.
+	 * @return true if all of the rectangle is inside of the merge on the given layer.
+	 */
+	public boolean contains(Layer layer, Rectangle2D rect)
+	{
+		Object value = layers.get(layer);
+		if (!(value instanceof ManhattanRegion)) return super.contains(layer, rect);
+		ManhattanRegion region = (ManhattanRegion)value;
+		if (region.contains(rect)) return true;
+
+		// allow for round-off in the uncovered part, as PolyMerge does
+		double remainingArea = rect.getWidth() * rect.getHeight() - region.getAreaInside(rect);
+		return DBMath.areEquals(remainingArea, 0);
+	}
+
+	/**
+	 * Method to determine whether a polygon exists in the merge.
+	 * @param layer the layer being tested.
+	 * @param poly the polygon being tested.
+	 * @return true if all of the polygon is inside of the merge on the given layer.
+	 */
+	public boolean contains(Layer layer, PolyBase poly)
+	{
+		Object value = layers.get(layer);
+		if (!(value instanceof ManhattanRegion)) return super.contains(layer, poly);
+		ManhattanRegion region = (ManhattanRegion)value;
+		Rectangle2D box = poly.getBox();
+		if (box != null) return contains(layer, box);
+
+		// only the part of the layer under the polygon matters
+		Rectangle2D bounds = poly.getBounds2D();
+		ManhattanRegion polyRegion = ManhattanRegion.fromShape(poly, null);
+		if (polyRegion != null)
+		{
+			polyRegion.subtract(region.getClipped(bounds));
+			if (polyRegion.isEmpty()) return true;
+			return DBMath.areEquals(polyRegion.getArea(), 0);
+		}
+		Area polyArea = new Area(poly);
+		polyArea.subtract(region.toArea(bounds));
+		if (polyArea.isEmpty()) return true;
+		return DBMath.areEquals(getAreaOfArea(polyArea), 0);
+	}
+
+	public Area exclusive(Layer layer, PolyBase poly)
+	{
+		Object value = layers.get(layer);
+		if (!(value instanceof ManhattanRegion)) return super.exclusive(layer, poly);
+
+		// create an area that is the new polygon minus the original area
+		Area polyArea = new Area(poly);
+		polyArea.subtract(((ManhattanRegion)value).toArea(poly.getBounds2D()));
+		return polyArea;
+	}
+
+	/**
+	 * Method to return the area on a given layer.
+	 * @param layer the layer to query.
+	 * @return the area of geometry on the given layer.
+	 */
+	public double getAreaOfLayer(Layer layer)
+	{
+		Object value = layers.get(layer);
+		if (value instanceof ManhattanRegion) return ((ManhattanRegion)value).getArea();
+		return super.getAreaOfLayer(layer);
+	}
+
+	/**
+	 * Method to determine whether a point exists in the merge.
+	 * @param layer the layer being tested.
+	 * @param pt the point being tested.
+	 * @return true if the point is inside of the merge on the given layer.
+	 */
+	public boolean contains(Layer layer, Point2D pt)
+	{
+		Object value = layers.get(layer);
+		if (value instanceof ManhattanRegion) return ((ManhattanRegion)value).contains(pt.getX(), pt.getY());
+		return super.contains(layer, pt);
+	}
+
+	/**
+	 * Method to return list of Polys on a given Layer in this Merge.
+	 * @param layer the layer in question.
+	 * @param simple
+	 * @return the list of Polys that describes this Merge.
+	 */
+	public List<PolyBase> getMergedPoints(Layer layer, boolean simple)
+	{
+		Area area = getAreaForLayer(layer);
+		if (area == null) return null;
+		return getAreaPoints(area, layer, simple);
+	}
+
+	/**
+	 * To retrieve the roots containing all loops from the internal structure.
+	 * @param layer current layer under analysis
+	 * @return list of trees with loop hierarchy
+	 */
+	public Collection<PolyBase.PolyBaseTree> getTreeObjects(Object layer)
+	{
+		Area area = getAreaForLayer((Layer)layer);
+		if (area == null) return new ArrayList<PolyBase.PolyBaseTree>();
+		return PolyBase.getPolyTrees(area, (Layer)layer);
+	}
+
+	/**
+	 * Method to perform operations after no more elemenets will be added.
+	 * Sweeps any queued geometry so that later queries are fast.
+	 * @param merge ignored: the geometry is always merged.
+	 */
+	public void postProcess(boolean merge)
+	{
+		for(Object value : layers.values())
+		{
+			if (value instanceof ManhattanRegion) ((ManhattanRegion)value).normalize();
+		}
+	}
+
+	/**
+	 * Method to return the geometry on a given layer as an Area.
+	 * Manhattan layers build a new Area from their rectangles.
+	 * @param layer the layer in question.
+	 * @return the Area of that layer (null if the layer has no geometry).
+	 */
+	protected Area getAreaForLayer(Layer layer)
+	{
+		Object value = layers.get(layer);
+		if (value instanceof ManhattanRegion) return ((ManhattanRegion)value).toArea();
+		return (Area)value;
+	}
+
+	/**
+	 * Method to replace the geometry of one layer with a copy of another.
+	 * @param source the layer to copy.
+	 * @param dest the layer that receives the copy.
+	 */
+	protected void copyLayer(Layer source, Layer dest)
+	{
+		Object value = layers.get(source);
+		if (value instanceof ManhattanRegion) layers.put(dest, new ManhattanRegion((ManhattanRegion)value)); else
+			super.copyLayer(source, dest);
+	}
+
+	/**
+	 * Method to find the Manhattan geometry on a layer, creating it if the layer is empty.
+	 * @param layer the layer in question.
+	 * @return the ManhattanRegion of the layer (null if the layer has fallen back to an Area).
+	 */
+	private ManhattanRegion getRegion(Layer layer)
+	{
+		Object value = layers.get(layer);
+		if (value == null)
+		{
+			ManhattanRegion region = new ManhattanRegion();
+			layers.put(layer, region);
+			return region;
+		}
+		if (value instanceof ManhattanRegion) return (ManhattanRegion)value;
+		return null;
+	}
+
+	/**
+	 * Method to switch a layer to an Area so that non-Manhattan geometry can be placed on it.
+	 * @param layer the layer in question.
+	 * @return the Area of the layer (created if the layer is empty).
+	 */
+	private Area getArea(Layer layer)
+	{
+		Object value = layers.get(layer);
+		if (value instanceof Area) return (Area)value;
+		Area area = (value == null) ? new Area() : ((ManhattanRegion)value).toArea();
+		layers.put(layer, area);
+		return area;
+	}
+}
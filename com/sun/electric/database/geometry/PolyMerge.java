@@ -158,7 +158,7 @@ public class PolyMerge
 	{
 		for(Layer subLayer : other.layers.keySet())
 		{
-			Area subArea = (Area)other.layers.get(subLayer);
+			Area subArea = other.getAreaForLayer(subLayer);
 
 			Area area = (Area)layers.get(subLayer);
 			if (area == null)
@@ -277,7 +277,7 @@ public class PolyMerge
 			Area area = (Area)layers.get(subLayer);
 			if (area == null) continue;
 
-			Area subArea = (Area)other.layers.get(subLayer);
+			Area subArea = other.getAreaForLayer(subLayer);
 			area.subtract(subArea);
 		}
 	}
@@ -290,10 +290,10 @@ public class PolyMerge
 	 */
 	public void insetLayer(Layer source, Layer dest, double amount)
 	{
-		Area sourceArea = (Area)layers.get(source);
+		Area sourceArea = getAreaForLayer(source);
 		if (sourceArea == null) layers.remove(dest); else
 		{
-			layers.put(dest, sourceArea.clone());
+			copyLayer(source, dest);
 			if (amount == 0) return;
 			List<PolyBase> orig = getAreaPoints(sourceArea, source, true);
 			Point2D [] subtractPoints = new Point2D[4];
@@ -324,6 +324,30 @@ public class PolyMerge
 		}
 	}
 
+	/**
+	 * Method to return the geometry on a given layer as an Area.
+	 * Subclasses that keep their geometry in another form must build the Area.
+	 * The returned Area must not be modified.
+	 * @param layer the layer in question.
+	 * @return the Area of that layer (null if the layer has no geometry).
+	 */
+	protected Area getAreaForLayer(Layer layer)
+	{
+		return (Area)layers.get(layer);
+	}
+
+	/**
+	 * Method to replace the geometry of one layer with a copy of another.
+	 * @param source the layer to copy.
+	 * @param dest the layer that receives the copy.
+	 */
+	protected void copyLayer(Layer source, Layer dest)
+	{
+		Area sourceArea = (Area)layers.get(source);
+		if (sourceArea == null) layers.remove(dest); else
+			layers.put(dest, sourceArea.clone());
+	}
+
 	/**
 	 * Method to delete all geometry on a given layer.
 	 * @param layer the Layer to clear in this merge.
@@ -467,7 +491,12 @@ public class PolyMerge
 		return getAreaOfArea(area);
 	}
 
-	private double getAreaOfArea(Area area)
+	/**
+	 * Method to return the total area of an Area object.
+	 * @param area the Area to measure.
+	 * @return the area of the geometry in the Area.
+	 */
+	protected double getAreaOfArea(Area area)
 	{
 		List<PolyBase> pointList = getAreaPoints(area, null, true);
 		double totalArea = 0;
@@ -31,6 +31,7 @@ import com.sun.electric.tool.Job;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * The RTNode class implements R-Trees.
@@ -45,6 +46,11 @@ import java.util.Iterator;
  * Insertion and deletion, however, are more complex operations.  The figure below illustrates how R-Trees work:
  * <P>
  * <CENTER><IMG SRC="doc-files/Geometric-1.gif"></CENTER>
+ * <P>
+ * When all of the objects are known in advance, use bulkLoad() instead of repeated calls to linkGeom().
+ * It builds a packed tree with a higher fanout in one pass, using the Sort-Tile-Recursive (STR) ordering from
+ * Leutenegger, Lopez and Edgington, "STR: A Simple and Efficient Algorithm for R-Tree Packing", ICDE 1997.
+ * Packed trees may still be modified with linkGeom() and unLinkGeom().
  */
 public class RTNode {
 
@@ -52,6 +58,8 @@ public class RTNode {
     private static final int MINRTNODESIZE = 4;
     /** upper bound on R-tree node size */
     private static final int MAXRTNODESIZE = (MINRTNODESIZE * 2);
+    /** size of R-tree nodes built by bulkLoad() */
+    private static final int BULKRTNODESIZE = 32;
     /** bounds of this node and its children */
     private Rectangle2D bounds;
     /** number of children */
@@ -62,9 +70,15 @@ public class RTNode {
     private boolean flag;
     /** parent node */
     private RTNode parent;
+    /** bounds of the children of a leaf node (low X, low Y, high X, high Y for each) */
+    private double[] leafBounds;
 
     private RTNode() {
-        pointers = new Object[MAXRTNODESIZE];
+        this(MAXRTNODESIZE);
+    }
+
+    private RTNode(int size) {
+        pointers = new Object[size];
         bounds = new Rectangle2D.Double();
     }
 
@@ -96,6 +110,17 @@ public class RTNode {
     /** Method to set the number of children of this RTNode. */
     private void setChild(int index, Object obj) {
         this.pointers[index] = obj;
+        if (flag && obj instanceof RTBounds) {
+            // remember the bounds of leaf entries so that searches do not have to visit each object
+            if (leafBounds == null) {
+                leafBounds = new double[pointers.length * 4];
+            }
+            Rectangle2D geomBounds = ((RTBounds) obj).getBounds();
+            leafBounds[index * 4] = geomBounds.getMinX();
+            leafBounds[index * 4 + 1] = geomBounds.getMinY();
+            leafBounds[index * 4 + 2] = geomBounds.getMaxX();
+            leafBounds[index * 4 + 3] = geomBounds.getMaxY();
+        }
     }
 
     /** Method to get the leaf/branch flag of this RTNode. */
@@ -135,6 +160,178 @@ public class RTNode {
         return top;
     }
 
+    /**
+     * Method to build an R-Tree from a set of RTBounds in one pass.
+     * The objects are ordered with Sort-Tile-Recursive packing so that each node
+     * covers a compact area, and nodes are filled to a larger fanout than linkGeom() uses.
+     * This is much faster than linking the objects one at a time and produces a shallower tree.
+     * @param geoms the RTBounds to place in the tree.
+     * @return the root of the new RTree.
+     */
+    public static RTNode bulkLoad(List<? extends RTBounds> geoms) {
+        int num = geoms.size();
+        if (num <= BULKRTNODESIZE) {
+            RTNode root = new RTNode(Math.max(num, MAXRTNODESIZE));
+            root.setFlag(true);
+            for (int i = 0; i < num; i++) {
+                root.setChild(i, geoms.get(i));
+            }
+            root.setTotal(num);
+            root.figBounds();
+            return root;
+        }
+
+        // gather the bounds of the objects into flat arrays
+        Object[] entries = new Object[num];
+        double[] entryBounds = new double[num * 4];
+        for (int i = 0; i < num; i++) {
+            RTBounds geom = geoms.get(i);
+            entries[i] = geom;
+            Rectangle2D geomBounds = geom.getBounds();
+            entryBounds[i * 4] = geomBounds.getMinX();
+            entryBounds[i * 4 + 1] = geomBounds.getMinY();
+            entryBounds[i * 4 + 2] = geomBounds.getMaxX();
+            entryBounds[i * 4 + 3] = geomBounds.getMaxY();
+        }
+
+        // pack each level of the tree until a single node remains
+        boolean leaves = true;
+        int[] order = new int[num];
+        int[] groupStart = new int[num + 1];
+        for (;;) {
+            int numGroups = strPack(entryBounds, num, order, groupStart);
+            RTNode[] nodes = new RTNode[numGroups];
+            double[] nodeBounds = new double[numGroups * 4];
+            for (int g = 0; g < numGroups; g++) {
+                RTNode rtn = new RTNode(BULKRTNODESIZE);
+                rtn.setFlag(leaves);
+                if (leaves) {
+                    rtn.leafBounds = new double[BULKRTNODESIZE * 4];
+                }
+                double lX = Double.MAX_VALUE, lY = Double.MAX_VALUE, hX = -Double.MAX_VALUE, hY = -Double.MAX_VALUE;
+                int total = 0;
+                for (int k = groupStart[g]; k < groupStart[g + 1]; k++) {
+                    int e = order[k];
+                    rtn.pointers[total] = entries[e];
+                    if (leaves) {
+                        System.arraycopy(entryBounds, e * 4, rtn.leafBounds, total * 4, 4);
+                    } else {
+                        ((RTNode) entries[e]).setParent(rtn);
+                    }
+                    total++;
+                    lX = Math.min(lX, entryBounds[e * 4]);
+                    lY = Math.min(lY, entryBounds[e * 4 + 1]);
+                    hX = Math.max(hX, entryBounds[e * 4 + 2]);
+                    hY = Math.max(hY, entryBounds[e * 4 + 3]);
+                }
+                rtn.setTotal(total);
+                rtn.bounds.setRect(lX, lY, hX - lX, hY - lY);
+                nodes[g] = rtn;
+                nodeBounds[g * 4] = lX;
+                nodeBounds[g * 4 + 1] = lY;
+                nodeBounds[g * 4 + 2] = hX;
+                nodeBounds[g * 4 + 3] = hY;
+            }
+            if (numGroups == 1) {
+                return nodes[0];
+            }
+            entries = nodes;
+            entryBounds = nodeBounds;
+            num = numGroups;
+            leaves = false;
+        }
+    }
+
+    /**
+     * Method to order a set of rectangles for packing with Sort-Tile-Recursive.
+     * The rectangles are sorted by X center into vertical slices, each slice is sorted by Y center,
+     * and the slices are cut into groups of at most BULKRTNODESIZE entries.
+     * @param entryBounds the bounds of the rectangles (low X, low Y, high X, high Y for each).
+     * @param num the number of rectangles.
+     * @param order filled with the packing order of the rectangles.
+     * @param groupStart filled with the index in "order" where each group starts (plus the end of the last group).
+     * @return the number of groups.
+     */
+    private static int strPack(double[] entryBounds, int num, int[] order, int[] groupStart) {
+        double[] centerX = new double[num];
+        double[] centerY = new double[num];
+        for (int i = 0; i < num; i++) {
+            order[i] = i;
+            centerX[i] = entryBounds[i * 4] + entryBounds[i * 4 + 2];
+            centerY[i] = entryBounds[i * 4 + 1] + entryBounds[i * 4 + 3];
+        }
+        sortByKey(order, centerX, 0, num);
+        int numLeaves = (num + BULKRTNODESIZE - 1) / BULKRTNODESIZE;
+        int numSlices = (int) Math.ceil(Math.sqrt(numLeaves));
+        int numGroups = 0;
+        for (int s = 0; s < numSlices; s++) {
+            int from = (int) ((long) num * s / numSlices);
+            int to = (int) ((long) num * (s + 1) / numSlices);
+            if (from == to) {
+                continue;
+            }
+            sortByKey(order, centerY, from, to);
+
+            // cut the slice into groups of nearly equal size
+            int sliceGroups = (to - from + BULKRTNODESIZE - 1) / BULKRTNODESIZE;
+            for (int g = 0; g < sliceGroups; g++) {
+                groupStart[numGroups++] = from + (int) ((long) (to - from) * g / sliceGroups);
+            }
+        }
+        groupStart[numGroups] = num;
+        return numGroups;
+    }
+
+    /**
+     * Method to sort a range of indices by an array of keys.
+     * @param index the indices to sort.
+     * @param key the keys of the indices.
+     * @param from the first entry of "index" to sort.
+     * @param to one beyond the last entry of "index" to sort.
+     */
+    private static void sortByKey(int[] index, double[] key, int from, int to) {
+        while (to - from > 16) {
+            // partition around the median of three
+            double a = key[index[from]], b = key[index[(from + to) >>> 1]], c = key[index[to - 1]];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (key[index[i]] < pivot) {
+                    i++;
+                }
+                while (key[index[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = index[i];
+                    index[i] = index[j];
+                    index[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+
+            // recurse on the smaller part, loop on the larger one
+            if (j + 1 - from < to - i) {
+                sortByKey(index, key, from, j + 1);
+                from = i;
+            } else {
+                sortByKey(index, key, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int cur = index[i];
+            double curKey = key[cur];
+            int j = i - 1;
+            while (j >= from && key[index[j]] > curKey) {
+                index[j + 1] = index[j];
+                j--;
+            }
+            index[j + 1] = cur;
+        }
+    }
+
     /**
      * Method to link this RTBounds into the R-tree of its parent Cell.
      * This is static, because it may modify the root node, and so it must
@@ -379,9 +576,9 @@ public class RTNode {
      */
     private RTNode addToRTNode(Object rtnInsert, Object env, RTNode root) {
         // see if there is room in the R-tree node
-        if (getTotal() >= MAXRTNODESIZE) {
+        if (getTotal() >= pointers.length) {
             // no room: copy list to temp one
-            RTNode temp = new RTNode();
+            RTNode temp = new RTNode(pointers.length);
             temp.setTotal(getTotal());
             temp.setFlag(getFlag());
             for (int i = 0; i < getTotal(); i++) {
@@ -430,7 +627,7 @@ public class RTNode {
             }
 
             // allocate a new R-tree node
-            RTNode newrtn = new RTNode();
+            RTNode newrtn = new RTNode(pointers.length);
             newrtn.setFlag(getFlag());
             newrtn.setParent(getParent());
 
@@ -815,7 +1012,7 @@ public class RTNode {
         /** index stack of search */
         private int[] position;
         /** desired search bounds */
-        private Rectangle2D searchBounds;
+        private double sLX, sLY, sHX, sHY;
         /** the next object to return */
         private RTBounds nextObj;
         /** includes objects on the search area edges */
@@ -826,8 +1023,10 @@ public class RTNode {
             this.rtn = new RTNode[MAXDEPTH];
             this.position = new int[MAXDEPTH];
             this.rtn[0] = root;
-            this.searchBounds = new Rectangle2D.Double();
-            this.searchBounds.setRect(bounds);
+            this.sLX = bounds.getMinX();
+            this.sLY = bounds.getMinY();
+            this.sHX = bounds.getMaxX();
+            this.sHY = bounds.getMaxY();
             this.includeEdges = includeEdges;
             this.nextObj = null;
         }
@@ -841,31 +1040,26 @@ public class RTNode {
                 RTNode rtnode = rtn[depth];
                 int i = position[depth]++;
                 if (i < rtnode.getTotal()) {
-                    Rectangle2D nodeBounds = rtnode.getBBox(i);
+                    double lX, lY, hX, hY;
+                    if (rtnode.flag && rtnode.leafBounds != null) {
+                        double[] leafBounds = rtnode.leafBounds;
+                        lX = leafBounds[i * 4];
+                        lY = leafBounds[i * 4 + 1];
+                        hX = leafBounds[i * 4 + 2];
+                        hY = leafBounds[i * 4 + 3];
+                    } else {
+                        Rectangle2D nodeBounds = rtnode.getBBox(i);
+                        lX = nodeBounds.getMinX();
+                        lY = nodeBounds.getMinY();
+                        hX = nodeBounds.getMaxX();
+                        hY = nodeBounds.getMaxY();
+                    }
                     if (includeEdges) {
-                        if (nodeBounds.getMaxX() < searchBounds.getMinX()) {
-                            continue;
-                        }
-                        if (nodeBounds.getMinX() > searchBounds.getMaxX()) {
-                            continue;
-                        }
-                        if (nodeBounds.getMaxY() < searchBounds.getMinY()) {
-                            continue;
-                        }
-                        if (nodeBounds.getMinY() > searchBounds.getMaxY()) {
+                        if (hX < sLX || lX > sHX || hY < sLY || lY > sHY) {
                             continue;
                         }
                     } else {
-                        if (nodeBounds.getMaxX() <= searchBounds.getMinX()) {
-                            continue;
-                        }
-                        if (nodeBounds.getMinX() >= searchBounds.getMaxX()) {
-                            continue;
-                        }
-                        if (nodeBounds.getMaxY() <= searchBounds.getMinY()) {
-                            continue;
-                        }
-                        if (nodeBounds.getMinY() >= searchBounds.getMaxY()) {
+                        if (hX <= sLX || lX >= sHX || hY <= sLY || lY >= sHY) {
                             continue;
                         }
                     }
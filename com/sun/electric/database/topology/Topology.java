@@ -51,6 +51,7 @@ import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -917,15 +918,10 @@ public class Topology {
             computeArcBounds();
         }
         CellId cellId = cell.getId();
-        RTNode root = RTNode.makeTopLevel();
-        for (Iterator<NodeInst> it = cell.getNodes(); it.hasNext();) {
-            NodeInst ni = it.next();
-            root = RTNode.linkGeom(cellId, root, ni);
-        }
-        for (Iterator<ArcInst> it = cell.getArcs(); it.hasNext();) {
-            ArcInst ai = it.next();
-            root = RTNode.linkGeom(cellId, root, ai);
-        }
+        List<Geometric> geoms = new ArrayList<Geometric>(nodes.size() + arcs.size());
+        geoms.addAll(nodes);
+        geoms.addAll(arcs);
+        RTNode root = RTNode.bulkLoad(geoms);
         root.checkRTree(0, cellId);
         rTree = root;
         rTreeFresh = true;
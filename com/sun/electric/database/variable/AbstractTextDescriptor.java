@@ -713,7 +713,7 @@ abstract class AbstractTextDescriptor implements Serializable {
          * @return the maximum index value.
          * ActiveFonts will have indices ranging from 1 to this value.
          */
-        public static int getMaxIndex() {
+        public static synchronized int getMaxIndex() {
             return indexCount;
         }
 
@@ -740,7 +740,7 @@ abstract class AbstractTextDescriptor implements Serializable {
          * @return an ActiveFont object.  If there is no ActiveFont
          * associated with this fontname, one is created.
          */
-        public static ActiveFont findActiveFont(String fontName) {
+        public static synchronized ActiveFont findActiveFont(String fontName) {
             ActiveFont af = fontMap.get(fontName);
             if (af != null) {
                 return af;
@@ -757,7 +757,7 @@ abstract class AbstractTextDescriptor implements Serializable {
          * @param index the index number (1-based) of the ActiveFont.
          * @return the ActiveFont with this index.  Returns null if there is none.
          */
-        public static ActiveFont findActiveFont(int index) {
+        public static synchronized ActiveFont findActiveFont(int index) {
             if (index <= 0) {
                 return null;
             }
@@ -98,7 +98,7 @@ public class TextDescriptor extends AbstractTextDescriptor {
         return getUniqueTextDescriptor(td);
     }
 
-    private static TextDescriptor getUniqueTextDescriptor(AbstractTextDescriptor td) {
+    private static synchronized TextDescriptor getUniqueTextDescriptor(AbstractTextDescriptor td) {
         TextDescriptor cacheTd = allDescriptors.get(td);
         if (cacheTd != null) {
             return cacheTd;
@@ -398,7 +398,7 @@ public class TextDescriptor extends AbstractTextDescriptor {
         return newTextDescriptor(mtd);
     }
 
-    public static int cacheSize() {
+    public static synchronized int cacheSize() {
         return allDescriptors.size();
     }
 
@@ -195,6 +195,64 @@ public class Analyzer extends Engine
 		startIrsim(theAnalyzer);
 	}
 
+	/**
+	 * Method to measure the speed of the simulator without displaying anything.
+	 * The netlist is read from a .sim file and the vectors of a command file are
+	 * replayed from time zero several times. The event rate of every replay is reported.
+	 * @param simFileName the file with the netlist.
+	 * @param vectorFileName the file with the simulation vectors.
+	 * @param repeat the number of times to replay the vectors.
+	 */
+	public static void benchmark(String simFileName, String vectorFileName, int repeat)
+	{
+		Analyzer analyzer = new Analyzer();
+		analyzer.fileName = simFileName;
+		analyzer.initRSim();
+		analyzer.loadCircuit();
+		if (analyzer.analysis == null) return;
+		analyzer.vectorFileName = vectorFileName;
+		analyzer.loadVectorFile();
+		if (analyzer.firstVector == null)
+		{
+			System.out.println("No vectors to replay in " + vectorFileName);
+			return;
+		}
+
+		Sim theSim = analyzer.theSim;
+		long totalEvents = 0, totalTime = 0;
+		for(int i=0; i<repeat; i++)
+		{
+			long startEvents = theSim.nEvent;
+			long startTime = theSim.evalTime;
+			long startWall = System.nanoTime();
+			analyzer.replayVectors();
+			long wall = System.nanoTime() - startWall;
+			long events = theSim.nEvent - startEvents;
+			long time = theSim.evalTime - startTime;
+			System.out.println("Replay " + (i+1) + ": " + getEventRate(events, time) +
+				", " + TextUtils.formatDouble(wall / 1.0e9) + " sec in all");
+			totalEvents += events;
+			totalTime += time;
+		}
+		System.out.println("Total: " + getEventRate(totalEvents, totalTime));
+	}
+
+	/**
+	 * Entry point to run the benchmark from the command line.
+	 * The arguments are the .sim file, the command file, and the optional number of replays.
+	 * @param args the command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.out.println("Usage: Analyzer <sim file> <command file> [replays]");
+			return;
+		}
+		int repeat = args.length > 2 ? TextUtils.atoi(args[2]) : 5;
+		benchmark(args[0], args[1], Math.max(1, repeat));
+	}
+
 	private static void startIrsim(Analyzer analyzer)
 	{
 		synchronized(analyzer)
@@ -532,6 +590,25 @@ public class Analyzer extends Engine
 	 * Method to play the simulation vectors into the simulator.
 	 */
 	private void playVectors()
+	{
+		double curTime = 0;
+		long startEvents = theSim.nEvent;
+		long startTime = theSim.evalTime;
+		replayVectors();
+		analyzerON = true;
+		if (Job.getDebug())
+			System.out.println("Replayed vectors: " + getEventRate(theSim.nEvent - startEvents, theSim.evalTime - startTime));
+		updateWindow(theSim.curDelta);
+
+		// update main cursor location if requested
+		if (Simulation.isBuiltInAutoAdvance())
+			ww.setMainXPositionCursor(curTime + 10.0/1000000000.0);
+	}
+
+	/**
+	 * Method to replay the simulation vectors from time zero without updating the display.
+	 */
+	private void replayVectors()
 	{
 		SimVector back = new SimVector();
 		back.command = VECTORBACK;
@@ -539,7 +616,6 @@ public class Analyzer extends Engine
 		issueCommand(back);
 //		issueCommand("flush", null);
 
-		double curTime = 0;
 		analyzerON = false;
 		for(SimVector sv = firstVector; sv != null; sv = sv.next)
 		{
@@ -550,12 +626,6 @@ public class Analyzer extends Engine
 		step.command = VECTORS;
 		step.value = Sim.deltaToNS(stepSize);
 		issueCommand(step);
-		analyzerON = true;
-		updateWindow(theSim.curDelta);
-
-		// update main cursor location if requested
-		if (Simulation.isBuiltInAutoAdvance())
-			ww.setMainXPositionCursor(curTime + 10.0/1000000000.0);
 	}
 
 	/**
@@ -570,6 +640,7 @@ public class Analyzer extends Engine
 
 	/**
 	 * Method to read simulation vectors from a file.
+	 * Without a waveform window the vectors are only read, not played.
 	 */
 	private void loadVectorFile()
 	{
@@ -583,7 +654,7 @@ public class Analyzer extends Engine
 			// remove all vectors
 			firstVector = null;
 			lastVector = null;
-			for(Iterator<Panel> it = ww.getPanels(); it.hasNext(); )
+			for(Iterator<Panel> it = ww != null ? ww.getPanels() : new ArrayList<Panel>().iterator(); it.hasNext(); )
 			{
 				Panel wp = it.next();
 				for(WaveSignal ws : wp.getSignals())
@@ -671,6 +742,7 @@ public class Analyzer extends Engine
 				// handle changes to signals in the Waveform Window
 				if (command == VECTORANALYZER)
 				{
+					if (ww == null) continue;
 					if (!anyAnalyzerCommands)
 					{
 						// clear the stimuli on the first time
@@ -725,10 +797,10 @@ public class Analyzer extends Engine
 					continue;
 				}
 			}
+			lineReader.close();
+			if (ww == null) return;
 			playVectors();
 			updateWindow(theSim.curDelta);
-
-			lineReader.close();
 		} catch (IOException e)
 		{
 			System.out.println("Error reading " + vectorFileName);
@@ -1197,7 +1269,7 @@ public class Analyzer extends Engine
 			if (sv.command == VECTOREXCL)
 			{
 				infstr += "is computed from:";
-				for(Sim.Trans t : n.nTermList)
+				for(Sim.Trans t : n.nTerms)
 				{
 					infstr += "  ";
 					if (theSim.irDebug == 0)
@@ -1230,7 +1302,7 @@ public class Analyzer extends Engine
 			} else
 			{
 				infstr += "affects:";
-				for(Sim.Trans t : n.nGateList)
+				for(Sim.Trans t : n.nGates)
 				{
 					infstr += pTrans(t);
 				}
@@ -1731,8 +1803,8 @@ public class Analyzer extends Engine
 				{
 					if ((n.nFlags & (Sim.ALIAS | Sim.POWER_RAIL)) == 0)
 					{
-						tranCntNG += n.nGateList.size();
-						tranCntNSD += n.nTermList.size();
+						tranCntNG += n.nGates.length;
+						tranCntNSD += n.nTerms.length;
 					}
 				}
 				System.out.println("avg: # gates/node = " + TextUtils.formatDouble(tranCntNG / theSim.numNodes) +
@@ -1751,6 +1823,21 @@ public class Analyzer extends Engine
 		System.out.println("punts = " + n1 + "%, cons_punted = " + n2 + "%");
 
 		System.out.println("nevents = " + theSim.nEvent);
+		System.out.println("event rate = " + getEventRate(theSim.nEvent, theSim.evalTime));
+	}
+
+	/**
+	 * Describe how fast events were processed.
+	 * @param numEvents the number of events.
+	 * @param nanos the time spent processing them, in nanoseconds.
+	 * @return a description of the event rate.
+	 */
+	private static String getEventRate(long numEvents, long nanos)
+	{
+		String rate = numEvents + " events in " + TextUtils.formatDouble(nanos / 1.0e9) + " sec";
+		if (nanos > 0)
+			rate += " (" + TextUtils.formatDouble(numEvents * 1.0e9 / nanos) + " events/sec)";
+		return rate;
 	}
 
 	/**
@@ -2688,11 +2775,13 @@ public class Analyzer extends Engine
 	 */
 	private long relax(long stopTime)
 	{
+		long startTime = System.nanoTime();
 		for(;;)
 		{
 			boolean repeat = theSim.getModel().step(stopTime);
 			if (!repeat) break;
 		}
+		theSim.evalTime += System.nanoTime() - startTime;
 
 		return theSim.curDelta - stopTime;
 	}
@@ -18,6 +18,7 @@
 
 package com.sun.electric.plugins.irsim;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -111,6 +112,7 @@ public class Eval
 				if (theAnalyzer.xInputs.size() > 0) EvalNOinputs();
 
 				long brkFlag = EvalNodes(evList);
+				recycleEvents(evList);
 
 //				if (stopping(STOPREASONSIMULATE))
 //				{
@@ -212,7 +214,7 @@ public class Eval
 			 * Fixed it so nodes with pending events also get
 			 * re_evaluated. Kevin Karplus
 			 */
-			for(Sim.Trans t : n.nGateList)
+			for(Sim.Trans t : n.nGates)
 			{
 				t.state = (byte)computeTransState(t);
 				if ((t.source.nFlags & Sim.INPUT) == 0)
@@ -235,7 +237,7 @@ public class Eval
 				if ((n.nFlags & (Sim.INPUT | Sim.POWER_RAIL)) != Sim.INPUT)
 					continue;
 
-				for(Sim.Trans t : n.nTermList)
+				for(Sim.Trans t : n.nTerms)
 				{
 					if (t.state != Sim.OFF)
 					{
@@ -267,7 +269,7 @@ if (DEBUG) System.out.println("Removing event at " + event.nTime + " in EvalNode
 			 * above may become unmarked by earlier calculations before we get
 			 * to them in this loop...
 			 */
-			for(Sim.Trans t : n.nGateList)
+			for(Sim.Trans t : n.nGates)
 			{
 				if ((t.source.nFlags & Sim.VISITED) != 0)
 					modelEvaluate(t.source);
@@ -277,7 +279,7 @@ if (DEBUG) System.out.println("Removing event at " + event.nTime + " in EvalNode
 
 			if ((n.nFlags & (Sim.INPUT | Sim.POWER_RAIL)) == Sim.INPUT)
 			{
-				for(Sim.Trans t : n.nTermList)
+				for(Sim.Trans t : n.nTerms)
 				{
 					Sim.Node other = Sim.otherNode(t, n);
 					if ((other.nFlags & Sim.VISITED) != 0)
@@ -390,9 +392,54 @@ if (DEBUG) System.out.println("Removing event at " + event.nTime + " in EvalNode
 	private static final int TMASK		= (TSIZE - 1);
 
 	/** used as head of doubly-linked lists */			private Event [] evArray = new Event[TSIZE];
+	/** bit set for every entry which may hold events */	private long [] evUsed = new long[TSIZE / 64];
+	/** events which are free for reuse (linked by fLink) */	private Event freeEvents;
 
 	private Event getEVArray(long t) { return evArray[(int)(t & TMASK)]; }
 
+	/**
+	 * Note that an event was added to the entry of time 't'.
+	 * Bits are cleared lazily by getNextEvent when it finds the entry empty,
+	 * so every entry that holds events has its bit set.
+	 */
+	private void markEVArray(long t)
+	{
+		int i = (int)(t & TMASK);
+		evUsed[i >> 6] |= 1L << (i & 63);
+	}
+
+	/**
+	 * get an event from the free pool, allocating one if the pool is empty
+	 */
+	private Event newEvent()
+	{
+		Event ev = freeEvents;
+		if (ev == null) return new Event();
+		freeEvents = ev.fLink;
+		return ev;
+	}
+
+	/**
+	 * return a list of processed events (linked by fLink) to the free pool
+	 */
+	private void recycleEvents(Event evList)
+	{
+		while(evList != null)
+		{
+			Event next = evList.fLink;
+			recycleEvent(evList);
+			evList = next;
+		}
+	}
+
+	private void recycleEvent(Event ev)
+	{
+		ev.bLink = ev.nLink = null;
+		ev.eNode = ev.cause = null;
+		ev.fLink = freeEvents;
+		freeEvents = ev;
+	}
+
 	/**
 	 * find the next event to be processed by scanning event wheel.  Return
 	 * the list of events to be processed at this time, removing it first
@@ -406,19 +453,38 @@ if (DEBUG) System.out.println("Find events up to " + stopTime);
 		Event event = null;
 		boolean eventValid = false;
 		long time = theSim.maxTime;
-		for(long i = theSim.curDelta, limit = i + TSIZE; i < limit; i++)
+		long limit = theSim.curDelta + TSIZE;
+		int start = (int)(theSim.curDelta & TMASK);
+
+		// visit the entries in time order, skipping those whose bit is clear
+		for(int k = 0; k < TSIZE; )
 		{
-			event = getEVArray(i);
-			if (event != event.fLink)
+			int i = (start + k) & TMASK;
+			long bits = evUsed[i >> 6] >>> (i & 63);
+			if (bits == 0)
 			{
-				if (event.fLink.nTime < limit)		// common case
-				{
-					eventValid = true;
-					break;
-				}
-				if (event.fLink.nTime < time)
-					time = (event.fLink).nTime;
+				k += 64 - (i & 63);
+				continue;
+			}
+			int skip = Long.numberOfTrailingZeros(bits);
+			k += skip;
+			if (k >= TSIZE) break;
+			i += skip;
+			k++;
+
+			event = evArray[i];
+			if (event == event.fLink)
+			{
+				evUsed[i >> 6] &= ~(1L << (i & 63));
+				continue;
+			}
+			if (event.fLink.nTime < limit)		// common case
+			{
+				eventValid = true;
+				break;
 			}
+			if (event.fLink.nTime < time)
+				time = (event.fLink).nTime;
 		}
 		if (!eventValid)
 		{
@@ -487,6 +553,7 @@ if (DEBUG)
 		nPending--;
 
 		freeFromNode(event, event.eNode);
+		recycleEvent(event);
 	}
 
 	/**
@@ -495,7 +562,7 @@ if (DEBUG)
 	 */
 	public void enqueueEvent(Sim.Node n, int newValue, long delta, long rTime)
 	{
-		Event newEV = new Event();
+		Event newEV = newEvent();
 
 		// remember facts about this event
 		long eTime = theSim.curDelta + delta;
@@ -531,6 +598,7 @@ if (DEBUG)
 		newEV.bLink = marker.bLink;
 		marker.bLink.fLink = newEV;
 		marker.bLink = newEV;
+		markEVArray(eTime);
 		nPending++;
 if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueEvent (cur="+theSim.curDelta+" delta="+delta);
 		/*
@@ -559,7 +627,7 @@ if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueEve
 		while(n.events != null)
 			freeEvent(n.events);
 
-		Event newEV = new Event();
+		Event newEV = newEvent();
 
 		// remember facts about this event
 		long eTime = theSim.curDelta;
@@ -576,6 +644,7 @@ if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueEve
 		newEV.bLink = marker;
 		marker.fLink.bLink = newEV;
 		marker.fLink = newEV;
+		markEVArray(eTime);
 		nPending++;
 if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueInput");
 		// thread event onto (now empty) list of events for this node
@@ -594,8 +663,11 @@ if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueInp
 			evArray[i] = event;
 			event.fLink = event.bLink = event;
 		}
+		Arrays.fill(evUsed, 0);
+		freeEvents = null;
 		nPending = 0;
 		theSim.nEvent = 0;
+		theSim.evalTime = 0;
 	}
 
 	protected void puntEvent(Sim.Node node, Event ev)
@@ -631,6 +703,7 @@ if (DEBUG) System.out.println("Adding of event at time "+eTime + " in requeueEve
 			ev.bLink = target.bLink;
 			target.bLink.fLink = ev;
 			target.bLink = ev;
+			markEVArray(eTime);
 
 			if (thread)
 			{
@@ -695,6 +768,7 @@ if (DEBUG) System.out.println("Adding of event at time "+eTime + " in requeueEve
 				if (isInc == 0 && ev.nTime - ev.delay >= bTime)
 				{
 					freeFromNode(ev, ev.eNode);
+					recycleEvent(ev);
 				} else
 				{
 					ev.fLink = tmpList;		// move it to tmp list
@@ -737,6 +811,7 @@ if (DEBUG) System.out.println("Adding of event at time "+eTime + " in requeueEve
 			ev.bLink = target.bLink;
 			target.bLink.fLink = ev;
 			target.bLink = ev;
+			markEVArray(eTime);
 		}
 
 		nPending = nEvents;
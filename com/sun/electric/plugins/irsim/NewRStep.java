@@ -237,7 +237,7 @@ public class NewRStep extends Eval
 
 			n.getThev().setT(null);
 
-			for(Sim.Trans t : n.nTermList)
+			for(Sim.Trans t : n.nTerms)
 			{
 				if (t.state == Sim.OFF) continue;
 
@@ -595,7 +595,7 @@ public class NewRStep extends Eval
 			case Sim.HIGH:  r.cHigh.min = r.cHigh.max = n.nCap;	break;
 		}
 
-		for(Sim.Trans t : n.nTermList)
+		for(Sim.Trans t : n.nTerms)
 		{
 			// ignore path going back or through a broken loop
 			if (t == tran || t.state == Sim.OFF || (t.tFlags & (Sim.BROKEN | Sim.PBROKEN)) != 0)
@@ -987,7 +987,7 @@ public class NewRStep extends Eval
 		r.tIn = 0.0;
 		r.flags &= ~(T_DOMDRIVEN | T_INT);
 
-		for(Sim.Trans t : n.nTermList)
+		for(Sim.Trans t : n.nTerms)
 		{
 			if (t.state == Sim.OFF || t == tran || (t.tFlags & (Sim.BROKEN | Sim.PBROKEN)) != 0)
 				continue;
@@ -1099,7 +1099,7 @@ public class NewRStep extends Eval
 
 		double taup = r.tauA * n.nCap;
 
-		for(Sim.Trans t : n.nTermList)
+		for(Sim.Trans t : n.nTerms)
 		{
 			if (t.state == Sim.OFF || t == tran || (t.tFlags & (Sim.BROKEN | Sim.PBROKEN)) != 0)
 				continue;
@@ -1145,7 +1145,7 @@ public class NewRStep extends Eval
 
 		int rType = (dom == Sim.LOW) ? Sim.R_LOW : Sim.R_HIGH;
 		float nmos = 0, pmos = 0;
-		for(Sim.Trans t : nd.nTermList)
+		for(Sim.Trans t : nd.nTerms)
 		{
 			if (t.state == Sim.OFF || (t.tFlags & Sim.BROKEN) != 0)
 				continue;
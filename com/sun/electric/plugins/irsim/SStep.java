@@ -707,9 +707,9 @@ public class SStep extends Eval
 		{
 			// initial values and stuff...
 			n.nFlags |= Sim.VISITED;
-			result = (n.nGateList.size() == 0) ? xChargedState[n.nPot] : chargedState[n.nPot];
+			result = (n.nGates.length == 0) ? xChargedState[n.nPot] : chargedState[n.nPot];
 
-			for(Sim.Trans t : n.nTermList)
+			for(Sim.Trans t : n.nTerms)
 			{
 				// don't bother with off transistors
 				if (t.state == Sim.OFF) continue;
@@ -45,12 +45,17 @@ import java.util.StringTokenizer;
 
 public class Sim
 {
+	/** empty transistor array of unconnected nodes */
+	private static final Trans [] NO_TRANS = new Trans[0];
+
 	public static class Node
 	{
 		/** sundries list */									Node           nLink;
 		/** charge sharing event */								Eval.Event     events;
 		/** list of xtors w/ gates connected to this node */	List<Trans>    nGateList;
 		/** list of xtors w/ src/drn connected to this node */	List<Trans>    nTermList;
+		/** xtors w/ gates connected to this node */			Trans []       nGates = NO_TRANS;
+		/** xtors w/ src/drn connected to this node */			Trans []       nTerms = NO_TRANS;
 		/** capacitance of node in pf */						float          nCap;
 		/** low logic threshold for node, normalized units */	float          vLow;
 		/** high logic threshold for node, normalized units */	float          vHigh;
@@ -484,6 +489,7 @@ public class Sim
 	/** current simulated time */											public  long    curDelta;
 	/** node that belongs to current event */								public  Node    curNode;
 	/** number of current event */											public  long    nEvent;
+	/** nanoseconds spent processing events */								public  long    evalTime;
 
 	/** if nonzero, all transactions take this DELAY-units */				public  int     tUnitDelay = 0;
 	/** number of DELAY-units after which undriven nodes decay to X */		public  long    tDecay = 0;
@@ -1327,6 +1333,7 @@ public class Sim
 	{
 		Node ndList = connectTransistors();
 		makeParallel(ndList);
+		freezeConnections();
 
 		// display information about circuit
 		String infstr = numNodes + " nodes";
@@ -1346,6 +1353,24 @@ public class Sim
 		System.out.println(infstr);
 	}
 
+	/**
+	 * Copy the transistor lists of every node into arrays once the network is built.
+	 * The simulation walks these for every event, and arrays are cheaper to walk than lists.
+	 * The lists are not needed anymore and are released.
+	 */
+	private void freezeConnections()
+	{
+		for(Node n : nodeList)
+		{
+			if (n.nGateList != null)
+				n.nGates = n.nGateList.toArray(NO_TRANS);
+			if (n.nTermList != null)
+				n.nTerms = n.nTermList.toArray(NO_TRANS);
+			n.nGateList = null;
+			n.nTermList = null;
+		}
+	}
+
 	public boolean      withDriven;		/* TRUE if stage is driven by some input */
 
 	/**
@@ -1367,7 +1392,7 @@ public class Sim
 		Node thisOne = n.nLink = n;
 		do
 		{
-			for(Trans t : thisOne.nTermList)
+			for(Trans t : thisOne.nTerms)
 			{
 				if (t.state == OFF) continue;
 				if ((t.tFlags & CROSSED) != 0)	// Each transistor is crossed twice
@@ -1573,9 +1598,9 @@ public class Sim
 		if (h.inp)
 			nd.nFlags |= INPUT;
 
-		if (nd.nGateList.size() != 0)		// recompute transistor states
+		if (nd.nGates.length != 0)		// recompute transistor states
 		{
-			for(Trans t : nd.nGateList)
+			for(Trans t : nd.nGates)
 			{
 				t.state = (byte)theModel.computeTransState(t);
 			}
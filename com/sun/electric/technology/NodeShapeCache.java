@@ -0,0 +1,248 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: NodeShapeCache.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.technology;
+
+import com.sun.electric.database.ImmutableNodeInst;
+import com.sun.electric.database.geometry.EGraphics;
+import com.sun.electric.database.geometry.EPoint;
+import com.sun.electric.database.geometry.Orientation;
+import com.sun.electric.database.geometry.Poly;
+import com.sun.electric.database.topology.NodeInst;
+import com.sun.electric.database.variable.TextDescriptor;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the shapes of primitive nodes of a Technology.
+ * Layouts have many instances but few distinct combinations of PrimitiveNode,
+ * size, orientation and tech bits. The shape of each combination is built once
+ * relative to the node anchor and kept as an immutable template.
+ * Each request gets new Poly objects translated to the anchor of the node,
+ * because callers of Technology.getShapeOfNode are free to modify them.
+ * The cache is used only for nodes accepted by Technology.isShapeOfNodeCacheable.
+ */
+public class NodeShapeCache {
+    /** Maximal number of cached shapes. The cache is cleared when it grows larger. */
+    private static final int MAX_ENTRIES = 4096;
+
+    private final ConcurrentHashMap<Key,Template[]> shapes = new ConcurrentHashMap<Key,Template[]>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    NodeShapeCache() {
+    }
+
+    /**
+     * Returns number of requests which were answered from the cache.
+     * @return number of cache hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns number of requests which built a new shape.
+     * @return number of cache misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns number of shapes in the cache.
+     * @return number of cached shapes.
+     */
+    public int size() {
+        return shapes.size();
+    }
+
+    /**
+     * Removes all shapes from the cache.
+     */
+    public void clear() {
+        shapes.clear();
+    }
+
+    /**
+     * Returns the polygons that describe node "ni" in lambda units.
+     * The result is the same as of Poly.Builder.getShapeArray with all layers.
+     * @param ni the NodeInst that is being described.
+     * @param pn the PrimitiveNode of the NodeInst.
+     * @param electrical true to get the "electrical" layers.
+     * @param reasonable true to get only a minimal set of contact cuts in large contacts.
+     * @return an array of new Poly objects that describes this NodeInst.
+     */
+    Poly[] getShapeArray(NodeInst ni, PrimitiveNode pn, boolean electrical, boolean reasonable) {
+        ImmutableNodeInst n = ni.getD();
+        Key key = new Key(pn, n, electrical, reasonable);
+        Template[] templates = shapes.get(key);
+        if (templates != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            TemplateBuilder b = new TemplateBuilder();
+            b.setup(ni.getCellBackupUnsafe(), null, electrical, !electrical, reasonable, null);
+            b.genShapeOfNode(n.withAnchor(EPoint.ORIGIN));
+            templates = b.templates.toArray(new Template[b.templates.size()]);
+            if (shapes.size() >= MAX_ENTRIES)
+                shapes.clear();
+            shapes.put(key, templates);
+        }
+        if (templates.length == 0) return Poly.NULL_ARRAY;
+
+        double anchorX = n.anchor.getGridX();
+        double anchorY = n.anchor.getGridY();
+        Poly[] polys = new Poly[templates.length];
+        for (int i = 0; i < templates.length; i++) {
+            Template t = templates[i];
+            Point2D.Double[] points = new Point2D.Double[t.coords.length/2];
+            for (int j = 0; j < points.length; j++)
+                points[j] = new Point2D.Double(t.coords[j*2] + anchorX, t.coords[j*2 + 1] + anchorY);
+            Poly poly = new Poly(points);
+            poly.setStyle(t.style);
+            poly.setLayer(t.layer);
+            poly.setGraphicsOverride(t.graphicsOverride);
+            poly.setPort(t.pp);
+            if (t.isText) {
+                poly.setString(t.message);
+                poly.setTextDescriptor(t.descriptor);
+            }
+            poly.gridToLambda();
+            polys[i] = poly;
+        }
+        return polys;
+    }
+
+    /**
+     * Combination of node parameters which determines the shape of a node without variables.
+     */
+    private static class Key {
+        private final PrimitiveNode pn;
+        private final EPoint size;
+        private final Orientation orient;
+        private final int techBits;
+        private final boolean electrical;
+        private final boolean reasonable;
+        private final int hashCode;
+
+        private Key(PrimitiveNode pn, ImmutableNodeInst n, boolean electrical, boolean reasonable) {
+            this.pn = pn;
+            size = n.size;
+            orient = n.orient;
+            techBits = n.techBits;
+            this.electrical = electrical;
+            this.reasonable = reasonable;
+            hashCode = ((pn.hashCode()*31 + size.hashCode())*31 + orient.hashCode())*31 + techBits*4 +
+                    (electrical ? 2 : 0) + (reasonable ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key)o;
+            return pn == that.pn && size.equals(that.size) && orient.equals(that.orient) && techBits == that.techBits &&
+                    electrical == that.electrical && reasonable == that.reasonable;
+        }
+    }
+
+    /**
+     * Immutable polygon of a shape in grid units relative to the node anchor.
+     */
+    private static class Template {
+        private final double[] coords;
+        private final Poly.Type style;
+        private final Layer layer;
+        private final EGraphics graphicsOverride;
+        private final PrimitivePort pp;
+        private final boolean isText;
+        private final String message;
+        private final TextDescriptor descriptor;
+
+        private Template(double[] coords, Poly.Type style, Layer layer, EGraphics graphicsOverride, PrimitivePort pp,
+                boolean isText, String message, TextDescriptor descriptor) {
+            this.coords = coords;
+            this.style = style;
+            this.layer = layer;
+            this.graphicsOverride = graphicsOverride;
+            this.pp = pp;
+            this.isText = isText;
+            this.message = message;
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * Shape builder which collects Templates.
+     * Like the lambda Poly.Builder it doesn't rotate nodes.
+     */
+    private static class TemplateBuilder extends AbstractShapeBuilder {
+        private final ArrayList<Template> templates = new ArrayList<Template>();
+
+        private TemplateBuilder() {
+            super(false);
+        }
+
+        @Override
+        public void addDoublePoly(int numPoints, Poly.Type style, Layer layer, EGraphics graphicsOverride, PrimitivePort pp) {
+            double[] coords = new double[numPoints*2];
+            System.arraycopy(doubleCoords, 0, coords, 0, coords.length);
+            templates.add(new Template(coords, style, layer, graphicsOverride, pp, false, null, null));
+        }
+
+        @Override
+        public void addDoubleTextPoly(int numPoints, Poly.Type style, Layer layer, PrimitivePort pp, String message, TextDescriptor descriptor) {
+            double[] coords = new double[numPoints*2];
+            System.arraycopy(doubleCoords, 0, coords, 0, coords.length);
+            templates.add(new Template(coords, style, layer, null, pp, true, message, descriptor));
+        }
+
+        @Override
+        public void addIntPoly(int numPoints, Poly.Type style, Layer layer, EGraphics graphicsOverride, PrimitivePort pp) {
+            double[] coords = new double[numPoints*2];
+            for (int i = 0; i < coords.length; i++)
+                coords[i] = intCoords[i];
+            templates.add(new Template(coords, style, layer, graphicsOverride, pp, false, null, null));
+        }
+
+        @Override
+        public void addIntBox(int[] coords, Layer layer) {
+            double[] boxCoords = new double[] {
+                coords[0], coords[1],
+                coords[2], coords[1],
+                coords[2], coords[3],
+                coords[0], coords[3]
+            };
+            templates.add(new Template(boxCoords, Poly.Type.FILLED, layer, null, null, false, null, null));
+        }
+    }
+}
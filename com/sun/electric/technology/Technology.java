@@ -792,6 +792,7 @@ public class Technology implements Comparable<Technology>, Serializable
                 }
                 currentState = this;
                 cachedRules = factoryRules = null;
+                shapeCache.clear();
             }
             return getTechnology();
         }
@@ -990,6 +991,7 @@ public class Technology implements Comparable<Technology>, Serializable
     /** Params of this Technology */                        private State currentState;
     /** Xml representation of this Technology */            protected Xml.Technology xmlTech;
     /** Xml representation of menu palette */               protected Xml.MenuPalette factoryMenuPalette;
+    /** Cache of shapes of primitive nodes */               private final NodeShapeCache shapeCache = new NodeShapeCache();
 
 	/****************************** CONTROL ******************************/
 
@@ -1432,6 +1434,8 @@ public class Technology implements Comparable<Technology>, Serializable
         factoryMenuPalette = that.factoryMenuPalette;
         techDesc = that.techDesc;
         cachedRules = factoryRules = null;
+        // primitives are modified in place, so shapes built with the old parameters are stale
+        shapeCache.clear();
 
         assert layers.size() == that.layers.size();
         Iterator<Layer> oldItl = layers.iterator();
@@ -2872,10 +2876,36 @@ public class Technology implements Comparable<Technology>, Serializable
 	{
 		if (ni.isCellInstance()) return null;
 
+        PrimitiveNode pn = (PrimitiveNode)ni.getProto();
+        Technology tech = pn.getTechnology();
+        if (onlyTheseLayers == null && tech.isShapeOfNodeCacheable(ni.getD(), pn))
+            return tech.shapeCache.getShapeArray(ni, pn, electrical, reasonable);
+
         Poly.Builder polyBuilder = Poly.threadLocalLambdaBuilder();
         return polyBuilder.getShapeArray(ni, electrical, reasonable, onlyTheseLayers);
 	}
 
+    /**
+     * Tells if getShapeOfNode may take the shape of node from the shape cache of this Technology.
+     * This is possible when the shape depends only on the prototype, size, orientation and tech bits
+     * of the node, and not on its variables or its connections.
+     * Overidden in subclasses
+     * @param n node to test
+     * @param pn proto of the node in this Technology
+     * @return true if the shape of node can be cached
+     */
+    protected boolean isShapeOfNodeCacheable(ImmutableNodeInst n, PrimitiveNode pn) {
+        return n.getNumVariables() == 0 && !pn.isArcsWipe() && !pn.isWipeOn1or2();
+    }
+
+    /**
+     * Returns the cache of shapes of primitive nodes of this Technology.
+     * @return the shape cache.
+     */
+    public NodeShapeCache getShapeCache() {
+        return shapeCache;
+    }
+
     /**
      * Tells if node can be drawn by simplified algorithm
      * Overidden in subclasses
@@ -3823,7 +3853,11 @@ public class Technology implements Comparable<Technology>, Serializable
 	 * Returns null if there are no design rules in this Technology.
      */
     public XMLRules getFactoryDesignRules() {
-        return makeFactoryDesignRules();
+        XMLRules rules = makeFactoryDesignRules();
+        // check the compiled spacing rules of the technology
+        if (rules != null && Job.getDebug())
+            rules.checkSpacingRules();
+        return rules;
     }
 
 	/**
@@ -4644,9 +4678,13 @@ public class Technology implements Comparable<Technology>, Serializable
     public XMLRules getCachedRules() {return cachedRules;}
 
     /**
-     * Method to set cached rules
+     * Method to set cached rules.
+     * Resetting them (null) also clears the cached shapes of primitive nodes.
      */
-    public void setCachedRules(XMLRules rules) {cachedRules = rules;}
+    public void setCachedRules(XMLRules rules) {
+        cachedRules = rules;
+        if (rules == null) shapeCache.clear();
+    }
 
     /**
      * Method to determine if the rule name matches an existing VT Poly rule
@@ -25,7 +25,9 @@
 package com.sun.electric.technology;
 
 import com.sun.electric.database.text.TextUtils;
+import com.sun.electric.database.topology.ArcInst;
 import com.sun.electric.database.topology.Geometric;
+import com.sun.electric.database.topology.NodeInst;
 
 import java.util.*;
 import java.io.Serializable;
@@ -35,6 +37,7 @@ public class XMLRules implements DRCRules, Serializable
 
 	/** Hash map to store rules per matrix index */                     public HashMap<XMLRules.XMLRule, XMLRules.XMLRule>[] matrix;
     /** To remeber the technology */                                    private Technology tech;
+    /** Spacing rules compiled for getSpacingRule, null if not compiled */ private transient volatile SpacingTable spacingTable;
 
     public XMLRules (Technology t)
     {
@@ -204,6 +207,7 @@ public class XMLRules implements DRCRules, Serializable
             // No the most efficient algorithm
             for (DRCTemplate tmp : list)
                 map.remove(tmp);
+            spacingTable = null;
         }
         for (DRCTemplate rule : newRules)
         {
@@ -276,6 +280,7 @@ public class XMLRules implements DRCRules, Serializable
         // Remove old rule first but only if exists
         if (map != null)
             map.remove(oldRule);
+        spacingTable = null;
         XMLRule r = new XMLRule(name, new double[]{value}, type, 0, 0, -1, DRCTemplate.DRCMode.ALL.mode());
         addXMLRule(index, r);
     }
@@ -363,6 +368,7 @@ public class XMLRules implements DRCRules, Serializable
     public void setWideLimits(double[] values)
     {
         System.out.println("Review XMLRules::setWideLimits");
+        spacingTable = null;
 
         for (HashMap<XMLRules.XMLRule,XMLRules.XMLRule> map : matrix)
         {
@@ -378,6 +384,7 @@ public class XMLRules implements DRCRules, Serializable
 
     private void addXMLRule(int index, XMLRule rule)
     {
+        spacingTable = null;
         HashMap<XMLRules.XMLRule,XMLRules.XMLRule> map = matrix[index];
         if (map == null)
         {
@@ -406,6 +413,7 @@ public class XMLRules implements DRCRules, Serializable
             {
                 // found element to delete
                 map.remove(r);
+                spacingTable = null;
                 return;
             }
         }
@@ -491,16 +499,10 @@ public class XMLRules implements DRCRules, Serializable
                                       int multiCut, double wideS, double length)
 	{
 		int pIndex = getRuleIndex(layer1.getIndex(), layer2.getIndex());
-		DRCTemplate.DRCRuleType type = (connected) ? DRCTemplate.DRCRuleType.CONSPA : DRCTemplate.DRCRuleType.UCONSPA;
-
-        // Composing possible name if
-        String n1 = null, n2 = null;
-        if (geo1 != null) n1 = DRCTemplate.getSpacingCombinedName(layer1, geo1);
-        if (geo2 != null) n2 = DRCTemplate.getSpacingCombinedName(layer2, geo2);
-        List<String> list = new ArrayList<String>(2);
-        list.add(n1); list.add(n2);
-
-		XMLRule r = getRule(pIndex, type, wideS, length, multiCut, list, null);
+        SpacingTable table = spacingTable;
+        if (table == null) table = compileSpacingRules();
+        XMLRule r = table.getRule(pIndex, connected, layer1.getIndex(), getProtoName(geo1), layer2.getIndex(), getProtoName(geo2),
+            multiCut, wideS, length);
 
         // Search for surrounding conditions not attached to nodes
 //        if (r == null)
@@ -1319,6 +1321,281 @@ public class XMLRules implements DRCRules, Serializable
 //        }
 //    }
 
+    /**
+     * Returns the name of the prototype of a Geometric, as used in DRCTemplate.getSpacingCombinedName.
+     * @param geo the Geometric, may be null.
+     * @return the name of the prototype or null.
+     */
+    private static String getProtoName(Geometric geo)
+    {
+        if (geo == null) return null;
+        return geo instanceof NodeInst ? ((NodeInst)geo).getProto().getName() : ((ArcInst)geo).getProto().getName();
+    }
+
+    /**
+     * Method to check the compiled spacing rules against the lookup in the rule map.
+     * Every layer pair with rules is queried with the widths, lengths, cut counts
+     * and node names of its rules, connected and not connected.
+     * The first mismatches are printed.
+     * @return true if the compiled rules give the same answers as the rule map.
+     */
+    public boolean checkSpacingRules()
+    {
+        SpacingTable table = compileSpacingRules();
+        int numLayers = tech.getNumLayers();
+        int numQueries = 0, numErrors = 0;
+        for (int i = 0; i < numLayers; i++)
+        {
+            Layer layer1 = tech.getLayer(i);
+            for (int j = i; j < numLayers; j++)
+            {
+                Layer layer2 = tech.getLayer(j);
+                int pIndex = getRuleIndex(i, j);
+                HashMap<XMLRule,XMLRule> map = matrix[pIndex];
+                if (map == null) continue;
+                Set<Double> widths = new TreeSet<Double>();
+                Set<Double> lengths = new TreeSet<Double>();
+                Set<Integer> multiCuts = new TreeSet<Integer>();
+                widths.add(Double.valueOf(0));
+                lengths.add(Double.valueOf(0));
+                multiCuts.add(Integer.valueOf(-1));
+                multiCuts.add(Integer.valueOf(0));
+                for (XMLRule rule : map.values())
+                {
+                    widths.add(Double.valueOf(rule.maxWidth));
+                    widths.add(Double.valueOf(rule.maxWidth + 1));
+                    lengths.add(Double.valueOf(rule.minLength));
+                    lengths.add(Double.valueOf(rule.minLength + 1));
+                    multiCuts.add(Integer.valueOf(rule.multiCuts));
+                }
+                List<String> protos1 = table.getProtoNames(i);
+                List<String> protos2 = table.getProtoNames(j);
+                for (int c = 0; c < 2; c++)
+                {
+                    boolean connected = c != 0;
+                    DRCTemplate.DRCRuleType type = connected ? DRCTemplate.DRCRuleType.CONSPA : DRCTemplate.DRCRuleType.UCONSPA;
+                    for (String proto1 : protos1)
+                    {
+                        for (String proto2 : protos2)
+                        {
+                            List<String> names = new ArrayList<String>(2);
+                            names.add(proto1 != null ? layer1.getName() + "-" + proto1 : null);
+                            names.add(proto2 != null ? layer2.getName() + "-" + proto2 : null);
+                            for (Integer multiCut : multiCuts)
+                            {
+                                for (Double wideS : widths)
+                                {
+                                    for (Double length : lengths)
+                                    {
+                                        numQueries++;
+                                        XMLRule expected = getRule(pIndex, type, wideS.doubleValue(), length.doubleValue(),
+                                            multiCut.intValue(), names, null);
+                                        XMLRule found = table.getRule(pIndex, connected, i, proto1, j, proto2,
+                                            multiCut.intValue(), wideS.doubleValue(), length.doubleValue());
+                                        if (found == expected) continue;
+                                        if (numErrors++ < 10)
+                                            System.out.println("Spacing rule mismatch in " + tech.getTechName() + " between " +
+                                                names.get(0) + "/" + layer1.getName() + " and " + names.get(1) + "/" + layer2.getName() +
+                                                (connected ? " connected" : "") + " cuts=" + multiCut + " width=" + wideS + " length=" + length +
+                                                ": " + (expected != null ? expected.ruleName : null) + " expected, " +
+                                                (found != null ? found.ruleName : null) + " found");
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (numErrors > 0)
+            System.out.println(numErrors + " of " + numQueries + " spacing rule queries of " + tech.getTechName() + " don't match");
+        return numErrors == 0;
+    }
+
+    /**
+     * Method to compile the spacing rules for getSpacingRule.
+     * The table is compiled again after rules were added or removed.
+     * @return the compiled spacing rules.
+     */
+    private synchronized SpacingTable compileSpacingRules()
+    {
+        SpacingTable table = spacingTable;
+        if (table == null)
+        {
+            table = new SpacingTable(this);
+            spacingTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Class with the CONSPA and UCONSPA rules of all layer pairs in flat arrays.
+     * getSpacingRule is called for every pair of polygons that DRC compares,
+     * so the table answers it without building names or lists.
+     * The candidate rules of each layer pair and type are kept in the order in which getRule
+     * scans the rule map, and they are scanned with the same conditions, so the answer is the same.
+     * Node-specific rules are matched by int codes of their "layer-node" names.
+     * Rule values are read from the rules themselves, because they may be changed in place.
+     */
+    private static class SpacingTable
+    {
+        /** first rule of each slot (2*ruleIndex + connected) in the arrays below, with one extra element */
+        private final int[] slotStart;
+        private final XMLRule[] rules;
+        private final double[] maxWidth;
+        private final double[] minLength;
+        private final int[] multiCuts;
+        /** code of the node name of each rule, -1 if the rule is not node-specific */
+        private final int[] nodeCode;
+        /** per layer index, code of the node name "layer-proto" by proto name, or null */
+        private final List<Map<String,Integer>> layerNodeCodes;
+
+        SpacingTable(XMLRules rules)
+        {
+            HashMap<XMLRule,XMLRule>[] matrix = rules.matrix;
+            int numSlots = matrix.length*2;
+            slotStart = new int[numSlots + 1];
+            List<XMLRule> allRules = new ArrayList<XMLRule>();
+            for (int index = 0; index < matrix.length; index++)
+            {
+                for (int c = 0; c < 2; c++)
+                {
+                    slotStart[index*2 + c] = allRules.size();
+                    if (matrix[index] == null) continue;
+                    DRCTemplate.DRCRuleType type = c != 0 ? DRCTemplate.DRCRuleType.CONSPA : DRCTemplate.DRCRuleType.UCONSPA;
+                    for (XMLRule rule : matrix[index].values())
+                    {
+                        if (rule.ruleType == type) allRules.add(rule);
+                    }
+                }
+            }
+            slotStart[numSlots] = allRules.size();
+
+            int numRules = allRules.size();
+            this.rules = allRules.toArray(new XMLRule[numRules]);
+            maxWidth = new double[numRules];
+            minLength = new double[numRules];
+            multiCuts = new int[numRules];
+            nodeCode = new int[numRules];
+            HashMap<String,Integer> nodeNames = new HashMap<String,Integer>();
+            for (int i = 0; i < numRules; i++)
+            {
+                XMLRule rule = this.rules[i];
+                maxWidth[i] = rule.maxWidth;
+                minLength[i] = rule.minLength;
+                multiCuts[i] = rule.multiCuts;
+                nodeCode[i] = -1;
+                if (rule.nodeName == null) continue;
+                Integer code = nodeNames.get(rule.nodeName);
+                if (code == null)
+                {
+                    code = Integer.valueOf(nodeNames.size());
+                    nodeNames.put(rule.nodeName, code);
+                }
+                nodeCode[i] = code.intValue();
+            }
+
+            // split node names into layer name and proto name. A name may be split in more than one way
+            Technology tech = rules.tech;
+            int numLayers = tech.getNumLayers();
+            layerNodeCodes = new ArrayList<Map<String,Integer>>(numLayers);
+            for (int layerIndex = 0; layerIndex < numLayers; layerIndex++)
+                layerNodeCodes.add(null);
+            for (Map.Entry<String,Integer> e : nodeNames.entrySet())
+            {
+                String nodeName = e.getKey();
+                for (int layerIndex = 0; layerIndex < numLayers; layerIndex++)
+                {
+                    String layerName = tech.getLayer(layerIndex).getName();
+                    if (nodeName.length() <= layerName.length() || !nodeName.startsWith(layerName) ||
+                        nodeName.charAt(layerName.length()) != '-') continue;
+                    Map<String,Integer> codes = layerNodeCodes.get(layerIndex);
+                    if (codes == null)
+                    {
+                        codes = new HashMap<String,Integer>();
+                        layerNodeCodes.set(layerIndex, codes);
+                    }
+                    codes.put(nodeName.substring(layerName.length() + 1), e.getValue());
+                }
+            }
+        }
+
+        /**
+         * Returns the code of the node name "layer-proto".
+         * @param layerIndex the index of the layer.
+         * @param protoName the name of the prototype, may be null.
+         * @return the code, or -2 if no rule has this name.
+         */
+        private int getNodeCode(int layerIndex, String protoName)
+        {
+            if (protoName == null || layerIndex < 0 || layerIndex >= layerNodeCodes.size()) return -2;
+            Map<String,Integer> codes = layerNodeCodes.get(layerIndex);
+            if (codes == null) return -2;
+            Integer code = codes.get(protoName);
+            return code != null ? code.intValue() : -2;
+        }
+
+        /**
+         * Returns the names of prototypes which appear in node-specific rules of a layer.
+         * @param layerIndex the index of the layer.
+         * @return the names, and null for no prototype.
+         */
+        private List<String> getProtoNames(int layerIndex)
+        {
+            List<String> names = new ArrayList<String>();
+            names.add(null);
+            Map<String,Integer> codes = layerNodeCodes.get(layerIndex);
+            if (codes != null) names.addAll(codes.keySet());
+            return names;
+        }
+
+        /**
+         * Same as getRule(pIndex, type, wideS, length, multiCut, [name1, name2], null).
+         */
+        XMLRule getRule(int pIndex, boolean connected, int layerIndex1, String protoName1, int layerIndex2, String protoName2,
+                        int multiCut, double wideS, double length)
+        {
+            int slot = pIndex*2 + (connected ? 1 : 0);
+            int end = slotStart[slot + 1];
+            boolean searchFor = (wideS > 0);
+            boolean codesKnown = false;
+            int code1 = -2, code2 = -2;
+            XMLRule maxR = null;
+            int maxI = -1;
+            for (int i = slotStart[slot]; i < end; i++)
+            {
+                // Needs multiCut values
+                if (multiCuts[i] != -1 && multiCuts[i] != multiCut)
+                    continue; // Cuts don't match
+                // in case of spacing rules, we might need to match special names
+                if (nodeCode[i] >= 0)
+                {
+                    if (!codesKnown)
+                    {
+                        code1 = getNodeCode(layerIndex1, protoName1);
+                        code2 = getNodeCode(layerIndex2, protoName2);
+                        codesKnown = true;
+                    }
+                    if (nodeCode[i] != code1 && nodeCode[i] != code2)
+                        continue; // No combination found
+                }
+                XMLRule rule = rules[i];
+                if (!searchFor && (maxR == null || maxR.getValue(0) > rule.getValue(0) || maxR.getValue(1) > rule.getValue(1)))
+                {
+                    maxR = rule;
+                    maxI = i;
+                }
+                else if (maxWidth[i] < wideS && minLength[i] <= length &&
+                        (maxR == null || (maxWidth[maxI] < maxWidth[i] && minLength[maxI] < minLength[i])))
+                {
+                    maxR = rule;
+                    maxI = i;
+                }
+            }
+            return maxR;
+        }
+    }
+
     /*******************************************/
     /*** Local class to store information ******/
     public static class XMLRule extends DRCTemplate
@@ -470,6 +470,18 @@ public class Artwork extends Technology
         loadFactoryMenuPalette(Artwork.class.getResource("artworkMenu.xml"));
 	}
 
+    /**
+     * Tells if getShapeOfNode may take the shape of node from the shape cache of this Technology.
+     * Shapes of artwork nodes depend on their variables.
+     * @param n node to test
+     * @param pn proto of the node in this Technology
+     * @return false
+     */
+    @Override
+    protected boolean isShapeOfNodeCacheable(ImmutableNodeInst n, PrimitiveNode pn) {
+        return false;
+    }
+
 	/**
 	 * Puts into shape builder s the polygons that describe node "n", given a set of
 	 * NodeLayer objects to use.
@@ -308,6 +308,18 @@ public class GEM extends Technology
 
 	//**************************************** METHODS ****************************************
 
+	/**
+	 * Tells if getShapeOfNode may take the shape of node from the shape cache of this Technology.
+	 * Shapes of GEM nodes depend on their variables.
+	 * @param n node to test
+	 * @param pn proto of the node in this Technology
+	 * @return false
+	 */
+	@Override
+	protected boolean isShapeOfNodeCacheable(ImmutableNodeInst n, PrimitiveNode pn) {
+		return false;
+	}
+
 	/**
 	 * Puts into shape builder s the polygons that describe node "n", given a set of
 	 * NodeLayer objects to use.
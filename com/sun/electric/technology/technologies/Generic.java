@@ -325,6 +325,18 @@ public class Generic extends Technology
 		glyphLay.setGraphics(universalLay.getGraphics().withColor(c));
     }
 
+    /**
+     * Tells if getShapeOfNode may take the shape of node from the shape cache of this Technology.
+     * Shapes of invisible pins depend on their names and exports.
+     * @param n node to test
+     * @param pn proto of the node in this Technology
+     * @return false
+     */
+    @Override
+    protected boolean isShapeOfNodeCacheable(ImmutableNodeInst n, PrimitiveNode pn) {
+        return false;
+    }
+
 	/**
 	 * Puts into shape builder s the polygons that describe node "n", given a set of
 	 * NodeLayer objects to use.
@@ -1845,6 +1845,18 @@ public class Schematics extends Technology
 
 	private static Technology.NodeLayer[] NULLNODELAYER = new Technology.NodeLayer [] {};
 
+    /**
+     * Tells if getShapeOfNode may take the shape of node from the shape cache of this Technology.
+     * Shapes of schematic nodes depend on their connections and attributes.
+     * @param n node to test
+     * @param pn proto of the node in this Technology
+     * @return false
+     */
+    @Override
+    protected boolean isShapeOfNodeCacheable(ImmutableNodeInst n, PrimitiveNode pn) {
+        return false;
+    }
+
     /**
 	 * Puts into shape builder s the polygons that describe node "n", given a set of
 	 * NodeLayer objects to use.
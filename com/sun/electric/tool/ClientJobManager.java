@@ -36,18 +36,23 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.logging.Level;
 import javax.swing.SwingUtilities;
 
 /**
  *
  */
 class ClientJobManager {
+    private static final String CLASS_NAME = ClientJobManager.class.getName();
+    /** stream from server. */                  private final InputStream serverInputStream;
+    /** blocks of server stream. */             private final CompressedBlockInputStream blockStream;
     /** stream for cleint read Snapshots. */    private final IdReader reader;
     /** stream for cleint to send Jobs. */      private final DataOutputStream clientOutputStream;
     /** Process that launched this. */          private final Process process;
@@ -60,7 +65,9 @@ class ClientJobManager {
         process = null;
         System.out.println("Attempting to connect to port " + serverPort + " ...");
         Socket socket = new Socket(serverMachineName, serverPort);
-        reader = new IdReader(new DataInputStream(new BufferedInputStream(socket.getInputStream())), IdManager.stdIdManager);
+        serverInputStream = new BufferedInputStream(socket.getInputStream());
+        blockStream = new CompressedBlockInputStream(serverInputStream);
+        reader = new IdReader(new DataInputStream(blockStream), IdManager.stdIdManager);
         clientOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
     }
 
@@ -68,7 +75,9 @@ class ClientJobManager {
         this.process = process;
         this.skipOneLine = skipOneLine;
         System.out.println("Attempting to connect to server subprocess ...");
-        reader = new IdReader(new DataInputStream(new BufferedInputStream(process.getInputStream())), IdManager.stdIdManager);
+        serverInputStream = new BufferedInputStream(process.getInputStream());
+        blockStream = new CompressedBlockInputStream(serverInputStream);
+        reader = new IdReader(new DataInputStream(blockStream), IdManager.stdIdManager);
         clientOutputStream = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
     }
 
@@ -109,8 +118,11 @@ class ClientJobManager {
         assert currentSnapshot == oldSnapshot;
         try {
             if (skipOneLine) {
+                // the line precedes the compressed stream
                 for (int i = 0; i < 150; i++) {
-                    char ch = (char)reader.readByte();
+                    int b = serverInputStream.read();
+                    if (b < 0) throw new EOFException();
+                    char ch = (char)b;
                     if (ch == '\n') break;
                     System.err.print(ch);
                 }
@@ -142,7 +154,13 @@ class ClientJobManager {
                 byte tag = reader.readByte();
                 long timeStamp = reader.readLong();
                 if (tag == 1) {
+                    long startTime = System.nanoTime();
+                    long startBytes = blockStream.getRawBytes() - blockStream.available();
                     currentSnapshot = Snapshot.readSnapshot(reader, currentSnapshot);
+                    if (Job.logger.isLoggable(Level.FINE))
+                        Job.logger.logp(Level.FINE, CLASS_NAME, "runLoop", "snapshot " + currentSnapshot.snapshotId + ": " +
+                            (blockStream.getRawBytes() - blockStream.available() - startBytes) + " bytes read in " +
+                            (System.nanoTime() - startTime)/1000 + " us, latency " + (System.currentTimeMillis() - timeStamp) + " ms");
                 } else {
                     Client.ServerEvent serverEvent = Client.read(reader, tag, timeStamp, Job.currentUI, currentSnapshot);
                     Client.putEvent(serverEvent);
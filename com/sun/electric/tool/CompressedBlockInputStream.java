@@ -0,0 +1,138 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompressedBlockInputStream.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream which reads blocks written by CompressedBlockOutputStream.
+ */
+class CompressedBlockInputStream extends InputStream {
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private byte[] buf = new byte[8192];
+    private int pos;
+    private int count;
+    private byte[] compressed = new byte[8192];
+    private long rawBytes;
+    private long receivedBytes;
+
+    /**
+     * Creates a stream which reads blocks from a buffered input stream.
+     * @param in underlying stream, which should be buffered.
+     */
+    CompressedBlockInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == count && !readBlock())
+            return -1;
+        return buf[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (pos == count && !readBlock())
+            return -1;
+        int n = Math.min(len, count - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return count - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Returns number of bytes read from this stream so far, including the current block.
+     * @return number of raw bytes.
+     */
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Returns number of bytes received from underlying stream, including block headers.
+     * @return number of received bytes.
+     */
+    long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    private boolean readBlock() throws IOException {
+        int rawLen;
+        try {
+            rawLen = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        int len = in.readInt();
+        if (rawLen <= 0 || rawLen > CompressedBlockOutputStream.MAX_BLOCK || len >= rawLen)
+            throw new IOException("Bad block header " + rawLen + " " + len);
+        if (rawLen > buf.length)
+            buf = new byte[Math.max(rawLen, buf.length*2)];
+        if (len < 0) {
+            in.readFully(buf, 0, rawLen);
+        } else {
+            if (len > compressed.length)
+                compressed = new byte[Math.max(len, compressed.length*2)];
+            in.readFully(compressed, 0, len);
+            inflater.reset();
+            inflater.setInput(compressed, 0, len);
+            try {
+                int n = 0;
+                while (n < rawLen) {
+                    int k = inflater.inflate(buf, n, rawLen - n);
+                    if (k == 0 && (inflater.finished() || inflater.needsInput()))
+                        throw new IOException("Truncated compressed block");
+                    n += k;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bad compressed block: " + e.getMessage());
+            }
+        }
+        pos = 0;
+        count = rawLen;
+        rawBytes += rawLen;
+        receivedBytes += 8 + (len >= 0 ? len : rawLen);
+        return true;
+    }
+}
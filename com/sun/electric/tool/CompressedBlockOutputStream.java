@@ -0,0 +1,150 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompressedBlockOutputStream.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream which collects written bytes and sends them as compressed blocks.
+ * A block is sent when the stream is flushed or when it reaches MAX_BLOCK bytes.
+ * Each block is preceded by its raw length and by its compressed length,
+ * which is -1 when the block is stored uncompressed.
+ * The blocks are read by CompressedBlockInputStream.
+ */
+class CompressedBlockOutputStream extends OutputStream {
+    /** Maximal number of raw bytes in a block. */
+    static final int MAX_BLOCK = 1 << 20;
+    /** Blocks shorter than this are not compressed. */
+    private static final int MIN_COMPRESSED_BLOCK = 128;
+
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] buf = new byte[8192];
+    private int count;
+    private byte[] compressed = new byte[8192];
+    private long rawBytes;
+    private long sentBytes;
+
+    CompressedBlockOutputStream(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length)
+            grow(1);
+        buf[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buf.length)
+                grow(len);
+            int n = Math.min(len, buf.length - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Sends collected bytes as a block and flushes underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        deflater.end();
+        out.close();
+    }
+
+    /**
+     * Returns number of bytes written to this stream.
+     * @return number of raw bytes.
+     */
+    long getRawBytes() {
+        return rawBytes + count;
+    }
+
+    /**
+     * Returns number of bytes sent to underlying stream, including block headers.
+     * @return number of sent bytes.
+     */
+    long getSentBytes() {
+        return sentBytes;
+    }
+
+    private void grow(int len) throws IOException {
+        if (count >= MAX_BLOCK) {
+            writeBlock();
+            return;
+        }
+        int newLength = Math.min(MAX_BLOCK, Math.max(buf.length*2, count + len));
+        byte[] newBuf = new byte[newLength];
+        System.arraycopy(buf, 0, newBuf, 0, count);
+        buf = newBuf;
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0)
+            return;
+        int len = -1;
+        if (count >= MIN_COMPRESSED_BLOCK) {
+            deflater.reset();
+            deflater.setInput(buf, 0, count);
+            deflater.finish();
+            len = 0;
+            while (!deflater.finished()) {
+                if (len == compressed.length) {
+                    byte[] newCompressed = new byte[compressed.length*2];
+                    System.arraycopy(compressed, 0, newCompressed, 0, len);
+                    compressed = newCompressed;
+                }
+                len += deflater.deflate(compressed, len, compressed.length - len);
+            }
+            if (len >= count)
+                len = -1;
+        }
+        out.writeInt(count);
+        out.writeInt(len);
+        if (len >= 0)
+            out.write(compressed, 0, len);
+        else
+            out.write(buf, 0, count);
+        rawBytes += count;
+        sentBytes += 8 + (len >= 0 ? len : count);
+        count = 0;
+    }
+}
@@ -23,10 +23,12 @@
  */
 package com.sun.electric.tool;
 
-import com.sun.electric.database.Environment;
+import com.sun.electric.database.text.TextUtils;
+
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.logging.Level;
 
 /**
  * This generic class supports map-reduce scheme of computation on Electric database.
@@ -36,19 +38,19 @@ import java.util.Map;
  * This stage is performed by prepareTasks method, which schedules each task by startTask method.
  * 2) Tasks run in parallel, each giving result of TaskResult type.
  * This stage is performed by runTask method for each instance of task.
+ * Tasks are executed by a shared work-stealing pool; a running task may split itself
+ * by scheduling more tasks with startTask.
  * 3) TaskResults are combinded into final result of Result type.
  * This stage is performed by mergeTaskResults method.
  * 4) Result is consumed on server.
  * This stage is performed by consumer.consume method.
  */
 public abstract class MultiTaskJob<TaskKey,TaskResult,Result> extends Job {
+    private static final String CLASS_NAME = MultiTaskJob.class.getName();
     private transient LinkedHashMap<TaskKey,Task> tasks;
     private transient ArrayList<Task> allTasks;
-    private transient int tasksDone;
-    private transient Environment env;
-    private transient EThread ownerThread;
-    private transient int numberOfRunningThreads;
-    private transient int numberOfFinishedThreads;
+    private transient MultiTaskPool pool;
+    private transient MultiTaskPool.Batch batch;
     private Consumer<Result> consumer;
 
     /**
@@ -96,19 +98,31 @@ public abstract class MultiTaskJob<TaskKey,TaskResult,Result> extends Job {
     /**
      * This method is not overriden by subclasses.
      * Override methods prepareTasks, runTask, mergeTaskResults instead.
-     * @throws JobException
+     * Tasks are executed by the shared MultiTaskPool.
+     * @throws JobException if the Job was interrupted or if a task has failed.
      */
     @Override
     public final boolean doIt() throws JobException {
         tasks = new LinkedHashMap<TaskKey,Task>();
         allTasks = new ArrayList<Task>();
+        pool = MultiTaskPool.getPool();
+        batch = new MultiTaskPool.Batch((EThread)Thread.currentThread());
+        long startTime = System.nanoTime();
         prepareTasks();
-        env = Environment.getThreadEnvironment();
-        ownerThread = (EThread)Thread.currentThread();
-        numberOfRunningThreads = ServerJobManager.getMaxNumberOfThreads();
-        for (int id = 0; id < numberOfRunningThreads; id++)
-            new WorkingThread(id).start();
-        waitTasks();
+        try {
+            batch.await();
+        } catch (InterruptedException e) {
+            throw new JobException(e);
+        }
+        logTaskMetrics(System.nanoTime() - startTime);
+        // don't merge partial results of a failed job
+        for (Task task: allTasks) {
+            if (task.exception != null)
+                throw task.exception;
+        }
+        Throwable failure = batch.getFailure();
+        if (failure != null)
+            throw new JobException(failure);
 
         LinkedHashMap<TaskKey,TaskResult> taskResults = new LinkedHashMap<TaskKey,TaskResult>();
         for (Task task: tasks.values()) {
@@ -123,76 +137,82 @@ public abstract class MultiTaskJob<TaskKey,TaskResult,Result> extends Job {
 
     /**
      * Schedules task. Should be callled from prepareTasks or runTask methods only.
+     * A task may split itself by scheduling subtasks from its runTask method;
+     * such subtasks are executed first by the same worker and can be stolen by idle workers.
      * @param taskName task name which is appeared in Jobs Explorer Tree
      * @param taskKey task key which identifies the task.
      */
-    public synchronized void startTask(String taskName, TaskKey taskKey) {
+    public void startTask(String taskName, TaskKey taskKey) {
         Task task = new Task(taskName, taskKey);
-        if (tasks.containsKey(taskKey))
-            throw new IllegalArgumentException();
-        tasks.put(taskKey, task);
-        allTasks.add(task);
-    }
-
-    private synchronized Task getTask() {
-        if (tasksDone == allTasks.size()) {
-            return null;
+        synchronized (this) {
+            if (tasks.containsKey(taskKey))
+                throw new IllegalArgumentException();
+            tasks.put(taskKey, task);
+            allTasks.add(task);
         }
-        return allTasks.get(tasksDone++);
+        pool.submit(batch, task);
     }
 
-    private synchronized void waitTasks() {
-        try {
-            while (numberOfFinishedThreads < numberOfRunningThreads)
-                wait();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Returns number of workers of the shared pool which executes tasks.
+     * Should be called from prepareTasks or runTask methods only.
+     * @return number of workers.
+     */
+    protected int getNumWorkers() {
+        return pool.getNumWorkers();
     }
 
-    private synchronized void finishWorkingThread() {
-        numberOfFinishedThreads++;
-        notify();
+    /**
+     * Reports per-task timing, queue depth and steal counts to the Job log.
+     * Summary is also printed when running in debug mode.
+     * @param wallTime elapsed time of task execution in nanoseconds.
+     */
+    private void logTaskMetrics(long wallTime) {
+        long busyTime = 0, maxTaskTime = 0;
+        String maxTaskName = null;
+        for (Task t: allTasks) {
+            long taskTime = t.endTime - t.startTime;
+            busyTime += taskTime;
+            if (maxTaskName == null || taskTime > maxTaskTime) {
+                maxTaskTime = taskTime;
+                maxTaskName = t.taskName;
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.logp(Level.FINE, CLASS_NAME, "doIt", "task {0} worker={1} stolen={2} wait={3}ms run={4}ms",
+                        new Object[] { t.taskName, t.workerId, t.stolen,
+                            (t.startTime - t.submitTime)/1000000, taskTime/1000000 });
+            }
+        }
+        int numWorkers = pool.getNumWorkers();
+        String summary = ejob.jobName + ": " + allTasks.size() + " tasks on " + numWorkers + " workers in " +
+            TextUtils.getElapsedTime(wallTime/1000000) +
+            ", utilization " + (wallTime > 0 ? (int)(100*busyTime/(wallTime*numWorkers)) : 100) + "%" +
+            ", steals " + batch.getNumSteals() + ", max queue depth " + batch.getMaxQueueDepth();
+        if (maxTaskName != null)
+            summary += ", longest task " + maxTaskName + " " + TextUtils.getElapsedTime(maxTaskTime/1000000);
+        logger.logp(Level.FINE, CLASS_NAME, "doIt", summary);
+        if (Job.getDebug())
+            System.out.println(summary);
     }
 
-    private class Task {
+    private class Task extends MultiTaskPool.Task {
         private final String taskName;
         private final TaskKey taskKey;
         private TaskResult taskResult;
+        private JobException exception;
 
         private Task(String taskName, TaskKey taskKey) {
             this.taskName = taskName;
             this.taskKey = taskKey;
         }
-    }
-
-    class WorkingThread extends EThread {
-
-        private WorkingThread(int id) {
-            super("WorkingThread-"+id);
-            userInterface = new ServerJobManager.UserInterfaceRedirect(ownerThread.ejob.jobKey);
-            ejob = ownerThread.ejob;
-            isServerThread = ownerThread.isServerThread;
-            database = ownerThread.database;
-        }
 
         @Override
-        public void run() {
-            Environment.setThreadEnvironment(env);
-            for (;;) {
-                Task t = getTask();
-                if (t == null) {
-                    break;
-                }
-                try {
-                    t.taskResult = runTask(t.taskKey);
-                } catch (Throwable e) {
-                    e.getStackTrace();
-                    e.printStackTrace(System.out);
-                    e.printStackTrace();
-                }
+        void run() {
+            try {
+                taskResult = runTask(taskKey);
+            } catch (JobException e) {
+                exception = e;
             }
-            finishWorkingThread();
         }
     }
 }
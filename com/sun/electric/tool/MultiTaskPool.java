@@ -0,0 +1,387 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: MultiTaskPool.java
+ *
+ * Copyright (c) 2003 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool;
+
+import com.sun.electric.database.EditingPreferences;
+import com.sun.electric.database.Environment;
+import com.sun.electric.database.hierarchy.EDatabase;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Shared work-stealing pool of EThreads which executes tasks of MultiTaskJobs.
+ * Each worker owns a deque of tasks. Tasks spawned by a running task are pushed
+ * to the deque of its worker and are popped from the same end (LIFO), so that
+ * a task which splits itself keeps working on its freshest subtasks.
+ * Idle workers steal the oldest tasks from the opposite end of other deques.
+ * Tasks submitted from threads outside the pool go to a shared submission queue.
+ * A task is claimed by the thread which runs it, so a task which was already run by
+ * the thread waiting for its batch stays in a queue until some worker skips it.
+ */
+class MultiTaskPool {
+
+    private static final String CLASS_NAME = MultiTaskPool.class.getName();
+    private static MultiTaskPool pool;
+
+    private final Worker[] workers;
+    private final LinkedBlockingDeque<Task> submissions = new LinkedBlockingDeque<Task>();
+    /** Monitor for idle workers. */
+    private final Object idleLock = new Object();
+    /** Number of submitted tasks, used by idle workers to detect new work. Guarded by idleLock. */
+    private long submitCount;
+    /** Number of workers waiting for new tasks. Guarded by idleLock. */
+    private int numIdle;
+
+    /**
+     * Returns shared pool. The pool is created on first request with
+     * ServerJobManager.getMaxNumberOfThreads() workers.
+     * @return shared pool.
+     */
+    static synchronized MultiTaskPool getPool() {
+        if (pool == null)
+            pool = new MultiTaskPool(Math.max(1, ServerJobManager.getMaxNumberOfThreads()));
+        return pool;
+    }
+
+    private MultiTaskPool(int numWorkers) {
+        Job.logger.logp(Level.FINE, CLASS_NAME, "constructor", "numWorkers=" + numWorkers);
+        workers = new Worker[numWorkers];
+        for (int id = 0; id < numWorkers; id++)
+            workers[id] = new Worker(id);
+        for (Worker w: workers)
+            w.start();
+    }
+
+    /**
+     * Returns number of workers in this pool.
+     * @return number of workers.
+     */
+    int getNumWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * Tells whether a thread is a worker of this pool.
+     * A worker must not block waiting for other tasks of this pool.
+     * @param thread the thread to test.
+     * @return true if the thread is a worker of this pool.
+     */
+    boolean isWorker(Thread thread) {
+        return thread instanceof Worker && ((Worker)thread).getPool() == this;
+    }
+
+    /**
+     * Schedules a task of a batch.
+     * When called from a worker of this pool the task is pushed to the deque of that worker,
+     * otherwise it is appended to the submission queue.
+     * @param batch batch to which the task belongs.
+     * @param task task to execute.
+     */
+    void submit(Batch batch, Task task) {
+        task.batch = batch;
+        task.submitTime = System.nanoTime();
+        batch.taskSubmitted();
+        Thread thread = Thread.currentThread();
+        LinkedBlockingDeque<Task> queue = submissions;
+        if (isWorker(thread))
+            queue = ((Worker)thread).deque;
+        queue.addLast(task);
+        batch.updateQueueDepth(queue.size());
+        synchronized (idleLock) {
+            submitCount++;
+            if (numIdle > 0)
+                idleLock.notifyAll();
+        }
+    }
+
+    /**
+     * Runs a task of a batch by the calling thread if no worker has taken it yet.
+     * This lets a thread which waits for its batch do useful work instead of waiting
+     * for the tasks of other batches which are ahead in the queue.
+     * @param task submitted task.
+     * @return true if the task was run by the calling thread.
+     */
+    boolean runIfQueued(Task task) {
+        if (!task.claim())
+            return false;
+        task.startTime = System.nanoTime();
+        try {
+            task.run();
+        } catch (Throwable e) {
+            task.batch.taskFailed(e);
+        } finally {
+            task.endTime = System.nanoTime();
+            task.batch.taskCompleted();
+        }
+        return true;
+    }
+
+    /**
+     * Group of tasks which belong to one MultiTaskJob.
+     * The batch captures the execution context of the owner EThread,
+     * so that pool workers run tasks on behalf of the owner job,
+     * and it collects scheduling statistics.
+     */
+    static class Batch {
+        private final EJob ejob;
+        private final boolean isServerThread;
+        private final EDatabase database;
+        private final Environment env;
+        private final EditingPreferences editingPreferences;
+        private final ServerJobManager.UserInterfaceRedirect userInterface;
+        /** Number of submitted tasks which are not completed yet. Guarded by this. */
+        private int pending;
+        /** First exception thrown by a task of this batch. Guarded by this. */
+        private Throwable failure;
+        private final AtomicInteger numSteals = new AtomicInteger();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        /**
+         * Creates a batch which runs tasks in the context of the specified EThread.
+         * @param owner EThread which executes MultiTaskJob.
+         */
+        Batch(EThread owner) {
+            ejob = owner.ejob;
+            isServerThread = owner.isServerThread;
+            database = owner.database;
+            env = Environment.getThreadEnvironment();
+            editingPreferences = EditingPreferences.getThreadEditingPreferences();
+            userInterface = new ServerJobManager.UserInterfaceRedirect(owner.ejob.jobKey);
+        }
+
+        /**
+         * Creates a batch which runs tasks without the context of a Job.
+         * Such tasks must not access the database.
+         */
+        Batch() {
+            ejob = null;
+            isServerThread = false;
+            database = null;
+            env = null;
+            editingPreferences = null;
+            userInterface = null;
+        }
+
+        private synchronized void taskSubmitted() {
+            pending++;
+        }
+
+        private synchronized void taskCompleted() {
+            pending--;
+            if (pending == 0)
+                notifyAll();
+        }
+
+        private synchronized void taskFailed(Throwable e) {
+            if (failure == null)
+                failure = e;
+        }
+
+        private void updateQueueDepth(int depth) {
+            for (;;) {
+                int max = maxQueueDepth.get();
+                if (depth <= max || maxQueueDepth.compareAndSet(max, depth))
+                    return;
+            }
+        }
+
+        /**
+         * Waits until all tasks of this batch are completed,
+         * including the tasks spawned by running tasks.
+         * @throws InterruptedException if the current thread was interrupted.
+         */
+        synchronized void await() throws InterruptedException {
+            while (pending > 0)
+                wait();
+        }
+
+        /**
+         * Returns the first exception thrown by a task of this batch.
+         * Exceptions of later failed tasks are dropped.
+         * @return the first exception or null if no task has failed.
+         */
+        synchronized Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * Returns number of tasks of this batch which were stolen by idle workers.
+         * @return number of stolen tasks.
+         */
+        int getNumSteals() {
+            return numSteals.get();
+        }
+
+        /**
+         * Returns maximal length of a task queue observed when tasks of this batch were submitted.
+         * @return maximal queue depth.
+         */
+        int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Unit of work executed by the pool.
+     * Scheduling times are recorded by System.nanoTime().
+     */
+    static abstract class Task {
+        private Batch batch;
+        long submitTime;
+        long startTime;
+        long endTime;
+        int workerId = -1;
+        boolean stolen;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        /**
+         * Claims this task for execution by the current thread.
+         * @return true if the task was not claimed before.
+         */
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Performs the task.
+         */
+        abstract void run();
+    }
+
+    private class Worker extends EThread {
+        private final int id;
+        private final LinkedBlockingDeque<Task> deque = new LinkedBlockingDeque<Task>();
+        private Batch currentBatch;
+
+        private Worker(int id) {
+            super("MultiTaskWorker-" + id);
+            this.id = id;
+            setDaemon(true);
+        }
+
+        private MultiTaskPool getPool() {
+            return MultiTaskPool.this;
+        }
+
+        @Override
+        public void run() {
+            Job.logger.logp(Level.FINE, CLASS_NAME, "run", getName());
+            for (;;) {
+                long seenCount;
+                synchronized (idleLock) {
+                    seenCount = submitCount;
+                }
+                Task t = findTask();
+                if (t != null) {
+                    runTask(t);
+                    continue;
+                }
+                setBatch(null);
+                try {
+                    synchronized (idleLock) {
+                        numIdle++;
+                        while (submitCount == seenCount)
+                            idleLock.wait();
+                        numIdle--;
+                    }
+                } catch (InterruptedException e) {
+                    synchronized (idleLock) {
+                        numIdle--;
+                    }
+                }
+            }
+        }
+
+        private Task findTask() {
+            Task t = pollUnclaimed(deque, false);
+            if (t != null)
+                return t;
+            t = pollUnclaimed(submissions, true);
+            if (t != null)
+                return t;
+            for (int i = 1; i < workers.length; i++) {
+                Worker victim = workers[(id + i) % workers.length];
+                t = pollUnclaimed(victim.deque, true);
+                if (t != null) {
+                    t.stolen = true;
+                    t.batch.numSteals.incrementAndGet();
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Takes tasks from an end of a queue until it finds a task which is not claimed yet.
+         * @param queue the queue.
+         * @param first true to take from the head of the queue, false to take from the tail.
+         * @return the claimed task or null if the queue has no unclaimed tasks.
+         */
+        private Task pollUnclaimed(LinkedBlockingDeque<Task> queue, boolean first) {
+            for (;;) {
+                Task t = first ? queue.pollFirst() : queue.pollLast();
+                if (t == null || t.claim())
+                    return t;
+            }
+        }
+
+        private void runTask(Task t) {
+            setBatch(t.batch);
+            t.workerId = id;
+            t.startTime = System.nanoTime();
+            try {
+                t.run();
+            } catch (Throwable e) {
+                t.batch.taskFailed(e);
+            } finally {
+                t.endTime = System.nanoTime();
+                t.batch.taskCompleted();
+            }
+        }
+
+        private void setBatch(Batch batch) {
+            if (batch == currentBatch)
+                return;
+            currentBatch = batch;
+            if (batch != null) {
+                ejob = batch.ejob;
+                isServerThread = batch.isServerThread;
+                database = batch.database;
+                userInterface = batch.userInterface;
+                Environment.setThreadEnvironment(batch.env);
+                EditingPreferences.setThreadEditingPreferences(batch.editingPreferences);
+            } else {
+                ejob = null;
+                isServerThread = false;
+                database = null;
+                userInterface = null;
+                Environment.setThreadEnvironment(null);
+                EditingPreferences.setThreadEditingPreferences(null);
+            }
+        }
+    }
+}
@@ -77,7 +77,7 @@ public class Regression {
             OutputStream outStream = process.getOutputStream();
             InputStream errStream = process.getErrorStream();
             new ExecProcessReader(errStream).start();
-            reader = new IdReader(new DataInputStream(new BufferedInputStream(inStream)), IdManager.stdIdManager);
+            reader = new IdReader(new DataInputStream(new CompressedBlockInputStream(new BufferedInputStream(inStream))), IdManager.stdIdManager);
             int protocolVersion = reader.readInt();
             if (protocolVersion != Job.PROTOCOL_VERSION) {
                 System.out.println("Client's protocol version " + Job.PROTOCOL_VERSION + " is incompatible with Server's protocol version " + protocolVersion);
@@ -39,11 +39,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.OutputStream;
+import java.util.logging.Level;
 
 /**
  * Class for maintaining Connection on Server side.
  */
 public class StreamClient extends Client {
+    private static final String CLASS_NAME = StreamClient.class.getName();
+    private final CompressedBlockOutputStream blockStream;
     private final IdWriter writer;
     private Snapshot currentSnapshot = EDatabase.serverDatabase().getInitialSnapshot();
     private final ServerEventDispatcher dispatcher;
@@ -53,7 +56,8 @@ public class StreamClient extends Client {
 
     StreamClient(int connectionId, InputStream inputStream, OutputStream outputStream) {
         super(connectionId);
-        writer = new IdWriter(IdManager.stdIdManager, new DataOutputStream(outputStream));
+        blockStream = new CompressedBlockOutputStream(outputStream);
+        writer = new IdWriter(IdManager.stdIdManager, new DataOutputStream(blockStream));
         dispatcher = new ServerEventDispatcher();
         reader = inputStream != null ? new ClientReader(inputStream) : null;
     }
@@ -76,10 +80,14 @@ public class StreamClient extends Client {
                 writer.writeInt(connectionId);
                 writeSnapshot(lastEvent);
                 for (;;) {
-                    writer.flush();
+                    flush();
                     lastEvent = Client.getEvent(lastEvent);
                     for (;;) {
-                        if (lastEvent.getSnapshot() != currentSnapshot)
+                        // Only EJobEvents are read by client with their Snapshot.
+                        // Snapshots of other events are skipped while more events are queued,
+                        // so that a burst of events is sent with one diff of the final Snapshot.
+                        if (lastEvent.getSnapshot() != currentSnapshot &&
+                                (lastEvent instanceof EJobEvent || lastEvent.getNext() == null))
                             writeSnapshot(lastEvent);
                         lastEvent.write(writer);
                         if (lastEvent instanceof ShutdownEvent) {
@@ -101,12 +109,36 @@ public class StreamClient extends Client {
         }
     }
 
+    /** Time stamp of the oldest Snapshot which is not flushed yet, or 0. */
+    private long unflushedTimeStamp;
+    /** Number of Snapshots which are not flushed yet. */
+    private int numUnflushed;
+
     private void writeSnapshot(ServerEvent event) throws IOException {
+        long startTime = System.nanoTime();
+        long startBytes = blockStream.getRawBytes();
         writer.writeByte((byte)1);
         writer.writeLong(event.getTimeStamp());
         Snapshot newSnapshot = event.getSnapshot();
         newSnapshot.writeDiffs(writer, currentSnapshot);
+        if (Job.logger.isLoggable(Level.FINE))
+            Job.logger.logp(Level.FINE, CLASS_NAME, "writeSnapshot", "snapshot " + newSnapshot.snapshotId +
+                " after " + currentSnapshot.snapshotId + ": " + (blockStream.getRawBytes() - startBytes) + " bytes in " +
+                (System.nanoTime() - startTime)/1000 + " us");
         currentSnapshot = newSnapshot;
+        if (numUnflushed++ == 0)
+            unflushedTimeStamp = event.getTimeStamp();
+    }
+
+    private void flush() throws IOException {
+        long rawBytes = blockStream.getRawBytes();
+        long sentBytes = blockStream.getSentBytes();
+        writer.flush();
+        if (numUnflushed != 0 && Job.logger.isLoggable(Level.FINE))
+            Job.logger.logp(Level.FINE, CLASS_NAME, "flush", numUnflushed + " snapshots up to " + currentSnapshot.snapshotId +
+                ": " + (blockStream.getRawBytes() - rawBytes) + " bytes sent as " + (blockStream.getSentBytes() - sentBytes) +
+                ", latency " + (System.currentTimeMillis() - unflushedTimeStamp) + " ms");
+        numUnflushed = 0;
     }
 
     private class ClientReader extends Thread {
@@ -0,0 +1,180 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: TaskGroup.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool;
+
+import com.sun.electric.database.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Group of tasks which a running Job executes on the shared MultiTaskPool.
+ * Unlike MultiTaskJob, a TaskGroup may be used from the doIt method of any Job
+ * to run a parallel phase of a larger computation and to wait for it.
+ * Tasks may submit more tasks to the same group.
+ * When the caller is not a Job thread, or is itself a worker of the pool,
+ * or the group is not parallel, tasks are run by the caller when they are submitted.
+ * A group whose tasks don't need the Job context may be used from any thread, for example from the AWT thread.
+ * While waiting, the caller runs the tasks of its group which no worker has started yet.
+ * If a task fails, the first exception is rethrown by await after all other tasks are completed,
+ * so the caller sees the same failure as when the tasks are run by the caller.
+ */
+public class TaskGroup {
+    private static final String CLASS_NAME = TaskGroup.class.getName();
+
+    private final String name;
+    private final MultiTaskPool pool;
+    private final MultiTaskPool.Batch batch;
+    private final List<Task> allTasks = new ArrayList<Task>();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Creates a group of tasks.
+     * @param name name of the group which is used in timing reports.
+     * @param parallel false to run all tasks by the caller.
+     */
+    public TaskGroup(String name, boolean parallel) {
+        this(name, parallel, true);
+    }
+
+    /**
+     * Creates a group of tasks.
+     * @param name name of the group which is used in timing reports.
+     * @param parallel false to run all tasks by the caller.
+     * @param jobContext true to run tasks in the context of the calling Job.
+     * False if tasks don't access the database, so that the group may run in parallel from any thread.
+     */
+    public TaskGroup(String name, boolean parallel, boolean jobContext) {
+        this.name = name;
+        Thread thread = Thread.currentThread();
+        boolean isJobThread = thread instanceof EThread && ((EThread)thread).ejob != null;
+        MultiTaskPool p = null;
+        if (parallel && (isJobThread || !jobContext)) {
+            p = MultiTaskPool.getPool();
+            if (p.isWorker(thread) || p.getNumWorkers() <= 1)
+                p = null;
+        }
+        pool = p;
+        if (pool == null)
+            batch = null;
+        else if (jobContext)
+            batch = new MultiTaskPool.Batch((EThread)thread);
+        else
+            batch = new MultiTaskPool.Batch();
+    }
+
+    /**
+     * Returns number of threads which run tasks of this group.
+     * @return number of threads.
+     */
+    public int getNumThreads() {
+        return pool != null ? pool.getNumWorkers() : 1;
+    }
+
+    /**
+     * Schedules a task.
+     * @param taskName name of the task which is used in timing reports.
+     * @param runnable the task.
+     */
+    public void submit(String taskName, Runnable runnable) {
+        Task task = new Task(taskName, runnable);
+        synchronized (allTasks) {
+            allTasks.add(task);
+        }
+        if (pool != null) {
+            pool.submit(batch, task);
+        } else {
+            task.startTime = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                task.endTime = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Waits until all tasks of this group are completed,
+     * including the tasks submitted by running tasks.
+     * Timing of the group is reported to the Job log and, in debug mode, printed.
+     * @throws JobException if the current thread was interrupted or if a task has failed.
+     * The exception of the first failed task is the cause of the JobException.
+     */
+    public void await() throws JobException {
+        if (batch != null) {
+            Task[] tasks;
+            synchronized (allTasks) {
+                tasks = allTasks.toArray(new Task[allTasks.size()]);
+            }
+            for (Task t: tasks)
+                pool.runIfQueued(t);
+            try {
+                batch.await();
+            } catch (InterruptedException e) {
+                throw new JobException(e);
+            }
+        }
+        long wallTime = System.nanoTime() - startTime;
+        long busyTime = 0;
+        int numTasks;
+        synchronized (allTasks) {
+            numTasks = allTasks.size();
+            for (Task t: allTasks)
+                busyTime += t.endTime - t.startTime;
+        }
+        int numThreads = getNumThreads();
+        String summary = name + ": " + numTasks + " tasks on " + numThreads + " threads in " +
+            TextUtils.getElapsedTime(wallTime/1000000) +
+            ", utilization " + (wallTime > 0 ? (int)(100*busyTime/(wallTime*numThreads)) : 100) + "%";
+        if (batch != null)
+            summary += ", steals " + batch.getNumSteals();
+        Job.logger.logp(Level.FINE, CLASS_NAME, "await", summary);
+        if (Job.getDebug())
+            System.out.println(summary);
+        Throwable failure = batch != null ? batch.getFailure() : null;
+        if (failure != null)
+            throw new JobException(failure);
+    }
+
+    private static class Task extends MultiTaskPool.Task {
+        private final String taskName;
+        private final Runnable runnable;
+
+        private Task(String taskName, Runnable runnable) {
+            this.taskName = taskName;
+            this.runnable = runnable;
+        }
+
+        @Override
+        void run() {
+            runnable.run();
+        }
+
+        @Override
+        public String toString() {
+            return taskName;
+        }
+    }
+}
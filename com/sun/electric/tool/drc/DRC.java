@@ -799,6 +799,22 @@ public class DRC extends Listener
 
         if (errorLogger == null) return;
 
+        // the logger might be shared by several DRC tasks (tiles of the same layer) so
+        // searching for a repeated message and logging it must be atomic
+        synchronized (errorLogger)
+        {
+            logDRCError(reportInfo, errorType, msg, cell, limit, actual, rule, poly1, geom1, layer1, poly2, geom2, layer2);
+        }
+    }
+
+    private static void logDRCError(ReportInfo reportInfo,
+                                    DRCErrorType errorType, String msg,
+                                    Cell cell, double limit, double actual, String rule,
+                                    PolyBase poly1, Geometric geom1, Layer layer1,
+                                    PolyBase poly2, Geometric geom2, Layer layer2)
+    {
+        ErrorLogger errorLogger = reportInfo.errorLogger;
+
 		// if this error is in an ignored area, don't record it
 		StringBuffer DRCexclusionMsg = new StringBuffer();
         if (reportInfo.exclusionMap != null && reportInfo.exclusionMap.get(cell) != null)
@@ -1818,7 +1834,7 @@ public class DRC extends Listener
      * @param errorLog error logger
      * @param cell cell to check
      */
-    private static void checkNetworks(ErrorLogger errorLog, Cell cell, boolean isLayout) {
+    static void checkNetworks(ErrorLogger errorLog, Cell cell, boolean isLayout) {
         final int errorSortNetworks = 0;
         final int errorSortNodes = 1;
         Map<NodeProto,ArrayList<NodeInst>> strangeNodes = null;
@@ -1977,6 +1993,14 @@ public class DRC extends Listener
         @BooleanPref(node=DRC_NODE, key = "MinMultiThread", factory = false)
         public boolean isMultiThreaded;
 
+        /** Whether multi-threaded DRC should split the top cell of each layer into tiles. The default is "false". */
+        @BooleanPref(node=DRC_NODE, key = "TiledMultiThread", factory = false)
+        public boolean isTiledMultiThreaded;
+
+        /** Whether DRC should merge geometry with the Manhattan scanline engine. The default is "false". */
+        @BooleanPref(node=DRC_NODE, key = "ManhattanMerge", factory = false)
+        public boolean manhattanMerge;
+
         public Map<Technology,Double> resolutions = new HashMap<Technology,Double>();
         public Map<Technology,String> overrides = new HashMap<Technology,String>();
 
@@ -2004,6 +2028,20 @@ public class DRC extends Listener
             }
         }
 
+        public DRCPreferences withIgnoreAreaCheck(boolean ignoreAreaCheck)
+        {
+            return (DRCPreferences)withField("ignoreAreaCheck", Boolean.valueOf(ignoreAreaCheck));
+        }
+
+        /**
+         * Method to return the geometry merging algorithm selected by these preferences.
+         * @return ALGO_MANHATTAN if the Manhattan scanline engine is selected, ALGO_SWEEP otherwise.
+         */
+        public GeometryHandler.GHMode getMergeMode()
+        {
+            return manhattanMerge ? GeometryHandler.GHMode.ALGO_MANHATTAN : GeometryHandler.GHMode.ALGO_SWEEP;
+        }
+
         /**
          * Store annotated option fields of the subclass into the speciefied Preferences subtree.
          * @param prefRoot the root of the Preferences subtree.
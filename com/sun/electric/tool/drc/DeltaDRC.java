@@ -0,0 +1,444 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: DeltaDRC.java
+ *
+ * Copyright (c) 2003 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.drc;
+
+import com.sun.electric.database.CellBackup;
+import com.sun.electric.database.CellRevision;
+import com.sun.electric.database.ImmutableArcInst;
+import com.sun.electric.database.ImmutableExport;
+import com.sun.electric.database.ImmutableNodeInst;
+import com.sun.electric.database.Snapshot;
+import com.sun.electric.database.geometry.DBMath;
+import com.sun.electric.database.geometry.ERectangle;
+import com.sun.electric.database.geometry.GeometryHandler;
+import com.sun.electric.database.hierarchy.Cell;
+import com.sun.electric.database.id.CellId;
+import com.sun.electric.database.text.TextUtils;
+import com.sun.electric.technology.BoundsBuilder;
+import com.sun.electric.technology.Technology;
+import com.sun.electric.tool.Job;
+import com.sun.electric.tool.user.ErrorLogger;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental DRC driven by the differences between database Snapshots.
+ * <P>
+ * The first check of a cell is a full hierarchical check. Its results are kept together with
+ * the Snapshot they were computed on. The next check compares the CellRevisions of the cells
+ * in the hierarchy with the cached Snapshot and collects, per cell, the regions covered by the
+ * nodes and arcs which were added, removed or modified. Dirty regions of a cell are transformed
+ * into every placement of the cell in its parents, so the parents are rechecked around the instances.
+ * Then only the objects which touch the dirty regions (grown by the worst interaction distance)
+ * are rechecked, and cached errors which don't touch the dirty regions are kept.
+ * <P>
+ * Area rules are checked on the merged geometry of the whole hierarchy, so they are recomputed
+ * for the top cell whenever something changed.
+ * <P>
+ * Only the results of the last check are kept, because they hold a whole Snapshot.
+ * Checking another top cell starts with a full check.
+ */
+public class DeltaDRC
+{
+    /** maximum number of dirty windows in a cell before they are merged into one */
+    private static final int MAX_WINDOWS_PER_CELL = 64;
+
+    /** lock for the cached results */
+    private static final Object cacheLock = new Object();
+    /** results of the last check, or null. Server side. */
+    private static CachedResult lastResult;
+
+    private static class CachedResult
+    {
+        private final CellId cellId;
+        private final Snapshot snapshot;
+        private final int activeSpacingBits;
+        private final DRC.DRCCheckMode errorType;
+        private final boolean ignoreAreaCheck;
+        private final List<ErrorLogger.MessageLog> spacingLogs;
+        private final List<ErrorLogger.MessageLog> areaLogs;
+
+        private CachedResult(CellId cellId, Snapshot snapshot, int activeSpacingBits, DRC.DRCPreferences dp,
+                             List<ErrorLogger.MessageLog> spacingLogs, List<ErrorLogger.MessageLog> areaLogs)
+        {
+            this.cellId = cellId;
+            this.snapshot = snapshot;
+            this.activeSpacingBits = activeSpacingBits;
+            this.errorType = dp.errorType;
+            this.ignoreAreaCheck = dp.ignoreAreaCheck;
+            this.spacingLogs = spacingLogs;
+            this.areaLogs = areaLogs;
+        }
+
+        private boolean isValid(Snapshot newSnapshot, int activeSpacingBits, DRC.DRCPreferences dp)
+        {
+            return snapshot.environment == newSnapshot.environment && this.activeSpacingBits == activeSpacingBits &&
+                errorType == dp.errorType && ignoreAreaCheck == dp.ignoreAreaCheck;
+        }
+    }
+
+    /**
+     * Method to check a layout cell rechecking only the regions changed since the last check.
+     * @param dp DRC preferences.
+     * @param cell the top cell to check.
+     */
+    public static void checkDRCIncrementally(DRC.DRCPreferences dp, Cell cell)
+    {
+        if (cell == null) return;
+        new CheckDRCByDelta(dp, cell).startJob();
+    }
+
+    /**
+     * Method to forget cached results.
+     * Next check of every cell will be a full check.
+     */
+    public static void clearCache()
+    {
+        synchronized (cacheLock)
+        {
+            lastResult = null;
+        }
+    }
+
+    private static class CheckDRCByDelta extends DRC.CheckDRCJob
+    {
+        private static final long serialVersionUID = 1L;
+
+        private CheckDRCByDelta(DRC.DRCPreferences dp, Cell cell)
+        {
+            super(cell, DRC.getDRCTool(), Job.Priority.USER, dp, true);
+        }
+
+        public boolean doIt()
+        {
+            long startTime = System.currentTimeMillis();
+            Snapshot snapshot = getDatabase().backup();
+            CellId cellId = cell.getId();
+            Technology tech = cell.getTechnology();
+            int activeSpacingBits = DRC.getActiveBits(tech, dp);
+            GeometryHandler.GHMode mode = dp.getMergeMode();
+
+            CachedResult cached;
+            synchronized (cacheLock)
+            {
+                cached = lastResult;
+            }
+            if (cached != null && (cached.cellId != cellId || !cached.isValid(snapshot, activeSpacingBits, dp)))
+                cached = null;
+
+            List<ErrorLogger.MessageLog> spacingLogs;
+            List<ErrorLogger.MessageLog> areaLogs;
+            if (cached == null)
+            {
+                System.out.println("No previous results for " + cell + ", checking everything");
+                ErrorLogger spacingLog = DRC.getDRCErrorLogger(true, null);
+                Quick.checkDesignRules(spacingLog, cell, null, null, null, this, dp.withIgnoreAreaCheck(true), mode, false);
+                spacingLogs = getLogs(spacingLog);
+                areaLogs = checkArea(cell, this, dp, mode);
+            } else
+            {
+                double halo = DRC.getWorstSpacingDistance(tech, -1);
+                Map<CellId,List<Rectangle2D>> dirty = getDirtyRegions(cached.snapshot, snapshot, cellId, halo);
+                if (dirty.isEmpty())
+                {
+                    System.out.println("No changes in " + cell + " since last check");
+                    spacingLogs = cached.spacingLogs;
+                    areaLogs = cached.areaLogs;
+                } else
+                {
+                    // keep cached errors which are far from the changes
+                    spacingLogs = new ArrayList<ErrorLogger.MessageLog>();
+                    for (ErrorLogger.MessageLog log : cached.spacingLogs)
+                    {
+                        if (!log.touches(getDatabase(), dirty))
+                            spacingLogs.add(log);
+                    }
+                    int numKept = spacingLogs.size();
+
+                    // recheck windows
+                    int numWindows = 0;
+                    ErrorLogger spacingLog = DRC.getDRCErrorLogger(true, null);
+                    for (Map.Entry<CellId,List<Rectangle2D>> e : dirty.entrySet())
+                    {
+                        if (checkAbort()) return false;
+                        Cell dirtyCell = getDatabase().getCell(e.getKey());
+                        if (dirtyCell == null || !dirtyCell.isLayout()) continue;
+                        numWindows += e.getValue().size();
+                        Quick.checkDesignRulesInWindows(spacingLog, dirtyCell, e.getValue(), this, dp, mode);
+                    }
+                    spacingLogs.addAll(getLogs(spacingLog));
+                    System.out.println("Rechecked " + numWindows + " windows in " + dirty.size() + " cells, kept " +
+                        numKept + " of " + cached.spacingLogs.size() + " previous errors");
+                    areaLogs = checkArea(cell, this, dp, mode);
+                }
+            }
+            if (checkAbort()) return false;
+            synchronized (cacheLock)
+            {
+                lastResult = new CachedResult(cellId, snapshot, activeSpacingBits, dp, spacingLogs, areaLogs);
+            }
+
+            ErrorLogger errorLog = DRC.getDRCErrorLogger(true, " (incremental)");
+            DRC.checkNetworks(errorLog, cell, true);
+            errorLog.addMessages(spacingLogs);
+            errorLog.addMessages(areaLogs);
+            errorLog.sortLogs();
+            errorLog.termLogging(true);
+            long endTime = System.currentTimeMillis();
+            System.out.println(errorLog.getNumErrors() + " errors and " + errorLog.getNumWarnings() +
+                " warnings found (took " + TextUtils.getElapsedTime(endTime - startTime) + ")");
+            return true;
+        }
+    }
+
+    private static List<ErrorLogger.MessageLog> checkArea(Cell cell, DRC.CheckDRCJob job, DRC.DRCPreferences dp,
+                                                          GeometryHandler.GHMode mode)
+    {
+        List<ErrorLogger.MessageLog> areaLogs = new ArrayList<ErrorLogger.MessageLog>();
+        if (dp.ignoreAreaCheck) return areaLogs;
+        ErrorLogger areaLog = DRC.getDRCErrorLogger(true, null);
+        Quick.checkDesignRules(areaLog, cell, null, null, null, job, dp, mode, true);
+        return getLogs(areaLog);
+    }
+
+    private static List<ErrorLogger.MessageLog> getLogs(ErrorLogger errorLog)
+    {
+        List<ErrorLogger.MessageLog> logs = new ArrayList<ErrorLogger.MessageLog>();
+        for (Iterator<ErrorLogger.MessageLog> it = errorLog.getLogs(); it.hasNext(); )
+            logs.add(it.next());
+        return logs;
+    }
+
+    /****************************** DIRTY REGIONS ******************************/
+
+    /**
+     * Method to compute the regions of cells in a hierarchy which must be rechecked after changes.
+     * The regions of a cell consist of the bounds of its nodes and arcs which were added, removed or
+     * modified, and of the regions of its subcells transformed into every instance of them.
+     * Regions are grown by the interaction distance and overlapping regions are merged.
+     * @param oldSnapshot Snapshot of the last check.
+     * @param newSnapshot current Snapshot.
+     * @param topCellId the top cell of the hierarchy.
+     * @param halo the worst interaction distance.
+     * @return map from cell to its regions to recheck. Cells without changes are not in the map.
+     */
+    static Map<CellId,List<Rectangle2D>> getDirtyRegions(Snapshot oldSnapshot, Snapshot newSnapshot, CellId topCellId,
+                                                         double halo)
+    {
+        Map<CellId,List<Rectangle2D>> dirty = new HashMap<CellId,List<Rectangle2D>>();
+        Set<CellId> changedCells = new HashSet<CellId>(newSnapshot.getChangedCells(oldSnapshot));
+        List<CellId> cells = new ArrayList<CellId>();
+        collectCells(newSnapshot, topCellId, new HashSet<CellId>(), cells);
+
+        // cells are ordered bottom-up, so regions of subcells are known when a cell is examined
+        for (CellId cellId : cells)
+        {
+            CellBackup newCell = newSnapshot.getCell(cellId);
+            List<Rectangle2D> regions = new ArrayList<Rectangle2D>();
+            if (changedCells.contains(cellId))
+                addChangedObjects(oldSnapshot, newSnapshot, cellId, regions);
+            for (ImmutableNodeInst n : newCell.cellRevision.nodes)
+            {
+                if (!(n.protoId instanceof CellId)) continue;
+                List<Rectangle2D> subRegions = dirty.get((CellId)n.protoId);
+                if (subRegions == null) continue;
+                AffineTransform trans = n.orient.rotateAbout(n.anchor.getX(), n.anchor.getY(), 0, 0);
+                for (Rectangle2D r : subRegions)
+                {
+                    Rectangle2D bounds = new Rectangle2D.Double();
+                    bounds.setRect(r);
+                    DBMath.transformRect(bounds, trans);
+                    regions.add(bounds);
+                }
+            }
+            if (regions.isEmpty()) continue;
+            dirty.put(cellId, mergeRegions(regions, halo));
+        }
+        return dirty;
+    }
+
+    /**
+     * Method to list cells of the hierarchy in bottom-up order.
+     */
+    private static void collectCells(Snapshot snapshot, CellId cellId, Set<CellId> visited, List<CellId> cells)
+    {
+        if (!visited.add(cellId)) return;
+        CellBackup cellBackup = snapshot.getCell(cellId);
+        if (cellBackup == null) return;
+        for (ImmutableNodeInst n : cellBackup.cellRevision.nodes)
+        {
+            if (n.protoId instanceof CellId)
+                collectCells(snapshot, (CellId)n.protoId, visited, cells);
+        }
+        cells.add(cellId);
+    }
+
+    /**
+     * Method to add the bounds of nodes and arcs of a cell which differ in two Snapshots.
+     */
+    private static void addChangedObjects(Snapshot oldSnapshot, Snapshot newSnapshot, CellId cellId, List<Rectangle2D> regions)
+    {
+        CellBackup oldCell = oldSnapshot.getCell(cellId);
+        CellBackup newCell = newSnapshot.getCell(cellId);
+        if (oldCell == null)
+        {
+            // new cell
+            regions.add(newSnapshot.getCellBounds(cellId));
+            return;
+        }
+        CellRevision oldRevision = oldCell.cellRevision;
+        CellRevision newRevision = newCell.cellRevision;
+        CellBackup.Memoization oldM = oldCell.getMemoization();
+        CellBackup.Memoization newM = newCell.getMemoization();
+        BoundsBuilder oldBuilder = new BoundsBuilder(oldCell);
+        BoundsBuilder newBuilder = new BoundsBuilder(newCell);
+
+        for (ImmutableNodeInst n : newRevision.nodes)
+        {
+            ImmutableNodeInst oldN = oldM.getNodeById(n.nodeId);
+            if (oldN == n) continue;
+            regions.add(getNodeBounds(newSnapshot, newBuilder, n));
+            if (oldN != null)
+                regions.add(getNodeBounds(oldSnapshot, oldBuilder, oldN));
+        }
+        for (ImmutableNodeInst oldN : oldRevision.nodes)
+        {
+            if (newM.getNodeById(oldN.nodeId) == null)
+                regions.add(getNodeBounds(oldSnapshot, oldBuilder, oldN));
+        }
+        for (ImmutableArcInst a : newRevision.arcs)
+        {
+            ImmutableArcInst oldA = oldM.getArcById(a.arcId);
+            if (oldA == a) continue;
+            regions.add(getArcBounds(newBuilder, a));
+            if (oldA != null)
+                regions.add(getArcBounds(oldBuilder, oldA));
+        }
+        for (ImmutableArcInst oldA : oldRevision.arcs)
+        {
+            if (newM.getArcById(oldA.arcId) == null)
+                regions.add(getArcBounds(oldBuilder, oldA));
+        }
+
+        // exports change connectivity of the nodes they belong to
+        if (!oldRevision.sameExports(newRevision))
+        {
+            for (ImmutableExport e : newRevision.exports)
+            {
+                ImmutableExport oldE = oldRevision.getExport(e.exportId);
+                if (oldE == e) continue;
+                ImmutableNodeInst n = newM.getNodeById(e.originalNodeId);
+                if (n != null)
+                    regions.add(getNodeBounds(newSnapshot, newBuilder, n));
+            }
+            for (ImmutableExport oldE : oldRevision.exports)
+            {
+                if (newRevision.getExport(oldE.exportId) != null) continue;
+                ImmutableNodeInst oldN = oldM.getNodeById(oldE.originalNodeId);
+                if (oldN != null)
+                    regions.add(getNodeBounds(oldSnapshot, oldBuilder, oldN));
+            }
+        }
+    }
+
+    private static Rectangle2D getNodeBounds(Snapshot snapshot, BoundsBuilder b, ImmutableNodeInst n)
+    {
+        Rectangle2D.Double bounds = new Rectangle2D.Double();
+        if (n.protoId instanceof CellId)
+        {
+            ERectangle cellBounds = snapshot.getCellBounds((CellId)n.protoId);
+            if (cellBounds != null)
+                bounds.setRect(cellBounds);
+            DBMath.transformRect(bounds, n.orient.rotateAbout(n.anchor.getX(), n.anchor.getY(), 0, 0));
+            return bounds;
+        }
+        b.clear();
+        n.computeBounds(b, bounds);
+        return bounds;
+    }
+
+    private static Rectangle2D getArcBounds(BoundsBuilder b, ImmutableArcInst a)
+    {
+        int[] intCoords = new int[4];
+        if (b.genBoundsEasy(a, intCoords))
+        {
+            return new Rectangle2D.Double(DBMath.gridToLambda(intCoords[0]), DBMath.gridToLambda(intCoords[1]),
+                DBMath.gridToLambda(intCoords[2] - intCoords[0]), DBMath.gridToLambda(intCoords[3] - intCoords[1]));
+        }
+        b.clear();
+        b.genShapeOfArc(a);
+        ERectangle bounds = b.makeBounds();
+        if (bounds == null)
+            return new Rectangle2D.Double(a.tailLocation.getX(), a.tailLocation.getY(), 0, 0);
+        return new Rectangle2D.Double(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+
+    /**
+     * Method to grow regions by the interaction distance and merge overlapping ones.
+     * Too many regions are replaced by their bounding box.
+     */
+    private static List<Rectangle2D> mergeRegions(List<Rectangle2D> regions, double halo)
+    {
+        List<Rectangle2D> merged = new ArrayList<Rectangle2D>();
+        for (Rectangle2D r : regions)
+        {
+            Rectangle2D grown = new Rectangle2D.Double(r.getX() - halo, r.getY() - halo,
+                r.getWidth() + 2*halo, r.getHeight() + 2*halo);
+
+            // absorb regions which overlap the new one until nothing changes
+            boolean changed = true;
+            while (changed)
+            {
+                changed = false;
+                for (Iterator<Rectangle2D> it = merged.iterator(); it.hasNext(); )
+                {
+                    Rectangle2D m = it.next();
+                    if (m.getMaxX() < grown.getMinX() || grown.getMaxX() < m.getMinX() ||
+                        m.getMaxY() < grown.getMinY() || grown.getMaxY() < m.getMinY()) continue;
+                    grown.add(m);
+                    it.remove();
+                    changed = true;
+                }
+            }
+            merged.add(grown);
+        }
+        if (merged.size() > MAX_WINDOWS_PER_CELL)
+        {
+            Rectangle2D bounds = merged.get(0);
+            for (Rectangle2D m : merged)
+                bounds.add(m);
+            merged.clear();
+            merged.add(bounds);
+        }
+        return merged;
+    }
+}
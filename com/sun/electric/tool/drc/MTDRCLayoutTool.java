@@ -49,6 +49,7 @@ import java.awt.geom.Area;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is the "quick" DRC which does full hierarchical examination of the circuit.
@@ -79,12 +80,21 @@ import java.util.*;
  * building these arrays is quick (1 second for a million-transistor chip) and the memory requirement
  * is not excessive (8 megabytes for a million-transistor chip).  It uses the CheckInst and CheckProto
  * objects.
+ * <P>
+ * When DRCPreferences.isTiledMultiThreaded is set, each layer task checks the subcells and then
+ * splits the contents of the top cell into a grid of tiles which are checked as separate tasks.
+ * Every node and arc of the top cell is owned by the tile containing its center, while the
+ * neighborhood searches reach beyond the tile by the worst interaction distance (the tile halo).
+ * Tiles of the same layer share the hierarchical network numbering and the error logger,
+ * so an error between objects of two tiles is reported once.
  * @author  Steve Rubin, Gilda Garreton
  */
 
 public class MTDRCLayoutTool extends MTDRCTool
 {
     private boolean ignoreExtensionRules = true;
+    /** number of tiles per worker thread when the top cell is split */ private static final int TILES_PER_THREAD = 2;
+    /** minimum tile size in units of the worst interaction distance */ private static final double MIN_TILE_HALO_RATIO = 20;
 
     public MTDRCLayoutTool(DRC.DRCPreferences dp, Cell c, boolean ignoreExtensionR, Consumer<MTDRCResult> consumer)
 	{
@@ -101,6 +111,85 @@ public class MTDRCLayoutTool extends MTDRCTool
         return (new Task(rules, this)).runTaskInternal(taskKey);
     }
 
+    @Override
+    MTDRCResult runTaskInternal(MTDRCTaskKey taskKey) {
+        if (taskKey instanceof TileKey)
+            return (new Task(rules, this)).runTileInternal((TileKey)taskKey);
+        return super.runTaskInternal(taskKey);
+    }
+
+    /**
+     * Class to describe the grid of tiles of the top cell for one layer.
+     * It keeps the layer task which owns the hierarchical network numbering
+     * and counts the tiles still running, so the last tile terminates the logging
+     * even when other tiles have failed.
+     */
+    private static class TileGroup
+    {
+        private final Task layerTask;
+        private final ErrorLogger errorLogger;
+        private final double lX, lY, tileWidth, tileHeight;
+        private final int nX, nY;
+        private final AtomicInteger tilesLeft;
+
+        TileGroup(Task layerTask, ErrorLogger errorLogger, Rectangle2D bounds, int nX, int nY)
+        {
+            this.layerTask = layerTask;
+            this.errorLogger = errorLogger;
+            this.lX = bounds.getMinX();
+            this.lY = bounds.getMinY();
+            this.tileWidth = bounds.getWidth() / nX;
+            this.tileHeight = bounds.getHeight() / nY;
+            this.nX = nX;
+            this.nY = nY;
+            tilesLeft = new AtomicInteger(nX * nY);
+        }
+
+        private static int getIndex(double v, double low, double size, int num)
+        {
+            int i = (int)Math.floor((v - low) / size);
+            return Math.max(0, Math.min(num - 1, i));
+        }
+
+        /**
+         * Method to mark one tile as done.
+         * @return true if it was the last tile of the layer.
+         */
+        boolean tileDone()
+        {
+            return tilesLeft.decrementAndGet() == 0;
+        }
+    }
+
+    /**
+     * Class to identify the task which checks one tile of the top cell.
+     */
+    private static class TileKey extends MTDRCTaskKey
+    {
+        private final TileGroup group;
+        private final int x, y;
+
+        TileKey(Layer layer, TileGroup group, int x, int y)
+        {
+            super(layer);
+            this.group = group;
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * Method to determine whether a Geometric of the top cell is checked by this tile.
+         * @param geom the Geometric.
+         * @return true if the center of the Geometric is in this tile.
+         */
+        boolean owns(Geometric geom)
+        {
+            Rectangle2D bounds = geom.getBounds();
+            return TileGroup.getIndex(bounds.getCenterX(), group.lX, group.tileWidth, group.nX) == x &&
+                TileGroup.getIndex(bounds.getCenterY(), group.lY, group.tileHeight, group.nY) == y;
+        }
+    }
+
     private class Task {
 
         private HashMap<NodeInst,CheckInst> checkInsts;
@@ -133,6 +222,9 @@ public class MTDRCLayoutTool extends MTDRCTool
         private Layer.Function.Set thisLayerFunction;
         private DRCRules currentRules;
         private Job job;
+        /** true if the top cell contents may be split into tiles */    private boolean splitTopCell;
+        /** tiles of the top cell created by this layer task */        private TileGroup tileGroup;
+        /** tile checked by this task, null if not a tile task */      private TileKey tile;
 
         Task(DRCRules rules, Job j)
         {
@@ -282,7 +374,19 @@ public class MTDRCLayoutTool extends MTDRCTool
             if (count == 0)
             {
                 // just do full DRC here
+                splitTopCell = dp.isTiledMultiThreaded && thisLayerFunction != null;
                 checkThisCell(topCell, 0, bounds);
+                if (tileGroup != null)
+                {
+                    // the top cell is checked by the tiles. The last tile terminates the logging
+                    for (int y = 0; y < tileGroup.nY; y++)
+                    {
+                        for (int x = 0; x < tileGroup.nX; x++)
+                            startTask(name + " (" + x + "," + y + ")", new TileKey(theLayer, tileGroup, x, y));
+                    }
+                    return new MTDRCResult(0, 0, !checkAbort(), goodSpacingDRCDate, cleanSpacingDRCDate,
+                        goodAreaDRCDate, cleanAreaDRCDate, null);
+                }
                 // sort the errors by layer
                 errorLogger.sortLogs();
             } else
@@ -317,6 +421,85 @@ public class MTDRCLayoutTool extends MTDRCTool
                 goodAreaDRCDate, cleanAreaDRCDate, null);
         }
 
+        /**
+         * Method to check the contents of the top cell in one tile.
+         * The hierarchical network numbering and the DRC exclusions are taken
+         * from the layer task which created the tile, they are not modified by the check.
+         */
+        private MTDRCResult runTileInternal(TileKey key)
+        {
+            TileGroup group = key.group;
+            Task layerTask = group.layerTask;
+            theLayer = key.layer;
+            thisLayerFunction = layerTask.thisLayerFunction;
+            tile = key;
+            reportInfo = new DRC.ReportInfo(group.errorLogger, topCell.getTechnology(), dp, false);
+            validLayers = layerTask.validLayers;
+            checkProtos = layerTask.checkProtos;
+            checkInsts = layerTask.checkInsts;
+            networkLists = layerTask.networkLists;
+            exclusionMap = layerTask.exclusionMap;
+
+            // a failure of the check is propagated to the job after the tile is counted as done
+            boolean last;
+            try
+            {
+                Date lastSpacingGoodDate = DRC.getLastDRCDateBasedOnBits(topCell, true, reportInfo.activeSpacingBits, !reportInfo.inMemory);
+                reportInfo.totalSpacingMsgFound = 0;
+                if (checkCellContents(topCell, 0, null, exclusionMap.get(topCell), getCheckProto(topCell)) >= 0)
+                {
+                    if (reportInfo.totalSpacingMsgFound > 0)
+                        cleanSpacingDRCDate.add(topCell);
+                    else if (lastSpacingGoodDate == null)
+                        goodSpacingDRCDate.add(topCell);
+                }
+            } finally
+            {
+                last = group.tileDone();
+                if (last)
+                {
+                    group.errorLogger.sortLogs();
+                    group.errorLogger.termLogging(true);
+                }
+            }
+
+            int numErrors = 0, numWarns = 0;
+            if (last)
+            {
+                numErrors = group.errorLogger.getNumErrors();
+                numWarns = group.errorLogger.getNumWarnings();
+            }
+            return new MTDRCResult(numErrors, numWarns, !checkAbort(), goodSpacingDRCDate, cleanSpacingDRCDate,
+                goodAreaDRCDate, cleanAreaDRCDate, null);
+        }
+
+        /**
+         * Method to split the contents of the top cell into tiles.
+         * The number of tiles depends on the number of threads but tiles
+         * are kept much larger than the worst interaction distance.
+         * @return the grid of tiles or null if the top cell should be checked at once.
+         */
+        private TileGroup makeTileGroup()
+        {
+            Rectangle2D cellBounds = topCell.getBounds();
+            double width = cellBounds.getWidth();
+            double height = cellBounds.getHeight();
+            int numTiles = getNumWorkers() * TILES_PER_THREAD;
+            if (numTiles <= 1 || width <= 0 || height <= 0) return null;
+
+            int nX = (int)Math.round(Math.sqrt(numTiles * width / height));
+            nX = Math.max(1, Math.min(numTiles, nX));
+            int nY = (numTiles + nX - 1) / nX;
+            double minSize = reportInfo.worstInteractionDistance * MIN_TILE_HALO_RATIO;
+            if (minSize > 0)
+            {
+                nX = Math.max(1, Math.min(nX, (int)(width / minSize)));
+                nY = Math.max(1, Math.min(nY, (int)(height / minSize)));
+            }
+            if (nX * nY <= 1) return null;
+            return new TileGroup(this, reportInfo.errorLogger, cellBounds, nX, nY);
+        }
+
         /*************************** QUICK DRC CELL EXAMINATION ***************************/
 
         /**
@@ -447,12 +630,68 @@ public class MTDRCLayoutTool extends MTDRCTool
                     cleanAreaDRCDate.add(cell);
             }
 
+            // the contents of the top cell are left to the tiles
+            if (splitTopCell && cell == topCell)
+            {
+                tileGroup = makeTileGroup();
+                if (tileGroup != null) return 0;
+            }
+
+            if (checkCellContents(cell, globalIndex, bounds, area, cp) < 0)
+                return -1;
+
+            // If message founds, then remove any possible good date
+            // !allSubCellsStillOK disconnected on April 18, 2006. totalMsgFound should
+            // dictate if this cell is re-marked.
+            if (reportInfo.totalSpacingMsgFound > 0) //  || !allSubCellsStillOK)
+            {
+                cleanSpacingDRCDate.add(cell);
+            } else
+            {
+                // Only mark the cell when it passes with a new version of DRC or didn't have
+                // the DRC bit on
+                // If lastGoodDate == null, wrong bits stored or no date available.
+                if (lastSpacingGoodDate == null)
+                    goodSpacingDRCDate.add(cell);
+            }
+
+            // if there were no errors, remember that
+            if (reportInfo.errorLogger != null && printLog)
+            {
+                int localErrors = reportInfo.errorLogger.getNumErrors() - prevErrors;
+                int localWarnings = reportInfo.errorLogger.getNumWarnings() - prevWarns;
+                long endTime = System.currentTimeMillis();
+                if (localErrors == 0 && localWarnings == 0)
+                {
+                    System.out.println("\tNo errors/warnings found");
+                } else
+                {
+                    if (localErrors > 0)
+                        System.out.println("\tFOUND " + localErrors + " ERRORS");
+                    if (localWarnings > 0)
+                        System.out.println("\tFOUND " + localWarnings + " WARNINGS");
+                }
+                if (Job.getDebug())
+                    System.out.println("\t(took " + TextUtils.getElapsedTime(endTime - startTime) + ")");
+            }
+
+            return reportInfo.totalSpacingMsgFound;
+        }
+
+        /**
+         * Method to check the nodes and arcs of cell "cell" with global network index "globalIndex".
+         * Subcells are not examined. When checking a tile, only the objects of the tile are examined.
+         * @return zero or -1 if job was aborted.
+         */
+        private int checkCellContents(Cell cell, int globalIndex, Rectangle2D bounds, Area area, CheckProto cp)
+        {
             for (Iterator<NodeInst> it = cell.getNodes(); it.hasNext();)
             {
                 // Job aborted or scheduled for abort
                 if (checkAbort()) return -1;
 
                 NodeInst ni = it.next();
+                if (tile != null && !tile.owns(ni)) continue;
 
                 if (bounds != null)
                 {
@@ -492,6 +731,7 @@ public class MTDRCLayoutTool extends MTDRCTool
                     if (checkAbort()) return -1;
 
                     ArcInst ai = it.next();
+                    if (tile != null && !tile.owns(ai)) continue;
                     Technology tech = ai.getProto().getTechnology();
                     if (tech != cellTech)
                     {
@@ -509,43 +749,7 @@ public class MTDRCLayoutTool extends MTDRCTool
                     }
                 }
             }
-
-            // If message founds, then remove any possible good date
-            // !allSubCellsStillOK disconnected on April 18, 2006. totalMsgFound should
-            // dictate if this cell is re-marked.
-            if (reportInfo.totalSpacingMsgFound > 0) //  || !allSubCellsStillOK)
-            {
-                cleanSpacingDRCDate.add(cell);
-            } else
-            {
-                // Only mark the cell when it passes with a new version of DRC or didn't have
-                // the DRC bit on
-                // If lastGoodDate == null, wrong bits stored or no date available.
-                if (lastSpacingGoodDate == null)
-                    goodSpacingDRCDate.add(cell);
-            }
-
-            // if there were no errors, remember that
-            if (reportInfo.errorLogger != null && printLog)
-            {
-                int localErrors = reportInfo.errorLogger.getNumErrors() - prevErrors;
-                int localWarnings = reportInfo.errorLogger.getNumWarnings() - prevWarns;
-                long endTime = System.currentTimeMillis();
-                if (localErrors == 0 && localWarnings == 0)
-                {
-                    System.out.println("\tNo errors/warnings found");
-                } else
-                {
-                    if (localErrors > 0)
-                        System.out.println("\tFOUND " + localErrors + " ERRORS");
-                    if (localWarnings > 0)
-                        System.out.println("\tFOUND " + localWarnings + " WARNINGS");
-                }
-                if (Job.getDebug())
-                    System.out.println("\t(took " + TextUtils.getElapsedTime(endTime - startTime) + ")");
-            }
-
-            return reportInfo.totalSpacingMsgFound;
+            return 0;
         }
 
         /**
@@ -40,7 +40,7 @@ import java.util.*;
  * User: gg151869
  * Date: Dec 12, 2007
  */
-public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResult, MTDRCTool.MTDRCResult>
+public abstract class MTDRCTool extends MultiTaskJob<MTDRCTool.MTDRCTaskKey, MTDRCTool.MTDRCResult, MTDRCTool.MTDRCResult>
 //public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResult, MTDRCTool.MTDRCResult>
 {
     protected DRC.DRCPreferences dp;
@@ -71,14 +71,14 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
         for (String layerS : layers)
         {
             Layer layer = tech.findLayer(layerS);
-            startTask(layer.getName(), layer);
+            startTask(layer.getName(), new MTDRCTaskKey(layer));
         }
         if (!checkArea())
-            startTask("Node Min Size.", null);
+            startTask("Node Min Size.", new MTDRCTaskKey(null));
     }
 
     @Override
-    public MTDRCResult mergeTaskResults(Map<Layer,MTDRCResult> taskResults)
+    public MTDRCResult mergeTaskResults(Map<MTDRCTaskKey,MTDRCResult> taskResults)
     {
         int numTE = 0, numTW = 0;
         Set<Cell> goodSpacingSet = new HashSet<Cell>();
@@ -87,7 +87,7 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
         Set<Cell> cleanAreaSet = new HashSet<Cell>();
         boolean runFine = true;
 
-        for (Map.Entry<Layer, MTDRCResult> e : taskResults.entrySet())
+        for (Map.Entry<MTDRCTaskKey, MTDRCResult> e : taskResults.entrySet())
         {
             MTDRCResult p = e.getValue();
             numTE += p.numErrors;
@@ -100,7 +100,7 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
             cleanAreaSet.addAll(p.cleanAreaDRCDate);
         }
         // Now that all the cells to be clean are collected, then good cells can be stored.
-        for (Map.Entry<Layer, MTDRCResult> e : taskResults.entrySet())
+        for (Map.Entry<MTDRCTaskKey, MTDRCResult> e : taskResults.entrySet())
         {
             MTDRCResult p = e.getValue();
             for (Cell c : p.goodSpacingDRCDate)
@@ -132,13 +132,23 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
     }
 
     @Override
-    public MTDRCResult runTask(Layer taskKey)
+    public MTDRCResult runTask(MTDRCTaskKey taskKey)
     {
-        if (skipLayer(taskKey))
+        if (skipLayer(taskKey.layer))
             return null;
         return runTaskInternal(taskKey);
     }
 
+    /**
+     * Method to run one task. Tools which split a layer into several tasks override it.
+     * @param taskKey the task to run.
+     * @return result of the task.
+     */
+    MTDRCResult runTaskInternal(MTDRCTaskKey taskKey)
+    {
+        return runTaskInternal(taskKey.layer);
+    }
+
     abstract MTDRCResult runTaskInternal(Layer taskKey);
 
     abstract boolean checkArea();
@@ -163,6 +173,26 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
         return false;
     }
 
+    /**
+     * Class to identify a DRC task. Each task checks one layer
+     * (null layer means node min size) and keys are distinct objects
+     * even if several tasks check the same layer.
+     */
+    public static class MTDRCTaskKey
+    {
+        final Layer layer;
+
+        MTDRCTaskKey(Layer layer)
+        {
+            this.layer = layer;
+        }
+
+        public Layer getLayer()
+        {
+            return layer;
+        }
+    }
+
     public static class MTDRCResult
     {
         private int numErrors, numWarns;
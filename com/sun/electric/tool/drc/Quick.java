@@ -99,6 +99,7 @@ public class Quick
     private HashMap<Geometric,Geometric> nodesMap = new HashMap<Geometric,Geometric>(); // for node caching
     private GeometryHandler.GHMode mergeMode = GeometryHandler.GHMode.ALGO_SWEEP; // .ALGO_QTREE;
     private Map<Layer,NodeInst> od2Layers = new HashMap<Layer,NodeInst>(3);  /** to control OD2 combination in the same die according to foundries */
+    private List<Rectangle2D> windows; // regions of the top cell to recheck, null to check the whole cell
 
 	public Quick(DRC.CheckDRCJob j, DRC.DRCPreferences dp, GeometryHandler.GHMode mode)
 	{
@@ -126,7 +127,7 @@ public class Quick
     {
         ErrorLogger errorLog = DRC.getDRCErrorLogger(true, null);
         checkDesignRules(errorLog, cell, geomsToCheck, validity, null, null, dp,
-                GeometryHandler.GHMode.ALGO_SWEEP, false);
+                dp.getMergeMode(), false);
         return errorLog;
     }
 
@@ -148,6 +149,26 @@ public class Quick
         q.doCheck(errorLog, cell, geomsToCheck, validity, bounds, onlyArea);
 	}
 
+    /**
+     * Method to recheck only some regions of a cell.
+     * Objects of the cell which touch the windows are checked against their surroundings,
+     * including the contents of neighboring instances, but the contents of subcells are not examined.
+     * Area rules are not checked and DRC dates are not updated since the cell is only partially checked.
+     * @param errorLog the logger for errors found.
+     * @param cell the cell to check.
+     * @param windows regions of the cell to check.
+     * @param drcJob the running job.
+     * @param dp DRC preferences.
+     * @param mode the merge algorithm to use.
+     */
+    public static void checkDesignRulesInWindows(ErrorLogger errorLog, Cell cell, List<Rectangle2D> windows,
+                                                 DRC.CheckDRCJob drcJob, DRC.DRCPreferences dp, GeometryHandler.GHMode mode)
+    {
+        Quick q = new Quick(drcJob, dp.withIgnoreAreaCheck(true), mode);
+        q.windows = windows;
+        q.doCheck(errorLog, cell, null, null, null, false);
+    }
+
     // returns the number of errors found
 	private void doCheck(ErrorLogger errorLog, Cell cell, Geometric[] geomsToCheck, boolean[] validity,
                                 Rectangle2D bounds, boolean onlyArea)
@@ -318,7 +339,10 @@ public class Quick
 		if (count == 0)
 		{
 			// just do full DRC here
-			/*totalErrors =*/ checkThisCell(cell, 0, bounds);
+            if (windows != null)
+                checkWindows(cell);
+            else
+			    /*totalErrors =*/ checkThisCell(cell, 0, bounds);
 			// sort the errors by layer
 			errorLogger.sortLogs();
 		} else
@@ -347,7 +371,7 @@ public class Quick
 		// some cells were sucessfully checked: save that information in the database
 	    // some cells don't have valid DRC date anymore and therefore they should be clean
         // This is only going to happen if job was not aborted.
-	    if ((job == null || !job.checkAbort()))
+	    if ((job == null || !job.checkAbort()) && windows == null)
 	    {
             DRC.addDRCUpdate(reportInfo.activeSpacingBits, goodSpacingDRCDate, cleanSpacingDRCDate,
                 goodAreaDRCDate, cleanAreaDRCDate, null, dp);
@@ -356,6 +380,58 @@ public class Quick
 
     /*************************** QUICK DRC CELL EXAMINATION ***************************/
 
+	/**
+	 * Method to check the nodes and arcs of cell "cell" which touch the windows.
+	 * Cell instances are checked for their interactions only.
+	 * @param cell the top cell.
+	 * @return number of objects with errors, -1 if job was aborted.
+	 */
+	private int checkWindows(Cell cell)
+	{
+        // Check if cell doesn't have special annotation
+        Variable drcVar = cell.getVar(DRC.DRC_ANNOTATION_KEY);
+        if (drcVar != null && drcVar.getObject(0).toString().toUpperCase().equals("BLACK"))
+            return 0;
+
+		CheckProto cp = getCheckProto(cell);
+        Area area = reportInfo.exclusionMap.get(cell);
+		Technology cellTech = cell.getTechnology();
+		Set<Geometric> checked = new HashSet<Geometric>();
+		int totalMsgFound = 0;
+		for (Rectangle2D window : windows)
+		{
+			for (Iterator<RTBounds> it = cell.searchIterator(window); it.hasNext(); )
+			{
+	            if (job != null && job.checkAbort()) return -1;
+
+				Geometric geom = (Geometric)it.next();
+				if (!checked.add(geom)) continue;
+	            if (area != null && area.contains(geom.getBounds())) continue;
+				boolean ret;
+				if (geom instanceof NodeInst)
+				{
+					NodeInst ni = (NodeInst)geom;
+					ret = (ni.isCellInstance()) ?
+				        checkCellInst(ni, 0) :
+				        checkNodeInst(ni, 0);
+				} else
+				{
+					ArcInst ai = (ArcInst)geom;
+					Technology tech = ai.getProto().getTechnology();
+					if (tech != cellTech)
+					{
+						DRC.createDRCErrorLogger(reportInfo, DRC.DRCErrorType.TECHMIXWARN, " belongs to " + tech.getTechName(),
+		                    cell, 0, 0, null, null, ai, null, null, null, null);
+						continue;
+					}
+					ret = checkArcInst(cp, ai, 0);
+				}
+				if (ret) totalMsgFound++;
+			}
+		}
+		return totalMsgFound;
+	}
+
 	/**
 	 * Method to check the contents of cell "cell" with global network index "globalIndex".
 	 * Returns positive if errors are found, zero if no errors are found, negative on internal error.
@@ -0,0 +1,258 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: ConnectedRegions.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.erc;
+
+import com.sun.electric.database.text.TextUtils;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Class to find the connected regions of a set of rectangles in parallel.
+ * Two rectangles are connected if they overlap or touch.
+ * The bounding box of all rectangles is partitioned into a grid of tiles, and every
+ * rectangle is placed in the tiles that it covers. Each tile is a task of a TaskGroup
+ * which sweeps its rectangles and unites the touching ones in a lock-free union-find structure.
+ * A touching pair is examined only by the tile which holds the lower-left corner of
+ * the intersection, so the tiles never repeat work, and regions which span several tiles
+ * are merged through the shared union-find structure.
+ */
+class ConnectedRegions
+{
+	/** number of tiles per thread */						private static final int TILESPERTHREAD = 4;
+
+	/** the rectangles */									private final Rectangle2D [] rects;
+	/** parent links of the union-find structure */		private final AtomicIntegerArray parent;
+	/** the region of each rectangle */					private int [] regions;
+	/** the number of regions */							private int numRegions;
+
+	/**
+	 * Method to find the connected regions of rectangles.
+	 * @param title description of the rectangles in the timing report.
+	 * @param rectList the rectangles.
+	 * @param parallel true to use several threads.
+	 * @return a ConnectedRegions object with the region of every rectangle.
+	 * @throws JobException if the computation was interrupted.
+	 */
+	static ConnectedRegions findRegions(String title, List<Rectangle2D> rectList, boolean parallel)
+		throws JobException
+	{
+		ConnectedRegions cr = new ConnectedRegions(rectList);
+		cr.compute(title, parallel);
+		return cr;
+	}
+
+	private ConnectedRegions(List<Rectangle2D> rectList)
+	{
+		rects = rectList.toArray(new Rectangle2D[rectList.size()]);
+		parent = new AtomicIntegerArray(rects.length);
+		for(int i=0; i<rects.length; i++) parent.set(i, i);
+	}
+
+	/**
+	 * Method to return the number of connected regions.
+	 * @return the number of connected regions.
+	 */
+	int getNumRegions() { return numRegions; }
+
+	/**
+	 * Method to return the region of a rectangle.
+	 * Regions are numbered from 0 in the order of their first rectangle.
+	 * @param index the index of the rectangle in the list.
+	 * @return the region of the rectangle.
+	 */
+	int getRegion(int index) { return regions[index]; }
+
+	private void compute(String title, boolean parallel)
+		throws JobException
+	{
+		long startTime = System.currentTimeMillis();
+		if (rects.length == 0)
+		{
+			regions = new int[0];
+			return;
+		}
+
+		// partition the bounding box into tiles
+		TaskGroup group = new TaskGroup(title + " regions", parallel);
+		double lX = Double.MAX_VALUE, hX = -Double.MAX_VALUE;
+		double lY = Double.MAX_VALUE, hY = -Double.MAX_VALUE;
+		for(Rectangle2D r : rects)
+		{
+			lX = Math.min(lX, r.getMinX());   hX = Math.max(hX, r.getMaxX());
+			lY = Math.min(lY, r.getMinY());   hY = Math.max(hY, r.getMaxY());
+		}
+		int numTiles = group.getNumThreads() <= 1 ? 1 : group.getNumThreads() * TILESPERTHREAD;
+		int tilesAcross = Math.max(1, (int)Math.ceil(Math.sqrt(numTiles)));
+		Grid grid = new Grid(lX, lY, hX, hY, tilesAcross);
+		int [] tileCounts = new int[grid.numTiles()];
+		for(Rectangle2D r : rects)
+		{
+			for(int ty = grid.tileY(r.getMinY()), ey = grid.tileY(r.getMaxY()); ty <= ey; ty++)
+				for(int tx = grid.tileX(r.getMinX()), ex = grid.tileX(r.getMaxX()); tx <= ex; tx++)
+					tileCounts[ty*tilesAcross + tx]++;
+		}
+		final int [][] tiles = new int[tileCounts.length][];
+		for(int t=0; t<tiles.length; t++) tiles[t] = new int[tileCounts[t]];
+		Arrays.fill(tileCounts, 0);
+		for(int i=0; i<rects.length; i++)
+		{
+			Rectangle2D r = rects[i];
+			for(int ty = grid.tileY(r.getMinY()), ey = grid.tileY(r.getMaxY()); ty <= ey; ty++)
+				for(int tx = grid.tileX(r.getMinX()), ex = grid.tileX(r.getMaxX()); tx <= ex; tx++)
+				{
+					int t = ty*tilesAcross + tx;
+					tiles[t][tileCounts[t]++] = i;
+				}
+		}
+		long partitionTime = System.currentTimeMillis();
+
+		// unite touching rectangles in every tile
+		for(int t=0; t<tiles.length; t++)
+		{
+			if (tiles[t].length <= 1) continue;
+			final int tile = t;
+			final Grid g = grid;
+			group.submit("Tile " + t, new Runnable() {
+				public void run() { uniteInTile(tiles[tile], tile, g); }
+			});
+		}
+		group.await();
+		long unionTime = System.currentTimeMillis();
+
+		// number the regions
+		regions = new int[rects.length];
+		int [] regionOfRoot = new int[rects.length];
+		Arrays.fill(regionOfRoot, -1);
+		for(int i=0; i<rects.length; i++)
+		{
+			int root = find(i);
+			if (regionOfRoot[root] < 0) regionOfRoot[root] = numRegions++;
+			regions[i] = regionOfRoot[root];
+		}
+		long endTime = System.currentTimeMillis();
+		System.out.println("   " + title + ": " + rects.length + " pieces in " + numRegions + " regions, " +
+			grid.numTiles() + " tiles on " + group.getNumThreads() + " threads (partition " +
+			TextUtils.getElapsedTime(partitionTime - startTime) + ", union " +
+			TextUtils.getElapsedTime(unionTime - partitionTime) + ", numbering " +
+			TextUtils.getElapsedTime(endTime - unionTime) + ")");
+	}
+
+	/**
+	 * Method to unite the touching rectangles of a tile.
+	 * The rectangles are swept in order of their left edge.
+	 */
+	private void uniteInTile(int [] members, int tile, Grid grid)
+	{
+		Integer [] order = new Integer[members.length];
+		for(int i=0; i<members.length; i++) order[i] = Integer.valueOf(members[i]);
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer i1, Integer i2)
+			{
+				return Double.compare(rects[i1.intValue()].getMinX(), rects[i2.intValue()].getMinX());
+			}
+		});
+		for(int i=0; i<order.length; i++)
+		{
+			int a = order[i].intValue();
+			Rectangle2D ra = rects[a];
+			for(int j=i+1; j<order.length; j++)
+			{
+				int b = order[j].intValue();
+				Rectangle2D rb = rects[b];
+				if (rb.getMinX() > ra.getMaxX()) break;
+				if (rb.getMinY() > ra.getMaxY() || rb.getMaxY() < ra.getMinY()) continue;
+
+				// only the tile with the lower-left corner of the intersection takes the pair
+				double cX = Math.max(ra.getMinX(), rb.getMinX());
+				double cY = Math.max(ra.getMinY(), rb.getMinY());
+				if (grid.tileY(cY) * grid.tilesAcross + grid.tileX(cX) != tile) continue;
+				union(a, b);
+			}
+		}
+	}
+
+	/**
+	 * Method to find the root of an element, halving the path on the way.
+	 * Links are only changed to point to an ancestor, so concurrent finds stay correct.
+	 */
+	private int find(int x)
+	{
+		for(;;)
+		{
+			int p = parent.get(x);
+			if (p == x) return x;
+			int gp = parent.get(p);
+			if (gp != p) parent.compareAndSet(x, p, gp);
+			x = gp;
+		}
+	}
+
+	/**
+	 * Method to unite the sets of two elements.
+	 * The root with the higher index is linked below the other one;
+	 * the link is made with compare-and-set and retried if the root changed meanwhile.
+	 */
+	private void union(int a, int b)
+	{
+		for(;;)
+		{
+			a = find(a);
+			b = find(b);
+			if (a == b) return;
+			if (a < b) { int swap = a;   a = b;   b = swap; }
+			if (parent.compareAndSet(a, a, b)) return;
+		}
+	}
+
+	/**
+	 * Class to map coordinates to tiles of a grid.
+	 */
+	private static class Grid
+	{
+		private final double lX, lY, tileWid, tileHei;
+		private final int tilesAcross;
+
+		Grid(double lX, double lY, double hX, double hY, int tilesAcross)
+		{
+			this.lX = lX;
+			this.lY = lY;
+			this.tilesAcross = tilesAcross;
+			tileWid = (hX - lX) / tilesAcross;
+			tileHei = (hY - lY) / tilesAcross;
+		}
+
+		int numTiles() { return tilesAcross * tilesAcross; }
+
+		int tileX(double x) { return tileWid > 0 ? Math.max(0, Math.min(tilesAcross-1, (int)((x - lX) / tileWid))) : 0; }
+
+		int tileY(double y) { return tileHei > 0 ? Math.max(0, Math.min(tilesAcross-1, (int)((y - lY) / tileHei))) : 0; }
+	}
+}
@@ -48,6 +48,7 @@ import com.sun.electric.technology.Technology;
 import com.sun.electric.technology.TransistorSize;
 import com.sun.electric.tool.Job;
 import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.user.ErrorLogger;
 
 import java.awt.geom.AffineTransform;
@@ -167,15 +168,10 @@ public class ERCAntenna
 	/** found active on the path */							private static final int ERCANTPATHACTIVE = 2;
 	/** search was aborted */								private static final int ERCABORTED       = 3;
 
-	/** head of linked list of antenna objects to spread */	private List<AntennaObject>     firstSpreadAntennaObj;
 	/** current technology being considered */				private Technology              curTech;
-	/** accumulated gate area */							private double                  totalGateArea;
 	/** the worst ratio found */							private double                  worstRatio;
-	/** A list of AntennaObjects to process. */				private List<AntennaObject>     pathList;
 	/** Map from ArcProtos to Layers. */					private Map<ArcProto,Layer>     arcProtoToLayer;
 	/** Map from Layers to ArcProtos. */					private Map<Layer,ArcProto>     layerToArcProto;
-	/** Map for marking ArcInsts and NodeInsts. */			private Set<Geometric>          fsGeom;
-	/** Map for marking Cells. */							private Set<Cell>               fsCell;
 	/** for storing errors */								private ErrorLogger             errorLogger;
 	/** preferences */                                      private AntennaPreferences      antennaPrefs;
 
@@ -232,15 +228,14 @@ public class ERCAntenna
 
 	/**
 	 * Method to do the Antenna check.
+	 * Each layer is checked by its own task, and the geometry of every path that ends only on gates
+	 * is merged and measured by a further task. Errors are logged afterwards, in layer and path order,
+	 * so the report does not depend on the order in which tasks finish.
 	 */
-	private int doCheck(Job job, Cell topCell)
+	private int doCheck(Job job, final Cell topCell)
 	{
 		curTech = topCell.getTechnology();
 
-		// maps for marking nodes and arcs, and also for marking cells
-		fsGeom = new HashSet<Geometric>();
-		fsCell = new HashSet<Cell>();
-
 		// create mappings between ArcProtos and Layers
 		arcProtoToLayer = new HashMap<ArcProto,Layer>();
 		layerToArcProto = new HashMap<Layer,ArcProto>();
@@ -267,27 +262,51 @@ public class ERCAntenna
 		long startTime = System.currentTimeMillis();
 		errorLogger = ErrorLogger.newInstance("ERC Antenna Rules Check");
 
-		// now check each layer of the cell
-		int lasterrorcount = 0;
-		worstRatio = 0;
+		// check all layers of the cell in parallel
+		TaskGroup group = new TaskGroup("ERC Antenna Check", true);
+		List<LayerCheck> layerChecks = new ArrayList<LayerCheck>();
 		for(Layer lay : layerToArcProto.keySet())
 		{
-			System.out.println("Checking Antenna rules for " + lay.getName() + "...");
-
-			// clear timestamps on all cells
-			fsCell.clear();
+			final LayerCheck lc = new LayerCheck(lay, job, group);
+			layerChecks.add(lc);
+			group.submit("Antenna " + lay.getName(), new Runnable()
+			{
+				public void run() { lc.aborted = lc.checkThisCell(topCell); }
+			});
+		}
+		try
+		{
+			group.await();
+		} catch (JobException e)
+		{
+			// don't report the partial results of a failed check
+			System.out.println("Antenna check failed: " + e.getMessage());
+			errorLogger.termLogging(true);
+			return -1;
+		}
+		long checkTime = System.currentTimeMillis();
 
-			// do the check for this level
-			if (checkThisCell(topCell, lay, job)) break;
-			int i = errorLogger.getNumErrors();
-			if (i != lasterrorcount)
+		// report the results of each layer
+		worstRatio = 0;
+		for(LayerCheck lc : layerChecks)
+		{
+			System.out.println("Checking Antenna rules for " + lc.lay.getName() + "...");
+			if (lc.aborted) break;
+			int numErrors = 0;
+			for(AntennaPath path : lc.paths)
 			{
-				System.out.println("  Found " + (i - lasterrorcount) + " errors");
-				lasterrorcount = i;
+				if (path.ratio > worstRatio) worstRatio = path.ratio;
+				if (path.errorPolys == null) continue;
+				errorLogger.logMessage(path.errorMessage, path.errorPolys, path.cell, 0, true);
+				numErrors++;
 			}
+			if (numErrors != 0)
+				System.out.println("  Found " + numErrors + " errors");
 		}
 
 		long endTime = System.currentTimeMillis();
+		System.out.println("   Path analysis on " + group.getNumThreads() + " threads took " +
+			TextUtils.getElapsedTime(checkTime - startTime) + ", reporting took " + TextUtils.getElapsedTime(endTime - checkTime));
 		int errorCount = errorLogger.getNumErrors();
 		if (errorCount == 0)
 		{
@@ -301,363 +320,417 @@ public class ERCAntenna
     }
 
 	/**
-	 * Method to check the contents of a cell.
-	 * @param cell the Cell to check.
-	 * @param lay the Layer to check in the Cell.
-	 * @return true if aborted
+	 * Class to hold a path which connects only to gates, and the result of measuring it.
 	 */
-	private boolean checkThisCell(Cell cell, Layer lay, Job job)
+	private class AntennaPath
 	{
-		// examine every node and follow all relevant arcs
-		fsGeom.clear();
-
-		for(Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); )
+		/** the cell in which the path starts */				private final Cell                cell;
+		/** the layer being checked */							private final Layer               lay;
+		/** the objects on the path */							private final List<AntennaObject> objects;
+		/** the gate area on the path */						private final double              gateArea;
+		/** the antenna ratio of the path */					private double                    ratio;
+		/** the error message, if the ratio is too large */		private String                    errorMessage;
+		/** the merged geometry, if the ratio is too large */	private List<PolyBase>            errorPolys;
+
+		AntennaPath(Cell cell, Layer lay, List<AntennaObject> objects, double gateArea)
 		{
-			if (job != null && job.checkAbort()) return true;
-
-			NodeInst ni = it.next();
-			if (fsGeom.contains(ni)) continue;
-			fsGeom.add(ni);
+			this.cell = cell;
+			this.lay = lay;
+			this.objects = objects;
+			this.gateArea = gateArea;
+		}
 
-			// check every connection on the node
-			for(Iterator<PortInst> pIt = ni.getPortInsts(); pIt.hasNext(); )
+		/**
+		 * Method to merge the geometry of the path and to compare its antenna ratio with the limit.
+		 */
+		void measure()
+		{
+			// gather the geometry here
+			PolyMerge vmerge = null;
+			for(AntennaObject ao : objects)
 			{
-				PortInst pi = pIt.next();
-				// ignore if an arc on this port is already seen
-				boolean seen = false;
-				for(Iterator<Connection> cIt = pi.getConnections(); cIt.hasNext(); )
+				if (ao.geom instanceof NodeInst)
 				{
-					Connection con = cIt.next();
-					ArcInst ai = con.getArc();
-					if (fsGeom.contains(ai)) { seen = true;   break; }
-				}
-				if (seen) continue;
+					NodeInst oni = (NodeInst)ao.geom;
+					AffineTransform trans = oni.rotateOut();
+					for(int i = ao.depth-1; i >= 0; i--)
+					{
+						AffineTransform tTrans = ao.hierstack[i].translateOut();
+						trans.concatenate(tTrans);
+						AffineTransform rTrans = ao.hierstack[i].rotateOut();
+						trans.concatenate(rTrans);
+					}
 
-				totalGateArea = 0.0;
-				pathList = new ArrayList<AntennaObject>();
-				int found = followNode(ni, pi.getPortProto(), lay, DBMath.MATID, job);
-				if (found == ERCABORTED) return true;
-				if (found == ERCANTPATHGATE)
+					Technology tech = oni.getProto().getTechnology();
+					if (tech != curTech) continue;
+					Poly [] polyList = tech.getShapeOfNode(oni);
+					if (polyList == null) continue;
+					for(int i=0; i<polyList.length; i++)
+					{
+						Poly poly = polyList[i];
+						if (poly.getLayer() != lay) continue;
+						if (vmerge == null)
+							vmerge = new PolyMerge();
+						poly.transform(trans);
+						vmerge.addPolygon(poly.getLayer(), poly);
+					}
+				} else
 				{
-					// gather the geometry here
-					PolyMerge vmerge = null;
-					for(AntennaObject ao : pathList)
+					ArcInst ai = (ArcInst)ao.geom;
+					AffineTransform trans = new AffineTransform();
+					for(int i = ao.depth-1; i >= 0; i--)
 					{
-						if (ao.geom instanceof NodeInst)
-						{
-							NodeInst oni = (NodeInst)ao.geom;
-							AffineTransform trans = oni.rotateOut();
-							for(int i = ao.depth-1; i >= 0; i--)
-							{
-								AffineTransform tTrans = ao.hierstack[i].translateOut();
-								trans.concatenate(tTrans);
-								AffineTransform rTrans = ao.hierstack[i].rotateOut();
-								trans.concatenate(rTrans);
-							}
-
-							Technology tech = oni.getProto().getTechnology();
-							if (tech != curTech) continue;
-							Poly [] polyList = tech.getShapeOfNode(oni);
-							if (polyList == null) continue;
-							for(int i=0; i<polyList.length; i++)
-							{
-								Poly poly = polyList[i];
-								if (poly.getLayer() != lay) continue;
-								if (vmerge == null)
-									vmerge = new PolyMerge();
-								poly.transform(trans);
-								vmerge.addPolygon(poly.getLayer(), poly);
-							}
-						} else
-						{
-							ArcInst ai = (ArcInst)ao.geom;
-							AffineTransform trans = new AffineTransform();
-							for(int i = ao.depth-1; i >= 0; i--)
-							{
-								AffineTransform tTrans = ao.hierstack[i].translateOut();
-								trans.concatenate(tTrans);
-								AffineTransform rTrans = ao.hierstack[i].rotateOut();
-								trans.concatenate(rTrans);
-							}
-
-							Technology tech = ai.getProto().getTechnology();
-							if (tech != curTech) continue;
-							Poly [] polyList = tech.getShapeOfArc(ai);
-							for(int i=0; i<polyList.length; i++)
-							{
-								Poly poly = polyList[i];
-								if (poly.getLayer() != lay) continue;
-								if (vmerge == null)
-									vmerge = new PolyMerge();
-								poly.transform(trans);
-								vmerge.addPolygon(poly.getLayer(), poly);
-							}
-						}
+						AffineTransform tTrans = ao.hierstack[i].translateOut();
+						trans.concatenate(tTrans);
+						AffineTransform rTrans = ao.hierstack[i].rotateOut();
+						trans.concatenate(rTrans);
 					}
-					if (vmerge != null)
+
+					Technology tech = ai.getProto().getTechnology();
+					if (tech != curTech) continue;
+					Poly [] polyList = tech.getShapeOfArc(ai);
+					for(int i=0; i<polyList.length; i++)
 					{
-						// get the area of the antenna
-						double totalRegionPerimeterArea = 0.0;
-						for (Layer oLay : vmerge.getKeySet())
-						{
-							double thickness = oLay.getThickness();
-							if (thickness == 0)
-							{
-								if (oLay.getFunction().isMetal()) thickness = DEFMETALTHICKNESS; else
-									if (oLay.getFunction().isPoly()) thickness = DEFPOLYTHICKNESS;
-							}
-							List<PolyBase> merges = vmerge.getMergedPoints(oLay, true);
-							for(PolyBase merged : merges)
-							{
-								totalRegionPerimeterArea += merged.getPerimeter() * thickness;
-							}
-						}
-
-						// see if it is an antenna violation
-						double ratio = totalRegionPerimeterArea / totalGateArea;
-						double neededratio = getAntennaRatio(lay);
-						if (ratio > worstRatio) worstRatio = ratio;
-						if (ratio >= neededratio)
-						{
-							// error
-							String errMsg = "layer " + lay.getName() + " has perimeter-area " + totalRegionPerimeterArea +
-								"; gates have area " + totalGateArea + ", ratio is " + ratio + " but limit is " + neededratio;
-							List<PolyBase> polyList = new ArrayList<PolyBase>();
-							for (Layer oLay : vmerge.getKeySet())
-							{
-								List<PolyBase> merges = vmerge.getMergedPoints(oLay, true);
-								for(PolyBase merged : merges)
-								{
-									polyList.add(merged);
-								}
-							}
-							errorLogger.logMessage(errMsg, polyList, cell, 0, true);
-						}
+						Poly poly = polyList[i];
+						if (poly.getLayer() != lay) continue;
+						if (vmerge == null)
+							vmerge = new PolyMerge();
+						poly.transform(trans);
+						vmerge.addPolygon(poly.getLayer(), poly);
 					}
 				}
 			}
-		}
+			if (vmerge == null) return;
 
-		// now look at subcells
-		fsCell.add(cell);
-		for(Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); )
-		{
-			NodeInst ni = it.next();
-			if (!ni.isCellInstance()) continue;
-			Cell subCell = (Cell)ni.getProto();
-			if (fsCell.contains(subCell)) continue;
+			// get the area of the antenna
+			double totalRegionPerimeterArea = 0.0;
+			for (Layer oLay : vmerge.getKeySet())
+			{
+				double thickness = oLay.getThickness();
+				if (thickness == 0)
+				{
+					if (oLay.getFunction().isMetal()) thickness = DEFMETALTHICKNESS; else
+						if (oLay.getFunction().isPoly()) thickness = DEFPOLYTHICKNESS;
+				}
+				List<PolyBase> merges = vmerge.getMergedPoints(oLay, true);
+				for(PolyBase merged : merges)
+				{
+					totalRegionPerimeterArea += merged.getPerimeter() * thickness;
+				}
+			}
 
-			if (checkThisCell(subCell, lay, job)) return true;
+			// see if it is an antenna violation
+			ratio = totalRegionPerimeterArea / gateArea;
+			double neededratio = getAntennaRatio(lay);
+			if (ratio >= neededratio)
+			{
+				// error
+				errorMessage = "layer " + lay.getName() + " has perimeter-area " + totalRegionPerimeterArea +
+					"; gates have area " + gateArea + ", ratio is " + ratio + " but limit is " + neededratio;
+				errorPolys = new ArrayList<PolyBase>();
+				for (Layer oLay : vmerge.getKeySet())
+				{
+					List<PolyBase> merges = vmerge.getMergedPoints(oLay, true);
+					for(PolyBase merged : merges)
+					{
+						errorPolys.add(merged);
+					}
+				}
+			}
 		}
-		return false;
 	}
 
 	/**
-	 * Method to follow a node around the cell.
-	 * @param ni the NodeInst to follow.
-	 * @param pp the PortProto on the NodeInst.
-	 * @param lay the layer to consider.
-	 * @param trans a transformation to the top-level.
-	 * @param job the Job that is running (for abort checking).
-	 * @return ERCANTPATHNULL if it found no gate or active on the path.
-	 * Returns ERCANTPATHGATE if it found gates on the path.
-	 * Returns ERCANTPATHACTIVE if it found active on the path.
+	 * Class to follow the paths of one layer through the hierarchy.
+	 * Each instance has its own marking state, so layers are checked independently.
 	 */
-	private int followNode(NodeInst ni, PortProto pp, Layer lay, AffineTransform trans, Job job)
+	private class LayerCheck
 	{
-		// presume that nothing was found
-		int ret = ERCANTPATHNULL;
-		firstSpreadAntennaObj = new ArrayList<AntennaObject>();
-		NodeInst [] antstack = new NodeInst[200];
-		int depth = 0;
-
-		// keep walking along the nodes and arcs
-		for(;;)
+		/** the layer being checked */							private final Layer               lay;
+		/** the Job that is running (for abort checking) */		private final Job                 job;
+		/** the group which measures the paths */				private final TaskGroup           group;
+		/** the paths which connect only to gates */			private final List<AntennaPath>   paths = new ArrayList<AntennaPath>();
+		/** true if the check was aborted */					private boolean                   aborted;
+		/** head of linked list of antenna objects to spread */	private List<AntennaObject>       firstSpreadAntennaObj;
+		/** accumulated gate area */							private double                    totalGateArea;
+		/** A list of AntennaObjects to process. */				private List<AntennaObject>       pathList;
+		/** Map for marking ArcInsts and NodeInsts. */			private final Set<Geometric>      fsGeom = new HashSet<Geometric>();
+		/** Map for marking Cells. */							private final Set<Cell>           fsCell = new HashSet<Cell>();
+
+		LayerCheck(Layer lay, Job job, TaskGroup group)
 		{
-			if (job != null && job.checkAbort()) return ERCABORTED;
+			this.lay = lay;
+			this.job = job;
+			this.group = group;
+		}
 
-			// if this is a subcell, recurse on it
-			fsGeom.add(ni);
-			NodeInst thisni = ni;
-			while (thisni.isCellInstance())
-			{
-				antstack[depth] = thisni;
-				depth++;
-				thisni = ((Export)pp).getOriginalPort().getNodeInst();
-				pp = ((Export)pp).getOriginalPort().getPortProto();
-			}
+		/**
+		 * Method to check the contents of a cell.
+		 * @param cell the Cell to check.
+		 * @return true if aborted
+		 */
+		private boolean checkThisCell(Cell cell)
+		{
+			// examine every node and follow all relevant arcs
+			fsGeom.clear();
 
-			// see if we hit a transistor
-			boolean seen = false;
-			if (thisni.getFunction().isFET())
+			for(Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); )
 			{
-				// stop tracing
-				if (thisni.getTransistorDrainPort().getPortProto() == pp ||
-					thisni.getTransistorSourcePort().getPortProto() == pp)
+				if (job != null && job.checkAbort()) return true;
+
+				NodeInst ni = it.next();
+				if (fsGeom.contains(ni)) continue;
+				fsGeom.add(ni);
+
+				// check every connection on the node
+				for(Iterator<PortInst> pIt = ni.getPortInsts(); pIt.hasNext(); )
 				{
-					// touching the diffusion side of the transistor
-					return ERCANTPATHACTIVE;
+					PortInst pi = pIt.next();
+					// ignore if an arc on this port is already seen
+					boolean seen = false;
+					for(Iterator<Connection> cIt = pi.getConnections(); cIt.hasNext(); )
+					{
+						Connection con = cIt.next();
+						ArcInst ai = con.getArc();
+						if (fsGeom.contains(ai)) { seen = true;   break; }
+					}
+					if (seen) continue;
+
+					totalGateArea = 0.0;
+					pathList = new ArrayList<AntennaObject>();
+					int found = followNode(ni, pi.getPortProto());
+					if (found == ERCABORTED) return true;
+					if (found == ERCANTPATHGATE)
+					{
+						// measure the geometry of the path in another task
+						final AntennaPath path = new AntennaPath(cell, lay, pathList, totalGateArea);
+						paths.add(path);
+						group.submit("Antenna path", new Runnable()
+						{
+							public void run() { path.measure(); }
+						});
+					}
 				}
+			}
 
-				// touching the gate side of the transistor
-				TransistorSize dim = thisni.getTransistorSize(VarContext.globalContext);
-				totalGateArea += dim.getDoubleLength() * dim.getDoubleWidth();
-				ret = ERCANTPATHGATE;
-			} else
+			// now look at subcells
+			fsCell.add(cell);
+			for(Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); )
 			{
-				// normal primitive: propagate
-				if (hasDiffusion(thisni)) return ERCANTPATHACTIVE;
-				AntennaObject ao = new AntennaObject(ni);
-				ao.loadAntennaObject(antstack, depth);
+				NodeInst ni = it.next();
+				if (!ni.isCellInstance()) continue;
+				Cell subCell = (Cell)ni.getProto();
+				if (fsCell.contains(subCell)) continue;
+
+				if (checkThisCell(subCell)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Method to follow a node around the cell.
+		 * @param ni the NodeInst to follow.
+		 * @param pp the PortProto on the NodeInst.
+		 * @return ERCANTPATHNULL if it found no gate or active on the path.
+		 * Returns ERCANTPATHGATE if it found gates on the path.
+		 * Returns ERCANTPATHACTIVE if it found active on the path.
+		 */
+		private int followNode(NodeInst ni, PortProto pp)
+		{
+			// presume that nothing was found
+			int ret = ERCANTPATHNULL;
+			firstSpreadAntennaObj = new ArrayList<AntennaObject>();
+			NodeInst [] antstack = new NodeInst[200];
+			int depth = 0;
+
+			// keep walking along the nodes and arcs
+			for(;;)
+			{
+				if (job != null && job.checkAbort()) return ERCABORTED;
 
-				if (haveAntennaObject(ao))
+				// if this is a subcell, recurse on it
+				fsGeom.add(ni);
+				NodeInst thisni = ni;
+				while (thisni.isCellInstance())
+				{
+					antstack[depth] = thisni;
+					depth++;
+					thisni = ((Export)pp).getOriginalPort().getNodeInst();
+					pp = ((Export)pp).getOriginalPort().getPortProto();
+				}
+
+				// see if we hit a transistor
+				boolean seen = false;
+				if (thisni.getFunction().isFET())
 				{
-					// already in the list
-					seen = true;
+					// stop tracing
+					if (thisni.getTransistorDrainPort().getPortProto() == pp ||
+						thisni.getTransistorSourcePort().getPortProto() == pp)
+					{
+						// touching the diffusion side of the transistor
+						return ERCANTPATHACTIVE;
+					}
+
+					// touching the gate side of the transistor
+					TransistorSize dim = thisni.getTransistorSize(VarContext.globalContext);
+					totalGateArea += dim.getDoubleLength() * dim.getDoubleWidth();
+					ret = ERCANTPATHGATE;
 				} else
 				{
-					// not in the list: add it
-					addAntennaObject(ao);
+					// normal primitive: propagate
+					if (hasDiffusion(thisni)) return ERCANTPATHACTIVE;
+					AntennaObject ao = new AntennaObject(ni);
+					ao.loadAntennaObject(antstack, depth);
+
+					if (haveAntennaObject(ao))
+					{
+						// already in the list
+						seen = true;
+					} else
+					{
+						// not in the list: add it
+						addAntennaObject(ao);
+					}
 				}
-			}
 
-			// look at all arcs on the node
-			if (!seen)
-			{
-				int found = findArcs(thisni, pp, lay, depth, antstack);
-				if (found == ERCANTPATHACTIVE) return found;
-				if (depth > 0)
+				// look at all arcs on the node
+				if (!seen)
 				{
-					found = findExports(thisni, pp, lay, depth, antstack);
+					int found = findArcs(thisni, pp, depth, antstack);
 					if (found == ERCANTPATHACTIVE) return found;
+					if (depth > 0)
+					{
+						found = findExports(thisni, pp, depth, antstack);
+						if (found == ERCANTPATHACTIVE) return found;
+					}
 				}
-			}
 
-			// look for an unspread antenna object and keep walking
-			if (firstSpreadAntennaObj.size() == 0) break;
-			AntennaObject ao = firstSpreadAntennaObj.get(0);
-			firstSpreadAntennaObj.remove(0);
-
-			ArcInst ai = (ArcInst)ao.geom;
-			ni = ai.getPortInst(ao.otherend).getNodeInst();
-			pp = ai.getPortInst(ao.otherend).getPortProto();
-			depth = ao.hierstack.length;
-			for(int i=0; i<depth; i++)
-				antstack[i] = ao.hierstack[i];
+				// look for an unspread antenna object and keep walking
+				if (firstSpreadAntennaObj.size() == 0) break;
+				AntennaObject ao = firstSpreadAntennaObj.get(0);
+				firstSpreadAntennaObj.remove(0);
+
+				ArcInst ai = (ArcInst)ao.geom;
+				ni = ai.getPortInst(ao.otherend).getNodeInst();
+				pp = ai.getPortInst(ao.otherend).getPortProto();
+				depth = ao.hierstack.length;
+				for(int i=0; i<depth; i++)
+					antstack[i] = ao.hierstack[i];
+			}
+			return ret;
 		}
-		return ret;
-	}
 
-	/**
-	 * Method to tell whether a NodeInst has diffusion on it.
-	 * @param ni the NodeInst in question.
-	 * @return true if the NodeInst has diffusion on it.
-	 */
-	private boolean hasDiffusion(NodeInst ni)
-	{
-		// stop if this is a pin
-		if (ni.getFunction().isPin()) return false;
-
-		// analyze to see if there is diffusion here
-		Technology tech = ni.getProto().getTechnology();
-		Poly [] polyList = tech.getShapeOfNode(ni);
-		for(int i=0; i<polyList.length; i++)
+		/**
+		 * Method to tell whether a NodeInst has diffusion on it.
+		 * @param ni the NodeInst in question.
+		 * @return true if the NodeInst has diffusion on it.
+		 */
+		private boolean hasDiffusion(NodeInst ni)
 		{
-			Poly poly = polyList[i];
-			Layer.Function fun = poly.getLayer().getFunction();
-			if (fun.isDiff()) return true;
+			// stop if this is a pin
+			if (ni.getFunction().isPin()) return false;
+
+			// analyze to see if there is diffusion here
+			Technology tech = ni.getProto().getTechnology();
+			Poly [] polyList = tech.getShapeOfNode(ni);
+			for(int i=0; i<polyList.length; i++)
+			{
+				Poly poly = polyList[i];
+				Layer.Function fun = poly.getLayer().getFunction();
+				if (fun.isDiff()) return true;
+			}
+			return false;
 		}
-		return false;
-	}
 
-	private int findArcs(NodeInst ni, PortProto pp, Layer lay, int depth, NodeInst [] antstack)
-	{
-		PortInst pi = ni.findPortInstFromProto(pp);
-		for(Iterator<Connection> it = pi.getConnections(); it.hasNext(); )
+		private int findArcs(NodeInst ni, PortProto pp, int depth, NodeInst [] antstack)
 		{
-			Connection con = it.next();
-			ArcInst ai = con.getArc();
-
-			// see if it is the desired layer
-			if (ai.getProto().getFunction().isDiffusion()) return ERCANTPATHACTIVE;
-			Layer aLayer = arcProtoToLayer.get(ai.getProto());
-			if (aLayer == null) continue;
-			if (ai.getProto().getFunction().isMetal() != aLayer.getFunction().isMetal()) continue;
-			if (ai.getProto().getFunction().isPoly() != aLayer.getFunction().isPoly()) continue;
-			if (ai.getProto().getFunction().getLevel() > aLayer.getFunction().getLevel()) continue;
-
-			// make an antenna object for this arc
-			fsGeom.add(ai);
-			AntennaObject ao = new AntennaObject(ai);
-
-			if (haveAntennaObject(ao)) continue;
-			ao.loadAntennaObject(antstack, depth);
-
-			int other = 1 - con.getEndIndex();
-			ao.otherend = other;
-			addAntennaObject(ao);
-
-			// add to the list of "unspread" antenna objects
-			firstSpreadAntennaObj.add(ao);
+			PortInst pi = ni.findPortInstFromProto(pp);
+			for(Iterator<Connection> it = pi.getConnections(); it.hasNext(); )
+			{
+				Connection con = it.next();
+				ArcInst ai = con.getArc();
+
+				// see if it is the desired layer
+				if (ai.getProto().getFunction().isDiffusion()) return ERCANTPATHACTIVE;
+				Layer aLayer = arcProtoToLayer.get(ai.getProto());
+				if (aLayer == null) continue;
+				if (ai.getProto().getFunction().isMetal() != aLayer.getFunction().isMetal()) continue;
+				if (ai.getProto().getFunction().isPoly() != aLayer.getFunction().isPoly()) continue;
+				if (ai.getProto().getFunction().getLevel() > aLayer.getFunction().getLevel()) continue;
+
+				// make an antenna object for this arc
+				fsGeom.add(ai);
+				AntennaObject ao = new AntennaObject(ai);
+
+				if (haveAntennaObject(ao)) continue;
+				ao.loadAntennaObject(antstack, depth);
+
+				int other = 1 - con.getEndIndex();
+				ao.otherend = other;
+				addAntennaObject(ao);
+
+				// add to the list of "unspread" antenna objects
+				firstSpreadAntennaObj.add(ao);
+			}
+			return ERCANTPATHNULL;
 		}
-		return ERCANTPATHNULL;
-	}
 
-	private int findExports(NodeInst ni, PortProto pp, Layer lay, int depth, NodeInst [] antstack)
-	{
-		depth--;
-		for(Iterator<Export> it = ni.getExports(); it.hasNext(); )
+		private int findExports(NodeInst ni, PortProto pp, int depth, NodeInst [] antstack)
 		{
-			Export e = it.next();
-			if (e != pp) continue;
-
-			ni = antstack[depth];
-			pp = e;
-			int found = findArcs(ni, pp, lay, depth, antstack);
-			if (found == ERCANTPATHACTIVE) return found;
-			if (depth > 0)
+			depth--;
+			for(Iterator<Export> it = ni.getExports(); it.hasNext(); )
 			{
-				found = findExports(ni, pp, lay, depth, antstack);
+				Export e = it.next();
+				if (e != pp) continue;
+
+				ni = antstack[depth];
+				pp = e;
+				int found = findArcs(ni, pp, depth, antstack);
 				if (found == ERCANTPATHACTIVE) return found;
+				if (depth > 0)
+				{
+					found = findExports(ni, pp, depth, antstack);
+					if (found == ERCANTPATHACTIVE) return found;
+				}
 			}
+			return ERCANTPATHNULL;
 		}
-		return ERCANTPATHNULL;
-	}
 
-	/**
-	 * Method to tell whether an AntennaObject is in the active list.
-	 * @param ao the AntennaObject.
-	 * @return true if the AntennaObject is already in the list.
-	 */
-	private boolean haveAntennaObject(AntennaObject ao)
-	{
-		for(AntennaObject oAo : pathList)
+		/**
+		 * Method to tell whether an AntennaObject is in the active list.
+		 * @param ao the AntennaObject.
+		 * @return true if the AntennaObject is already in the list.
+		 */
+		private boolean haveAntennaObject(AntennaObject ao)
 		{
-			if (oAo.geom == ao.geom && oAo.depth == ao.depth)
+			for(AntennaObject oAo : pathList)
 			{
-				boolean found = true;
-				int len = 0;
-				if (ao.hierstack != null) len = ao.hierstack.length;
-				int oLen = 0;
-				if (oAo.hierstack != null) oLen = oAo.hierstack.length;
-				if (len != oLen) continue;
-				for(int i=0; i<len; i++)
+				if (oAo.geom == ao.geom && oAo.depth == ao.depth)
 				{
-					if (oAo.hierstack[i] != ao.hierstack[i]) { found = false;   break; }
+					boolean found = true;
+					int len = 0;
+					if (ao.hierstack != null) len = ao.hierstack.length;
+					int oLen = 0;
+					if (oAo.hierstack != null) oLen = oAo.hierstack.length;
+					if (len != oLen) continue;
+					for(int i=0; i<len; i++)
+					{
+						if (oAo.hierstack[i] != ao.hierstack[i]) { found = false;   break; }
+					}
+					if (found) return true;
 				}
-				if (found) return true;
 			}
+			return false;
 		}
-		return false;
-	}
 
-	/**
-	 * Method to add an AntennaObject to the list of antenna objects on this path.
-	 * @param ao the AntennaObject to add.
-	 */
-	private void addAntennaObject(AntennaObject ao)
-	{
-		pathList.add(ao);
+		/**
+		 * Method to add an AntennaObject to the list of antenna objects on this path.
+		 * @param ao the AntennaObject to add.
+		 */
+		private void addAntennaObject(AntennaObject ao)
+		{
+			pathList.add(ao);
+		}
 	}
 
 	/**
@@ -36,6 +36,7 @@ import com.sun.electric.database.geometry.GeometryHandler;
 import com.sun.electric.database.geometry.Orientation;
 import com.sun.electric.database.geometry.Poly;
 import com.sun.electric.database.geometry.PolyBase;
+import com.sun.electric.database.geometry.PolyManhattanMerge;
 import com.sun.electric.database.geometry.PolyMerge;
 import com.sun.electric.database.geometry.PolySweepMerge;
 import com.sun.electric.database.geometry.GenMath.MutableBoolean;
@@ -128,6 +129,7 @@ public class Connectivity
 	/** true to grid align the extracted geometry */			private boolean gridAlignExtraction;
 	/** true to approximate cut placement */					private boolean approximateCuts;
 	/** true if extracting hierarchically */					private boolean recursive;
+	/** true to merge with the Manhattan scanline engine */	private boolean manhattanMerge;
 	/** the smallest polygon acceptable for merging */			private double smallestPoly;
 	/** debugging: list of objects created */					private List<ERectangle> addedRectangles;
 	/** debugging: list of objects created */					private List<ERectangle> addedLines;
@@ -163,6 +165,7 @@ public class Connectivity
 		private boolean gridAlignExtraction;
 		private boolean approximateCuts;
 		private boolean flattenPcells;
+		private boolean manhattanMerge;
 		/** debugging: list of objects created */	private List<List<ERectangle>> addedBatchRectangles;
 		/** debugging: list of objects created */	private List<List<ERectangle>> addedBatchLines;
 		/** debugging: list of objects created */	private List<String> addedBatchNames;
@@ -180,6 +183,7 @@ public class Connectivity
 			gridAlignExtraction = Extract.isGridAlignExtraction();
 			approximateCuts = Extract.isApproximateCuts();
 			flattenPcells = Extract.isFlattenPcells();
+			manhattanMerge = Extract.isManhattanMerge();
 			startJob();
 		}
 
@@ -207,7 +211,7 @@ public class Connectivity
 			Job.getUserInterface().startProgressDialog("Extracting", null);
 
 			Connectivity c = new Connectivity(cell, this, errorLogger, smallestPolygonSize, activeHandling,
-				gridAlignExtraction, approximateCuts, recursive, pat);
+				gridAlignExtraction, approximateCuts, recursive, manhattanMerge, pat);
 
 			if (recursive) c.totalCells = c.countExtracted(cell, pat, flattenPcells);
 			c.cellsExtracted = 0;
@@ -267,13 +271,15 @@ public class Connectivity
      * @param gridAlignExtraction true to align extraction to some the technology grid
      * @param approximateCuts approximate cuts
      * @param recursive run recursively
+     * @param manhattanMerge true to merge geometry with the Manhattan scanline engine
      * @param pat ?
      */
 	private Connectivity(Cell cell, Job j, ErrorLogger eLog, double smallestPolygonSize, int activeHandling,
-		boolean gridAlignExtraction, boolean approximateCuts, boolean recursive, Pattern pat)
+		boolean gridAlignExtraction, boolean approximateCuts, boolean recursive, boolean manhattanMerge, Pattern pat)
 	{
 	    this.approximateCuts = approximateCuts;
 		this.recursive = recursive;
+		this.manhattanMerge = manhattanMerge;
 		tech = cell.getTechnology();
 		convertedCells = new HashMap<Cell,Cell>();
 		smallestPoly = (SCALEFACTOR * SCALEFACTOR) * smallestPolygonSize;
@@ -468,6 +474,16 @@ public class Connectivity
 		return false;
 	}
 
+	/**
+	 * Method to create a merge object for the extraction.
+	 * @return a PolyManhattanMerge if the Manhattan scanline engine was requested, otherwise a PolyMerge.
+	 */
+	private PolyMerge newMerge()
+	{
+		if (manhattanMerge) return new PolyManhattanMerge();
+		return new PolyMerge();
+	}
+
 	/**
 	 * Top-level method in extracting connectivity from a Cell.
 	 * A new version of the cell is created that has real nodes (transistors, contacts) and arcs.
@@ -511,8 +527,8 @@ public class Connectivity
 		convertedCells.put(oldCell, newCell);
 
 		// create a merge for the geometry in the cell
-		PolyMerge merge = new PolyMerge();
-        PolyMerge selectMerge = new PolyMerge();
+		PolyMerge merge = newMerge();
+        PolyMerge selectMerge = newMerge();
 
         // convert the nodes
 		if (!startSection(oldCell, "Gathering geometry in " + oldCell + "..."))		// HAS PROGRESS IN IT
@@ -532,7 +548,7 @@ public class Connectivity
 		}
 
 		// now remember the original merge
-		PolyMerge originalMerge = new PolyMerge();
+		PolyMerge originalMerge = newMerge();
 		originalMerge.addMerge(merge, new AffineTransform());
 
 		// start by extracting vias
@@ -586,7 +602,7 @@ public class Connectivity
 		cleanupExports(oldCell, newCell);
 
 		// cleanup by auto-stitching
-		PolyMerge originalUnscaledMerge = new PolyMerge();
+		PolyMerge originalUnscaledMerge = newMerge();
 		double shrinkage = 1.0 / SCALEFACTOR;
 		AffineTransform shrink = new AffineTransform(shrinkage, 0, 0, shrinkage, 0, 0);
 		originalUnscaledMerge.addMerge(originalMerge, shrink);
@@ -1461,7 +1477,7 @@ public class Connectivity
         }
 
         // first get all select layers
-        PolyMerge merge = new PolyMerge();
+        PolyMerge merge = newMerge();
         for (Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); ) {
             NodeInst ni = it.next();
             if (ni.isCellInstance()) continue;
@@ -2567,7 +2583,7 @@ public class Connectivity
 		// recursively scan the R-Tree, merging geometry on created nodes and removing them from the main merge
         if (!Extract.isUsePureLayerNodes())
         {
-            PolyMerge subtractMerge = new PolyMerge();
+            PolyMerge subtractMerge = newMerge();
 		    extractContactNodes(root, merge, subtractMerge, 0, contactNodes.size());
             merge.subtractMerge(subtractMerge);
         }
@@ -4883,7 +4899,7 @@ public class Connectivity
 		}
 
 		// remove redundant centerlines
-		PolyMerge reCheck = new PolyMerge();
+		PolyMerge reCheck = newMerge();
 		for(int i=0; i<centerlines.size(); i++)
 		{
 			Centerline cl = centerlines.get(i);
@@ -233,4 +233,25 @@ public class Extract extends Tool
 	 * @return true if the node extractor should use pure-layer nodes for connectivity, by default.
 	 */
 	public static boolean isFactoryUsePureLayerNodes() { return cacheUsePureLayerNodes.getBooleanFactoryValue(); }
+
+	private static Pref cacheManhattanMerge = Pref.makeBooleanPref("ManhattanMerge", Extract.tool.prefs, false);
+	/**
+	 * Method to tell whether the node extractor should merge geometry with the Manhattan scanline engine.
+	 * The alternative is to merge everything with java.awt.geom.Area.
+	 * The default is "false".
+	 * @return true if the node extractor should merge geometry with the Manhattan scanline engine.
+	 */
+	public static boolean isManhattanMerge() { return cacheManhattanMerge.getBoolean(); }
+	/**
+	 * Method to set whether the node extractor should merge geometry with the Manhattan scanline engine.
+	 * The alternative is to merge everything with java.awt.geom.Area.
+	 * @param a true if the node extractor should merge geometry with the Manhattan scanline engine.
+	 */
+	public static void setManhattanMerge(boolean a) { cacheManhattanMerge.setBoolean(a); }
+	/**
+	 * Method to tell whether the node extractor should merge geometry with the Manhattan scanline engine by default.
+	 * The alternative is to merge everything with java.awt.geom.Area.
+	 * @return true if the node extractor should merge geometry with the Manhattan scanline engine, by default.
+	 */
+	public static boolean isFactoryManhattanMerge() { return cacheManhattanMerge.getBooleanFactoryValue(); }
 }
@@ -608,6 +608,25 @@ public class IOTool extends Tool
 	 */
 	public static Setting getGDSOutputScaleSetting() { return ToolSettings.getGDSOutputScaleSetting(); }
 
+	private static Pref cacheGDSOutWritesArrays = Pref.makeBooleanPref("GDSOutWritesArrays", IOTool.tool.prefs, false);
+	/**
+	 * Method to tell whether GDS Output writes regular grids of instances as arrays (AREF).
+	 * This produces smaller files.
+	 * The default is "false".
+	 * @return true if GDS Output writes regular grids of instances as arrays.
+	 */
+	public static boolean isGDSOutWritesArrays() { return cacheGDSOutWritesArrays.getBoolean(); }
+	/**
+	 * Method to set whether GDS Output writes regular grids of instances as arrays (AREF).
+	 * @param on true if GDS Output writes regular grids of instances as arrays.
+	 */
+	public static void setGDSOutWritesArrays(boolean on) { cacheGDSOutWritesArrays.setBoolean(on); }
+	/**
+	 * Method to tell whether GDS Output writes regular grids of instances as arrays (AREF), by default.
+	 * @return true if GDS Output writes regular grids of instances as arrays, by default.
+	 */
+	public static boolean isFactoryGDSOutWritesArrays() { return cacheGDSOutWritesArrays.getBooleanFactoryValue(); }
+
     private static Pref cacheGDSInMergesBoxes = Pref.makeBooleanPref("GDSInMergesBoxes", IOTool.tool.prefs, false);
 	/**
 	 * Method to tell whether GDS Input merges boxes into complex polygons.
@@ -61,6 +61,8 @@ import com.sun.electric.technology.Technology;
 import com.sun.electric.technology.Technology.NodeLayer;
 import com.sun.electric.technology.technologies.Generic;
 import com.sun.electric.tool.Job;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.io.GDSLayers;
 import com.sun.electric.tool.io.IOTool;
 import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
@@ -68,8 +70,12 @@ import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
@@ -107,11 +113,16 @@ public class GDS extends Input
 	private static final boolean SHOWPROGRESS = false;			/* true for debugging */
 	private static final boolean IGNOREIMMENSECELLS = false;	/* true for debugging */
 	private static final boolean TALLYCONTENTS = false;			/* true for debugging */
+	private static final boolean MAPPEDINPUT   = true;			/* false to always read files as a stream */
 
 	// data declarations
 	private static final int MAXPOINTS     = 4096;
 	private static final int MINFONTWIDTH  =  130;
 	private static final int MINFONTHEIGHT =  190;
+	/** size of the file window mapped while indexing structures */
+	private static final int INDEXWINDOW   = 64 * 1024 * 1024;
+	/** number of structures parsed ahead of the one being built, per reader thread */
+	private static final int PARSEAHEAD    = 4;
 
 	private static class ShapeType {}
 	private static final ShapeType SHAPEPOLY      = new ShapeType();
@@ -162,6 +173,14 @@ public class GDS extends Input
 	private Set<Integer>     pinLayers;
 	private PolyMerge        merge;
 	private static boolean   arraySimplificationUseful;
+	/** the file to map, null to read the input stream */
+	private File             mappedFile;
+	/** mapped region of the file being parsed, null when reading the input stream */
+	private ByteBuffer       mappedBuffer;
+	/** offset of the mapped region in the file */
+	private long             mappedOffset;
+	/** the structure being parsed from the mapped file, null when reading the input stream */
+	private StructureEntry   structure;
 
 	private static class GSymbol
 	{
@@ -289,7 +308,17 @@ public class GDS extends Input
         public Library doInput(URL fileURL, Library lib, Technology tech, Map<Library,Cell> currentCells, Map<CellId,BitSet> nodesToExpand, Job job)
         {
         	GDS in = new GDS(this);
-			if (in.openBinaryInput(fileURL)) return null;
+        	File file = null;
+        	if (MAPPEDINPUT && fileURL.getProtocol().equals("file"))
+        		file = TextUtils.getFile(fileURL);
+        	if (file != null && file.isFile())
+        	{
+        		in.filePath = fileURL.getFile();
+        		in.mappedFile = file;
+        	} else
+        	{
+        		if (in.openBinaryInput(fileURL)) return null;
+        	}
 
             // Librarys before loading
             HashSet oldLibs = new HashSet();
@@ -326,6 +355,29 @@ public class GDS extends Input
 	 */
 	GDS(GDSPreferences ap) { localPrefs = ap; }
 
+	/**
+	 * Creates a reader of structures which shares the library, technology,
+	 * units and layer tables of another reader.
+	 * @param master the reader which read the library header.
+	 */
+	private GDS(GDS master)
+	{
+		localPrefs = master.localPrefs;
+		ep = master.ep;
+		filePath = master.filePath;
+		fileLength = master.fileLength;
+		theLibrary = master.theLibrary;
+		currentCells = master.currentCells;
+		curTech = master.curTech;
+		theScale = master.theScale;
+		layerNames = master.layerNames;
+		layerErrorMessages = master.layerErrorMessages;
+		pinLayers = master.pinLayers;
+		layerNodeProto = master.layerNodeProto;
+		theVertices = new Point2D[MAXPOINTS];
+		for(int i=0; i<MAXPOINTS; i++) theVertices[i] = new Point2D.Double();
+	}
+
 	/**
 	 * Method to import a library from disk.
 	 * @param lib the library to fill
@@ -1235,7 +1287,24 @@ public class GDS extends Input
 	private void loadFile()
 		throws IOException
 	{
+		if (mappedFile != null)
+		{
+			loadMappedFile();
+			return;
+		}
+		getToken();
+		readLibraryHeader();
 		getToken();
+		while (theToken != GDS_ENDLIB)
+		{
+			readStructure();
+			getToken();
+		}
+	}
+
+	private void readLibraryHeader()
+		throws IOException
+	{
 		readHeader();
 		getToken();
 		readLibrary();
@@ -1250,11 +1319,293 @@ public class GDS extends Input
 		while (theToken != GDS_UNITS)
 			getToken();
 		readUnits();
-		getToken();
-		while (theToken != GDS_ENDLIB)
+	}
+
+	/****************************** MAPPED FILES ******************************/
+
+	/**
+	 * Class to describe one structure (BGNSTR to ENDSTR) of a mapped file.
+	 */
+	private static class StructureEntry
+	{
+		/** offset of the BGNSTR record */				private final long start;
+		/** offset after the ENDSTR record */			private long end;
+		/** structure name */							private String name;
+		/** names of referenced structures */			private Set<String> refs = new HashSet<String>();
+		/** collects the contents of the structure */	private CellBuilder builder;
+		/** true when the structure is parsed */		private boolean parsed;
+		/** failure of the parse, or null */			private Throwable failure;
+
+		private StructureEntry(long start) { this.start = start; }
+	}
+
+	/**
+	 * Method to read a GDS file which is mapped into memory.
+	 * The file is indexed first, so that all cells are created before the contents are read.
+	 * Then structures are parsed in parallel, and cells are built bottom-up in the main thread
+	 * as soon as their structures and all of their subcells are ready.
+	 * The contents of a structure are released when its cell is built.
+	 */
+	private void loadMappedFile()
+		throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(mappedFile, "r");
+		try
 		{
-			readStructure();
+			FileChannel channel = raf.getChannel();
+			fileLength = channel.size();
+			List<StructureEntry> structures = indexStructures(channel);
+
+			// read the library header
+			long headerEnd = structures.isEmpty() ? fileLength : structures.get(0).start;
+			mapRegion(channel, 0, headerEnd);
+			getToken();
+			readLibraryHeader();
+			mappedBuffer = null;
+
+			// create all cells, later definitions of a structure replace earlier ones
+			Map<String,StructureEntry> definitions = new HashMap<String,StructureEntry>();
+			for(StructureEntry s : structures)
+			{
+				String name = s.name + "{lay}";
+				Cell cell = findCell(name);
+				if (cell == null)
+				{
+					cell = Cell.newInstance(theLibrary, name);
+					if (cell == null) handleError("Failed to create structure");
+					System.out.println("Reading " + name);
+					if (!currentCells.containsKey(theLibrary))
+						currentCells.put(theLibrary, cell);
+				}
+				s.builder = new CellBuilder(cell, curTech, localPrefs);
+				definitions.put(s.name, s);
+			}
+			for(StructureEntry s : structures)
+			{
+				for(String ref : s.refs)
+				{
+					if (definitions.containsKey(ref)) continue;
+					String name = ref + "{lay}";
+					if (findCell(name) != null) continue;
+					if (Cell.newInstance(theLibrary, name) == null) handleError("Failed to create SREF proto");
+				}
+			}
+
+			// parse subcells before the cells which use them
+			List<StructureEntry> order = new ArrayList<StructureEntry>();
+			Set<StructureEntry> visited = new HashSet<StructureEntry>();
+			for(StructureEntry s : structures)
+			{
+				if (definitions.get(s.name) == s)
+					orderStructures(s, definitions, visited, order);
+			}
+			readStructures(channel, order);
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Method to find the structures of a mapped file.
+	 * Only the record headers are examined, except for structure names and references.
+	 * @param channel the file.
+	 * @return the structures in file order.
+	 */
+	private List<StructureEntry> indexStructures(FileChannel channel)
+		throws IOException
+	{
+		List<StructureEntry> structures = new ArrayList<StructureEntry>();
+		StructureEntry cur = null;
+		ByteBuffer window = null;
+		long windowStart = 0;
+		long pos = 0;
+		while (pos + 4 <= fileLength)
+		{
+			if (window == null || pos + 4 > windowStart + window.limit())
+			{
+				windowStart = pos;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(INDEXWINDOW, fileLength - pos));
+			}
+			int off = (int)(pos - windowStart);
+			int length = window.getShort(off) & 0xFFFF;
+			int recordType = window.get(off + 2) & 0xFF;
+			byteCount = pos;
+			if (length < 4) handleError("Invalid record length " + length);
+			if (recordType == GDS_ENDLIB.value) break;
+			if (recordType == GDS_STRNAME.value || recordType == GDS_SNAME.value)
+			{
+				if (pos + length > windowStart + window.limit())
+				{
+					if (pos + length > fileLength) handleError("Record is truncated");
+					windowStart = pos;
+					window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(INDEXWINDOW, fileLength - pos));
+					off = 0;
+				}
+				StringBuffer sb = new StringBuffer();
+				for(int i=off+4; i<off+length; i++)
+				{
+					char letter = (char)window.get(i);
+					if (letter != 0) sb.append(letter);
+				}
+				if (cur != null)
+				{
+					if (recordType == GDS_SNAME.value) cur.refs.add(sb.toString()); else
+						if (cur.name == null) cur.name = sb.toString();
+				}
+			} else if (recordType == GDS_BGNSTR.value)
+			{
+				if (cur != null) handleError("Structure end statement is missing");
+				cur = new StructureEntry(pos);
+			} else if (recordType == GDS_ENDSTR.value)
+			{
+				if (cur == null) handleError("Begin structure statement is missing");
+				if (cur.name == null) handleError("Structure name is missing");
+				cur.end = pos + length;
+				if (cur.end - cur.start > Integer.MAX_VALUE) handleError("Structure " + cur.name + " is too large");
+				structures.add(cur);
+				cur = null;
+			}
+			pos += length;
+		}
+		if (cur != null) handleError("Structure end statement is missing");
+		return structures;
+	}
+
+	private static void orderStructures(StructureEntry s, Map<String,StructureEntry> definitions,
+		Set<StructureEntry> visited, List<StructureEntry> order)
+	{
+		if (!visited.add(s)) return;
+		for(String ref : s.refs)
+		{
+			StructureEntry sub = definitions.get(ref);
+			if (sub != null) orderStructures(sub, definitions, visited, order);
+		}
+		order.add(s);
+	}
+
+	private void mapRegion(FileChannel channel, long start, long end)
+		throws IOException
+	{
+		mappedOffset = start;
+		mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		recordCount = 0;
+	}
+
+	/**
+	 * Method to parse structures of a mapped file in parallel and to build their cells.
+	 * A limited number of structures is parsed ahead of the cell being built,
+	 * so memory is proportional to the largest structures rather than to the file.
+	 * @param channel the file.
+	 * @param order the structures, subcells before the cells which use them.
+	 */
+	private void readStructures(final FileChannel channel, List<StructureEntry> order)
+		throws IOException
+	{
+		// readers are reused by the tasks, but not kept by the threads of the shared pool
+		final List<GDS> freeReaders = new ArrayList<GDS>();
+		TaskGroup group = new TaskGroup("GDS Reader", true);
+		int numThreads = group.getNumThreads();
+		try
+		{
+			Set<Cell> builtCells = new HashSet<Cell>();
+			int submitted = 0;
+			for(int i=0; i<order.size(); i++)
+			{
+				while (submitted < order.size() && submitted < i + numThreads*PARSEAHEAD)
+				{
+					final StructureEntry s = order.get(submitted++);
+					group.submit(s.name, new Runnable()
+					{
+						public void run()
+						{
+							GDS reader;
+							synchronized (freeReaders)
+							{
+								reader = freeReaders.isEmpty() ? new GDS(GDS.this) : freeReaders.remove(freeReaders.size() - 1);
+							}
+							Throwable failure = null;
+							try
+							{
+								reader.readMappedStructure(channel, s);
+							} catch (Throwable e)
+							{
+								failure = e;
+							}
+							synchronized (freeReaders)
+							{
+								freeReaders.add(reader);
+							}
+							synchronized (s)
+							{
+								s.failure = failure;
+								s.parsed = true;
+								s.notifyAll();
+							}
+						}
+					});
+				}
+				StructureEntry s = order.get(i);
+				synchronized (s)
+				{
+					while (!s.parsed)
+					{
+						try
+						{
+							s.wait();
+						} catch (InterruptedException e)
+						{
+							throw new IOException("GDS reading interrupted");
+						}
+					}
+				}
+				Throwable cause = s.failure;
+				if (cause != null)
+				{
+					if (cause instanceof IOException) throw (IOException)cause;
+					if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+					if (cause instanceof Error) throw (Error)cause;
+					throw new IOException(cause.toString());
+				}
+
+				// build the cell and release its contents
+				s.builder.makeInstances(builtCells);
+				CellBuilder.allBuilders.remove(s.builder.cell);
+				s.builder = null;
+				setProgressValue((int)((i+1) * 100L / order.size()));
+			}
+		} finally
+		{
+			// don't close the file while structures are still parsed
+			try
+			{
+				group.await();
+			} catch (JobException e)
+			{
+				// tasks keep their failures in their structures, which are reported above
+			}
+		}
+	}
+
+	/**
+	 * Method to parse one structure of a mapped file into its CellBuilder.
+	 * Runs in a reader thread.
+	 */
+	private void readMappedStructure(FileChannel channel, StructureEntry s)
+		throws IOException
+	{
+		structure = s;
+		try
+		{
+			mapRegion(channel, s.start, s.end);
 			getToken();
+			readStructure();
+		} finally
+		{
+			mappedBuffer = null;
+			structure = null;
+			theCell = null;
+			merge = null;
 		}
 	}
 
@@ -1435,6 +1786,13 @@ public class GDS extends Input
 		getToken();
 		if (theToken != GDS_IDENT) handleError("Structure name is missing");
 
+		// structures of a mapped file were created when the file was indexed
+		if (structure != null)
+		{
+			theCell = structure.builder;
+			return;
+		}
+
 		// look for this nodeproto
 		String name = tokenString + "{lay}";
 		Cell cell = findCell(name);
@@ -2164,6 +2522,15 @@ public class GDS extends Input
 	}
 
 	private void setLayer(int layerNum, int layerType)
+	{
+		// layer tables are shared by the readers of structures of a mapped file
+		synchronized (layerNames)
+		{
+			assignLayer(layerNum, layerType);
+		}
+	}
+
+	private void assignLayer(int layerNum, int layerType)
 	{
 		curLayerNum = layerNum;
 		curLayerType = layerType;
@@ -2313,6 +2680,9 @@ public class GDS extends Input
 		Cell np = findCell(name);
 		if (np == null)
 		{
+			// structures of a mapped file can't create cells, all references were found by the index
+			if (structure != null) handleError("Structure reference " + name + " was not indexed");
+
 			// FILO order, create this nodeproto
 			np = Cell.newInstance(theLibrary, name);
 			if (np == null) handleError("Failed to create SREF proto");
@@ -2412,11 +2782,15 @@ public class GDS extends Input
 	private void handleError(String msg)
 		throws IOException
 	{
+        if (mappedBuffer != null) byteCount = mappedOffset + mappedBuffer.position();
         String message = "Error: " + msg + " at byte " + byteCount +
             " in '" + filePath + "'";
         Cell cell = theCell != null ? theCell.cell : null;
         System.out.println(message);
-        errorLogger.logError(message, cell, 0);
+        synchronized (errorLogger)
+        {
+            errorLogger.logError(message, cell, 0);
+        }
 		throw new IOException();
 	}
 
@@ -2596,6 +2970,11 @@ public class GDS extends Input
 	private int getInteger()
 		throws IOException
 	{
+		if (mappedBuffer != null)
+		{
+			recordCount -= 4;
+			return mappedBuffer.getInt();
+		}
 		int highWord = getWord();
 		int lowWord = getWord();
 		return (highWord << 16) | lowWord;
@@ -2604,6 +2983,11 @@ public class GDS extends Input
 	private int getWord()
 		throws IOException
 	{
+		if (mappedBuffer != null)
+		{
+			recordCount -= 2;
+			return mappedBuffer.getShort() & 0xFFFF;
+		}
 		int highByte = getByte() & 0xFF;
 		int lowByte = getByte() & 0xFF;
 		return (highByte << 8) | lowByte;
@@ -2612,6 +2996,11 @@ public class GDS extends Input
 	private byte getByte()
 		throws IOException
 	{
+		if (mappedBuffer != null)
+		{
+			recordCount--;
+			return mappedBuffer.get();
+		}
 		byte b = dataInputStream.readByte();
 		updateProgressDialog(1);
 		recordCount--;
@@ -34,6 +34,7 @@ import com.sun.electric.tool.simulation.ComplexWaveform;
 import com.sun.electric.tool.simulation.Stimuli;
 import com.sun.electric.tool.simulation.Waveform;
 import com.sun.electric.tool.simulation.WaveformImpl;
+import com.sun.electric.tool.simulation.WaveformStore;
 
 import java.io.File;
 import java.io.IOException;
@@ -44,7 +45,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.io.*;
 import com.sun.electric.tool.io.input.*;
-import com.sun.electric.database.geometry.btree.*;
 import com.sun.electric.tool.simulation.*;
 
 /**
@@ -106,6 +106,7 @@ public class HSpiceOut extends Simulate
 		}
 
 		protected Waveform[] loadWaveforms(AnalogSignal signal) {
+			if (hasWaveformStores()) return super.loadWaveforms(signal);
 			int sigIndex = signal.getIndexInAnalysis();
 			Waveform[] waveforms = new Waveform[commonTime.length];
 			for (int sweep = 0; sweep < waveforms.length; sweep++) {
@@ -125,21 +126,7 @@ public class HSpiceOut extends Simulate
 					double[] values = new double[times.length];
 					for (int eventNum = 0; eventNum < values.length; eventNum++)
 						values[eventNum] = theSweep.get(eventNum)[sigIndex + 1];
-                    if (!isUseLegacySimulationCode()) {
-                        BTree<Double,Double,Serializable> tree = NewEpicAnalysis.getTree();
-                        int evmax = 0;
-                        int evmin = 0;
-                        double valmax = Double.MIN_VALUE;
-                        double valmin = Double.MAX_VALUE;
-                        for(int i=0; i<times.length; i++) {
-                            tree.insert(times[i], values[i]);
-                            if (values[i] > valmax) { evmax = i; valmax = values[i]; }
-                            if (values[i] < valmin) { evmin = i; valmin = values[i]; }
-                        }
-                        waveform = new BTreeNewSignal(evmin, evmax, tree);
-                    } else {
-                        waveform = new WaveformImpl(times, values);
-                    }
+					waveform = new WaveformImpl(times, values);
 				}
 				waveforms[sweep] = waveform;
 			}
@@ -733,6 +720,10 @@ public class HSpiceOut extends Simulate
 
 		// setup the simulation information
 		boolean isComplex = analysisType == Analysis.ANALYSIS_AC;
+
+		// real-valued data goes to off-heap stores which are read lazily when signals are displayed
+		boolean useStore = !isComplex && !sd.isUseLegacySimulationCode();
+		List<WaveformStore> stores = new ArrayList<WaveformStore>();
 		double[] minValues = new double[numSignals];
 		double[] maxValues = new double[numSignals];
 		Arrays.fill(minValues, Double.POSITIVE_INFINITY);
@@ -761,12 +752,14 @@ public class HSpiceOut extends Simulate
 
 			// now read the data
 			List<float[]> allTheData = new ArrayList<float[]>();
+			WaveformStore store = useStore ? new WaveformStore(numSignals) : null;
+			float [] storeRow = useStore ? new float[numSignals + 1] : null;
 			for(;;)
 			{
 				// get the first number, see if it terminates
 				float time = getHSpiceFloat(true);
 				if (eofReached) break;
-				float [] oneSetOfData = new float[isComplex ? numSignals*2 + 1 : numSignals + 1];
+				float [] oneSetOfData = useStore ? storeRow : new float[isComplex ? numSignals*2 + 1 : numSignals + 1];
 				oneSetOfData[0] = time;
 
 				// get a row of numbers
@@ -795,9 +788,16 @@ public class HSpiceOut extends Simulate
 					if (value > maxValues[numSignal]) maxValues[numSignal] = value;
 				}
 				if (eofReached)  { System.out.println("EOF before the end of the data");   break; }
-				allTheData.add(oneSetOfData);
+				if (useStore) store.addEvent(time, oneSetOfData, 1); else
+					allTheData.add(oneSetOfData);
 			}
-			an.theSweeps.add(allTheData);
+			if (useStore)
+			{
+				store.finish();
+				stores.add(store);
+				an.addWaveformStore(store);
+			} else
+				an.theSweeps.add(allTheData);
 			sweepCounter--;
 			if (sweepCounter <= 0) break;
 			eofReached = false;
@@ -808,6 +808,12 @@ public class HSpiceOut extends Simulate
 		an.commonTime = new double[an.theSweeps.size()][];
 		double minTime = Double.POSITIVE_INFINITY;
 		double maxTime = Double.NEGATIVE_INFINITY;
+		for (WaveformStore store : stores)
+		{
+			if (store.getNumEvents() == 0) continue;
+			if (store.getMinTime() < minTime) minTime = store.getMinTime();
+			if (store.getMaxTime() > maxTime) maxTime = store.getMaxTime();
+		}
 		for (int sweepNum=0; sweepNum<an.commonTime.length; sweepNum++)
 		{
 			List<float[]> allTheData = an.theSweeps.get(sweepNum);
@@ -859,8 +865,7 @@ public class HSpiceOut extends Simulate
 				context = name.substring(0, lastDotPos);
 				name = name.substring(lastDotPos+1);
 			}
-			AnalogSignal as = an.addSignal(name, context, minTime, maxTime, minValues[k], maxValues[k]);
-            an.getWaveform(as, 0);
+			an.addSignal(name, context, minTime, maxTime, minValues[k], maxValues[k]);
 		}
 		stopProgressDialog();
 		System.out.println("Done reading " + analysisType.toString() + " analysis");
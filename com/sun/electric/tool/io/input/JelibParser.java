@@ -50,6 +50,8 @@ import com.sun.electric.database.variable.CodeExpression;
 import com.sun.electric.database.variable.MutableTextDescriptor;
 import com.sun.electric.database.variable.TextDescriptor;
 import com.sun.electric.database.variable.Variable;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.Tool;
 import com.sun.electric.tool.io.FileType;
 import com.sun.electric.tool.ncc.basic.TransitiveRelation;
@@ -80,6 +82,7 @@ public class JelibParser
 		String fileName;
 		int lineNumber;
 
+        CellName cellName;
         CellId cellId;
         CellName groupName;
         long creationDate;
@@ -108,6 +111,10 @@ public class JelibParser
     static class NodeContents {
         int line;
         NodeProtoId protoId;
+        // prototype which is resolved to protoId when the cell is finished
+        String protoPrefix;
+        String protoName;
+        boolean protoIsCell;
         String nodeName;
         TextDescriptor nameTextDescriptor;
         EPoint anchor;
@@ -117,6 +124,9 @@ public class JelibParser
         int flags;
         int techBits;
         Variable[] vars;
+        // Variables which are read when the cell is finished
+        List<String> varPieces;
+        int varPosition;
 
         ImmutableNodeInst n;
         NodeInst ni;
@@ -125,32 +135,102 @@ public class JelibParser
     static class ExportContents {
         int line;
         ExportId exportId;
+        String exportName;
         String exportUserName;
         NodeContents originalNode;
         PortProtoId originalPort;
+        String originalPortName;
         TextDescriptor nameTextDescriptor;
         PortCharacteristic ch;
         boolean alwaysDrawn;
         boolean bodyOnly;
         Variable[] vars;
+        List<String> varPieces;
+        int varPosition;
         Point2D pos;
     }
 
     static class ArcContents {
         int line;
         ArcProtoId arcProtoId;
+        String arcTechName;
+        String arcProtoName;
         String arcName;
         TextDescriptor nameTextDescriptor;
         double diskWidth;
         NodeContents headNode;
         PortProtoId headPort;
+        String headPortName;
         EPoint headPoint;
         NodeContents tailNode;
         PortProtoId tailPort;
+        String tailPortName;
         EPoint tailPoint;
         int angle;
         int flags;
         Variable[] vars;
+        List<String> varPieces;
+        int varPosition;
+    }
+
+    /**
+     * An error or warning found by a parser of cell lines, which is logged when the cell is finished.
+     */
+    private static class DeferredMessage {
+        final String message;
+        final boolean warning;
+
+        DeferredMessage(String message, boolean warning) {
+            this.message = message;
+            this.warning = warning;
+        }
+    }
+
+    /**
+     * The lines of a cell, which are kept until they are parsed,
+     * together with the state of the reader at the cell declaration.
+     */
+    private static class CellLines {
+        final CellContents cc;
+        final String groupName;
+        final String techName;
+        final List<String> pieces;
+        final int numPieces;
+        final int revision;
+        final char escapeChar;
+        final String libName;
+        final ArrayList<String> lines = new ArrayList<String>();
+        int[] lineNumbers = new int[16];
+
+        // the result of parsing the lines
+        /** NodeContents, ExportContents, ArcContents and names of unused ExportIds in the order of the lines */
+        ArrayList<Object> parsed;
+        ArrayList<DeferredMessage> errors;
+        RuntimeException exception;
+        int exceptionLine;
+
+        CellLines(CellContents cc, String groupName, String techName, List<String> pieces, int numPieces,
+                int revision, char escapeChar, String libName) {
+            this.cc = cc;
+            this.groupName = groupName;
+            this.techName = techName;
+            this.pieces = pieces;
+            this.numPieces = numPieces;
+            this.revision = revision;
+            this.escapeChar = escapeChar;
+            this.libName = libName;
+        }
+
+        void addLine(String line, int lineNumber) {
+            int n = lines.size();
+            if (n == lineNumbers.length) {
+                int[] newLineNumbers = new int[n*2];
+                System.arraycopy(lineNumbers, 0, newLineNumbers, 0, n);
+                lineNumbers = newLineNumbers;
+            }
+            lines.add(line);
+            lineNumbers[n] = lineNumber;
+        }
     }
 
     // The parsing result
@@ -181,6 +261,9 @@ public class JelibParser
 
     private static final Version newDelibHeaderVersion = Version.parseVersion("8.04n");
 
+    /** number of characters of cell lines which are read before they are parsed */
+    private static final int MAX_PENDING_CHARS = 16 << 20;
+
     private static int defaultArcFlags;
     static {
         defaultArcFlags = ImmutableArcInst.DEFAULT_FLAGS;
@@ -207,8 +290,20 @@ public class JelibParser
     private final LineNumberReader delibHeaderReader;
     private int revision = revisions.length;
     private final ErrorLogger errorLogger;
+    /** true in the parsers of cell lines, which must not create Ids */
+    private final boolean deferIds;
     private final MutableTextDescriptor mtd = new MutableTextDescriptor();
     /** buffer for reading Variables. */                                    private final ArrayList<Variable> variablesBuf = new ArrayList<Variable>();
+    /** Variable Keys found by this parser */
+    private final HashMap<String,Variable.Key> varKeys = new HashMap<String,Variable.Key>();
+
+    /** cells whose lines were read but not parsed yet, in file order */
+    private final ArrayList<CellLines> pendingCells = new ArrayList<CellLines>();
+    private long pendingChars;
+    /** errors and warnings found by a parser of cell lines, which are logged when the cell is finished */
+    private ArrayList<DeferredMessage> deferredErrors;
+    /** number of the line being parsed, or -1 to take it from the line reader */
+    private int curLineNumber = -1;
 
     // collect the cells by common protoName and by "groupLines" relation
     private final HashMap<String,ArrayList<CellContents>> cellsWithProtoName = new HashMap<String,ArrayList<CellContents>>();
@@ -243,6 +338,7 @@ public class JelibParser
         this.fileType = fileType;
         filePath = fileURL.getFile();
         this.errorLogger = errorLogger;
+        deferIds = false;
 
         InputStream inputStream;
         if (fileType == FileType.JELIB) {
@@ -269,6 +365,7 @@ public class JelibParser
         delibHeaderReader = fileType == FileType.DELIB ? lineReader : null;
         try {
             readFromFile(onlyProjectSettings);
+            parseCells();
             collectCellGroups();
         } catch (Exception e) {
             logError("Exception " + e.getMessage());
@@ -277,6 +374,22 @@ public class JelibParser
         }
 	}
 
+    /**
+     * Constructor of a parser of cell lines.
+     * It shares the library with the parent parser, but has its own buffers.
+     * @param parent the parser which reads the file.
+     */
+    private JelibParser(JelibParser parent) {
+        idManager = parent.idManager;
+        libId = parent.libId;
+        fileURL = parent.fileURL;
+        fileType = parent.fileType;
+        filePath = parent.filePath;
+        errorLogger = null;
+        delibHeaderReader = null;
+        deferIds = true;
+    }
+
     private void collectCellGroups() {
         for (Iterator<Set<String>> git = transitiveProtoNames.getSetsOfRelatives(); git.hasNext(); ) {
             Set<String> protoNames = git.next();
@@ -339,6 +452,11 @@ public class JelibParser
             if (ignoreCvsMergedContent) continue;
             if (onlyProjectSettings && first != 'H' && first != 'O' && first != 'T') continue;
 
+            // Ids in the cells must be created before Ids of the following lines.
+            // The external references at the start of DELIB cell files may precede them.
+            if (first != 'C' && !pendingCells.isEmpty() && (first == 'G' || lineReader == delibHeaderReader || fileType != FileType.DELIB))
+                parseCells();
+
 			if (first == 'C')
 			{
                 if (lineReader == delibHeaderReader) {
@@ -654,13 +772,11 @@ public class JelibParser
             String versionString = pieces.get(fieldIndex++);
             name = name + ";" + versionString + "{" + viewAbbrev + "}";
         }
-        CellName cellName = CellName.parseName(name);
         CellContents cc = new CellContents(version);
         cc.fileName = curReadFile;
         cc.lineNumber = lineReader.getLineNumber() + 1;
-        cc.cellId = libId.newCellId(cellName);
+        cc.cellName = CellName.parseName(name);
         String techName = unQuote(pieces.get(fieldIndex++));
-        cc.techId = idManager.newTechId(techName);
         cc.creationDate = Long.parseLong(pieces.get(fieldIndex++));
         cc.revisionDate = Long.parseLong(pieces.get(fieldIndex++));
 
@@ -677,11 +793,11 @@ public class JelibParser
             }
         }
 
-        // add variables
+        // the Ids and the variables are created by finishCell
         assert fieldIndex == numPieces;
-        cc.vars = readVariables(pieces, numPieces);
 
-        // gather the contents of the cell
+        // gather the contents of the cell, which are parsed later
+        CellLines cl = new CellLines(cc, groupName, techName, pieces, numPieces, revision, escapeChar, curLibName);
         for(;;)
         {
             String nextLine = lineReader.readLine();
@@ -690,21 +806,156 @@ public class JelibParser
             char nextFirst = nextLine.charAt(0);
             if (nextFirst == 'X') break;
             switch (nextFirst) {
-                case '#':
-                    break;
                 case 'N':
                 case 'I':
-                    parseNode(nextLine, cc);
-                    break;
                 case 'E':
-                    parseExport(nextLine, cc);
-                    break;
                 case 'A':
-                    parseArc(nextLine, cc);
+                    cl.addLine(nextLine, lineReader.getLineNumber());
+                    pendingChars += nextLine.length();
                     break;
                 default:
             }
         }
+        pendingCells.add(cl);
+        if (pendingChars >= MAX_PENDING_CHARS)
+            parseCells();
+    }
+
+    /**
+     * Method to parse the lines of the cells which were read.
+     * The lines of each cell are parsed by one task of a TaskGroup. The tasks don't create Ids,
+     * they keep the names instead. The Ids are created afterwards in file order,
+     * so that they are numbered as if the cells were parsed one after another.
+     */
+    private void parseCells() throws IOException {
+        if (pendingCells.isEmpty()) return;
+        final CellLines[] cells = pendingCells.toArray(new CellLines[pendingCells.size()]);
+        pendingCells.clear();
+        pendingChars = 0;
+
+        TaskGroup group = new TaskGroup("Parse cells of " + libId.libName, cells.length > 1);
+        int numTasks = Math.min(cells.length, group.getNumThreads()*4);
+        for (int t = 0; t < numTasks; t++) {
+            final int from = (int)((long)cells.length*t/numTasks);
+            final int to = (int)((long)cells.length*(t + 1)/numTasks);
+            group.submit("cells " + from + "-" + to, new Runnable() {
+                public void run() {
+                    JelibParser parser = new JelibParser(JelibParser.this);
+                    for (int i = from; i < to; i++)
+                        parser.parseCellLines(cells[i]);
+                }
+            });
+        }
+        try {
+            group.await();
+        } catch (JobException e) {
+            throw new IOException("Parsing cells interrupted: " + e.getMessage());
+        }
+
+        // create the Ids in file order
+        int savedRevision = revision;
+        char savedEscapeChar = escapeChar;
+        String savedCurLibName = curLibName;
+        String savedCurReadFile = curReadFile;
+        try {
+            for (CellLines cl: cells)
+                finishCell(cl);
+        } finally {
+            revision = savedRevision;
+            escapeChar = savedEscapeChar;
+            curLibName = savedCurLibName;
+        }
+        curReadFile = savedCurReadFile;
+        curLineNumber = -1;
+    }
+
+    /**
+     * Method to parse the lines of a cell in a parser of cell lines.
+     * The errors and the exception are kept in the CellLines.
+     * @param cl the lines of the cell.
+     */
+    private void parseCellLines(CellLines cl) {
+        CellContents cc = cl.cc;
+        revision = cl.revision;
+        escapeChar = cl.escapeChar;
+        curLibName = cl.libName;
+        curReadFile = cc.fileName;
+        deferredErrors = new ArrayList<DeferredMessage>();
+        ArrayList<Object> parsed = new ArrayList<Object>(cl.lines.size());
+        try {
+            for (int i = 0; i < cl.lines.size(); i++) {
+                String line = cl.lines.get(i);
+                curLineNumber = cl.lineNumbers[i];
+                Object o;
+                switch (line.charAt(0)) {
+                    case 'N':
+                    case 'I':
+                        o = parseNode(line, cc);
+                        break;
+                    case 'E':
+                        o = parseExport(line, cc);
+                        break;
+                    default:
+                        o = parseArc(line, cc);
+                }
+                if (o != null)
+                    parsed.add(o);
+            }
+        } catch (RuntimeException e) {
+            cl.exception = e;
+            cl.exceptionLine = curLineNumber;
+        }
+        cl.parsed = parsed;
+        cl.errors = deferredErrors;
+        deferredErrors = null;
+        curLineNumber = -1;
+    }
+
+    /**
+     * Method to finish a cell whose lines were parsed.
+     * It creates the Ids of the parsed lines and remembers the cell.
+     * @param cl the parsed lines of the cell.
+     */
+    private void finishCell(CellLines cl) {
+        CellContents cc = cl.cc;
+        revision = cl.revision;
+        escapeChar = cl.escapeChar;
+        curLibName = cl.libName;
+        curReadFile = cc.fileName;
+        curLineNumber = cc.lineNumber - 1;
+        cc.cellId = libId.newCellId(cc.cellName);
+        cc.techId = idManager.newTechId(cl.techName);
+        cc.vars = readVariables(cl.pieces, cl.numPieces);
+        for (DeferredMessage m: cl.errors) {
+            if (m.warning)
+                errorLogger.logWarning(m.message, null, -1);
+            else
+                errorLogger.logError(m.message, cc.cellId, -1);
+        }
+        try {
+            if (cl.exception != null) {
+                curLineNumber = cl.exceptionLine;
+                throw cl.exception;
+            }
+            for (Object o: cl.parsed) {
+                if (o instanceof NodeContents) {
+                    resolveNode((NodeContents)o, cc);
+                } else if (o instanceof ExportContents) {
+                    resolveExport((ExportContents)o, cc);
+                } else if (o instanceof ArcContents) {
+                    resolveArc((ArcContents)o, cc);
+                } else {
+                    // Unused ExportId
+                    cc.cellId.newPortId((String)o);
+                }
+            }
+        } catch (RuntimeException e) {
+            // skip an invalid cell file of a DELIB as readDelibCell does
+            if (fileType != FileType.DELIB) throw e;
+            Input.errorLogger.logError("Exception reading file " + cc.fileName, -1);
+            return;
+        }
+        curLineNumber = cc.lineNumber - 1;
 
         // check if the version is not null
         if (cc.version == null)
@@ -718,7 +969,8 @@ public class JelibParser
             logError("Duplicate cell " + cc.cellId);
             return;
         }
-        String protoName = cellName.getName();
+        String protoName = cc.cellName.getName();
+        String groupName = cl.groupName;
         if (groupName == null)
             groupName = protoName;
         transitiveProtoNames.theseAreRelated(protoName, groupName);
@@ -729,12 +981,11 @@ public class JelibParser
             cellsWithProtoName.put(protoName, list);
         }
         list.add(cc);
-        return;
     }
 
-    private void parseNode(String cellString, CellContents cc) {
+    private NodeContents parseNode(String cellString, CellContents cc) {
         NodeContents n = new NodeContents();
-        n.line = lineReader.getLineNumber();
+        n.line = getLineNumber();
 
         // parse the node line
         List<String> pieces = parseLine(cellString);
@@ -743,7 +994,7 @@ public class JelibParser
         if (pieces.size() < numPieces)
         {
             logError("Node instance needs " + numPieces + " fields: " + cellString, cc.cellId);
-            return;
+            return null;
         }
         String protoName = unQuote(pieces.get(0));
         // figure out the name for this node.  Handle the form: "Sig"12
@@ -763,27 +1014,18 @@ public class JelibParser
         double x = readDouble(pieces.get(3));
         double y = readDouble(pieces.get(4));
 
-        LibId libId = cc.cellId.libId;
-        String prefixName = libId.libName;
+        // the prototype Id is created by resolveNode
         int colonPos = protoName.indexOf(':');
         if (colonPos < 0)
         {
-            if (firstChar == 'I' || revision < 1)
-                n.protoId = libId.newCellId(CellName.parseName(protoName));
-            else
-                n.protoId = cc.techId.newPrimitiveNodeId(protoName);
+            n.protoIsCell = firstChar == 'I' || revision < 1;
         } else
         {
-            prefixName = protoName.substring(0, colonPos);
+            n.protoPrefix = protoName.substring(0, colonPos);
             protoName = protoName.substring(colonPos+1);
-            if (firstChar == 'I' || revision < 1 && protoName.indexOf('{') >= 0) {
-                if (!prefixName.equals(curLibName))
-                    libId = idManager.newLibId(prefixName);
-                n.protoId = libId.newCellId(CellName.parseName(protoName));
-            } else {
-                n.protoId = idManager.newTechId(prefixName).newPrimitiveNodeId(protoName);
-            }
+            n.protoIsCell = firstChar == 'I' || revision < 1 && protoName.indexOf('{') >= 0;
         }
+        n.protoName = protoName;
 
         n.size = EPoint.ORIGIN;
         boolean flipX = false, flipY = false;
@@ -802,7 +1044,7 @@ public class JelibParser
                 flipY = true;
                 hei = -hei;
             }
-            if (n.protoId instanceof PrimitiveNodeId)
+            if (!n.protoIsCell)
                 n.size = EPoint.fromLambda(wid, hei);
             orientString = pieces.get(7);
             stateInfo = pieces.get(8);
@@ -849,7 +1091,7 @@ public class JelibParser
                         try {
                             techBits = Integer.parseInt(stateInfo);
                         } catch (NumberFormatException e) {
-                            logError("(" + cc.cellId + ") bad node bits" + stateInfo, cc.cellId);
+                            logError("(" + libId + ":" + cc.cellName + ") bad node bits" + stateInfo, cc.cellId);
                         }
                         break parseStateInfo;
                     }
@@ -865,29 +1107,51 @@ public class JelibParser
         n.anchor = EPoint.fromLambda(x, y);
 
         // add variables in fields 10 and up
-        n.vars = readVariables(pieces, numPieces);
+        if (deferIds && hasIdVariables(pieces, numPieces)) {
+            n.varPieces = pieces;
+            n.varPosition = numPieces;
+        } else {
+            n.vars = readVariables(pieces, numPieces);
+        }
         cc.nodes.add(n);
         // insert into map of disk names
         cc.diskName.put(diskNodeName, n);
+        return n;
+    }
+
+    private void resolveNode(NodeContents n, CellContents cc) {
+        curLineNumber = n.line;
+        if (n.protoIsCell) {
+            LibId libId = this.libId;
+            if (n.protoPrefix != null && !n.protoPrefix.equals(curLibName))
+                libId = idManager.newLibId(n.protoPrefix);
+            n.protoId = libId.newCellId(CellName.parseName(n.protoName));
+        } else {
+            TechId techId = n.protoPrefix != null ? idManager.newTechId(n.protoPrefix) : cc.techId;
+            n.protoId = techId.newPrimitiveNodeId(n.protoName);
+        }
+        n.protoPrefix = n.protoName = null;
+        if (n.varPieces != null) {
+            n.vars = readVariables(n.varPieces, n.varPosition);
+            n.varPieces = null;
+        }
     }
 
-    private void parseExport(String cellString, CellContents cc) {
+    private Object parseExport(String cellString, CellContents cc) {
         ExportContents e = new ExportContents();
-        e.line = lineReader.getLineNumber();
+        e.line = getLineNumber();
 
         // parse the export line
         List<String> pieces = parseLine(cellString);
         if (revision >= 2 && pieces.size() == 1) {
-            // Unused ExportId
-            String exportName = unQuote(pieces.get(0));
-            cc.cellId.newPortId(exportName);
-            return;
+            // Unused ExportId, which is created by finishCell
+            return unQuote(pieces.get(0));
         }
         int numPieces = revision >= 2 ? 6 : revision == 1 ? 5 : 7;
         if (pieces.size() < numPieces)
         {
             logError("Export needs " + numPieces + " fields, has " + pieces.size() + ": " + cellString, cc.cellId);
-            return;
+            return null;
         }
         int fieldIndex = 0;
         String exportName = unQuote(pieces.get(fieldIndex++));
@@ -899,14 +1163,13 @@ public class JelibParser
         }
         if (exportUserName == null || exportName.equals(exportUserName))
             exportName = Name.findName(exportName).toString(); // save memory using String from Name
-        e.exportId = cc.cellId.newPortId(exportName);
+        e.exportName = exportName;
         e.exportUserName = exportUserName;
         // get text descriptor in field 1
         String textDescriptorInfo = pieces.get(fieldIndex++);
         String nodeName = revision >= 1 ? pieces.get(fieldIndex++) : unQuote(pieces.get(fieldIndex++));
         e.originalNode = cc.diskName.get(nodeName);
-        String portName = unQuote(pieces.get(fieldIndex++));
-        e.originalPort = e.originalNode.protoId.newPortId(portName);
+        e.originalPortName = unQuote(pieces.get(fieldIndex++));
         Point2D pos = null;
         if (revision < 1)
         {
@@ -938,29 +1201,45 @@ public class JelibParser
         e.ch = ch != null ? ch : PortCharacteristic.UNKNOWN;
 
         // add variables in tail fields
-        e.vars = readVariables(pieces, numPieces);
+        if (deferIds && hasIdVariables(pieces, numPieces)) {
+            e.varPieces = pieces;
+            e.varPosition = numPieces;
+        } else {
+            e.vars = readVariables(pieces, numPieces);
+        }
+        return e;
+    }
+
+    private void resolveExport(ExportContents e, CellContents cc) {
+        curLineNumber = e.line;
+        e.exportId = cc.cellId.newPortId(e.exportName);
+        e.originalPort = e.originalNode.protoId.newPortId(e.originalPortName);
+        e.exportName = e.originalPortName = null;
+        if (e.varPieces != null) {
+            e.vars = readVariables(e.varPieces, e.varPosition);
+            e.varPieces = null;
+        }
         cc.exports.add(e);
     }
 
-    private void parseArc(String cellString, CellContents cc) {
+    private ArcContents parseArc(String cellString, CellContents cc) {
         ArcContents a = new ArcContents();
-        a.line = lineReader.getLineNumber();
+        a.line = getLineNumber();
 
         // parse the arc line
         List<String> pieces = parseLine(cellString);
         if (pieces.size() < 13)
         {
             logError("Arc instance needs 13 fields: " + cellString, cc.cellId);
-            return;
+            return null;
         }
-        TechId techId = cc.techId;
         String protoName = unQuote(pieces.get(0));
         int indexOfColon = protoName.indexOf(':');
         if (indexOfColon >= 0) {
-            techId = idManager.newTechId(protoName.substring(0, indexOfColon));
+            a.arcTechName = protoName.substring(0, indexOfColon);
             protoName = protoName.substring(indexOfColon + 1);
         }
-        a.arcProtoId = techId.newArcProtoId(protoName);
+        a.arcProtoName = protoName;
         String diskArcName = revision >= 1 ? pieces.get(1) : unQuote(pieces.get(1));
         String arcName = diskArcName;
         if (arcName.charAt(0) == '"')
@@ -980,7 +1259,7 @@ public class JelibParser
         double headX = readDouble(pieces.get(7));
         double headY = readDouble(pieces.get(8));
         a.headNode = cc.diskName.get(headNodeName);
-        a.headPort = a.headNode.protoId.newPortId(headPortName);
+        a.headPortName = headPortName;
         a.headPoint = EPoint.fromLambda(headX, headY);
 
         String tailNodeName = revision >= 1 ? pieces.get(9) : unQuote(pieces.get(9));
@@ -988,7 +1267,7 @@ public class JelibParser
         double tailX = readDouble(pieces.get(11));
         double tailY = readDouble(pieces.get(12));
         a.tailNode = cc.diskName.get(tailNodeName);
-        a.tailPort = a.tailNode.protoId.newPortId(tailPortName);
+        a.tailPortName = tailPortName;
         a.tailPoint = EPoint.fromLambda(tailX, tailY);
 
         // parse state information in field 4
@@ -1062,7 +1341,26 @@ public class JelibParser
         a.nameTextDescriptor = nameTdC.td;
 
         // add variables in fields 13 and up
-        a.vars = readVariables(pieces, 13);
+        if (deferIds && hasIdVariables(pieces, 13)) {
+            a.varPieces = pieces;
+            a.varPosition = 13;
+        } else {
+            a.vars = readVariables(pieces, 13);
+        }
+        return a;
+    }
+
+    private void resolveArc(ArcContents a, CellContents cc) {
+        curLineNumber = a.line;
+        TechId techId = a.arcTechName != null ? idManager.newTechId(a.arcTechName) : cc.techId;
+        a.arcProtoId = techId.newArcProtoId(a.arcProtoName);
+        a.headPort = a.headNode.protoId.newPortId(a.headPortName);
+        a.tailPort = a.tailNode.protoId.newPortId(a.tailPortName);
+        a.arcTechName = a.arcProtoName = a.headPortName = a.tailPortName = null;
+        if (a.varPieces != null) {
+            a.vars = readVariables(a.varPieces, a.varPosition);
+            a.varPieces = null;
+        }
         cc.arcs.add(a);
     }
 
@@ -1161,7 +1459,12 @@ public class JelibParser
 				continue;
 			}
 			String varName = unQuote(piece.substring(0, openPos));
-			Variable.Key varKey = Variable.newKey(varName);
+			Variable.Key varKey = varKeys.get(varName);
+			if (varKey == null)
+			{
+				varKey = Variable.newKey(varName);
+				varKeys.put(varName, varKey);
+			}
 			int closePos = piece.indexOf(')', openPos);
 			if (closePos < 0)
 			{
@@ -1294,6 +1597,45 @@ public class JelibParser
         return variablesBuf.toArray(Variable.NULL_ARRAY);
 	}
 
+	/**
+	 * Method to tell whether reading variables from a List of strings would create Ids.
+	 * A parser of cell lines leaves such variables to be read when the cell is finished.
+	 * @param pieces the array of Strings that described the ElectricObject.
+	 * @param position the index in the array of strings where Variable descriptions begin.
+	 * @return true if some Variable has a type which refers to an Id.
+	 */
+	private boolean hasIdVariables(List<String> pieces, int position)
+	{
+		for(int i=position; i<pieces.size(); i++)
+		{
+			String piece = pieces.get(i);
+			int openPos = 0;
+			boolean inQuote = false;
+			for(; openPos < piece.length(); openPos++)
+			{
+				char chr = piece.charAt(openPos);
+				if (chr == escapeChar) { openPos++;   continue; }
+				if (chr == '"') inQuote = !inQuote;
+				if (chr == '(' && !inQuote) break;
+			}
+			if (openPos >= piece.length()) continue;
+			int closePos = piece.indexOf(')', openPos);
+			if (closePos < 0 || closePos + 1 >= piece.length()) continue;
+			switch (piece.charAt(closePos + 1))
+			{
+				case 'C':
+				case 'E':
+				case 'L':
+				case 'O':
+				case 'P':
+				case 'R':
+				case 'T':
+					return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Method to load a TextDescriptor from a String description of it.
 	 * @param varBits the String that describes the TextDescriptor.
@@ -1656,18 +1998,34 @@ public class JelibParser
         return s.length() > 0 ? Double.parseDouble(s) : 0;
     }
 
+    private int getLineNumber() {
+        return curLineNumber >= 0 ? curLineNumber : lineReader.getLineNumber();
+    }
+
     private void logError(String message) {
-        String s = curReadFile + ", line " + lineReader.getLineNumber() + ", " + message;
+        String s = curReadFile + ", line " + getLineNumber() + ", " + message;
+        if (deferredErrors != null) {
+            deferredErrors.add(new DeferredMessage(s, false));
+            return;
+        }
         errorLogger.logError(s, -1);
     }
 
     private void logWarning(String message) {
-        String s = curReadFile + ", line " + lineReader.getLineNumber() + ", " + message;
+        String s = curReadFile + ", line " + getLineNumber() + ", " + message;
+        if (deferredErrors != null) {
+            deferredErrors.add(new DeferredMessage(s, true));
+            return;
+        }
         errorLogger.logWarning(s, null, -1);
     }
 
     private void logError(String message, CellId cellId) {
-        String s = curReadFile + ", line " + lineReader.getLineNumber() + ", " + message;
+        String s = curReadFile + ", line " + getLineNumber() + ", " + message;
+        if (deferredErrors != null) {
+            deferredErrors.add(new DeferredMessage(s, false));
+            return;
+        }
         errorLogger.logError(s, cellId, -1);
     }
 }
@@ -29,6 +29,7 @@ import com.sun.electric.database.hierarchy.Cell;
 import com.sun.electric.database.text.TextUtils;
 import com.sun.electric.tool.simulation.AnalogAnalysis;
 import com.sun.electric.tool.simulation.Stimuli;
+import com.sun.electric.tool.simulation.WaveformStore;
 
 import java.io.IOException;
 import java.net.URL;
@@ -74,6 +75,8 @@ public class RawSpiceOut extends Simulate
 		int eventCount = -1;
 		String[] signalNames = null;
 		double[][] values = null;
+		WaveformStore store = null;
+		double[] storeRow = null;
 		for(;;)
 		{
 			String line = getLineFromSimulator();
@@ -110,6 +113,8 @@ public class RawSpiceOut extends Simulate
 					eventCount = -1;
 					signalNames = null;
 					values = null;
+					store = null;
+					storeRow = null;
 				}
 
 				// start reading a new analysis
@@ -151,7 +156,15 @@ public class RawSpiceOut extends Simulate
 					return;
 				}
 				signalNames = new String[numSignals];
-				values = new double[numSignals][eventCount];
+				if (sd.isUseLegacySimulationCode())
+				{
+					values = new double[numSignals][eventCount];
+				} else
+				{
+					// samples go to an off-heap store which is read lazily when signals are displayed
+					store = new WaveformStore(numSignals, true);
+					storeRow = new double[numSignals];
+				}
 				for(int i=0; i<=numSignals; i++)
 				{
 					if (postColon.length() > 0)
@@ -231,15 +244,16 @@ public class RawSpiceOut extends Simulate
 							{
 								double val = TextUtils.atof(field);
 								if (i == 0) an.setCommonTime(j, val); else
-									values[i-1][j] = val;
+									if (store != null) storeRow[i-1] = val; else
+										values[i-1][j] = val;
 							}
 							i++;
 							if (i > numSignals) break;
 						}
 					}
+					if (store != null) store.addEvent(an.getCommonTimeArray()[j], storeRow, 0);
 				}
-				for (int i = 0; i < numSignals; i++)
-					an.addSignal(signalNames[i], null, values[i]);
+				addSignals(an, signalNames, values, store);
 				continue;
 			}
 			if (preColon.equals("Binary"))
@@ -260,11 +274,41 @@ public class RawSpiceOut extends Simulate
 				{
 					an.setCommonTime(j, dataInputStream.readDouble());
 					for(int i=0; i<numSignals; i++)
-						values[i][j] = dataInputStream.readDouble();
+					{
+						double val = dataInputStream.readDouble();
+						if (store != null) storeRow[i] = val; else
+							values[i][j] = val;
+					}
+					if (store != null) store.addEvent(an.getCommonTimeArray()[j], storeRow, 0);
 				}
+				addSignals(an, signalNames, values, store);
 				continue;
 			}
 		}
 	}
 
+	/**
+	 * Method to create the signals of an analysis once all of its values are read.
+	 * @param an the analysis.
+	 * @param signalNames the names of the signals.
+	 * @param values the values of the signals when they are kept on the heap.
+	 * @param store the store with the values of the signals, null if they are kept on the heap.
+	 */
+	private void addSignals(AnalogAnalysis an, String[] signalNames, double[][] values, WaveformStore store)
+		throws IOException
+	{
+		if (store != null)
+		{
+			store.finish();
+			an.addWaveformStore(store);
+			for (int i = 0; i < signalNames.length; i++)
+				an.addSignal(signalNames[i], null, store.getMinTime(), store.getMaxTime(),
+					store.getMinValue(i), store.getMaxValue(i));
+		} else
+		{
+			for (int i = 0; i < signalNames.length; i++)
+				an.addSignal(signalNames[i], null, values[i]);
+		}
+	}
+
 }
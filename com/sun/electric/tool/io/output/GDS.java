@@ -44,6 +44,8 @@ import com.sun.electric.technology.Layer;
 import com.sun.electric.technology.PrimitiveNode;
 import com.sun.electric.technology.Technology;
 import com.sun.electric.technology.technologies.Generic;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.io.GDSLayers;
 import com.sun.electric.tool.io.IOTool;
 import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
@@ -53,8 +55,12 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -65,7 +71,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class writes files in GDS format.
@@ -96,13 +104,14 @@ public class GDS extends Geometry
 	private static final short HDR_BOUNDARY    = 0x0800;
 	private static final short HDR_PATH        = 0x0900;
 	private static final short HDR_SREF        = 0x0A00;
-//	private static final short HDR_AREF        = 0x0B00;
+	private static final short HDR_AREF        = 0x0B00;
 	private static final short HDR_TEXT        = 0x0C00;
 	private static final short HDR_LAYER       = 0x0D02;
 	private static final short HDR_DATATYPE    = 0x0E02;
 	private static final short HDR_XY          = 0x1003;
 	private static final short HDR_ENDEL       = 0x1100;
 	private static final short HDR_SNAME       = 0x1206;
+	private static final short HDR_COLROW      = 0x1302;
 	private static final short HDR_TEXTTYPE    = 0x1602;
 	private static final short HDR_PRESENTATION= 0x1701;
 	private static final short HDR_STRING	   = 0x1906;
@@ -123,11 +132,19 @@ public class GDS extends Geometry
 	//private static final int HDR_M_STRNAME     =     32; // replace by preference IOTool.getGDSCellNameMaxLen
 	private static final int HDR_M_ASCII       =    256;
 
-	/** for buffering output data */			private static byte [] dataBufferGDS = new byte[DSIZE];
-	/** for buffering output data */			private static byte [] emptyBuffer = new byte[DSIZE];
-	/** Current layer for gds output */			private static GDSLayers currentLayerNumbers;
-	/** Position of next byte in the buffer */	private static int bufferPosition;
-	/** Number data buffers output so far */	private static int blockCount;
+	/** initial size of a cell buffer */		private static final int CELLBUFFERSIZE = 65536;
+	/** cells encoded ahead, per thread */		private static final int ENCODEAHEAD = 4;
+	/** smallest array written as AREF */		private static final int MINARRAYSIZE = 4;
+	/** most columns or rows in an AREF */		private static final int MAXARRAYDIM = 32767;
+	/** records of the cell being encoded */	private ByteBuffer cellBuffer;
+	/** Current layer for gds output */			private GDSLayers currentLayerNumbers = GDSLayers.EMPTY;
+	/** the output file */						private FileChannel channel;
+	/** number of bytes written to the file */	private long bytesWritten;
+	/** tasks which encode cells */			private TaskGroup encodeGroup;
+	/** encoders not used by a task */			private List<GDS> freeEncoders;
+	/** number of encoding threads */			private int numEncoders;
+	/** encoded cells not written yet */		private List<EncodedCell> pendingCells;
+	/** text of nodes in cells being visited */	private Map<Cell,List<TextElement>> cellTexts;
 	/** constant for GDS units */				private double scaleFactor;
 	/** cell naming map */						private Map<Cell,String> cellNames;
 	/** layer number map */						private Map<Layer,GDSLayers> layerNumbers;
@@ -150,6 +167,7 @@ public class GDS extends Geometry
 		boolean outUpperCase = IOTool.isGDSOutUpperCase();
         boolean includeText = IOTool.isGDSInIncludesText();
         double outputScale =  IOTool.getGDSOutputScale();
+		boolean outWritesArrays = IOTool.isGDSOutWritesArrays();
 
         public GDSPreferences(boolean factory)
 		{
@@ -165,10 +183,17 @@ public class GDS extends Geometry
 				return null;
 			}
 			GDS out = new GDS(this);
-			if (out.openBinaryOutputStream(filePath)) return null;
+			if (out.openChannel(filePath)) return null;
 			BloatVisitor visitor = out.makeBloatVisitor(getMaxHierDepth(cell));
-			if (out.writeCell(cell, context, visitor)) return null;
-			if (out.closeBinaryOutputStream()) return null;
+			boolean error;
+			try
+			{
+				error = out.writeCell(cell, context, visitor);
+			} finally
+			{
+				if (out.closeChannel()) error = true;
+			}
+			if (error) return null;
 			System.out.println(filePath + " written");
 
 			// warn if library name was changed
@@ -186,24 +211,120 @@ public class GDS extends Geometry
 		localPrefs = gp;
 	}
 
+	/**
+	 * Creates an encoder of cells which shares the names, layers and errors of the writer.
+	 * @param writer the writer of the file.
+	 */
+	private GDS(GDS writer)
+	{
+		localPrefs = writer.localPrefs;
+		filePath = writer.filePath;
+		errorLogger = writer.errorLogger;
+		topCell = writer.topCell;
+		scaleFactor = writer.scaleFactor;
+		cellNames = writer.cellNames;
+		layerNumbers = writer.layerNumbers;
+		nameRemapping = new HashMap<String,Set<String>>();
+	}
+
 	protected void start()
 	{
 		initOutput();
+		startEncoders();
+		cellBuffer = ByteBuffer.allocateDirect(CELLBUFFERSIZE);
 		outputBeginLibrary(topCell);
+		writeBuffer(cellBuffer);
 	}
 
 	protected void done()
 	{
+		try
+		{
+			while (!pendingCells.isEmpty())
+				writeBuffer(waitForCell(pendingCells.remove(0)));
+		} finally
+		{
+			try
+			{
+				encodeGroup.await();
+			} catch (JobException e)
+			{
+				// tasks keep their failures in their cells, which are reported above
+			}
+		}
+		cellBuffer.clear();
 		outputHeader(HDR_ENDLIB, 0);
 		doneWritingOutput();
 	}
 
-	/** Method to write cellGeom */
-	protected void writeCellGeom(CellGeom cellGeom)
+	/**
+	 * Method to write cellGeom.
+	 * The records of the cell are encoded by another thread,
+	 * and they are written to the file in the order of the calls.
+	 */
+	protected void writeCellGeom(final CellGeom cellGeom)
 	{
-		// write this cell
+		// give a name to the cell before other threads look for it
+		getCellName(cellGeom.cell);
+		final List<TextElement> texts = cellTexts.remove(cellGeom.cell);
+		final EncodedCell encoded = new EncodedCell();
+		pendingCells.add(encoded);
+		encodeGroup.submit(cellGeom.cell.describe(false), new Runnable()
+		{
+			public void run()
+			{
+				GDS encoder;
+				synchronized (freeEncoders)
+				{
+					encoder = freeEncoders.isEmpty() ? new GDS(GDS.this) : freeEncoders.remove(freeEncoders.size() - 1);
+				}
+				ByteBuffer buffer = null;
+				Throwable failure = null;
+				try
+				{
+					buffer = encoder.encodeCellGeom(cellGeom, texts);
+				} catch (Throwable e)
+				{
+					failure = e;
+				}
+				synchronized (freeEncoders)
+				{
+					freeEncoders.add(encoder);
+				}
+				encoded.setResult(buffer, failure);
+			}
+		});
+
+		// write the cells which are done, wait if too many are pending
+		while (!pendingCells.isEmpty() &&
+			(pendingCells.get(0).isDone() || pendingCells.size() > numEncoders * ENCODEAHEAD))
+		{
+			List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+			do
+			{
+				buffers.add(waitForCell(pendingCells.remove(0)));
+			} while (!pendingCells.isEmpty() && pendingCells.get(0).isDone());
+			writeBuffers(buffers.toArray(new ByteBuffer[buffers.size()]));
+		}
+	}
+
+	/**
+	 * Method to encode the records of a cell in a buffer. Runs in an encoding thread.
+	 * The geometry of the cell is released when it is encoded.
+	 * @param cellGeom the cell.
+	 * @param texts the text of nodes in the cell (may be null).
+	 * @return the records, ready to be written.
+	 */
+	private ByteBuffer encodeCellGeom(CellGeom cellGeom, List<TextElement> texts)
+	{
+		cellBuffer = ByteBuffer.allocateDirect(CELLBUFFERSIZE);
 		Cell cell = cellGeom.cell;
 		outputBeginStruct(cell);
+		if (texts != null)
+		{
+			for (TextElement text : texts)
+				writeTextElement(text);
+		}
 		boolean renamePins = (cell == topCell && localPrefs.convertNCCExportsConnectedByParentPins);
 		boolean colapseGndVddNames = (cell == topCell && localPrefs.collapseVddGndPinNames);
 
@@ -242,9 +363,12 @@ public class GDS extends Geometry
 		}
 
 		// write all instances
-		for (Nodable no : cellGeom.nodables)
+		if (localPrefs.outWritesArrays) writeNodableArrays(cellGeom.nodables); else
 		{
-			writeNodable(no);
+			for (Nodable no : cellGeom.nodables)
+			{
+				writeNodable(no);
+			}
 		}
 
 		// now write exports
@@ -308,6 +432,12 @@ public class GDS extends Geometry
             }
         }
         outputHeader(HDR_ENDSTR, 0);
+        cellGeom.polyMap.clear();
+        cellGeom.nodables.clear();
+        ByteBuffer result = cellBuffer;
+        cellBuffer = null;
+        result.flip();
+        return result;
 	}
 
     private boolean isTextNode(NodeInst ni) {
@@ -480,6 +610,22 @@ public class GDS extends Geometry
 	protected boolean includeGeometric() { return false; }
 
 	private boolean selectLayer(Layer layer)
+	{
+		GDSLayers numbers;
+		synchronized (layerNumbers)
+		{
+			numbers = findLayerNumbers(layer);
+		}
+
+		// might be null because Artwork layers are auto-generated and not in the Technology list
+		if (numbers == null) numbers = GDSLayers.EMPTY;
+		currentLayerNumbers = numbers;
+
+		// validLayer false if layerName = "" like for pseudo metals
+		return numbers.getNumLayers() > 0;
+	}
+
+	private GDSLayers findLayerNumbers(Layer layer)
 	{
 		GDSLayers numbers = layerNumbers.get(layer);
 		if (numbers == null)
@@ -498,13 +644,7 @@ public class GDS extends Geometry
 			}
 			numbers = layerNumbers.get(layer);
 		}
-
-		// might be null because Artwork layers are auto-generated and not in the Technology list
-		if (numbers == null) numbers = GDSLayers.EMPTY;
-		currentLayerNumbers = numbers;
-
-		// validLayer false if layerName = "" like for pseudo metals
-		return numbers.getNumLayers() > 0;
+		return numbers;
 	}
 
 	protected void writePoly(PolyBase poly, int layerNumber, int layerType)
@@ -554,19 +694,12 @@ public class GDS extends Geometry
 		NodeInst ni = (NodeInst)no; // In layout cell all Nodables are NodeInsts
 		Cell subCell = (Cell)ni.getProto();
 
-		// figure out transformation
-		int transValue = 0;
-		int angle = ni.getAngle();
-		if (ni.isXMirrored() != ni.isYMirrored()) transValue |= STRANS_REFLX;
-		if (ni.isYMirrored()) angle = (3600 - angle)%3600;
-		if (ni.isXMirrored()) angle = (1800 - angle)%3600;
-
 		// write a call to a cell
 		outputHeader(HDR_SREF, 0);
 		String name = cellNames.get(subCell);
 		outputName(HDR_SNAME, name, HDR_M_SNAME);
-		outputHeader(HDR_STRANS, transValue);
-		outputAngle(angle);
+		outputHeader(HDR_STRANS, getTransValue(ni));
+		outputAngle(getAngle(ni));
 		outputShort((short)12);
 		outputShort(HDR_XY);
 		outputInt(scaleDBUnit(ni.getAnchorCenterX()));
@@ -574,6 +707,201 @@ public class GDS extends Geometry
 		outputHeader(HDR_ENDEL, 0);
 	}
 
+	@Override
+	protected void reportWarning(String msg)
+	{
+		synchronized (errorLogger)
+		{
+			super.reportWarning(msg);
+		}
+	}
+
+	@Override
+	public void reportError(String msg)
+	{
+		synchronized (errorLogger)
+		{
+			super.reportError(msg);
+		}
+	}
+
+	/**
+	 * Method to figure out the STRANS flags of an instance.
+	 */
+	private static int getTransValue(NodeInst ni)
+	{
+		int transValue = 0;
+		if (ni.isXMirrored() != ni.isYMirrored()) transValue |= STRANS_REFLX;
+		return transValue;
+	}
+
+	/**
+	 * Method to figure out the GDS angle of an instance.
+	 */
+	private static int getAngle(NodeInst ni)
+	{
+		int angle = ni.getAngle();
+		if (ni.isYMirrored()) angle = (3600 - angle)%3600;
+		if (ni.isXMirrored()) angle = (1800 - angle)%3600;
+		return angle;
+	}
+
+	/**
+	 * Method to write instances, replacing regular grids of instances by AREF records.
+	 * Instances of the same cell with the same orientation are grouped.
+	 * Starting from the lowest unused instance of a group, the longest run of equally spaced
+	 * instances in its row is found, and then as many equally spaced rows as are complete.
+	 * @param nodables the instances in the cell.
+	 */
+	private void writeNodableArrays(List<Nodable> nodables)
+	{
+		// group instances by cell and orientation, keyed by their row and column
+		Map<String,TreeMap<Integer,TreeMap<Integer,NodeInst>>> groups =
+			new HashMap<String,TreeMap<Integer,TreeMap<Integer,NodeInst>>>();
+		List<String> groupOrder = new ArrayList<String>();
+		for (Nodable no : nodables)
+		{
+			NodeInst ni = (NodeInst)no;
+			String key = cellNames.get(ni.getProto()) + " " + getTransValue(ni) + " " + getAngle(ni);
+			TreeMap<Integer,TreeMap<Integer,NodeInst>> rows = groups.get(key);
+			if (rows == null)
+			{
+				rows = new TreeMap<Integer,TreeMap<Integer,NodeInst>>();
+				groups.put(key, rows);
+				groupOrder.add(key);
+			}
+			int x = scaleDBUnit(ni.getAnchorCenterX());
+			int y = scaleDBUnit(ni.getAnchorCenterY());
+			TreeMap<Integer,NodeInst> row = rows.get(Integer.valueOf(y));
+			if (row == null) rows.put(Integer.valueOf(y), row = new TreeMap<Integer,NodeInst>());
+			if (row.containsKey(Integer.valueOf(x)))
+			{
+				// coincident instances can't be described by an array
+				writeNodable(ni);
+				continue;
+			}
+			row.put(Integer.valueOf(x), ni);
+		}
+
+		for (String key : groupOrder)
+		{
+			TreeMap<Integer,TreeMap<Integer,NodeInst>> rows = groups.get(key);
+			while (!rows.isEmpty())
+			{
+				Integer y = rows.firstKey();
+				TreeMap<Integer,NodeInst> row = rows.get(y);
+				Integer x = row.firstKey();
+				NodeInst first = row.get(x);
+
+				// the run of instances in this row
+				int nCols = 1, dx = 0;
+				Integer nextX = row.higherKey(x);
+				if (nextX != null)
+				{
+					dx = nextX.intValue() - x.intValue();
+					while (nCols < MAXARRAYDIM && row.containsKey(Integer.valueOf(x.intValue() + nCols*dx))) nCols++;
+				}
+
+				// the rows above with the same run
+				int nRows = 1, dy = 0;
+				Integer nextY = rows.higherKey(y);
+				if (nextY != null)
+				{
+					dy = nextY.intValue() - y.intValue();
+					while (nRows < MAXARRAYDIM && hasRun(rows.get(Integer.valueOf(y.intValue() + nRows*dy)), x.intValue(), dx, nCols))
+						nRows++;
+				}
+				if (nCols * nRows < MINARRAYSIZE)
+				{
+					writeNodable(first);
+					removeInstance(rows, y.intValue(), x.intValue());
+					continue;
+				}
+
+				// write the array
+				outputHeader(HDR_AREF, 0);
+				outputName(HDR_SNAME, cellNames.get(first.getProto()), HDR_M_SNAME);
+				outputHeader(HDR_STRANS, getTransValue(first));
+				outputAngle(getAngle(first));
+				outputShort((short)8);
+				outputShort(HDR_COLROW);
+				outputShort((short)nCols);
+				outputShort((short)nRows);
+				outputShort((short)28);
+				outputShort(HDR_XY);
+				outputInt(x.intValue());
+				outputInt(y.intValue());
+				outputInt(x.intValue() + nCols*dx);
+				outputInt(y.intValue());
+				outputInt(x.intValue());
+				outputInt(y.intValue() + nRows*dy);
+				outputHeader(HDR_ENDEL, 0);
+				for (int j = 0; j < nRows; j++)
+					for (int i = 0; i < nCols; i++)
+						removeInstance(rows, y.intValue() + j*dy, x.intValue() + i*dx);
+			}
+		}
+	}
+
+	private static boolean hasRun(TreeMap<Integer,NodeInst> row, int x, int dx, int nCols)
+	{
+		if (row == null) return false;
+		for (int i = 0; i < nCols; i++)
+			if (!row.containsKey(Integer.valueOf(x + i*dx))) return false;
+		return true;
+	}
+
+	private static void removeInstance(TreeMap<Integer,TreeMap<Integer,NodeInst>> rows, int y, int x)
+	{
+		TreeMap<Integer,NodeInst> row = rows.get(Integer.valueOf(y));
+		row.remove(Integer.valueOf(x));
+		if (row.isEmpty()) rows.remove(Integer.valueOf(y));
+	}
+
+	/**
+	 * Class to describe the text of a node, which is written in the structure of its cell.
+	 */
+	private static class TextElement
+	{
+		private final Layer layer;
+		private final int transValue;
+		private final int angle;
+		private final double x, y;
+		private final String str;
+
+		private TextElement(Layer layer, int transValue, int angle, double x, double y, String str)
+		{
+			this.layer = layer;
+			this.transValue = transValue;
+			this.angle = angle;
+			this.x = x;
+			this.y = y;
+			this.str = str;
+		}
+	}
+
+	private void writeTextElement(TextElement text)
+	{
+		outputHeader(HDR_TEXT, 0);
+		if (text.layer != null) selectLayer(text.layer);
+		Integer firstLayerVal = currentLayerNumbers.getFirstLayer();
+		int layerNum = firstLayerVal.intValue() & 0xFFFF;
+		int layerType = (firstLayerVal.intValue() >> 16) & 0xFFFF;
+		outputHeader(HDR_LAYER, layerNum);
+		outputHeader(HDR_TEXTTYPE, layerType);
+		outputHeader(HDR_PRESENTATION, EXPORTPRESENTATION);
+		outputHeader(HDR_STRANS, text.transValue);
+		outputAngle(text.angle);
+		outputShort((short)12);
+		outputShort(HDR_XY);
+		outputInt(scaleDBUnit(text.x));
+		outputInt(scaleDBUnit(text.y));
+
+		// now the string
+		outputString(text.str, HDR_STRING);
+		outputHeader(HDR_ENDEL, 0);
+	}
+
 	/****************************** VISITOR SUBCLASS ******************************/
 
 	private BloatVisitor makeBloatVisitor(int maxDepth)
@@ -607,35 +935,12 @@ public class GDS extends Geometry
 				if (thisLayer != null && firstLayer == null) firstLayer = thisLayer;
 				if (poly.getStyle().isText())
 				{
-					// dump this text field
-					outputHeader(HDR_TEXT, 0);
-					if (firstLayer != null) selectLayer(firstLayer);
-					Integer firstLayerVal = currentLayerNumbers.getFirstLayer();
-					int layerNum = firstLayerVal.intValue() & 0xFFFF;
-					int layerType = (firstLayerVal.intValue() >> 16) & 0xFFFF;
-					outputHeader(HDR_LAYER, layerNum);
-					outputHeader(HDR_TEXTTYPE, layerType);
-					outputHeader(HDR_PRESENTATION, EXPORTPRESENTATION);
-
-					// figure out transformation
-					int transValue = 0;
-					int angle = ni.getAngle();
-					if (ni.isXMirrored() != ni.isYMirrored()) transValue |= STRANS_REFLX;
-					if (ni.isYMirrored()) angle = (3600 - angle)%3600;
-					if (ni.isXMirrored()) angle = (1800 - angle)%3600;
-
-					outputHeader(HDR_STRANS, transValue);
-					outputAngle(angle);
-					outputShort((short)12);
-					outputShort(HDR_XY);
+					// save this text field for the cell being visited
+					List<TextElement> texts = cellTexts.get(cellGeom.cell);
+					if (texts == null) cellTexts.put(cellGeom.cell, texts = new ArrayList<TextElement>());
 					Point2D [] points = poly.getPoints();
-					outputInt(scaleDBUnit(points[0].getX()));
-					outputInt(scaleDBUnit(points[0].getY()));
-
-					// now the string
-					String str = poly.getString();
-					outputString(str, HDR_STRING);
-					outputHeader(HDR_ENDEL, 0);
+					texts.add(new TextElement(firstLayer, getTransValue(ni), getAngle(ni),
+						points[0].getX(), points[0].getY(), poly.getString()));
 				}
 				poly.transform(trans);
 			}
@@ -658,11 +963,8 @@ public class GDS extends Geometry
 	 */
 	private void initOutput()
 	{
-		blockCount = 0;
-		bufferPosition = 0;
-
-		// all zeroes
-		for (int i=0; i<DSIZE; i++) emptyBuffer[i] = 0;
+		bytesWritten = 0;
+		cellTexts = new HashMap<Cell,List<TextElement>>();
 
 		Technology tech = topCell.getTechnology();
 		scaleFactor = tech.getScale() * localPrefs.outputScale;
@@ -683,7 +985,7 @@ public class GDS extends Geometry
 		}
 
 		// make a hashmap of all names to use for cells
-		cellNames = new HashMap<Cell,String>();
+		cellNames = new ConcurrentHashMap<Cell,String>();
 		buildUniqueNames(topCell, cellNames, localPrefs.cellNameLenMax, localPrefs.outUpperCase);
 	}
 
@@ -789,26 +1091,132 @@ public class GDS extends Geometry
 	 */
 	private void doneWritingOutput()
 	{
+		// pack the last data blocks with zeroes to 2048
+		long length = bytesWritten + cellBuffer.position();
+		long padded = (length + DSIZE*4 - 1) / (DSIZE*4) * (DSIZE*4);
+		for (long i = length; i < padded; i++) outputByte((byte)0);
+		writeBuffer(cellBuffer);
+	}
+
+	/**
+	 * Opens the file for writing with a FileChannel.
+	 * @param filePath the name of the file.
+	 * @return true on error.
+	 */
+	private boolean openChannel(String filePath)
+	{
+		this.filePath = filePath;
 		try
 		{
-			// Write out the current buffer
-			if (bufferPosition > 0)
+			channel = new FileOutputStream(filePath).getChannel();
+		} catch (FileNotFoundException e)
+		{
+			System.out.println("Could not write file " + filePath);
+			System.out.println("Reason: " + e.getMessage());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the file.
+	 * @return true on error.
+	 */
+	private boolean closeChannel()
+	{
+		try
+		{
+			channel.close();
+		} catch (IOException e)
+		{
+			System.out.println("Error closing " + filePath);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method to create the group of tasks which encode cells.
+	 * The tasks run on the shared task pool in the context of the current Job.
+	 */
+	private void startEncoders()
+	{
+		encodeGroup = new TaskGroup("GDS Writer", true);
+		numEncoders = encodeGroup.getNumThreads();
+		freeEncoders = new ArrayList<GDS>();
+		pendingCells = new ArrayList<EncodedCell>();
+	}
+
+	/**
+	 * Class to hold the records of a cell encoded by a task.
+	 */
+	private static class EncodedCell
+	{
+		private ByteBuffer buffer;
+		private Throwable failure;
+		private boolean done;
+
+		private synchronized void setResult(ByteBuffer buffer, Throwable failure)
+		{
+			this.buffer = buffer;
+			this.failure = failure;
+			done = true;
+			notifyAll();
+		}
+
+		private synchronized boolean isDone() { return done; }
+	}
+
+	private ByteBuffer waitForCell(EncodedCell cell)
+	{
+		synchronized (cell)
+		{
+			while (!cell.done)
 			{
-				// Pack with zeroes
-				for (int i = bufferPosition; i < DSIZE; i++) dataBufferGDS[i] = 0;
-				dataOutputStream.write(dataBufferGDS, 0, DSIZE);
-				blockCount++;
+				try
+				{
+					cell.wait();
+				} catch (InterruptedException e)
+				{
+					throw new IllegalStateException("GDS writing interrupted");
+				}
 			}
+		}
+		Throwable cause = cell.failure;
+		if (cause != null)
+		{
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new IllegalStateException(cause);
+		}
+		return cell.buffer;
+	}
+
+	private void writeBuffer(ByteBuffer buffer)
+	{
+		if (buffer == cellBuffer) buffer.flip();
+		writeBuffers(new ByteBuffer[] {buffer});
+		if (buffer == cellBuffer) buffer.clear();
+	}
 
-			//  Pad to 2048
-			while (blockCount%4 != 0)
+	/**
+	 * Method to write buffers to the file with a gathering write.
+	 */
+	private void writeBuffers(ByteBuffer [] buffers)
+	{
+		try
+		{
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers) remaining += buffer.remaining();
+			while (remaining > 0)
 			{
-				dataOutputStream.write(emptyBuffer, 0, DSIZE);
-				blockCount++;
+				long written = channel.write(buffers);
+				remaining -= written;
+				bytesWritten += written;
 			}
 		} catch (IOException e)
 		{
-			reportError("End of file reached while finishing GDS");
+			reportError("Error writing GDS: " + e.getMessage());
 		}
 	}
 
@@ -842,7 +1250,11 @@ public class GDS extends Geometry
 		outputHeader(HDR_BGNSTR, 0);
 		outputDate(cell.getCreationDate());
 		outputDate(cell.getRevisionDate());
+		outputName(HDR_STRNAME, getCellName(cell), localPrefs.cellNameLenMax);
+	}
 
+	private String getCellName(Cell cell)
+	{
 		String name = cellNames.get(cell);
 		if (name == null)
 		{
@@ -851,7 +1263,7 @@ public class GDS extends Geometry
 			name = makeUniqueName(cell, cellNames, localPrefs.cellNameLenMax, localPrefs.outUpperCase);
 			cellNames.put(cell, name);
 		}
-		outputName(HDR_STRNAME, name, localPrefs.cellNameLenMax);
+		return name;
 	}
 
 	/**
@@ -1035,19 +1447,19 @@ public class GDS extends Geometry
 	 */
 	private void outputByte(byte val)
 	{
-		dataBufferGDS[bufferPosition++] = val;
-		if (bufferPosition >= DSIZE)
-		{
-			try
-			{
-				dataOutputStream.write(dataBufferGDS, 0, DSIZE);
-			} catch (IOException e)
-			{
-				reportError("End of file reached while writing GDS");
-			}
-			blockCount++;
-			bufferPosition = 0;
-		}
+		if (!cellBuffer.hasRemaining()) growBuffer();
+		cellBuffer.put(val);
+	}
+
+	/**
+	 * Method to double the size of the buffer of the cell being encoded.
+	 */
+	private void growBuffer()
+	{
+		ByteBuffer bigger = ByteBuffer.allocateDirect(cellBuffer.capacity()*2);
+		cellBuffer.flip();
+		bigger.put(cellBuffer);
+		cellBuffer = bigger;
 	}
 
 	private int scaleDBUnit(double dbunit)
@@ -1067,8 +1479,8 @@ public class GDS extends Geometry
 	 */
 	private void outputShort(short val)
 	{
-		outputByte((byte)((val>>8)&BYTEMASK));
-		outputByte((byte)(val&BYTEMASK));
+		if (cellBuffer.remaining() < 2) growBuffer();
+		cellBuffer.putShort(val);
 	}
 
 	/**
@@ -1076,8 +1488,8 @@ public class GDS extends Geometry
 	 */
 	private void outputInt(int val)
 	{
-		outputShort((short)(val>>16));
-		outputShort((short)val);
+		if (cellBuffer.remaining() < 4) growBuffer();
+		cellBuffer.putInt(val);
 	}
 
 	/**
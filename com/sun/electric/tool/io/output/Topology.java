@@ -45,15 +45,19 @@ import com.sun.electric.database.variable.VarContext;
 import com.sun.electric.database.variable.Variable;
 import com.sun.electric.technology.PrimitiveNode;
 import com.sun.electric.technology.PrimitivePort;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.generator.sclibrary.SCLibraryGen;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This is the Simulation Interface tool.
@@ -66,6 +70,7 @@ public abstract class Topology extends Output
 
 	/** Map of all CellTopologies */				private Map<String,CellNetInfo> cellTopos;
 	/** Map of all Cell names */					private Map<Cell,String> cellNameMap;
+	/** CellNetInfo computed ahead, by Netlist */	private Map<Netlist,CellNetInfo> precomputedNetInfo;
 													private HierarchyEnumerator.CellInfo lastInfo;
 
 	/** Creates a new instance of Topology */
@@ -98,11 +103,79 @@ public abstract class Topology extends Output
 
 		// write out cells
 		start();
+
+		// compute the network information of the cells in parallel (after start(), which sets up name legalization)
+		precomputeNetworkInformation(cell);
 		HierarchyEnumerator.enumerateCell(cell, context, visitor, getShortResistors());
 		done();
+		precomputedNetInfo = null;
 		return false;
 	}
 
+	/**
+	 * Method to compute the network information of every cell in the hierarchy
+	 * on the shared task pool, before the cells are written.
+	 * It must be called after start(), because network names are made safe with the state of the writer.
+	 * The cells are still written one at a time, in the order of the hierarchy
+	 * traversal, so the output does not change.  Each precomputed CellNetInfo is
+	 * used once, by the first traversal of a cell with the same Netlist, and any
+	 * other request is computed as before.
+	 */
+	private void precomputeNetworkInformation(Cell cell)
+	{
+		precomputedNetInfo = new HashMap<Netlist,CellNetInfo>();
+		if (DEBUGTOPOLOGY) return;
+		TaskGroup group = new TaskGroup("Network information", true);
+		if (group.getNumThreads() <= 1) return;
+
+		// gather the netlists in the hierarchy, as the hierarchy enumerator will find them
+		List<Netlist> netlists = new ArrayList<Netlist>();
+		Set<Netlist> seen = new HashSet<Netlist>();
+		Netlist topNetlist = cell.getNetlist(getShortResistors());
+		seen.add(topNetlist);
+		netlists.add(topNetlist);
+		for(int i=0; i<netlists.size(); i++)
+		{
+			Netlist netlist = netlists.get(i);
+			if (skipCellAndSubcells(netlist.getCell())) continue;
+			for(Iterator<Nodable> it = netlist.getNodables(); it.hasNext(); )
+			{
+				Nodable no = it.next();
+				if (!no.isCellInstance() || ((Cell)no.getProto()).isIcon()) continue;
+				Netlist subNetlist = netlist.getNetlist(no);
+				if (subNetlist != null && seen.add(subNetlist)) netlists.add(subNetlist);
+			}
+		}
+
+		// compute the network information of each netlist
+		final boolean useExportedName = isNetworksUseExportedNames();
+		final CellNetInfo [] results = new CellNetInfo[netlists.size()];
+		for(int i=0; i<netlists.size(); i++)
+		{
+			final int index = i;
+			final Netlist netlist = netlists.get(i);
+			group.submit(netlist.getCell().describe(false), new Runnable()
+			{
+				public void run()
+				{
+					results[index] = doGetNetworks(netlist.getCell(), false, null, useExportedName, netlist);
+				}
+			});
+		}
+		try
+		{
+			group.await();
+		} catch (JobException e)
+		{
+			// the cells whose tasks failed are computed again while they are written
+			System.out.println("Warning: could not compute network information in parallel: " + e.getMessage());
+		}
+		for(int i=0; i<netlists.size(); i++)
+		{
+			if (results[i] != null) precomputedNetInfo.put(netlists.get(i), results[i]);
+		}
+	}
+
 	/** Abstract method called before hierarchy traversal */
 	protected abstract void start();
 
@@ -454,6 +527,7 @@ public abstract class Topology extends Output
 		private Network pwrNet;
 		private Network gndNet;
 		private Netlist netList;
+		private List<String> warnings = new ArrayList<String>();
 
 		protected CellSignal getCellSignal(Network net) { return cellSignals.get(net); }
 		protected Iterator<CellSignal> getCellSignals() { return cellSignalsSorted.iterator(); }
@@ -468,7 +542,17 @@ public abstract class Topology extends Output
 	private CellNetInfo getNetworkInformation(Cell cell, boolean quiet, String paramName, boolean useExportedName,
 		HierarchyEnumerator.CellInfo info)
 	{
-		CellNetInfo cni = doGetNetworks(cell, quiet, paramName, useExportedName, info);
+		// use the information computed ahead if it matches
+		CellNetInfo cni = null;
+		if (precomputedNetInfo != null && !quiet && useExportedName == isNetworksUseExportedNames())
+		{
+			cni = precomputedNetInfo.remove(info.getNetlist());
+			if (cni != null && cni.cell != cell) cni = null;
+		}
+		if (cni != null) cni.paramName = paramName; else
+			cni = doGetNetworks(cell, quiet, paramName, useExportedName, info.getNetlist());
+		for(String warning : cni.warnings) System.out.println(warning);
+		cni.warnings = null;
 		if (DEBUGTOPOLOGY)
 		{
 			printWriter.println("********Decomposition of " + cell);
@@ -505,7 +589,7 @@ public abstract class Topology extends Output
 	}
 
 	private CellNetInfo doGetNetworks(Cell cell, boolean quiet, String paramName, boolean useExportedName,
-		HierarchyEnumerator.CellInfo info)
+		Netlist netList)
 	{
 		// create the object with cell net information
 		CellNetInfo cni = new CellNetInfo();
@@ -513,7 +597,7 @@ public abstract class Topology extends Output
 		cni.paramName = paramName;
 
 		// get network information about this cell
-		cni.netList = info.getNetlist();
+		cni.netList = netList;
 		Global.Set globals = cni.netList.getGlobals();
 		int globalSize = globals.size();
 
@@ -704,7 +788,7 @@ public abstract class Topology extends Output
 				if (cni.pwrNet != null && cni.pwrNet != subNet && !multiPwr)
 				{
 					if (!quiet)
-						System.out.println("Warning: multiple power networks in " + cell);
+						cni.warnings.add("Warning: multiple power networks in " + cell);
 					multiPwr = true;
 				}
 				cni.pwrNet = subNet;
@@ -714,7 +798,7 @@ public abstract class Topology extends Output
 				if (cni.gndNet != null && cni.gndNet != subNet && !multiGnd)
 				{
 					if (!quiet)
-						System.out.println("Warning: multiple ground networks in " + cell);
+						cni.warnings.add("Warning: multiple ground networks in " + cell);
 					multiGnd = true;
 				}
 				cni.gndNet = subNet;
@@ -732,7 +816,7 @@ public abstract class Topology extends Output
 					if (cni.pwrNet != null && cni.pwrNet != net && !multiPwr)
 					{
 						if (!quiet)
-							System.out.println("Warning: multiple power networks in " + cell);
+							cni.warnings.add("Warning: multiple power networks in " + cell);
 						multiPwr = true;
 					}
 					cni.pwrNet = net;
@@ -742,7 +826,7 @@ public abstract class Topology extends Output
 					if (cni.gndNet != null && cni.gndNet != net && !multiGnd)
 					{
 						if (!quiet)
-							System.out.println("Warning: multiple ground networks in " + cell);
+							cni.warnings.add("Warning: multiple ground networks in " + cell);
 						multiGnd = true;
 					}
 					cni.gndNet = net;
@@ -765,7 +849,7 @@ public abstract class Topology extends Output
 						if (cni.pwrNet != null && cni.pwrNet != subNet && !multiPwr)
 						{
 							if (!quiet)
-								System.out.println("Warning: multiple power networks in " + cell);
+								cni.warnings.add("Warning: multiple power networks in " + cell);
 							multiPwr = true;
 						}
 						cni.pwrNet = subNet;
@@ -774,7 +858,7 @@ public abstract class Topology extends Output
 						if (cni.gndNet != null && cni.gndNet != subNet && !multiGnd)
 						{
 							if (!quiet)
-								System.out.println("Warning: multiple ground networks in " + cell);
+								cni.warnings.add("Warning: multiple ground networks in " + cell);
 							multiGnd = true;
 						}
 						cni.gndNet = subNet;
@@ -24,18 +24,26 @@
 package com.sun.electric.tool.ncc;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.sun.electric.database.hierarchy.Cell;
+import com.sun.electric.database.hierarchy.Nodable;
+import com.sun.electric.database.network.Netlist;
+import com.sun.electric.database.prototype.NodeProto;
 import com.sun.electric.database.variable.VarContext;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.ncc.basic.CellContext;
 import com.sun.electric.tool.ncc.basic.CompareList;
 import com.sun.electric.tool.ncc.basic.CompareLists;
 import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
 import com.sun.electric.tool.ncc.basic.NccUtils;
+import com.sun.electric.tool.ncc.netlist.NccNetlist;
 import com.sun.electric.tool.ncc.processing.HierarchyInfo;
 import com.sun.electric.tool.ncc.result.NccResult;
 import com.sun.electric.tool.ncc.result.NccResults;
@@ -46,6 +54,11 @@ import com.sun.electric.tool.ncc.result.NccResults;
  * More specifically, when we are asked to compare a schematic and a layout,
  * we scan both hierarchies to identify cell groups that have one or more cells
  * in the schematic hierarchy AND one or more cells in the schematic hierarchy.
+ * <p>
+ * Cell groups whose subcells have all been compared may be compared 
+ * concurrently. Results are reported in the order of a serial comparison,
+ * and each comparison's results are merged as soon as all the comparisons
+ * before it have been merged.
  */
 public class NccBottomUp {
 	
@@ -123,11 +136,6 @@ public class NccBottomUp {
 		    compareListCells.add(cc.cell);
 		}
 
-		Cell cell = cellCntxts.iterator().next().cell;
-		String grpNm = cell.getLibrary().getName()+":"+cell.getName();
-
-		hierInfo.beginNextCompareList(grpNm);
-
 		// notSubcircuit means check it but don't use it as a subcircuit
 		if (hasNotSubcircuitAnnotation(cellCntxts))  
 			hierInfo.purgeCurrentCompareList();
@@ -144,10 +152,6 @@ public class NccBottomUp {
 			} else {
 				hierInfo.restrictSubcktDetection(refCC, thisCC, compareListCells);
 
-				// release storage from previous Cell pair comparisons
-				if (options.operation==NccOptions.FLAT_EACH_CELL) 
-					results.abandonPriorResults();
-				
 				NccResult r = compareAndPrintStatus(refCC.cell, refCC.context,
 						                            thisCC.cell, thisCC.context, 
 													hierInfo, options, aborter); 
@@ -181,26 +185,51 @@ public class NccBottomUp {
 		return false;
 	}
 	
-	private NccResults processCompareLists(List<CompareList> compareLists,
-			                               PassedNcc passed,
-	                                       NccOptions options, 
-										   Aborter aborter) {
-		NccResults results = new NccResults();
-		HierarchyInfo hierInfo = new HierarchyInfo();
-		for (Iterator<CompareList> it=compareLists.iterator(); it.hasNext();) {
-			CompareList compareList = it.next();
-
-			boolean blackBoxAnn = hasBlackBoxAnnotation(compareList);
+	/** The comparison of one CompareList. CompareLists are compared as soon
+	 * as all the CompareLists they instantiate have been compared. */
+	private class CompareListTask implements Runnable {
+		private final int index;
+		private final CompareList compareList;
+		private final boolean blackBoxAnn;
+		private final HierarchyInfo hierInfo;
+		private final PassedNcc passed;
+		private final NccOptions options;
+		private final Aborter aborter;
+		/** CompareLists that instantiate this one */
+		private final List<CompareListTask> dependents = new ArrayList<CompareListTask>();
+		/** number of CompareLists that this one instantiates and that 
+		 * haven't been compared yet. Guarded by this. */
+		private int numPending;
+		/** results of this comparison, null once they are merged */
+		private NccResults results = new NccResults();
+		private boolean compared, blackBoxErr, aborted;
+		/** true when run() has returned. Guarded by NccBottomUp.this */
+		private boolean finished;
 
-			// FLAT_TOP_CELL means do all black boxes and root cell
-			if (options.operation==NccOptions.FLAT_TOP_CELL && !blackBoxAnn &&
-			    it.hasNext()) continue;
+		CompareListTask(int index, CompareList compareList, boolean blackBoxAnn,
+				        HierarchyInfo hierInfo, PassedNcc passed, 
+				        NccOptions options, Aborter aborter) {
+			this.index = index;
+			this.compareList = compareList;
+			this.blackBoxAnn = blackBoxAnn;
+			this.hierInfo = hierInfo;
+			this.passed = passed;
+			this.options = options;
+			this.aborter = aborter;
+		}
+		/** @return true if all the CompareLists that this one instantiates 
+		 * have now been compared */
+		synchronized boolean dependencyDone() {
+			numPending--;
+			return numPending==0;
+		}
+		boolean mismatch() {
+			return !results.exportMatch() || !results.topologyMatch();
+		}
+		public void run() {
+			// Don't compare anything a serial comparison wouldn't have reached
+			if (index>getHaltIndex()) return;
 
-			// release storage from previous Cell pair comparisons
-			if (options.operation==NccOptions.FLAT_EACH_CELL) 
-				results.abandonPriorResults();
-			
-			boolean blackBoxErr;
 			if (!compareList.isSafeToCheckSizes() &&
 			    options.operation!=NccOptions.FLAT_TOP_CELL &&
 			    !blackBoxAnn) {
@@ -228,24 +257,201 @@ public class NccBottomUp {
 						                      blackBoxAnn, passed, options, 
 						                      aborter); 
 			}
-			
-			if (blackBoxErr) {
+			compared = true;
+			aborted = aborter.userWantsToAbort();
+			if (blackBoxErr || aborted || 
+			    (mismatch() && options.haltAfterFirstMismatch)) {
+				halt(index);
+			}
+		}
+	}
+
+	/** index of the first CompareList after which a serial comparison would
+	 * have halted. Guarded by this. */
+	private int haltIndex = Integer.MAX_VALUE;
+	private TaskGroup group;
+	/** all the CompareLists in the order of a serial comparison */
+	private List<CompareListTask> tasks;
+	/** results merged so far. Guarded by this. */
+	private NccResults mergedResults;
+	/** index of the next CompareList to merge. Guarded by this. */
+	private int nextToMerge;
+	/** Netlists built before the concurrent comparisons begin. Holding them
+	 * keeps comparisons from rebuilding the same Netlist concurrently. */
+	private final List<Netlist> netlists = new ArrayList<Netlist>();
+
+	private synchronized int getHaltIndex() {return haltIndex;}
+	private synchronized void halt(int index) {
+		haltIndex = Math.min(haltIndex, index);
+	}
+
+	private void submit(final CompareListTask task) {
+		Cell cell = task.compareList.iterator().next().cell;
+		group.submit("NCC "+cell.getName(), new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					taskFinished(task);
+				}
+				for (CompareListTask dep : task.dependents) {
+					if (dep.dependencyDone()) submit(dep);
+				}
+			}
+		});
+	}
+
+	/** Merge the results of every finished CompareList that isn't preceded
+	 * by an unfinished one, and release them from their tasks. Stop merging
+	 * at the CompareList where a serial comparison would have halted. */
+	private synchronized void taskFinished(CompareListTask task) {
+		task.finished = true;
+		while (nextToMerge<tasks.size()) {
+			CompareListTask t = tasks.get(nextToMerge);
+			if (!t.finished) return;
+			nextToMerge++;
+			if (!t.compared) {
+				nextToMerge = tasks.size();
+				return;
+			}
+
+			// release storage from previous Cell pair comparisons
+			if (t.options.operation==NccOptions.FLAT_EACH_CELL) 
+				mergedResults.abandonPriorResults();
+			for (NccResult r : t.results)  mergedResults.add(r);
+			boolean mismatch = t.mismatch();
+			t.results = null;
+
+			if (t.blackBoxErr) {
 				prln(
 					"Halting multiple cell NCC because of failure to build " +
 					"a black box"
 				);
-				return results;
-			}
-
-			if (aborter.userWantsToAbort()) {
-				return results;
-			} else if ((!results.exportMatch() || ! results.topologyMatch()) 
-					   && options.haltAfterFirstMismatch) {
+				nextToMerge = tasks.size();
+			} else if (t.aborted) {
+				nextToMerge = tasks.size();
+			} else if (mismatch && t.options.haltAfterFirstMismatch) {
 				// Don't stop for size mismatches
 				prln("Halting NCC after finding first mismatch");
-				return results;
+				nextToMerge = tasks.size();
+			}
+		}
+	}
+
+	/** Cells instantiated by Cell c. Include the schematic of an icon
+	 * because NCC descends into it. */
+	private List<Cell> getChildren(Cell c) {
+		List<Cell> children = new ArrayList<Cell>();
+		Netlist netlist = c.getNetlist(NccNetlist.SHORT_RESISTORS);
+		netlists.add(netlist);
+		for (Iterator<Nodable> it=netlist.getNodables(); it.hasNext();) {
+			NodeProto np = it.next().getProto();
+			if (!(np instanceof Cell)) continue;
+			Cell child = (Cell) np;
+			children.add(child);
+			if (child.isIcon()) {
+				Cell sch = child.contentsView();
+				if (sch!=null) children.add(sch);
+			}
+		}
+		return children;
+	}
+
+	/** Find the CompareLists instantiated by Cell c that aren't hidden 
+	 * beneath other CompareLists. We needn't look beneath a CompareList 
+	 * because it won't be compared until everything it instantiates has 
+	 * been compared. */
+	private Set<CompareListTask> getInstantiatedTasks(Cell c, 
+			                                 Map<Cell,CompareListTask> cellToTask,
+			                                 Map<Cell,Set<CompareListTask>> cellToInstTasks) {
+		Set<CompareListTask> tasks = cellToInstTasks.get(c);
+		if (tasks!=null) return tasks;
+		tasks = new HashSet<CompareListTask>();
+		for (Cell child : getChildren(c)) {
+			CompareListTask t = cellToTask.get(child);
+			if (t!=null) {
+				tasks.add(t);
+			} else {
+				tasks.addAll(getInstantiatedTasks(child, cellToTask, cellToInstTasks));
+			}
+		}
+		cellToInstTasks.put(c, tasks);
+		return tasks;
+	}
+
+	/** Record which CompareLists each CompareList depends upon. A 
+	 * CompareList depends upon the CompareLists it instantiates because 
+	 * their HierarchyInfo lets NCC treat them as subcircuits. */
+	private void findDependencies(List<CompareListTask> tasks) {
+		Map<Cell,CompareListTask> cellToTask = new HashMap<Cell,CompareListTask>();
+		for (CompareListTask task : tasks) {
+			for (CellContext cc : task.compareList)  cellToTask.put(cc.cell, task);
+		}
+		Map<Cell,Set<CompareListTask>> cellToInstTasks = new HashMap<Cell,Set<CompareListTask>>();
+		for (CompareListTask task : tasks) {
+			Set<CompareListTask> deps = new HashSet<CompareListTask>();
+			for (CellContext cc : task.compareList) {
+				deps.addAll(getInstantiatedTasks(cc.cell, cellToTask, cellToInstTasks));
+			}
+			for (CompareListTask dep : deps) {
+				// a serial comparison only sees CompareLists that come earlier
+				if (dep.index>=task.index) continue;
+				dep.dependents.add(task);
+				task.numPending++;
+			}
+		}
+	}
+
+	private NccResults processCompareLists(List<CompareList> compareLists,
+			                               PassedNcc passed,
+	                                       NccOptions options, 
+										   Aborter aborter) {
+		NccResults results = new NccResults();
+		HierarchyInfo hierInfo = new HierarchyInfo();
+		tasks = new ArrayList<CompareListTask>();
+		mergedResults = results;
+		nextToMerge = 0;
+		for (Iterator<CompareList> it=compareLists.iterator(); it.hasNext();) {
+			CompareList compareList = it.next();
+
+			boolean blackBoxAnn = hasBlackBoxAnnotation(compareList);
+
+			// FLAT_TOP_CELL means do all black boxes and root cell
+			if (options.operation==NccOptions.FLAT_TOP_CELL && !blackBoxAnn &&
+			    it.hasNext()) continue;
+
+			// number the CompareLists the way a serial comparison would
+			Cell cell = compareList.iterator().next().cell;
+			String grpNm = cell.getLibrary().getName()+":"+cell.getName();
+			HierarchyInfo listInfo = 
+				hierInfo.newCompareList(grpNm, tasks.size()+1);
+
+			tasks.add(new CompareListTask(tasks.size(), compareList, blackBoxAnn,
+					                      listInfo, passed, options, aborter));
+		}
+
+		group = new TaskGroup("NCC", options.parallel);
+		if (group.getNumThreads()>1) {
+			findDependencies(tasks);
+			for (CompareListTask task : tasks) {
+				if (task.numPending==0) submit(task);
+			}
+		} else {
+			for (CompareListTask task : tasks) {
+				task.run();
+				taskFinished(task);
+				if (task.index>=getHaltIndex()) break;
 			}
 		}
+		try {
+			group.await();
+		} catch (JobException e) {
+			prln("NCC interrupted: "+e.getMessage());
+		}
+		synchronized (this) {
+			tasks = null;
+			mergedResults = null;
+		}
 		return results;
 	}
 
@@ -39,6 +39,7 @@ import com.sun.electric.database.hierarchy.HierarchyEnumerator.NetNameProxy;
 import com.sun.electric.database.hierarchy.HierarchyEnumerator.NodableNameProxy;
 import com.sun.electric.database.variable.VarContext;
 import com.sun.electric.tool.ncc.basic.NccUtils;
+import com.sun.electric.tool.ncc.netlist.CompactNetlist;
 import com.sun.electric.tool.ncc.netlist.NccNetlist;
 import com.sun.electric.tool.ncc.netlist.NetObject;
 import com.sun.electric.tool.ncc.netlist.Part;
@@ -97,6 +98,7 @@ public class NccGlobals implements NccGlobalsReportable {
     /** can't build netlist? */               private boolean[] cantBuildNetlist;
     /** mismatches displayed by GUI */        private NccGuiInfo nccGuiInfo;
     /** holds performance counters */         private BenchmarkResults benchResults = new BenchmarkResults();
+    /** arrays used by hash code partition */ private CompactNetlist compactNetlist;
 
     
 	// ----------------------------- private methods --------------------------
@@ -342,6 +344,20 @@ public class NccGlobals implements NccGlobalsReportable {
     /** @return true if user wants to abort */
     public boolean userWantsToAbort() {return aborter.userWantsToAbort();}
 
+    /** Build the CompactNetlist used by hash code partitioning. The Parts
+     * and Wires must not change after this is called. The CompactNetlist
+     * is held in addition to the Parts and Wires, so it raises peak heap
+     * until releaseCompactNetlist() is called.
+     * @return true if the CompactNetlist could be built */
+    public boolean buildCompactNetlist() {
+    	compactNetlist = CompactNetlist.build(parts, wires);
+    	return compactNetlist!=null;
+    }
+    /** Release the CompactNetlist when hash code partitioning is done */
+    public void releaseCompactNetlist() {compactNetlist=null;}
+    /** @return the CompactNetlist or null if none is in use */
+    public CompactNetlist getCompactNetlist() {return compactNetlist;}
+
     /** Get result of benchmarking performance counters*/
 	public BenchmarkResults getBenchmarkResults() {
 		return benchResults;
@@ -65,6 +65,10 @@ public class NccOptions implements Serializable {
 	/** for hierarchical comparisons try to continue comparing
 	 * higher up in the hierarchy even if this Cell doesn't match */
 	public boolean haltAfterFirstMismatch = true;
+
+	/** for hierarchical comparisons compare Cells concurrently when
+	 * all the Cells they instantiate have already been compared */
+	public boolean parallel = true;
 	
 	/** If hash code partitioning detects a mismatch, how many mismatched 
 	 * Part or Wire Equivalence Classes should I print? */
@@ -98,6 +102,7 @@ public class NccOptions implements Serializable {
 		skipPassed = o.skipPassed;
 		howMuchStatus = o.howMuchStatus;
 		haltAfterFirstMismatch = o.haltAfterFirstMismatch;
+		parallel = o.parallel;
 		maxMismatchedEquivRecsToPrint = o.maxMismatchedEquivRecsToPrint;
 		maxMatchedEquivRecsToPrint = o.maxMatchedEquivRecsToPrint;
 		maxEquivRecMembersToPrint = o.maxEquivRecMembersToPrint;
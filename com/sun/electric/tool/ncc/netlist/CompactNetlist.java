@@ -0,0 +1,284 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompactNetlist.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+*/
+package com.sun.electric.tool.ncc.netlist;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sun.electric.tool.ncc.trees.Circuit;
+import com.sun.electric.tool.ncc.trees.EquivRecord;
+
+/** CompactNetlist holds the connectivity of all Parts and Wires in
+ * compressed sparse row form. Each Part and Wire gets an int index. The pins
+ * of Part p are pinWire[pinStart[p]..pinStart[p+1]-1] and the pins attached
+ * to Wire w are connPart[connStart[w]..connStart[w+1]-1]. The current hash
+ * code and leaf EquivRecord of every Part and Wire are kept in arrays.
+ * <p>
+ * Hash code partitioning spends nearly all its time computing hash codes
+ * and finding neighbors. Doing this with arrays avoids chasing pointers
+ * from Part to Wire to Circuit to EquivRecord for every pin. The Part and
+ * Wire objects are still used to build the EquivRecord tree and to report
+ * mismatches.
+ * <p>
+ * This does not reduce memory. The arrays are built in addition to the
+ * Parts and Wires, whose pin lists are still needed after hash code
+ * partitioning, so peak heap grows by about four ints per pin and four
+ * words per Part and Wire while the CompactNetlist is in use. Release it
+ * as soon as hash code partitioning is done.
+ * <p>
+ * The topology must not change after the CompactNetlist is built. Build it
+ * after series/parallel merging. EquivRecord.newLeafRecord() calls
+ * update() so that the codes follow the partitioning. */
+public class CompactNetlist {
+	// ---------------------------- private data ------------------------------
+	private final Part[] parts;
+	private final Wire[] wires;
+	/** index of the first pin of each Part. Has one extra element */
+	private final int[] pinStart;
+	/** index of the Wire attached to each pin */
+	private final int[] pinWire;
+	/** hash coefficient of each pin */
+	private final int[] pinCoeff;
+	/** number of gate and diffusion pins of each Mos, -1 for other Parts */
+	private final int[] partStack;
+	/** index of the first connection of each Wire. Has one extra element */
+	private final int[] connStart;
+	/** index of the Part attached to each connection */
+	private final int[] connPart;
+	/** hash coefficient of the Part pin of each connection */
+	private final int[] connCoeff;
+	/** current hash code of each Part and Wire */
+	private final int[] partCode, wireCode;
+	/** leaf EquivRecord containing each Part and Wire */
+	private final EquivRecord[] partRec, wireRec;
+
+	// ---------------------------- private methods ---------------------------
+	private static void addNetObjs(List<NetObject> netObjs, EquivRecord er) {
+		if (er==null) return;
+		if (er.isLeaf()) {
+			for (Iterator<Circuit> cit=er.getCircuits(); cit.hasNext();) {
+				for (Iterator<NetObject> nit=cit.next().getNetObjs(); nit.hasNext();) {
+					NetObject n = nit.next();
+					if (!n.isDeleted()) netObjs.add(n);
+				}
+			}
+		} else {
+			for (Iterator<EquivRecord> it=er.getOffspring(); it.hasNext();) {
+				addNetObjs(netObjs, it.next());
+			}
+		}
+	}
+
+	private CompactNetlist(Part[] parts, Wire[] wires, int numPins) {
+		this.parts = parts;
+		this.wires = wires;
+		pinStart = new int[parts.length+1];
+		pinWire = new int[numPins];
+		pinCoeff = new int[numPins];
+		partStack = new int[parts.length];
+		connStart = new int[wires.length+1];
+		connPart = new int[numPins];
+		connCoeff = new int[numPins];
+		partCode = new int[parts.length];
+		wireCode = new int[wires.length];
+		partRec = new EquivRecord[parts.length];
+		wireRec = new EquivRecord[wires.length];
+
+		// pins of Parts
+		int k = 0;
+		for (int p=0; p<parts.length; p++) {
+			pinStart[p] = k;
+			partStack[p] = parts[p] instanceof Mos ? ((Mos)parts[p]).nbGateDiffPins() : -1;
+			Wire[] pins = parts[p].pins;
+			int[] coeffs = parts[p].getPinCoeffs();
+			for (int i=0; i<pins.length; i++, k++) {
+				pinWire[k] = pins[i].getIndex();
+				pinCoeff[k] = coeffs[i];
+				connStart[pinWire[k]+1]++;
+			}
+		}
+		pinStart[parts.length] = k;
+
+		// transpose to get the pins attached to each Wire
+		for (int w=0; w<wires.length; w++)  connStart[w+1] += connStart[w];
+		int[] fill = new int[wires.length];
+		for (int p=0; p<parts.length; p++) {
+			for (k=pinStart[p]; k<pinStart[p+1]; k++) {
+				int w = pinWire[k];
+				int c = connStart[w] + fill[w]++;
+				connPart[c] = p;
+				connCoeff[c] = pinCoeff[k];
+			}
+		}
+
+		for (int p=0; p<parts.length; p++) {
+			partCode[p] = parts[p].getCode();
+			partRec[p] = parts[p].getParent().getParent();
+		}
+		for (int w=0; w<wires.length; w++) {
+			wireCode[w] = wires[w].getCode();
+			wireRec[w] = wires[w].getParent().getParent();
+		}
+	}
+
+	private int partIndex(NetObject n) {
+		int i = n.getIndex();
+		return i>=0 && i<parts.length && parts[i]==n ? i : -1;
+	}
+	private int wireIndex(NetObject n) {
+		int i = n.getIndex();
+		return i>=0 && i<wires.length && wires[i]==n ? i : -1;
+	}
+
+	// ---------------------------- public methods ----------------------------
+	/** Build the CompactNetlist of all the Parts and Wires in the
+	 * EquivRecord trees.
+	 * @param partsRoot root of the EquivRecord tree holding Parts
+	 * @param wiresRoot root of the EquivRecord tree holding Wires
+	 * @return the CompactNetlist or null if some Part is attached to a
+	 * Wire that isn't in wiresRoot */
+	public static CompactNetlist build(EquivRecord partsRoot, EquivRecord wiresRoot) {
+		List<NetObject> ps = new ArrayList<NetObject>();
+		List<NetObject> ws = new ArrayList<NetObject>();
+		addNetObjs(ps, partsRoot);
+		addNetObjs(ws, wiresRoot);
+
+		Wire[] wires = new Wire[ws.size()];
+		for (int w=0; w<wires.length; w++) {
+			wires[w] = (Wire) ws.get(w);
+			wires[w].setIndex(w);
+		}
+		Part[] parts = new Part[ps.size()];
+		int numPins = 0;
+		for (int p=0; p<parts.length; p++) {
+			parts[p] = (Part) ps.get(p);
+			parts[p].setIndex(p);
+			Wire[] pins = parts[p].pins;
+			for (int i=0; i<pins.length; i++) {
+				int w = pins[i].getIndex();
+				if (w<0 || w>=wires.length || wires[w]!=pins[i]) return null;
+			}
+			numPins += pins.length;
+		}
+		return new CompactNetlist(parts, wires, numPins);
+	}
+
+	/** Record the code and EquivRecord of the NetObjects of a newly born
+	 * leaf EquivRecord.
+	 * @param er the new leaf EquivRecord */
+	public void update(EquivRecord er) {
+		int code = er.getCode();
+		for (Iterator<Circuit> cit=er.getCircuits(); cit.hasNext();) {
+			for (Iterator<NetObject> nit=cit.next().getNetObjs(); nit.hasNext();) {
+				NetObject n = nit.next();
+				int i = partIndex(n);
+				if (i>=0) {
+					partCode[i] = code;
+					partRec[i] = er;
+					continue;
+				}
+				i = wireIndex(n);
+				if (i>=0) {
+					wireCode[i] = code;
+					wireRec[i] = er;
+				}
+			}
+		}
+	}
+
+	/** @return true if NetObject n is a Part or Wire of this CompactNetlist */
+	public boolean contains(NetObject n) {return partIndex(n)>=0 || wireIndex(n)>=0;}
+
+	/** Same as p.computeHashCode(): Mos.computeHashCode() for a Mos,
+	 * Part.computeHashCode() for any other Part
+	 * @param p a Part of this CompactNetlist */
+	public int hashPart(Part p) {
+		int i = partIndex(p);
+		int nbGateDiff = partStack[i];
+		if (nbGateDiff<0) {
+			int sum = 0;
+			for (int k=pinStart[i]; k<pinStart[i+1]; k++) {
+				sum += wireCode[pinWire[k]] * pinCoeff[k];
+			}
+			return sum;
+		}
+		// symmetric in the order of the stack: ABCD = DCBA
+		int start = pinStart[i];
+		int sumLo=0, sumHi=0;
+		for (int lo=start, hi=start+nbGateDiff-1; lo<start+(nbGateDiff+1)/2; lo++, hi--) {
+			sumLo += wireCode[pinWire[lo]] * pinCoeff[lo];
+			sumHi += wireCode[pinWire[hi]] * pinCoeff[hi];
+		}
+		int sum = sumLo * sumHi;
+		for (int k=start+nbGateDiff; k<pinStart[i+1]; k++) {
+			sum += wireCode[pinWire[k]] * pinCoeff[k];
+		}
+		return sum;
+	}
+
+	/** Same as Wire.computeHashCode()
+	 * @param w a Wire of this CompactNetlist */
+	public int hashWire(Wire w) {
+		int i = wireIndex(w);
+		int sum = 0;
+		for (int k=connStart[i]; k<connStart[i+1]; k++) {
+			sum += partCode[connPart[k]] * connCoeff[k];
+		}
+		return sum;
+	}
+
+	/** Check that the arrays give the same hash codes as the Parts and
+	 * Wires. The codes of the arrays must be current.
+	 * @return the number of Parts and Wires whose codes differ */
+	public int checkHashCodes() {
+		int numBad = 0;
+		for (Part p : parts) {
+			if (hashPart(p)!=p.computeHashCode().intValue()) numBad++;
+		}
+		for (Wire w : wires) {
+			if (hashWire(w)!=w.computeHashCode().intValue()) numBad++;
+		}
+		return numBad;
+	}
+
+	/** @return the number of pins of a Part or the number of Part pins
+	 * attached to a Wire. A NetObject may be counted more than once.
+	 * @param n a Part or Wire of this CompactNetlist */
+	public int numNeighbors(NetObject n) {
+		int i = partIndex(n);
+		if (i>=0) return pinStart[i+1] - pinStart[i];
+		i = wireIndex(n);
+		return connStart[i+1] - connStart[i];
+	}
+
+	/** @return the leaf EquivRecord containing the kth neighbor of n
+	 * @param n a Part or Wire of this CompactNetlist
+	 * @param k index of the neighbor: 0 &lt;= k &lt; numNeighbors(n) */
+	public EquivRecord getNeighborRecord(NetObject n, int k) {
+		int i = partIndex(n);
+		if (i>=0) return wireRec[pinWire[pinStart[i]+k]];
+		i = wireIndex(n);
+		return partRec[connPart[connStart[i]+k]];
+	}
+}
@@ -142,43 +142,49 @@ public class Mos extends Part {
 	}
 	private static final Map<PinTypeSetKey,PinType[]> TYPE_TO_PINTYPE_ARRAY = new HashMap<PinTypeSetKey,PinType[]>();
 	
-	private synchronized PinType[] getPinTypeArray() {
+	/** The map is shared by comparisons that run concurrently, so it is
+	 * guarded by itself */
+	private PinType[] getPinTypeArray() {
 		PinTypeSetKey key = new PinTypeSetKey(type(), isCapacitor(), numSeries(),
 				                              hasBody);
-		PinType[] pinTypeArray = TYPE_TO_PINTYPE_ARRAY.get(key);
-		if (pinTypeArray==null) {
-			pinTypeArray = new PinType[pins.length];
-			TYPE_TO_PINTYPE_ARRAY.put(key, pinTypeArray);
+		synchronized (TYPE_TO_PINTYPE_ARRAY) {
+			PinType[] pinTypeArray = TYPE_TO_PINTYPE_ARRAY.get(key);
+			if (pinTypeArray==null) {
+				pinTypeArray = new PinType[pins.length];
+				TYPE_TO_PINTYPE_ARRAY.put(key, pinTypeArray);
 			
-			pinTypeArray[0] = pinTypeArray[nbGateDiffPins()-1] =
-				new DiffType(type(), numSeries(), isCapacitor(), hasBody);
+				pinTypeArray[0] = pinTypeArray[nbGateDiffPins()-1] =
+					new DiffType(type(), numSeries(), isCapacitor(), hasBody);
 
-			int maxHeight = (numSeries()+1) / 2;
-			for (int gateHeight=1; gateHeight<=maxHeight; gateHeight++) {
-				pinTypeArray[gateHeight] = 
-					pinTypeArray[nbGateDiffPins()-1-gateHeight] = 
-					new GateType(type(), numSeries(), gateHeight, isCapacitor(), hasBody);
-			}
-			if (hasBody) {
-				pinTypeArray[pinTypeArray.length-1] = new BodyType(type(), numSeries(), isCapacitor());
+				int maxHeight = (numSeries()+1) / 2;
+				for (int gateHeight=1; gateHeight<=maxHeight; gateHeight++) {
+					pinTypeArray[gateHeight] = 
+						pinTypeArray[nbGateDiffPins()-1-gateHeight] = 
+						new GateType(type(), numSeries(), gateHeight, isCapacitor(), hasBody);
+				}
+				if (hasBody) {
+					pinTypeArray[pinTypeArray.length-1] = new BodyType(type(), numSeries(), isCapacitor());
+				}
 			}
+			return pinTypeArray;
 		}
-		return pinTypeArray;
 	}
     @Override
-	public synchronized PinType getPinTypeOfNthPin(int n) {
+	public PinType getPinTypeOfNthPin(int n) {
 		return getPinTypeArray()[n];
 	}
 	
 	/** Generate arrays of pin coefficients on demand. Share these arrays
-	 * between identically sized Transistors */
+	 * between identically sized Transistors. Transistors are built by
+	 * comparisons that run concurrently, so the lists are guarded by
+	 * CoeffGen.class */
 	private static class CoeffGen {
 		private static ArrayList<int[]> coeffArraysNoBody = new ArrayList<int[]>();
 		private static ArrayList<int[]> coeffArraysBody = new ArrayList<int[]>();
 		private static void ensureListEntry(ArrayList<int[]> coeffArrays, int numPins) {
 				while (coeffArrays.size()-1<numPins)  coeffArrays.add(null);
 		}
-		public static int[] getCoeffArray(int nbGateDiff, boolean withBody) {
+		public static synchronized int[] getCoeffArray(int nbGateDiff, boolean withBody) {
 			ArrayList<int[]> coeffArrays = withBody ? coeffArraysBody : coeffArraysNoBody;
 			ensureListEntry(coeffArrays, nbGateDiff);
 			int[] coeffArray = coeffArrays.get(nbGateDiff);
@@ -220,7 +226,8 @@ public class Mos extends Part {
 		Job.error(pins.length!=pin_coeffs.length, "wrong number of pin coeffs");
 	}
 	
-	private int nbGateDiffPins() {
+	/** @return the number of gate and diffusion pins of the stack, without the body */
+	int nbGateDiffPins() {
 		return hasBody ? pins.length-1 : pins.length;
 	}
 	
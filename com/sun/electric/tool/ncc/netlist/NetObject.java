@@ -50,6 +50,7 @@ public abstract class NetObject implements NetObjReportable {
 
     // ---------- private data -------------
     private Circuit myParent;
+    private int index = -1;
     private static final int MAX_CONN = 100;
 	
     /** Distinguish Parts, Wires, and Ports.
@@ -78,6 +79,11 @@ public abstract class NetObject implements NetObjReportable {
 
 	public void setParent(Circuit x){myParent=x;}
 
+	/** @return the index of this NetObject in the CompactNetlist. Only 
+	 * meaningful if the CompactNetlist contains this NetObject. */
+	public int getIndex() {return index;}
+	void setIndex(int i) {index=i;}
+
 	public abstract boolean isDeleted(); 
 	/** instance name qualified by path prefix */
     public abstract String getName();
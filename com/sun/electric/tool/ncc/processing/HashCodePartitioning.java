@@ -36,6 +36,7 @@ import com.sun.electric.tool.ncc.trees.LeafEquivRecords;
 import com.sun.electric.tool.ncc.NccGlobals;
 import com.sun.electric.tool.ncc.basic.NccUtils;
 import com.sun.electric.tool.ncc.lists.LeafList;
+import com.sun.electric.tool.ncc.netlist.CompactNetlist;
 import com.sun.electric.tool.ncc.netlist.NetObject;
 import com.sun.electric.tool.ncc.result.BenchmarkResults.BenchIdx;
 import com.sun.electric.tool.ncc.strategy.StratHashParts;
@@ -150,28 +151,41 @@ public class HashCodePartitioning {
 			EquivRecord child = cb.child;
 			
 			List<EquivRecord> adjacent = new ArrayList<EquivRecord>();
+			CompactNetlist compact = globals.getCompactNetlist();
 			for (Iterator<Circuit> ci=child.getCircuits(); ci.hasNext();) {
 				Circuit jc= ci.next();
 				for (Iterator<NetObject> ni=jc.getNetObjs(); ni.hasNext();) {
 					NetObject netObj= ni.next();
-					for (Iterator<NetObject> it=netObj.getConnected(); it.hasNext();) {
-						//for each adjacent NetObject
-						EquivRecord neighbor = it.next().getParent().getParent();
-						if(neighbor.isActive()) {
-							Integer rehashDate = recToRehashDate.get(neighbor);
-							if (rehashDate==null || rehashDate<childsBirthday) {
-								adjacent.add(neighbor);
-								recToRehashDate.put(neighbor, todaysDate);
-							}
-						} else {
-							// remove entries from recToRehashDate whenever possible
-							recToRehashDate.remove(neighbor);
+					if (compact!=null && compact.contains(netObj)) {
+						int numNeighbors = compact.numNeighbors(netObj);
+						for (int i=0; i<numNeighbors; i++) {
+							EquivRecord neighbor = compact.getNeighborRecord(netObj, i);
+							checkStale(neighbor, childsBirthday, adjacent);
+						}
+					} else {
+						for (Iterator<NetObject> it=netObj.getConnected(); it.hasNext();) {
+							//for each adjacent NetObject
+							EquivRecord neighbor = it.next().getParent().getParent();
+							checkStale(neighbor, childsBirthday, adjacent);
 						}
 					}
 				}
 			}
 			return adjacent;
 		}
+		private void checkStale(EquivRecord neighbor, int childsBirthday,
+				                List<EquivRecord> adjacent) {
+			if(neighbor.isActive()) {
+				Integer rehashDate = recToRehashDate.get(neighbor);
+				if (rehashDate==null || rehashDate<childsBirthday) {
+					adjacent.add(neighbor);
+					recToRehashDate.put(neighbor, todaysDate);
+				}
+			} else {
+				// remove entries from recToRehashDate whenever possible
+				recToRehashDate.remove(neighbor);
+			}
+		}
 		
 		private List<EquivRecord> findStaleAdjacentToHighestPriorityNewBorn() {
 			while (true) {
@@ -377,7 +391,18 @@ public class HashCodePartitioning {
 	private HashCodePartitioning(NccGlobals globals){
 		this.globals = globals;
 		globals.status2("----- starting HashCodePartitioningNew");
-		doWork();
+		// Parts and Wires no longer change so hash using the compact arrays
+		if (!globals.buildCompactNetlist()) {
+			globals.status2("  can't build compact netlist, hashing NetObjects");
+		} else if (Job.getDebug()) {
+			int numBad = globals.getCompactNetlist().checkHashCodes();
+			globals.error(numBad!=0, numBad+" compact netlist hash codes differ from NetObject hash codes");
+		}
+		try {
+			doWork();
+		} finally {
+			globals.releaseCompactNetlist();
+		}
 		globals.status2("----- done HashCodePartitioningNew");
 	}
 	
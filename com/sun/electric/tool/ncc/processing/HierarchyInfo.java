@@ -23,12 +23,12 @@
 */
 package com.sun.electric.tool.ncc.processing;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.sun.electric.database.hierarchy.Cell;
 import com.sun.electric.tool.ncc.basic.CellContext;
@@ -42,7 +42,12 @@ import com.sun.electric.tool.Job;
  * Cells that are lower in the design hierarchy, NCC saves information
  * that allows it abstract those cells when it compare Cells 
  * higher in the design hierarchy. The information necessary to abstract
- * lower level cells is stored in HierarchyInfo.  */
+ * lower level cells is stored in HierarchyInfo.
+ * <p>
+ * CompareLists that don't depend upon one another may be compared
+ * concurrently. Each of them then uses its own HierarchyInfo, obtained from
+ * newCompareList(), which shares the subcircuit information of all
+ * CompareLists but keeps its own record of the current CompareList. */
 public class HierarchyInfo {
 	/** name of the current CompareList (usually CellGroup name) */ 
 	private String subcktName;
@@ -55,10 +60,32 @@ public class HierarchyInfo {
 	private boolean purgeCurrentCompareList;
 	/** information for all Cells in all the compareLists we've encountered 
 	 * so far */
-	private Map<Cell,SubcircuitInfo> cellToSubcktInfo = new HashMap<Cell,SubcircuitInfo>();
+	private final Map<Cell,SubcircuitInfo> cellToSubcktInfo;
 	private Set<Cell> cellsInSharedCellGroups;
 
+	private HierarchyInfo(Map<Cell,SubcircuitInfo> cellToSubcktInfo) {
+		this.cellToSubcktInfo = cellToSubcktInfo;
+	}
+
 	// ----------------------------- public methods ---------------------------
+	public HierarchyInfo() {
+		this(new ConcurrentHashMap<Cell,SubcircuitInfo>());
+	}
+	/** Begin a CompareList that may be compared concurrently with other 
+	 * CompareLists. The returned HierarchyInfo shares the subcircuit 
+	 * information of this one, but beginNextCompareList() must not be called 
+	 * on it. A CompareList must not be compared until all the CompareLists 
+	 * it instantiates have been compared. 
+	 * @param subcktName name of the CompareList (usually CellGroup name)
+	 * @param compareListID unique int that a serial comparison would have
+	 * assigned to the CompareList
+	 * @return the HierarchyInfo to use for the CompareList */
+	public HierarchyInfo newCompareList(String subcktName, int compareListID) {
+		HierarchyInfo info = new HierarchyInfo(cellToSubcktInfo);
+		info.subcktName = subcktName;
+		info.compareListID = compareListID;
+		return info;
+	}
 	/** You must call this before you begin comparing Cells in a new 
 	 * compareList. Then for each Cell in the compareList you must call 
 	 * addSubcircuitInfo(). However, if a comparison reveals an Export name 
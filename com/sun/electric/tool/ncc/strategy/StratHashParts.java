@@ -26,6 +26,7 @@ import java.util.Iterator;
 
 import com.sun.electric.tool.ncc.NccGlobals;
 import com.sun.electric.tool.ncc.lists.LeafList;
+import com.sun.electric.tool.ncc.netlist.CompactNetlist;
 import com.sun.electric.tool.ncc.netlist.NetObject;
 import com.sun.electric.tool.ncc.netlist.Part;
 import com.sun.electric.tool.ncc.trees.EquivRecord;
@@ -60,6 +61,8 @@ public class StratHashParts extends Strategy {
 		error(!(n instanceof Part), "StratHashPartAll expects only Parts");
 		numPartsProcessed++;
 		Part p= (Part)n;
+		CompactNetlist compact = globals.getCompactNetlist();
+		if (compact!=null && compact.contains(p))  return compact.hashPart(p);
 		return p.computeHashCode();
     }
 	
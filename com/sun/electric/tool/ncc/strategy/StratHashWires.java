@@ -28,6 +28,7 @@ import java.util.Iterator;
 
 import com.sun.electric.tool.ncc.NccGlobals;
 import com.sun.electric.tool.ncc.lists.LeafList;
+import com.sun.electric.tool.ncc.netlist.CompactNetlist;
 import com.sun.electric.tool.ncc.netlist.NetObject;
 import com.sun.electric.tool.ncc.netlist.Wire;
 import com.sun.electric.tool.ncc.trees.EquivRecord;
@@ -70,6 +71,8 @@ public class StratHashWires extends Strategy {
 		error(!(n instanceof Wire), "StratHashWires expects wires only");
 		numWiresProcessed++;
 		Wire w= (Wire)n;
+		CompactNetlist compact = globals.getCompactNetlist();
+		if (compact!=null && compact.contains(w))  return compact.hashWire(w);
 		return w.computeHashCode();
 	}
 
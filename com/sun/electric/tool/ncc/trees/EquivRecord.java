@@ -36,6 +36,7 @@ import java.util.Set;
 import com.sun.electric.tool.ncc.NccGlobals;
 import com.sun.electric.tool.ncc.lists.LeafList;
 import com.sun.electric.tool.ncc.lists.RecordList;
+import com.sun.electric.tool.ncc.netlist.CompactNetlist;
 import com.sun.electric.tool.ncc.netlist.NetObject;
 import com.sun.electric.tool.ncc.processing.LocalPartitionWires;
 import com.sun.electric.tool.ncc.result.EquivRecReport.EquivRecReportable;
@@ -451,6 +452,8 @@ public class EquivRecord implements EquivRecReportable {
 		}
 		error(r.maxSize()==0, 
 			  "invalid leaf EquivRecord: all Circuits are empty");
+		CompactNetlist compact = globals!=null ? globals.getCompactNetlist() : null;
+		if (compact!=null)  compact.update(r);
 		return r;
 	}
 	/** Construct an internal EquivRecord that will serve as the root of the 
@@ -0,0 +1,595 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: PlacementForceDirectedBinned.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.placement;
+
+import com.sun.electric.database.geometry.Orientation;
+import com.sun.electric.database.text.TextUtils;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
+import com.sun.electric.tool.placement.PlacementFrame.PlacementNetwork;
+import com.sun.electric.tool.placement.PlacementFrame.PlacementNode;
+import com.sun.electric.tool.placement.PlacementFrame.PlacementPort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Placement algorithm to do Force-Directed placement of large designs.
+ * <p>
+ * Every network pulls its ports toward the center of the network (a star model),
+ * and overlapping nodes push each other apart.  Overlaps are found by sorting the
+ * nodes into a uniform grid of bins, so that each node is only compared with the
+ * nodes in the bins that it covers.  An iteration costs time proportional to the
+ * number of ports and nodes, rather than to the square of the number of nodes.
+ * <p>
+ * In each iteration the network centers and the bins are computed first.
+ * Then the new location of every node is computed in parallel on the shared task pool.
+ * Each node gathers its own forces and writes only its own location, so no locking
+ * is needed and the result does not depend on the number of threads.
+ * Nodes also move away from crowded bins, and the placement is kept large enough
+ * to hold all nodes, because overlap forces alone spread a dense cluster too slowly.
+ * The last iterations have no spring forces and only remove overlaps.
+ * Any overlaps that remain are removed by placing the nodes one at a time.
+ */
+public class PlacementForceDirectedBinned extends PlacementFrame
+{
+	/** number of iterations */								private static final int NUM_ITERATIONS = 150;
+	/** fraction of iterations that only remove overlap */	private static final double SPREAD_FRACTION = 0.2;
+	/** initial fraction of the spring pull per iteration */	private static final double SPRING_STEP = 0.5;
+	/** space around nodes in the initial placement */		private static final double INITIAL_SPREAD = 1.5;
+	/** space around nodes in the smallest placement */	private static final double MIN_SPREAD = 1.1;
+	/** fraction of a bin moved per unit of density gradient */	private static final double DENSITY_STEP = 0.2;
+	/** bin size, in average node sizes */					private static final double BIN_SIZE = 2;
+	/** smallest overlap that is considered */				private static final double EPSILON = 1e-6;
+
+	/** number of nodes */									private int numNodes;
+	/** node centers */										private double [] xPos, yPos;
+	/** node centers of the next iteration */				private double [] newXPos, newYPos;
+	/** smallest range of the node centers in X and Y */	private double minSide;
+	/** node sizes */										private double [] width, height;
+	/** index of the first port of each node */			private int [] nodePortStart;
+	/** network of each port of the nodes */				private int [] portNet;
+	/** offset of each port of the nodes */					private double [] portOffX, portOffY;
+	/** index of the first port of each network */			private int [] netPortStart;
+	/** node of each port of the networks */				private int [] netPortNode;
+	/** offset of each port of the networks */				private double [] netPortOffX, netPortOffY;
+	/** weight of each network */							private double [] netWeight;
+	/** center of each network */							private double [] netX, netY;
+	/** origin of the bins */								private double binX, binY;
+	/** size of the bins */									private double binSize;
+	/** number of bins in X and Y */						private int binCols, binRows;
+	/** index of the first node of each bin */				private int [] binStart;
+	/** nodes in the bins */								private int [] binNodes;
+	/** area of the nodes centered in each bin, divided by the bin area */	private double [] binDensity;
+
+	/**
+	 * Method to return the name of this placement algorithm.
+	 * @return the name of this placement algorithm.
+	 */
+	public String getAlgorithmName() { return "Force-Directed-Binned"; }
+
+	/**
+	 * Method to do Force-Directed Placement with binned overlap removal.
+	 * @param nodesToPlace a list of all nodes that are to be placed.
+	 * @param allNetworks a list of all networks that connect the nodes.
+	 * @param cellName the name of the cell being placed.
+	 */
+	protected void runPlacement(List<PlacementNode> nodesToPlace, List<PlacementNetwork> allNetworks, String cellName)
+	{
+		long startTime = System.currentTimeMillis();
+		for(PlacementNode plNode : nodesToPlace)
+			plNode.setOrientation(Orientation.IDENT);
+		buildNetlist(nodesToPlace, allNetworks);
+		if (numNodes == 0) return;
+		initialPlacement();
+
+		int spreadIterations = (int)(NUM_ITERATIONS * SPREAD_FRACTION);
+		int springIterations = NUM_ITERATIONS - spreadIterations;
+		int iterations = 0, overlaps = 0;
+		for(int iter = 0; iter < NUM_ITERATIONS; iter++)
+		{
+			double springStep = 0;
+			if (iter < springIterations)
+				springStep = SPRING_STEP * (springIterations - iter) / springIterations;
+			overlaps = iterate(iter, springStep);
+			iterations++;
+			if (overlaps < 0) return;
+			if (springStep == 0 && overlaps == 0) break;
+		}
+		if (overlaps > 0) legalize();
+
+		for(int i = 0; i < numNodes; i++)
+			nodesToPlace.get(i).setPlacement(xPos[i], yPos[i]);
+		System.out.println("Placed " + numNodes + " nodes in " + iterations + " iterations (" +
+			TextUtils.getElapsedTime(System.currentTimeMillis() - startTime) + ")");
+	}
+
+	/**
+	 * Method to gather the nodes, ports, and networks into arrays.
+	 * Nodes are numbered in the order of the list.
+	 */
+	private void buildNetlist(List<PlacementNode> nodesToPlace, List<PlacementNetwork> allNetworks)
+	{
+		numNodes = nodesToPlace.size();
+		Map<PlacementNode,Integer> nodeIndex = new HashMap<PlacementNode,Integer>();
+		xPos = new double[numNodes];
+		yPos = new double[numNodes];
+		newXPos = new double[numNodes];
+		newYPos = new double[numNodes];
+		width = new double[numNodes];
+		height = new double[numNodes];
+		for(int i = 0; i < numNodes; i++)
+		{
+			PlacementNode plNode = nodesToPlace.get(i);
+			nodeIndex.put(plNode, Integer.valueOf(i));
+			width[i] = plNode.getWidth();
+			height[i] = plNode.getHeight();
+		}
+
+		// ports of the networks that connect at least two ports of nodes being placed
+		int numNets = 0, numPorts = 0;
+		for(PlacementNetwork plNet : allNetworks)
+		{
+			int count = countPorts(plNet, nodeIndex);
+			if (count < 2) continue;
+			numNets++;
+			numPorts += count;
+		}
+		netPortStart = new int[numNets+1];
+		netPortNode = new int[numPorts];
+		netPortOffX = new double[numPorts];
+		netPortOffY = new double[numPorts];
+		netWeight = new double[numNets];
+		netX = new double[numNets];
+		netY = new double[numNets];
+		nodePortStart = new int[numNodes+1];
+		int net = 0, k = 0;
+		for(PlacementNetwork plNet : allNetworks)
+		{
+			int count = countPorts(plNet, nodeIndex);
+			if (count < 2) continue;
+			netPortStart[net] = k;
+			netWeight[net] = 2.0 / count;
+			for(PlacementPort plPort : plNet.getPortsOnNet())
+			{
+				Integer index = nodeIndex.get(plPort.getPlacementNode());
+				if (index == null) continue;
+				netPortNode[k] = index.intValue();
+				netPortOffX[k] = plPort.getRotatedOffX();
+				netPortOffY[k] = plPort.getRotatedOffY();
+				nodePortStart[index.intValue()+1]++;
+				k++;
+			}
+			net++;
+		}
+		netPortStart[numNets] = k;
+
+		// transpose to get the network ports of each node
+		for(int i = 0; i < numNodes; i++) nodePortStart[i+1] += nodePortStart[i];
+		portNet = new int[numPorts];
+		portOffX = new double[numPorts];
+		portOffY = new double[numPorts];
+		int [] fill = new int[numNodes];
+		for(net = 0; net < numNets; net++)
+		{
+			for(k = netPortStart[net]; k < netPortStart[net+1]; k++)
+			{
+				int node = netPortNode[k];
+				int p = nodePortStart[node] + fill[node]++;
+				portNet[p] = net;
+				portOffX[p] = netPortOffX[k];
+				portOffY[p] = netPortOffY[k];
+			}
+		}
+	}
+
+	private static int countPorts(PlacementNetwork plNet, Map<PlacementNode,Integer> nodeIndex)
+	{
+		int count = 0;
+		for(PlacementPort plPort : plNet.getPortsOnNet())
+			if (nodeIndex.containsKey(plPort.getPlacementNode())) count++;
+		return count;
+	}
+
+	/**
+	 * Method to place the nodes in rows of a square area that is larger than the total node area.
+	 */
+	private void initialPlacement()
+	{
+		double totalArea = 0;
+		for(int i = 0; i < numNodes; i++)
+			totalArea += (width[i] + 1) * (height[i] + 1);
+		double side = Math.sqrt(totalArea) * INITIAL_SPREAD;
+		minSide = Math.sqrt(totalArea) * MIN_SPREAD;
+		double x = 0, y = 0, rowHeight = 0;
+		for(int i = 0; i < numNodes; i++)
+		{
+			double wid = width[i] * INITIAL_SPREAD + 1, hei = height[i] * INITIAL_SPREAD + 1;
+			if (x > 0 && x + wid > side)
+			{
+				x = 0;
+				y += rowHeight;
+				rowHeight = 0;
+			}
+			xPos[i] = x + wid/2;
+			yPos[i] = y + hei/2;
+			x += wid;
+			rowHeight = Math.max(rowHeight, hei);
+		}
+	}
+
+	/**
+	 * Method to run one iteration of the placement.
+	 * @param iter the iteration number.
+	 * @param springStep the fraction of the spring pull to apply (0 to only remove overlap).
+	 * @return the number of overlapping node pairs, or -1 if the placement was interrupted.
+	 */
+	private int iterate(int iter, final double springStep)
+	{
+		computeNetCenters();
+		buildBins();
+
+		TaskGroup group = new TaskGroup("Force-directed iteration " + iter, true);
+		int numChunks = Math.min(numNodes, group.getNumThreads() * 4);
+		final int [] chunkOverlaps = new int[numChunks];
+		for(int c = 0; c < numChunks; c++)
+		{
+			final int chunk = c;
+			final int from = (int)((long)numNodes * c / numChunks);
+			final int to = (int)((long)numNodes * (c+1) / numChunks);
+			group.submit("nodes " + from + "-" + to, new Runnable()
+			{
+				public void run()
+				{
+					int overlaps = 0;
+					for(int i = from; i < to; i++)
+						overlaps += moveNode(i, springStep);
+					chunkOverlaps[chunk] = overlaps;
+				}
+			});
+		}
+		try
+		{
+			group.await();
+		} catch (JobException e)
+		{
+			System.out.println("Placement interrupted: " + e.getMessage());
+			return -1;
+		}
+
+		double [] swap = xPos;   xPos = newXPos;   newXPos = swap;
+		swap = yPos;   yPos = newYPos;   newYPos = swap;
+		keepArea(xPos);
+		keepArea(yPos);
+		int overlaps = 0;
+		for(int c = 0; c < numChunks; c++) overlaps += chunkOverlaps[c];
+		return overlaps / 2;
+	}
+
+	/**
+	 * Method to stop the springs from pulling the nodes into a space that is too small to hold them.
+	 * Overlap forces only act between neighbors and spread a dense cluster too slowly,
+	 * so the coordinates are stretched about their middle when their range is less than
+	 * the side of a square that is large enough to hold all of the nodes.
+	 * @param pos the X or Y coordinates of the nodes.
+	 */
+	private void keepArea(double [] pos)
+	{
+		double low = Double.MAX_VALUE, high = -Double.MAX_VALUE;
+		for(int i = 0; i < numNodes; i++)
+		{
+			low = Math.min(low, pos[i]);
+			high = Math.max(high, pos[i]);
+		}
+		if (high - low >= minSide) return;
+		double middle = (low + high) / 2;
+		double scale = high > low ? minSide / (high - low) : 1;
+		for(int i = 0; i < numNodes; i++)
+			pos[i] = middle + (pos[i] - middle) * scale;
+	}
+
+	/**
+	 * Method to compute the center of the ports of every network.
+	 */
+	private void computeNetCenters()
+	{
+		for(int net = 0; net < netWeight.length; net++)
+		{
+			double x = 0, y = 0;
+			int start = netPortStart[net], end = netPortStart[net+1];
+			for(int k = start; k < end; k++)
+			{
+				int node = netPortNode[k];
+				x += xPos[node] + netPortOffX[k];
+				y += yPos[node] + netPortOffY[k];
+			}
+			netX[net] = x / (end - start);
+			netY[net] = y / (end - start);
+		}
+	}
+
+	/**
+	 * Method to sort the nodes into bins.
+	 * A node is in every bin that its bounds touch.
+	 */
+	private void buildBins()
+	{
+		double lX = Double.MAX_VALUE, hX = -Double.MAX_VALUE, lY = Double.MAX_VALUE, hY = -Double.MAX_VALUE;
+		double totalSize = 0;
+		for(int i = 0; i < numNodes; i++)
+		{
+			lX = Math.min(lX, xPos[i] - width[i]/2);
+			hX = Math.max(hX, xPos[i] + width[i]/2);
+			lY = Math.min(lY, yPos[i] - height[i]/2);
+			hY = Math.max(hY, yPos[i] + height[i]/2);
+			totalSize += Math.max(width[i], height[i]);
+		}
+		binX = lX;
+		binY = lY;
+		binSize = Math.max(1, totalSize / numNodes * BIN_SIZE);
+
+		// keep the number of bins proportional to the number of nodes
+		long maxBins = 4L * numNodes + 16;
+		while ((long)((hX - lX) / binSize + 1) * (long)((hY - lY) / binSize + 1) > maxBins)
+			binSize *= 2;
+		binCols = (int)((hX - lX) / binSize) + 1;
+		binRows = (int)((hY - lY) / binSize) + 1;
+
+		binStart = new int[binCols*binRows + 1];
+		for(int i = 0; i < numNodes; i++)
+		{
+			int c0 = binCol(xPos[i] - width[i]/2), c1 = binCol(xPos[i] + width[i]/2);
+			int r0 = binRow(yPos[i] - height[i]/2), r1 = binRow(yPos[i] + height[i]/2);
+			for(int r = r0; r <= r1; r++)
+				for(int c = c0; c <= c1; c++) binStart[r*binCols + c + 1]++;
+		}
+		for(int b = 0; b < binCols*binRows; b++) binStart[b+1] += binStart[b];
+		binNodes = new int[binStart[binCols*binRows]];
+		binDensity = new double[binCols*binRows];
+		for(int i = 0; i < numNodes; i++)
+			binDensity[binRow(yPos[i])*binCols + binCol(xPos[i])] += width[i] * height[i] / (binSize * binSize);
+		int [] fill = new int[binCols*binRows];
+		for(int i = 0; i < numNodes; i++)
+		{
+			int c0 = binCol(xPos[i] - width[i]/2), c1 = binCol(xPos[i] + width[i]/2);
+			int r0 = binRow(yPos[i] - height[i]/2), r1 = binRow(yPos[i] + height[i]/2);
+			for(int r = r0; r <= r1; r++)
+			{
+				for(int c = c0; c <= c1; c++)
+				{
+					int b = r*binCols + c;
+					binNodes[binStart[b] + fill[b]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method to remove the overlaps that remain after the iterations.
+	 * Nodes are placed one at a time, starting from the middle of the placement.
+	 * Each node goes to the nearest location, on a grid around its current location,
+	 * where it does not overlap nodes that are already placed.
+	 */
+	private void legalize()
+	{
+		double cX = 0, cY = 0;
+		double lX = Double.MAX_VALUE, hX = -Double.MAX_VALUE, lY = Double.MAX_VALUE, hY = -Double.MAX_VALUE;
+		for(int i = 0; i < numNodes; i++)
+		{
+			cX += xPos[i];
+			cY += yPos[i];
+			lX = Math.min(lX, xPos[i] - width[i]/2);
+			hX = Math.max(hX, xPos[i] + width[i]/2);
+			lY = Math.min(lY, yPos[i] - height[i]/2);
+			hY = Math.max(hY, yPos[i] + height[i]/2);
+		}
+		final double midX = cX / numNodes, midY = cY / numNodes;
+		Integer [] order = new Integer[numNodes];
+		for(int i = 0; i < numNodes; i++) order[i] = Integer.valueOf(i);
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer i1, Integer i2)
+			{
+				int n1 = i1.intValue(), n2 = i2.intValue();
+				double d1 = (xPos[n1] - midX) * (xPos[n1] - midX) + (yPos[n1] - midY) * (yPos[n1] - midY);
+				double d2 = (xPos[n2] - midX) * (xPos[n2] - midX) + (yPos[n2] - midY) * (yPos[n2] - midY);
+				return Double.compare(d1, d2);
+			}
+		});
+
+		// bins of the placed nodes cover the current area and a margin for nodes that move out
+		double margin = Math.max(hX - lX, hY - lY) / 2 + binSize;
+		binX = lX - margin;
+		binY = lY - margin;
+		long maxBins = 4L * numNodes + 16;
+		while ((long)((hX - lX + 2*margin) / binSize + 1) * (long)((hY - lY + 2*margin) / binSize + 1) > maxBins)
+			binSize *= 2;
+		binCols = (int)((hX - lX + 2*margin) / binSize) + 1;
+		binRows = (int)((hY - lY + 2*margin) / binSize) + 1;
+		int [][] placed = new int[binCols*binRows][];
+		int [] numPlaced = new int[binCols*binRows];
+
+		double step = binSize / 8;
+		for(Integer index : order)
+		{
+			int i = index.intValue();
+			if (width[i] <= 0 || height[i] <= 0) continue;
+			double bestX = xPos[i], bestY = yPos[i];
+			for(int ring = 0; ; ring++)
+			{
+				double bestDist = Double.MAX_VALUE;
+				for(int dy = -ring; dy <= ring; dy++)
+				{
+					// on the top and bottom rows of the ring check every column, elsewhere only the ends
+					int dxStep = (dy == -ring || dy == ring) ? 1 : Math.max(1, 2*ring);
+					for(int dx = -ring; dx <= ring; dx += dxStep)
+					{
+						double x = xPos[i] + dx*step, y = yPos[i] + dy*step;
+						double dist = dx*dx + dy*dy;
+						if (dist >= bestDist || !isFree(i, x, y, placed, numPlaced)) continue;
+						bestDist = dist;
+						bestX = x;
+						bestY = y;
+					}
+				}
+				if (bestDist < Double.MAX_VALUE) break;
+			}
+			xPos[i] = bestX;
+			yPos[i] = bestY;
+
+			int c0 = binCol(bestX - width[i]/2), c1 = binCol(bestX + width[i]/2);
+			int r0 = binRow(bestY - height[i]/2), r1 = binRow(bestY + height[i]/2);
+			for(int r = r0; r <= r1; r++)
+			{
+				for(int c = c0; c <= c1; c++)
+				{
+					int b = r*binCols + c;
+					if (placed[b] == null) placed[b] = new int[4]; else
+						if (numPlaced[b] == placed[b].length) placed[b] = Arrays.copyOf(placed[b], numPlaced[b]*2);
+					placed[b][numPlaced[b]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method to tell whether a node can be placed without overlapping the nodes that are already placed.
+	 */
+	private boolean isFree(int i, double x, double y, int [][] placed, int [] numPlaced)
+	{
+		double lX = x - width[i]/2, hX = x + width[i]/2;
+		double lY = y - height[i]/2, hY = y + height[i]/2;
+		int c0 = binCol(lX), c1 = binCol(hX);
+		int r0 = binRow(lY), r1 = binRow(hY);
+		for(int r = r0; r <= r1; r++)
+		{
+			for(int c = c0; c <= c1; c++)
+			{
+				int b = r*binCols + c;
+				for(int k = 0; k < numPlaced[b]; k++)
+				{
+					int j = placed[b][k];
+					double oX = Math.min(hX, xPos[j] + width[j]/2) - Math.max(lX, xPos[j] - width[j]/2);
+					double oY = Math.min(hY, yPos[j] + height[j]/2) - Math.max(lY, yPos[j] - height[j]/2);
+					if (oX > EPSILON && oY > EPSILON) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private int binCol(double x) { return Math.max(0, Math.min(binCols-1, (int)((x - binX) / binSize))); }
+
+	private int binRow(double y) { return Math.max(0, Math.min(binRows-1, (int)((y - binY) / binSize))); }
+
+	/**
+	 * Method to compute the next location of a node.
+	 * The node moves part of the way toward the centers of its networks,
+	 * and away from every node that it overlaps by half of the overlap.
+	 * @param i the node index.
+	 * @param springStep the fraction of the spring pull to apply.
+	 * @return the number of nodes that this node overlaps.
+	 */
+	private int moveNode(int i, double springStep)
+	{
+		double x = xPos[i], y = yPos[i];
+		double dX = 0, dY = 0;
+
+		// spring forces
+		if (springStep > 0)
+		{
+			double sumX = 0, sumY = 0, sumWeight = 0;
+			for(int p = nodePortStart[i]; p < nodePortStart[i+1]; p++)
+			{
+				int net = portNet[p];
+				double w = netWeight[net];
+				sumX += w * (netX[net] - portOffX[p] - x);
+				sumY += w * (netY[net] - portOffY[p] - y);
+				sumWeight += w;
+			}
+			if (sumWeight > 0)
+			{
+				dX += springStep * sumX / sumWeight;
+				dY += springStep * sumY / sumWeight;
+			}
+		}
+
+		// density forces: move down the density gradient, the space outside has full density
+		int col = binCol(x), row = binRow(y);
+		double left = col > 0 ? binDensity[row*binCols + col-1] : 1;
+		double right = col < binCols-1 ? binDensity[row*binCols + col+1] : 1;
+		double below = row > 0 ? binDensity[(row-1)*binCols + col] : 1;
+		double above = row < binRows-1 ? binDensity[(row+1)*binCols + col] : 1;
+		dX += DENSITY_STEP * binSize * (left - right) / 2;
+		dY += DENSITY_STEP * binSize * (below - above) / 2;
+
+		// overlap forces
+		int overlaps = 0;
+		double lX = x - width[i]/2, hX = x + width[i]/2;
+		double lY = y - height[i]/2, hY = y + height[i]/2;
+		if (width[i] > 0 && height[i] > 0)
+		{
+			int c0 = binCol(lX), c1 = binCol(hX);
+			int r0 = binRow(lY), r1 = binRow(hY);
+			for(int r = r0; r <= r1; r++)
+			{
+				for(int c = c0; c <= c1; c++)
+				{
+					int b = r*binCols + c;
+					for(int k = binStart[b]; k < binStart[b+1]; k++)
+					{
+						int j = binNodes[k];
+						if (j == i) continue;
+						double oLX = Math.max(lX, xPos[j] - width[j]/2);
+						double oHX = Math.min(hX, xPos[j] + width[j]/2);
+						double oLY = Math.max(lY, yPos[j] - height[j]/2);
+						double oHY = Math.min(hY, yPos[j] + height[j]/2);
+						double oX = oHX - oLX, oY = oHY - oLY;
+						if (oX <= EPSILON || oY <= EPSILON) continue;
+
+						// a pair sharing several bins is handled in the bin of the corner of the overlap
+						if (binCol(oLX) != c || binRow(oLY) != r) continue;
+						overlaps++;
+						if (oX < oY)
+						{
+							double dir = x != xPos[j] ? Math.signum(x - xPos[j]) : (i < j ? -1 : 1);
+							dX += dir * oX / 2;
+						} else
+						{
+							double dir = y != yPos[j] ? Math.signum(y - yPos[j]) : (i < j ? -1 : 1);
+							dY += dir * oY / 2;
+						}
+					}
+				}
+			}
+		}
+
+		newXPos[i] = x + dX;
+		newYPos[i] = y + dY;
+		return overlaps;
+	}
+}
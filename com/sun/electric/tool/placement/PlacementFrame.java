@@ -103,6 +103,7 @@ public class PlacementFrame
 		new PlacementGenetic(),					// team 4
 		new PlacementForceDirectedTeam5(),		// team 5
 		new PlacementForceDirectedStaged(),		// team 7
+		new PlacementForceDirectedBinned(),
 		new PlacementMinCut(),
 		new PlacementSimple(),
 		new PlacementRandom()
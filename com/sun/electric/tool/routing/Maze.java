@@ -61,6 +61,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -73,7 +74,7 @@ import java.util.Set;
 public class Maze
 {
 	/** bit width of long word */		private static final int SRMAXLAYERS = 64;
-	/** maximum size of maze */			private static final int MAXGRIDSIZE = 1000;
+	/** maximum size of maze */			private static final int MAXGRIDSIZE = 10000;
 	/** max grid points to "excavate" for initial grid access from a port */	private static final int BLOCKAGELIMIT =  10;
 
 	/** draw only on vertical layer */	private static final int HORILAYER = 0;
@@ -140,7 +141,7 @@ public class Maze
 		/** translation value for grid */		int         transx, transy;
 		/** the width and height of the grid */	int         wid, hei;
 		/** bounds of the current maze */		int         lx, ly, hx, hy;
-		/** the two dimensional grid array */	byte   [][] grids;
+		/** the grid array, indexed by x*hei+y */	byte     [] grids;
 		/** up/down pointer to next layer */	SRLAYER     up, down;
 		/** allowed direction of routes */		SRDIRECTION dir;
 	};
@@ -174,7 +175,7 @@ public class Maze
 		/** the master (connected) port */		SRPORT    master;
 		/** the list of connected paths */		SRPATH    paths;
 		/** the last path in the list */		SRPATH    lastpath;
-		/** the current wave front */			SRWAVEPT  wavefront;
+		/** the current wave front */			SRWAVEFRONT wavefront;
 		/** the parent net */					SRNET     net;
 		/** next in the list of ports */		SRPORT    next;
 	};
@@ -207,9 +208,147 @@ public class Maze
 		/** x y location of the point */		int      x, y;
 		/** the layer for the point */			SRLAYER  layer;
 		/** the port for this point */			SRPORT   port;
-		/** next/prev in the list of points */	SRWAVEPT next, prev;
+
+		SRWAVEPT() {}
+
+		SRWAVEPT(int x, int y, SRLAYER layer, SRPORT port)
+		{
+			this.x = x;   this.y = y;
+			this.layer = layer;
+			this.port = port;
+		}
 	};
 
+	/**
+	 * The wave front of a port.
+	 * Points are packed into longs (see getWavePoint) and kept in a ring buffer in the order
+	 * they were added.  An open-addressed table counts the points that are in the wave front,
+	 * so that searching the wave front does not scan it.
+	 * The arrays are kept when the wave front is cleared.
+	 */
+	static class SRWAVEFRONT
+	{
+		/** the points, in order of addition */		private long [] queue = new long[64];
+		/** index of the first point in queue */	private int head;
+		/** number of points in queue */			private int size;
+		/** point+1 in each slot (0 if empty) */	private long [] keys = new long[128];
+		/** number of copies of each point */		private int [] counts = new int[128];
+		/** number of used slots in keys */			private int numKeys;
+
+		int size() { return size; }
+
+		/** Returns the ith point in order of addition. */
+		long get(int i) { return queue[(head + i) & (queue.length - 1)]; }
+
+		/** Drops the first n points from the ring buffer (they must have been removed already). */
+		void pop(int n)
+		{
+			head = (head + n) & (queue.length - 1);
+			size -= n;
+		}
+
+		void clear()
+		{
+			head = size = 0;
+			if (numKeys > 0)
+			{
+				for (int i = 0; i < keys.length; i++) { keys[i] = 0;   counts[i] = 0; }
+				numKeys = 0;
+			}
+		}
+
+		void add(long pt)
+		{
+			if (size == queue.length)
+			{
+				long [] newQueue = new long[queue.length * 2];
+				for (int i = 0; i < size; i++) newQueue[i] = get(i);
+				queue = newQueue;
+				head = 0;
+			}
+			queue[(head + size) & (queue.length - 1)] = pt;
+			size++;
+
+			int slot = findSlot(pt);
+			if (keys[slot] == 0)
+			{
+				if ((numKeys + 1) * 2 > keys.length)
+				{
+					rehash(keys.length * 2);
+					slot = findSlot(pt);
+				}
+				keys[slot] = pt + 1;
+				numKeys++;
+			}
+			counts[slot]++;
+		}
+
+		boolean contains(long pt) { return keys[findSlot(pt)] != 0; }
+
+		/** Removes one copy of a point from the table (the ring buffer is not changed). */
+		void remove(long pt)
+		{
+			int slot = findSlot(pt);
+			if (keys[slot] == 0) return;
+			if (--counts[slot] > 0) return;
+
+			// delete by shifting back the following entries of the cluster
+			int mask = keys.length - 1;
+			keys[slot] = 0;
+			numKeys--;
+			for (int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask)
+			{
+				int home = hash(keys[i] - 1) & mask;
+				if (((i - home) & mask) >= ((i - slot) & mask))
+				{
+					keys[slot] = keys[i];   counts[slot] = counts[i];
+					keys[i] = 0;            counts[i] = 0;
+					slot = i;
+				}
+			}
+		}
+
+		private static int hash(long pt)
+		{
+			long h = pt * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32));
+		}
+
+		private int findSlot(long pt)
+		{
+			int mask = keys.length - 1;
+			int i = hash(pt) & mask;
+			while (keys[i] != 0 && keys[i] != pt + 1) i = (i + 1) & mask;
+			return i;
+		}
+
+		private void rehash(int newLength)
+		{
+			long [] oldKeys = keys;
+			int [] oldCounts = counts;
+			keys = new long[newLength];
+			counts = new int[newLength];
+			for (int i = 0; i < oldKeys.length; i++)
+			{
+				if (oldKeys[i] == 0) continue;
+				int slot = findSlot(oldKeys[i] - 1);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private static long getWavePoint(SRLAYER layer, int x, int y)
+	{
+		return ((long)layer.index << 48) | ((long)x << 24) | y;
+	}
+
+	private static int getWaveLayer(long pt) { return (int)(pt >>> 48); }
+
+	private static int getWaveX(long pt) { return (int)(pt >>> 24) & 0xFFFFFF; }
+
+	private static int getWaveY(long pt) { return (int)pt & 0xFFFFFF; }
+
 	/************************************* TOP-LEVEL CONTROL CODE *************************************/
 
 	public static void mazeRoute()
@@ -645,10 +784,10 @@ public class Maze
 					for (int y = ly; y <= hy; y++)
 					{
 						addWavePoint(master, layer, x, y, SR_GSTART);
-						if (x < layer.wid-1 && layer.grids[x+1][y] == 0) onEdge = true;
-						if (x > 0 && layer.grids[x-1][y] == 0) onEdge = true;
-						if (y < layer.hei-1 && layer.grids[x][y+1] == 0) onEdge = true;
-						if (y > 0 && layer.grids[x][y-1] == 0) onEdge = true;
+						if (x < layer.wid-1 && layer.grids[(x+1)*layer.hei+y] == 0) onEdge = true;
+						if (x > 0 && layer.grids[(x-1)*layer.hei+y] == 0) onEdge = true;
+						if (y < layer.hei-1 && layer.grids[x*layer.hei+y+1] == 0) onEdge = true;
+						if (y > 0 && layer.grids[x*layer.hei+y-1] == 0) onEdge = true;
 					}
 				}
 				if (!onEdge)
@@ -668,8 +807,8 @@ public class Maze
 						for(int spread=1; spread<BLOCKAGELIMIT; spread++)
 						{
 							if (hx+spread >= layer.wid) break;
-							if (layer.grids[hx+spread][cy] == 0) { onEdge = true;   break; }
-							layer.grids[hx+spread][cy] = 0;
+							if (layer.grids[(hx+spread)*layer.hei+cy] == 0) { onEdge = true;   break; }
+							layer.grids[(hx+spread)*layer.hei+cy] = 0;
 						}
 					}
 					if (angleDiff(ang, 90) <= angRange)
@@ -678,8 +817,8 @@ public class Maze
 						for(int spread=1; spread<BLOCKAGELIMIT; spread++)
 						{
 							if (hy+spread >= layer.hei) break;
-							if (layer.grids[cx][hy+spread] == 0) { onEdge = true;   break; }
-							layer.grids[cx][hy+spread] = 0;
+							if (layer.grids[cx*layer.hei+hy+spread] == 0) { onEdge = true;   break; }
+							layer.grids[cx*layer.hei+hy+spread] = 0;
 						}
 					}
 					if (angleDiff(ang, 180) <= angRange)
@@ -688,8 +827,8 @@ public class Maze
 						for(int spread=1; spread<BLOCKAGELIMIT; spread++)
 						{
 							if (lx-spread < 0) break;
-							if (layer.grids[lx-spread][cy] == 0) { onEdge = true;   break; }
-							layer.grids[lx-spread][cy] = 0;
+							if (layer.grids[(lx-spread)*layer.hei+cy] == 0) { onEdge = true;   break; }
+							layer.grids[(lx-spread)*layer.hei+cy] = 0;
 						}
 					}
 					if (angleDiff(ang, 270) <= angRange)
@@ -698,8 +837,8 @@ public class Maze
 						for(int spread=1; spread<BLOCKAGELIMIT; spread++)
 						{
 							if (ly-spread < 0) break;
-							if (layer.grids[cx][ly-spread] == 0) { onEdge = true;   break; }
-							layer.grids[cx][ly-spread] = 0;
+							if (layer.grids[cx*layer.hei+ly-spread] == 0) { onEdge = true;   break; }
+							layer.grids[cx*layer.hei+ly-spread] = 0;
 						}
 					}
 					if (!onEdge)
@@ -758,13 +897,8 @@ public class Maze
 	 */
 	private void addWavePoint(SRPORT port, SRLAYER layer, int x, int y, int code)
 	{
-		SRWAVEPT wavePt = new SRWAVEPT();
-		wavePt.x = x;
-		wavePt.y = y;
-
 		// set the grid
-		layer.grids[x][y] = (byte)((layer.grids[x][y] & ~SR_GMASK) | code | SR_GWAVE);
-		wavePt.layer = layer;
+		layer.grids[x*layer.hei+y] = (byte)((layer.grids[x*layer.hei+y] & ~SR_GMASK) | code | SR_GWAVE);
 
 		// set maze bounds
 		if (layer.lx > x) layer.lx = x;
@@ -772,20 +906,8 @@ public class Maze
 		if (layer.ly > y) layer.ly = y;
 		if (layer.hy < y) layer.hy = y;
 
-		wavePt.prev = null;
-		if (port.master != null)
-		{
-			wavePt.port = port.master;
-			wavePt.next = port.master.wavefront;
-			port.master.wavefront = wavePt;
-		} else
-		{
-			wavePt.port = port;
-			wavePt.next = port.wavefront;
-			port.wavefront = wavePt;
-		}
-		if (wavePt.next != null)
-			wavePt.next.prev = wavePt;
+		if (port.master != null) port = port.master;
+		port.wavefront.add(getWavePoint(layer, x, y));
 	}
 
 	private int angleDiff(int ang1, int ang2)
@@ -798,20 +920,27 @@ public class Maze
 	private int expandWavefront(SRPORT port, int code)
 	{
 		// begin expansion of all wavepts
-		// disconnect wavepts from the port
-		SRWAVEPT wavePt = port.wavefront;
-		if (wavePt == null) return SRBLOCKED;
+		SRWAVEFRONT wavefront = port.wavefront;
+		if (wavefront.size() == 0) return SRBLOCKED;
 
-		SRWAVEPT next = null;
 		int status = SRSUCCESS;
 		boolean found = false;
 		int bx = 0, by = 0;
 		SRLAYER bLayer = null;
 		SRWAVEPT bWavePt = new SRWAVEPT();
-		for (wavePt = port.wavefront; wavePt != null ; wavePt = next)
+		SRWAVEPT wavePt = new SRWAVEPT();
+		wavePt.port = port;
+
+		// points added now are appended: visit the current ones newest first
+		int numPoints = wavefront.size();
+		for (int i = numPoints - 1; i >= 0; i--)
 		{
+			long pt = wavefront.get(i);
 			boolean connected = false;
-			SRLAYER layer = wavePt.layer;
+			SRLAYER layer = port.net.region.layers[getWaveLayer(pt)];
+			wavePt.x = getWaveX(pt);
+			wavePt.y = getWaveY(pt);
+			wavePt.layer = layer;
 			if (layer.dir == SRALL || layer.dir == SRHORIPREF)
 			{
 				// try horizontal route
@@ -932,29 +1061,19 @@ public class Maze
 					connected = true;
 				}
 			}
-			next = wavePt.next;
 
 			// now release this wavept
-			if (wavePt.prev == null)
-			{
-				port.wavefront = wavePt.next;
-				if (wavePt.next != null)
-					wavePt.next.prev = null;
-			} else
-			{
-				wavePt.prev.next = wavePt.next;
-				if (wavePt.next != null)
-					wavePt.next.prev = wavePt.prev;
-			}
+			wavefront.remove(pt);
 
 			// set the grid point to a core point
-			if (!connected) layer.grids[wavePt.x][wavePt.y] &= ~SR_GWAVE;
+			if (!connected) layer.grids[wavePt.x*layer.hei+wavePt.y] &= ~SR_GWAVE;
 		}
 
+		wavefront.pop(numPoints);
 		if (found)
 			return initPath(port, bLayer, bWavePt, bx, by);
 
-		if (port.wavefront == null) return SRBLOCKED;
+		if (wavefront.size() == 0) return SRBLOCKED;
 		return SRSUCCESS;
 	}
 
@@ -1036,7 +1155,7 @@ public class Maze
 		int sy = wavePt.y;
 
 		SRLAYER layer = wavePt.layer;
-		int code = layer.grids[sx][sy] & SR_GMASK;
+		int code = layer.grids[sx*layer.hei+sy] & SR_GMASK;
 		if (code == SR_GSTART) code = SR_GMAX;
 			else code--;
 		int pStart = 0;
@@ -1055,7 +1174,7 @@ public class Maze
 					if (layer.up != null)
 					{
 						ex = sx; ey = sy;
-						int status = testPoint(layer.up.grids[ex][ey], code);
+						int status = testPoint(layer.up.grids[ex*layer.up.hei+ey], code);
 						if (status == SRROUTED) return SRSUCCESS;
 						if (status == SRSUCCESS)
 						{
@@ -1069,7 +1188,7 @@ public class Maze
 					if (layer.down != null)
 					{
 						ex = sx; ey = sy;
-						int status = testPoint(layer.down.grids[ex][ey], code);
+						int status = testPoint(layer.down.grids[ex*layer.down.hei+ey], code);
 						if (status == SRROUTED) return SRSUCCESS;
 						if (status == SRSUCCESS)
 						{
@@ -1087,7 +1206,7 @@ public class Maze
 					if ((ex = sx + 1) != layer.wid)
 					{
 						ey = sy;
-						int status = testPoint(layer.grids[ex][ey], code);
+						int status = testPoint(layer.grids[ex*layer.hei+ey], code);
 						if (status == SRROUTED)
 						{
 							// check for common original path
@@ -1123,7 +1242,7 @@ public class Maze
 					if ((ey = sy - 1) >= 0)
 					{
 						ex = sx;
-						int status = testPoint(layer.grids[ex][ey], code);
+						int status = testPoint(layer.grids[ex*layer.hei+ey], code);
 						if (status == SRROUTED)
 						{
 							// check for common original path
@@ -1159,7 +1278,7 @@ public class Maze
 					if ((ex = sx - 1) >= 0)
 					{
 						ey = sy;
-						int status = testPoint(layer.grids[ex][ey], code);
+						int status = testPoint(layer.grids[ex*layer.hei+ey], code);
 						if (status == SRROUTED)
 						{
 							// check for common original path
@@ -1195,7 +1314,7 @@ public class Maze
 					if ((ey = sy + 1) != layer.hei)
 					{
 						ex = sx;
-						int status = testPoint(layer.grids[ex][ey], code);
+						int status = testPoint(layer.grids[ex*layer.hei+ey], code);
 						if (status == SRROUTED)
 						{
 							// check for common original path
@@ -1232,7 +1351,7 @@ public class Maze
 					if (layer.up != null)
 					{
 						ex = sx; ey = sy;
-						int status = testPoint(layer.up.grids[ex][ey], code);
+						int status = testPoint(layer.up.grids[ex*layer.up.hei+ey], code);
 						if (status == SRROUTED) return SRSUCCESS;
 						if (status == SRSUCCESS)
 						{
@@ -1245,7 +1364,7 @@ public class Maze
 					if (layer.down != null)
 					{
 						ex = sx; ey = sy;
-						int status = testPoint(layer.down.grids[ex][ey], code);
+						int status = testPoint(layer.down.grids[ex*layer.down.hei+ey], code);
 						if (status == SRROUTED) return SRSUCCESS;
 						if (status == SRSUCCESS)
 						{
@@ -1274,7 +1393,7 @@ public class Maze
 					// horizontal scan
 					int nx = ex + dx;
 					int ny = ey;
-					int status = testPoint(layer.grids[nx][ny], code);
+					int status = testPoint(layer.grids[nx*layer.hei+ny], code);
 					if (status == SRROUTED)
 					{
 						// check for common original path
@@ -1309,7 +1428,7 @@ public class Maze
 					// veritical scan
 					int nx = ex;
 					int ny = ey + dy;
-					int status = testPoint(layer.grids[nx][ny], code);
+					int status = testPoint(layer.grids[nx*layer.hei+ny], code);
 					if (status == SRROUTED)
 					{
 						// check for common original path
@@ -1442,14 +1561,14 @@ public class Maze
 	private int examinePoint(SRPORT port, SRLAYER layer, int x, int y, int code)
 	{
 		// point is set
-		if ((layer.grids[x][y] & SR_GWAVE) != 0)
+		if ((layer.grids[x*layer.hei+y] & SR_GWAVE) != 0)
 		{
 			// look for common point in this wavefront
-			if (searchWavefront(port, layer, x, y) == null)
+			if (!port.wavefront.contains(getWavePoint(layer, x, y)))
 			{
 				return SRROUTED;
 			}
-		} else if (layer.grids[x][y] == 0)
+		} else if (layer.grids[x*layer.hei+y] == 0)
 		{
 			// point is not set
 			addWavePoint(port, layer, x, y, code);
@@ -1460,12 +1579,9 @@ public class Maze
 
 	private SRWAVEPT searchWavefront(SRPORT port, SRLAYER layer, int x, int y)
 	{
-		// scans port's wavefront for common point
-		for (SRWAVEPT wavept = port.wavefront; wavept != null; wavept = wavept.next)
-		{
-			if (wavept.layer == layer && wavept.x == x && wavept.y == y) return wavept;
-		}
-		return null;
+		// looks in port's wavefront for common point
+		if (!port.wavefront.contains(getWavePoint(layer, x, y))) return null;
+		return new SRWAVEPT(x, y, layer, port);
 	}
 
 	private void clearMaze(SRNET net)
@@ -1481,7 +1597,7 @@ public class Maze
 				{
 					for (int y = layer.ly; y <= layer.hy; y++)
 					{
-						layer.grids[x][y] = (byte)(layer.grids[x][y] & mask);
+						layer.grids[x*layer.hei+y] = (byte)(layer.grids[x*layer.hei+y] & mask);
 					}
 				}
 				layer.lx = layer.wid; layer.ly = layer.hei;
@@ -1490,7 +1606,7 @@ public class Maze
 		}
 		for (SRPORT port = net.ports; port != null; port = port.next)
 		{
-			port.wavefront = null;
+			port.wavefront.clear();
 		}
 		return;
 	}
@@ -1630,7 +1746,7 @@ public class Maze
 		port.lx = (int)cX;   port.hx = (int)cX;
 		port.ly = (int)cY;   port.hy = (int)cY;
 		port.layers = layers;
-		port.wavefront = null;
+		port.wavefront = new SRWAVEFRONT();
 
 		for (int index = 0, mask = 1; index < SRMAXLAYERS; index++, mask = mask<<1)
 		{
@@ -1910,12 +2026,12 @@ public class Maze
 	{
 		if (orMode)
 		{
-			layer.grids[x][y] |= type;
+			layer.grids[x*layer.hei+y] |= type;
 			layer.vused[x] |= type;
 			layer.hused[y] |= type;
 		} else
 		{
-			layer.grids[x][y] = (byte)type;
+			layer.grids[x*layer.hei+y] = (byte)type;
 			layer.vused[x] = (byte)type;
 			layer.hused[y] = (byte)type;
 		}
@@ -2007,25 +2123,27 @@ public class Maze
 		if (getWorldX(layer.wid - 1, layer) > region.hx) layer.wid--;
 		if (getWorldY(layer.hei - 1, layer) > region.hy) layer.hei--;
 
-		// now allocate a grid array
-		layer.grids = new byte[layer.wid][];
-		layer.vused = new byte[layer.wid];
-		for (int x = 0; x < layer.wid; x++)
+		// now allocate a grid array (reuse the previous one if it is big enough)
+		int numPoints = layer.wid * layer.hei;
+		if (layer.grids == null || layer.grids.length < numPoints)
 		{
-			// get address for a column of grid points
-			layer.grids[x] = new byte[layer.hei];
-
-			// clear all points
-			for (int y = 0; y < layer.hei; y++)
-				layer.grids[x][y] = 0;
-
-			// clear the V-used flags
-			layer.vused[x] = 0;
+			layer.grids = null;
+			try
+			{
+				layer.grids = new byte[numPoints];
+			} catch (OutOfMemoryError e)
+			{
+				System.out.println("Not enough memory for a " + layer.wid + "x" + layer.hei + " routing grid");
+				return null;
+			}
+		} else
+		{
+			Arrays.fill(layer.grids, 0, numPoints, (byte)0);
 		}
-
-		// clear the H-used flags
-		layer.hused = new byte[layer.hei];
-		for (int y = 0; y < layer.hei; y++) layer.hused[y] = 0;
+		if (layer.vused == null || layer.vused.length < layer.wid) layer.vused = new byte[layer.wid]; else
+			Arrays.fill(layer.vused, 0, layer.wid, (byte)0);
+		if (layer.hused == null || layer.hused.length < layer.hei) layer.hused = new byte[layer.hei]; else
+			Arrays.fill(layer.hused, 0, layer.hei, (byte)0);
 
 		// set up/down pointers
 		layer.up = layer.down = null;
@@ -2357,15 +2475,15 @@ public class Maze
 //					if ((mask & layers) == 0) continue;
 //					layer = region.layers[index];
 //					if (layer == null) continue;
-//					if ((layer.grids[x][y] & SR_GSET) != 0)
+//					if ((layer.grids[x*layer.hei+y] & SR_GSET) != 0)
 //					{
-//						if ((layer.grids[x][y] & SR_GPORT) != 0) gpt = 'P'; else
+//						if ((layer.grids[x*layer.hei+y] & SR_GPORT) != 0) gpt = 'P'; else
 //							gpt = '.';
 //					} else
 //					{
-//						if ((layer.grids[x][y] & SR_GWAVE) != 0) gpt = 'W'; else
-//							if (layer.grids[x][y] != 0)
-//								gpt = (char)('A' + (layer.grids[x][y] & SR_GMASK) - SR_GSTART);
+//						if ((layer.grids[x*layer.hei+y] & SR_GWAVE) != 0) gpt = 'W'; else
+//							if (layer.grids[x*layer.hei+y] != 0)
+//								gpt = (char)('A' + (layer.grids[x*layer.hei+y] & SR_GMASK) - SR_GSTART);
 //					}
 //				}
 //				System.out.print(gpt);
@@ -66,6 +66,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -74,7 +75,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.Semaphore;
 
 /**
@@ -165,7 +165,7 @@ public class SeaOfGatesEngine
 	{
 		/** The route that this is part of. */								private NeededRoute nr;
 		/** Wavefront name (for debugging). */								private String name;
-		/** List of active search vertices while running wavefront. */		private TreeSet<SearchVertex> active;
+		/** Queue of active search vertices while running wavefront. */	private VertexHeap active;
 		/** Resulting list of vertices found for this wavefront. */			private List<SearchVertex> vertices;
 		/** Set true to abort this wavefront's search. */					private boolean abort;
 		/** The starting and ending ports of the wavefront. */				private PortInst from, to;
@@ -174,9 +174,8 @@ public class SeaOfGatesEngine
 		/** The ending X/Y coordinates of the wavefront. */					private double toX, toY;
 		/** The ending metal layer of the wavefront. */						private int toZ;
 		/** debugging state */												private final boolean debug;
-		/** Search vertices found while propagating the wavefront. */		private Map<Integer,Set<Integer>> [] searchVertexPlanes;
-		/** Gridless search vertices found while propagating wavefront. */	private Map<Double,Set<Double>> [] searchVertexPlanesDBL;
-		/** minimum spacing between this metal and itself. */				private Map<Double,Map<Double,Double>>[] layerSurround;
+		/** Search memory used while propagating the wavefront. */			private SearchMemory memory;
+		/** Coordinates visited while propagating the wavefront. */		private CoordinateTable visited;
 
 		Wavefront(NeededRoute nr, PortInst from, double fromX, double fromY, int fromZ,
 			PortInst to, double toX, double toY, int toZ, String name, boolean debug)
@@ -186,50 +185,70 @@ public class SeaOfGatesEngine
 			this.to = to;      this.toX = toX;      this.toY = toY;      this.toZ = toZ;
 			this.name = name;
 			this.debug = debug;
-			active = new TreeSet<SearchVertex>();
 			vertices = null;
 			abort = false;
-			searchVertexPlanes = new Map[numMetalLayers];
-			searchVertexPlanesDBL = new Map[numMetalLayers];
-			layerSurround = new Map[numMetalLayers];
-			for(int i=0; i<numMetalLayers; i++)
-				layerSurround[i] = new HashMap<Double,Map<Double,Double>>();
+		}
+
+		/**
+		 * Method to prepare the wavefront for searching.
+		 * The search memory is emptied and the starting vertex is queued.
+		 * @param memory the search memory of the thread that runs the search.
+		 */
+		public void startSearch(SearchMemory memory)
+		{
+			this.memory = memory;
+			memory.reset();
+			active = memory.active;
+			visited = memory.visited;
 
 			if (debug) System.out.println("----------- SEARCHING FROM ("+TextUtils.formatDouble(fromX)+","+
 				TextUtils.formatDouble(fromY)+",M"+(fromZ+1)+") TO ("+TextUtils.formatDouble(toX)+","+
 				TextUtils.formatDouble(toY)+",M"+(toZ+1)+") -----------");
 
-			SearchVertex svStart = new SearchVertex(fromX, fromY, fromZ, 0, null, 0, this);
+			SearchVertex svStart = memory.newVertex(fromX, fromY, fromZ, 0, null, 0, this);
 			svStart.cost = 0;
 			setVertex(fromX, fromY, fromZ);
-			active.add(svStart);
+			addActive(svStart);
+		}
+
+		/**
+		 * Method to release the search memory after searching.
+		 */
+		public void endSearch()
+		{
+			memory = null;
+			active = null;
+			visited = null;
+			if (vertices != null)
+			{
+				for(SearchVertex sv : vertices)
+					sv.clearCuts();
+			}
 		}
 
 		/**
-		 * Method to get the SearchVertex at a given coordinate.
+		 * Method to add a SearchVertex to the queue of active vertices.
+		 * Vertices are ordered by cost, then by distance to the destination,
+		 * then by the order in which they were added.
+		 * @param sv the SearchVertex to add.
+		 */
+		public void addActive(SearchVertex sv)
+		{
+			double dist = Math.abs(sv.xv-toX) + Math.abs(sv.yv-toY) + Math.abs(sv.zv-toZ);
+			active.add(sv, sv.cost, dist);
+		}
+
+		/**
+		 * Method to tell whether a given coordinate has been visited.
 		 * @param x the X coordinate desired.
 		 * @param y the Y coordinate desired.
 		 * @param z the Z coordinate (metal layer) desired.
-		 * @return the SearchVertex at that point (null if none).
+		 * @return true if the coordinate has been visited.
 		 */
 		public boolean getVertex(double x, double y, int z)
 		{
-			if (FULLGRAIN)
-			{
-				Map<Double,Set<Double>> plane = searchVertexPlanesDBL[z];
-				if (plane == null) return false;
-				Set<Double> row = plane.get(new Double(y));
-				if (row == null) return false;
-				boolean found = row.contains(new Double(x));
-				return found;
-			}
-
-			Map<Integer,Set<Integer>> plane = searchVertexPlanes[z];
-			if (plane == null) return false;
-			Set<Integer> row = plane.get(new Integer((int)(y*GRANULARITY)));
-			if (row == null) return false;
-			boolean found = row.contains(new Integer((int)(x*GRANULARITY)));
-			return found;
+			if (FULLGRAIN) return visited.contains(x, y, z);
+			return visited.contains((int)(x*GRANULARITY), (int)(y*GRANULARITY), z);
 		}
 
 		/**
@@ -240,39 +259,8 @@ public class SeaOfGatesEngine
 		 */
 		public void setVertex(double x, double y, int z)
 		{
-			if (FULLGRAIN)
-			{
-				Map<Double,Set<Double>> plane = searchVertexPlanesDBL[z];
-				if (plane == null)
-				{
-					plane = new HashMap<Double,Set<Double>>();
-					searchVertexPlanesDBL[z] = plane;
-				}
-				Double iY = new Double(y);
-				Set<Double> row = plane.get(iY);
-				if (row == null)
-				{
-					row = new HashSet<Double>();
-					plane.put(iY, row);
-				}
-				row.add(new Double(x));
-				return;
-			}
-
-			Map<Integer,Set<Integer>> plane = searchVertexPlanes[z];
-			if (plane == null)
-			{
-				plane = new HashMap<Integer,Set<Integer>>();
-				searchVertexPlanes[z] = plane;
-			}
-			Integer iY = new Integer((int)(y*GRANULARITY));
-			Set<Integer> row = plane.get(iY);
-			if (row == null)
-			{
-				row = new HashSet<Integer>();
-				plane.put(iY, row);
-			}
-			row.add(new Integer((int)(x*GRANULARITY)));
+			if (FULLGRAIN) visited.add(x, y, z); else
+				visited.add((int)(x*GRANULARITY), (int)(y*GRANULARITY), z);
 		}
 
 		/**
@@ -289,28 +277,22 @@ public class SeaOfGatesEngine
 			if (length < 0) length = 50;
 
 			// convert these to the next largest integers
-			Double wid = new Double(upToGrain(width));
-			Double len = new Double(upToGrain(length));
+			double wid = upToGrain(width);
+			double len = upToGrain(length);
 
-			// see if the rule is cached6
-			Map<Double,Double> widMap = layerSurround[layer].get(wid);
-			if (widMap == null)
-			{
-				widMap = new HashMap<Double,Double>();
-				layerSurround[layer].put(wid, widMap);
-			}
-			Double value = widMap.get(len);
-			if (value == null)
+			// see if the rule is cached
+			CoordinateTable layerSurround = memory.layerSurround;
+			double value = layerSurround.get(wid, len, layer);
+			if (Double.isNaN(value))
 			{
 				// rule not cached: compute it
 				Layer lay = metalLayers[layer];
 				DRCTemplate rule = DRC.getSpacingRule(lay, null, lay, null, false, -1, width, length);
-				double v = 0;
-				if (rule != null) v = rule.getValue(0);
-				value = new Double(v);
-				widMap.put(len, value);
+				value = 0;
+				if (rule != null) value = rule.getValue(0);
+				layerSurround.put(wid, len, layer, value);
 			}
-			return value.doubleValue();
+			return value;
 		}
 	}
 
@@ -371,23 +353,8 @@ public class SeaOfGatesEngine
 
 		public void cleanSearchMemory()
 		{
-			dir1.searchVertexPlanes = null;
-			dir1.searchVertexPlanesDBL = null;
-			dir1.active = null;
-			if (dir1.vertices != null)
-			{
-				for(SearchVertex sv : dir1.vertices)
-					sv.clearCuts();
-			}
-
-			dir2.searchVertexPlanes = null;
-			dir2.searchVertexPlanesDBL = null;
-			dir2.active = null;
-			if (dir2.vertices != null)
-			{
-				for(SearchVertex sv : dir2.vertices)
-					sv.clearCuts();
-			}
+			dir1.endSearch();
+			dir2.endSearch();
 		}
 	}
 
@@ -741,6 +708,7 @@ public class SeaOfGatesEngine
 	 */
 	private void doRouting(List<NeededRoute> allRoutes, RouteBatches [] routeBatches, Job job, Environment env, EditingPreferences ep)
 	{
+		SearchMemory [] memory = new SearchMemory[] {new SearchMemory(), new SearchMemory()};
 		int totalRoutes = allRoutes.size();
 		for(int r=0; r<totalRoutes; r++)
 		{
@@ -760,7 +728,7 @@ public class SeaOfGatesEngine
 			System.out.println("Routing network " + routeName + "...");
 
 			// route the segment
-			findPath(nr, env, ep);
+			findPath(nr, memory, env, ep);
 
 			// if the routing was good, place the results
 			if (nr.winningWF != null && nr.winningWF.vertices != null)
@@ -768,82 +736,183 @@ public class SeaOfGatesEngine
 		}
 	}
 
+	/**
+	 * Method to do the routing in multiple threads.
+	 * Routes whose areas (with a spacing halo) overlap conflict, because a route cannot see
+	 * the geometry of another route that is being found at the same time.
+	 * The routes are split into levels: each route goes one level after the latest earlier route
+	 * that it conflicts with, so no two routes in a level conflict, and conflicting routes are
+	 * done in their original order.  The routes of a level are taken from a shared queue by the
+	 * routing threads, and the results of the level are placed before the next level starts.
+	 * @param numberOfThreads the number of routing threads.
+	 * @param allRoutes the routes that need to be done.
+	 * @param routeBatches the routing batches (by network)
+	 */
 	private void doRoutingParallel(int numberOfThreads, List<NeededRoute> allRoutes, RouteBatches [] routeBatches, Environment env, EditingPreferences ep)
 	{
 		// create threads and other threading data structures
 		RouteInThread[] threads = new RouteInThread[numberOfThreads];
 		for(int i=0; i<numberOfThreads; i++) threads[i] = new RouteInThread("Route #" + (i+1), env, ep);
-		NeededRoute [] routesToDo = new NeededRoute[numberOfThreads];
-		int [] routeIndices = new int[numberOfThreads];
 		Semaphore outSem = new Semaphore(0);
 
-		// create list of routes and blocked areas
-		List<NeededRoute> myList = new ArrayList<NeededRoute>();
-		for(NeededRoute nr : allRoutes) myList.add(nr);
-		List<Rectangle2D> blocked = new ArrayList<Rectangle2D>();
+		// split the routes into levels of routes that do not conflict
+		List<List<NeededRoute>> levels = getRouteLevels(allRoutes);
 
 		// now run the threads
 		int totalRoutes = allRoutes.size();
 		int routesDone = 0;
-		while (myList.size() > 0)
+		long totalWallTime = 0, totalBusyTime = 0;
+		for(int l=0; l<levels.size(); l++)
 		{
-			int threadAssign = 0;
-			blocked.clear();
-			for(int i=0; i<myList.size(); i++)
-			{
-				NeededRoute nr = myList.get(i);
-				boolean isBlocked = false;
-				for(Rectangle2D block : blocked)
-				{
-					if (block.intersects(nr.routeBounds)) { isBlocked = true;   break; }
-				}
-				if (isBlocked) continue;
-
-				// this route can be done: start it
-				blocked.add(nr.routeBounds);
-				routesToDo[threadAssign] = nr;
-				routeIndices[threadAssign] = i;
-				threads[threadAssign].startRoute(nr, outSem);
-				threadAssign++;
-				if (threadAssign >= numberOfThreads) break;
-			}
-
+			List<NeededRoute> level = levels.get(l);
 			String routes = "";
-			for(int i=0; i<threadAssign; i++)
+			for(NeededRoute nr : level)
 			{
-				String routeName = routesToDo[i].routeName;
-				if (routeBatches[routesToDo[i].batchNumber].segsInBatch > 1)
-					routeName += "(" + routesToDo[i].routeInBatch + "/" + routeBatches[routesToDo[i].batchNumber].segsInBatch + ")";
+				String routeName = nr.routeName;
+				if (routeBatches[nr.batchNumber].segsInBatch > 1)
+					routeName += "(" + nr.routeInBatch + "/" + routeBatches[nr.batchNumber].segsInBatch + ")";
 				if (routes.length() > 0) routes += ", ";
 				routes += routeName;
 			}
 			System.out.println("Parallel routing " + routes + "...");
 			Job.getUserInterface().setProgressNote(routes);
 
-			// now wait for routing threads to finish
-			outSem.acquireUninterruptibly(threadAssign);
+			// start the threads on this level and wait for them to finish
+			long startTime = System.nanoTime();
+			RouteQueue queue = new RouteQueue(level);
+			int threadsUsed = Math.min(numberOfThreads, level.size());
+			for(int i=0; i<threadsUsed; i++) threads[i].startRoutes(queue, outSem);
+			outSem.acquireUninterruptibly(threadsUsed);
+			long wallTime = System.nanoTime() - startTime;
+			long busyTime = 0;
+			for(int i=0; i<threadsUsed; i++) busyTime += threads[i].busyTime;
+			totalWallTime += wallTime;
+			totalBusyTime += busyTime;
+			if (Job.getDebug())
+				System.out.println("  Level " + (l+1) + " of " + levels.size() + ": " + level.size() + " paths in " +
+					TextUtils.getElapsedTime(wallTime/1000000) + ", thread utilization " +
+					getUtilization(busyTime, wallTime, numberOfThreads) + "%");
 
 			// all done, now handle the results
-			for(int i=0; i<threadAssign; i++)
+			for(NeededRoute nr : level)
 			{
-				if (routesToDo[i].winningWF != null && routesToDo[i].winningWF.vertices != null)
-					createRoute(routesToDo[i]);
+				if (nr.winningWF != null && nr.winningWF.vertices != null)
+					createRoute(nr);
 			}
-			for(int i=threadAssign-1; i>=0; i--)
-				myList.remove(routeIndices[i]);
-			routesDone += threadAssign;
+			routesDone += level.size();
 			Job.getUserInterface().setProgressValue(routesDone*100/totalRoutes);
 		}
+		if (levels.size() > 0)
+			System.out.println("Routed " + totalRoutes + " paths in " + levels.size() + " levels of non-conflicting paths (" +
+				TextUtils.formatDouble((double)totalRoutes / levels.size()) + " paths per level) on " + numberOfThreads +
+				" threads, thread utilization " + getUtilization(totalBusyTime, totalWallTime, numberOfThreads) + "%");
 
 		// terminate the threads
-		for(int i=0; i<numberOfThreads; i++) threads[i].startRoute(null, null);
+		for(int i=0; i<numberOfThreads; i++) threads[i].startRoutes(null, null);
+	}
+
+	private static int getUtilization(long busyTime, long wallTime, int numberOfThreads)
+	{
+		if (wallTime <= 0) return 100;
+		return (int)(100 * busyTime / (wallTime * numberOfThreads));
+	}
+
+	/**
+	 * Method to split routes into levels of routes that do not conflict.
+	 * Two routes conflict when their search areas, grown by half of the widest wire and
+	 * half of the worst metal spacing, overlap.
+	 * A route is placed one level after the last earlier route that it conflicts with.
+	 * @param allRoutes the routes that need to be done, in priority order.
+	 * @return a List of levels, each a List of routes in priority order.
+	 */
+	private List<List<NeededRoute>> getRouteLevels(List<NeededRoute> allRoutes)
+	{
+		double maxSurround = 0, maxWidth = 0;
+		for(int i=0; i<numMetalLayers; i++)
+		{
+			maxSurround = Math.max(maxSurround, worstMetalSurround[i]);
+			maxWidth = Math.max(maxWidth, metalArcs[i].getDefaultLambdaBaseWidth());
+		}
+
+		// compute the area of each route
+		int numRoutes = allRoutes.size();
+		final double [] lX = new double[numRoutes], hX = new double[numRoutes];
+		double [] lY = new double[numRoutes], hY = new double[numRoutes];
+		Integer [] byX = new Integer[numRoutes];
+		for(int i=0; i<numRoutes; i++)
+		{
+			NeededRoute nr = allRoutes.get(i);
+			Rectangle2D bounds = nr.routeBounds != null ? nr.routeBounds : cellBounds;
+			double halo = (Math.max(maxWidth, nr.minWidth) + maxSurround) / 2;
+			lX[i] = bounds.getMinX() - halo;   hX[i] = bounds.getMaxX() + halo;
+			lY[i] = bounds.getMinY() - halo;   hY[i] = bounds.getMaxY() + halo;
+			byX[i] = Integer.valueOf(i);
+		}
+
+		// sweep in X to find the conflicts with earlier routes
+		Arrays.sort(byX, new Comparator<Integer>()
+		{
+			public int compare(Integer i1, Integer i2) { return Double.compare(lX[i1.intValue()], lX[i2.intValue()]); }
+		});
+		List<List<Integer>> earlierConflicts = new ArrayList<List<Integer>>(numRoutes);
+		for(int i=0; i<numRoutes; i++) earlierConflicts.add(null);
+		for(int s=0; s<numRoutes; s++)
+		{
+			int i = byX[s].intValue();
+			for(int t=s+1; t<numRoutes; t++)
+			{
+				int j = byX[t].intValue();
+				if (lX[j] >= hX[i]) break;
+				if (lY[j] >= hY[i] || lY[i] >= hY[j]) continue;
+				int earlier = Math.min(i, j), later = Math.max(i, j);
+				List<Integer> conflicts = earlierConflicts.get(later);
+				if (conflicts == null) earlierConflicts.set(later, conflicts = new ArrayList<Integer>());
+				conflicts.add(Integer.valueOf(earlier));
+			}
+		}
+
+		// assign levels in priority order
+		int [] levelOf = new int[numRoutes];
+		List<List<NeededRoute>> levels = new ArrayList<List<NeededRoute>>();
+		for(int i=0; i<numRoutes; i++)
+		{
+			int level = 0;
+			List<Integer> conflicts = earlierConflicts.get(i);
+			if (conflicts != null)
+			{
+				for(Integer j : conflicts) level = Math.max(level, levelOf[j.intValue()] + 1);
+			}
+			levelOf[i] = level;
+			if (level == levels.size()) levels.add(new ArrayList<NeededRoute>());
+			levels.get(level).add(allRoutes.get(i));
+		}
+		return levels;
+	}
+
+	/**
+	 * Class to hand out the routes of a level to the routing threads.
+	 */
+	private static class RouteQueue
+	{
+		private List<NeededRoute> routes;
+		private int next;
+
+		RouteQueue(List<NeededRoute> routes) { this.routes = routes; }
+
+		synchronized NeededRoute getNext()
+		{
+			if (next >= routes.size()) return null;
+			return routes.get(next++);
+		}
 	}
 
 	private class RouteInThread extends Thread
 	{
 		private Semaphore inSem = new Semaphore(0);
-		private NeededRoute nr;
+		private RouteQueue queue;
 		private Semaphore whenDone;
+		private SearchMemory [] memory = new SearchMemory[] {new SearchMemory(), new SearchMemory()};
+		/** time spent routing the last queue, in nanoseconds. */	private long busyTime;
         private Environment env;
         private EditingPreferences ep;
 
@@ -855,9 +924,9 @@ public class SeaOfGatesEngine
 			start();
 		}
 
-		public void startRoute(NeededRoute nr, Semaphore whenDone)
+		public void startRoutes(RouteQueue queue, Semaphore whenDone)
 		{
-			this.nr = nr;
+			this.queue = queue;
 			this.whenDone = whenDone;
 			inSem.release();
 		}
@@ -869,8 +938,16 @@ public class SeaOfGatesEngine
 			for (;;)
 			{
 				inSem.acquireUninterruptibly();
-				if (nr == null) return;
-				findPath(nr, env, ep);
+				if (queue == null) return;
+				busyTime = 0;
+				for(;;)
+				{
+					NeededRoute nr = queue.getNext();
+					if (nr == null) break;
+					long startTime = System.nanoTime();
+					findPath(nr, memory, env, ep);
+					busyTime += System.nanoTime() - startTime;
+				}
 				whenDone.release();
 			}
 		}
@@ -1490,8 +1567,9 @@ public class SeaOfGatesEngine
 	 * Method to find a path between two ports.
 	 * @param nr the NeededRoute object with all necessary information.
 	 * If successful, the NeededRoute's "vertices" field is filled with the route data.
+	 * @param memory the search memory for each direction, owned by the calling thread.
 	 */
-	private void findPath(NeededRoute nr, Environment env, EditingPreferences ep)
+	private void findPath(NeededRoute nr, SearchMemory [] memory, Environment env, EditingPreferences ep)
 	{
 		// special case when route is null length
 		Wavefront d1 = nr.dir1;
@@ -1505,6 +1583,8 @@ public class SeaOfGatesEngine
 			return;
 		}
 
+		nr.dir1.startSearch(memory[0]);
+		nr.dir2.startSearch(memory[1]);
 		if (parallelDij)
 		{
 			// create threads and start them running
@@ -1550,7 +1630,7 @@ public class SeaOfGatesEngine
 				firstFailure = false;
 				EditWindow_ wnd = Job.getUserInterface().getCurrentEditWindow_();
 				wnd.clearHighlighting();
-				showSearchVertices(nr.dir1.searchVertexPlanes, false);
+				showSearchVertices(nr.dir1.visited, false);
 				wnd.finishedHighlighting();
 			}
 		}
@@ -1590,7 +1670,7 @@ public class SeaOfGatesEngine
 //		dumpPlane(1);
 //		dumpPlane(2);
 		List<SearchVertex> realVertices = getOptimizedList(result);
-		nr.winningWF.vertices = realVertices;
+		nr.winningWF.vertices = copyVertices(realVertices);
 	}
 
 	private class DijkstraInThread extends Thread
@@ -1637,7 +1717,7 @@ public class SeaOfGatesEngine
 			{
 				if (DEBUGLOOPS)
 					System.out.println("    Wavefront " + wf.name + " first completion");
-				wf.vertices = getOptimizedList(result);
+				wf.vertices = copyVertices(getOptimizedList(result));
 				wf.nr.winningWF = wf;
 				otherWf.abort = true;
 			} else
@@ -1659,8 +1739,7 @@ public class SeaOfGatesEngine
 	{
 		// get the lowest cost point
 		if (wf.active.size() == 0) return svExhausted;
-		SearchVertex svCurrent = wf.active.first();
-		wf.active.remove(svCurrent);
+		SearchVertex svCurrent = wf.active.poll();
 		double curX = svCurrent.getX();
 		double curY = svCurrent.getY();
 		int curZ = svCurrent.getZ();
@@ -1977,7 +2056,7 @@ public class SeaOfGatesEngine
 			}
 
 			// we have a candidate next-point
-			SearchVertex svNext = new SearchVertex(nX, nY, nZ, whichContact, cuts, Math.min(curZ, nZ), wf);
+			SearchVertex svNext = wf.memory.newVertex(nX, nY, nZ, whichContact, cuts, Math.min(curZ, nZ), wf);
 			svNext.last = svCurrent;
 
 			// stop if we found the destination
@@ -2038,7 +2117,7 @@ public class SeaOfGatesEngine
 
 			// add this vertex into the data structures
 			wf.setVertex(nX, nY, nZ);
-			wf.active.add(svNext);
+			wf.addActive(svNext);
 			if (wf.debug)
 				System.out.print("("+TextUtils.formatDouble(svNext.getX())+","+TextUtils.formatDouble(svNext.getY())+
 					",M"+(svNext.getZ()+1)+")C="+svNext.cost);
@@ -2058,11 +2137,11 @@ public class SeaOfGatesEngine
 						cost++;
 						if (!wf.getVertex(nowX, nY, nZ))
 						{
-							SearchVertex svIntermediate = new SearchVertex(nowX, nY, nZ, whichContact, cuts, curZ, wf);
+							SearchVertex svIntermediate = wf.memory.newVertex(nowX, nY, nZ, whichContact, cuts, curZ, wf);
 							svIntermediate.last = svCurrent;
 							svIntermediate.cost = cost;
 							wf.setVertex(nowX, nY, nZ);
-							wf.active.add(svIntermediate);
+							wf.addActive(svIntermediate);
 						}
 						lessDX += inc;
 						if (inc < 0)
@@ -2087,11 +2166,11 @@ public class SeaOfGatesEngine
 						cost++;
 						if (!wf.getVertex(nX, nowY, nZ))
 						{
-							SearchVertex svIntermediate = new SearchVertex(nX, nowY, nZ, whichContact, cuts, curZ, wf);
+							SearchVertex svIntermediate = wf.memory.newVertex(nX, nowY, nZ, whichContact, cuts, curZ, wf);
 							svIntermediate.last = svCurrent;
 							svIntermediate.cost = cost;
 							wf.setVertex(nX, nowY, nZ);
-							wf.active.add(svIntermediate);
+							wf.addActive(svIntermediate);
 						}
 						lessDY += inc;
 						if (inc < 0)
@@ -2154,6 +2233,21 @@ public class SeaOfGatesEngine
 		return realVertices;
 	}
 
+	/**
+	 * Method to copy the vertices of a path out of the search memory.
+	 * Search vertices are reused by the next search, so the path that is kept
+	 * after the search must be made of its own objects.
+	 * @param vertices the List of SearchVertex objects in the search memory.
+	 * @return a List of copies of the SearchVertex objects.
+	 */
+	private List<SearchVertex> copyVertices(List<SearchVertex> vertices)
+	{
+		List<SearchVertex> copies = new ArrayList<SearchVertex>(vertices.size());
+		for(SearchVertex sv : vertices)
+			copies.add(new SearchVertex(sv));
+		return copies;
+	}
+
 	private double getJumpSize(double curX, double curY, int curZ, double dx, double dy, Wavefront wf)
 	{
 		Rectangle2D jumpBound = wf.nr.jumpBound;
@@ -2938,7 +3032,7 @@ public class SeaOfGatesEngine
 	/**
 	 * Class to define a vertex in the Dijkstra search.
 	 */
-	private class SearchVertex implements Comparable
+	private class SearchVertex
 	{
 		/** the coordinate of the search vertex. */	private double xv, yv;
 		/** the layer of the search vertex. */		private int zv;
@@ -2959,6 +3053,30 @@ public class SeaOfGatesEngine
 		 * @param nr the NeededRoute that this SearchVertex is part of.
 		 */
 		SearchVertex(double x, double y, int z, int whichContact, Point2D [] cuts, int cl, Wavefront w)
+		{
+			init(x, y, z, whichContact, cuts, cl, w);
+		}
+
+		/**
+		 * Method to create a copy of a SearchVertex that is not linked to the search.
+		 * @param sv the SearchVertex to copy.
+		 */
+		SearchVertex(SearchVertex sv)
+		{
+			xv = sv.xv;
+			yv = sv.yv;
+			zv = sv.zv;
+			cost = sv.cost;
+			cuts = sv.cuts;
+			cutLayer = sv.cutLayer;
+			w = sv.w;
+		}
+
+		/**
+		 * Method to reinitialize a SearchVertex so that it can be reused.
+		 * The arguments are the same as those of the constructor.
+		 */
+		void init(double x, double y, int z, int whichContact, Point2D [] cuts, int cl, Wavefront w)
 		{
 			xv = x;
 			yv = y;
@@ -2966,6 +3084,8 @@ public class SeaOfGatesEngine
 			this.cuts = cuts;
 			cutLayer = cl;
 			this.w = w;
+			cost = 0;
+			last = null;
 		}
 
 		double getX() { return xv; }
@@ -2981,24 +3101,274 @@ public class SeaOfGatesEngine
 		void clearCuts() { cuts = null; }
 
 		int getCutLayer() { return cutLayer; }
+	}
+
+	/**
+	 * Class to hold the memory used by one wavefront search.
+	 * Each routing thread keeps one SearchMemory per direction and reuses it for
+	 * every route, so that searching does not allocate vertices, queue entries or
+	 * hash table entries once the arrays have grown to the size of the largest search.
+	 */
+	private class SearchMemory
+	{
+		/** vertices that can be handed out. */				private SearchVertex [] pool = new SearchVertex[1024];
+		/** number of vertices handed out. */				private int numUsed;
+		/** queue of active search vertices. */				private VertexHeap active = new VertexHeap();
+		/** coordinates visited by the search. */			private CoordinateTable visited = new CoordinateTable(false);
+		/** cached spacing rules (width, length, layer). */	private CoordinateTable layerSurround = new CoordinateTable(true);
+
+		/**
+		 * Method to empty the memory before a new search.
+		 * The cached spacing rules are kept.
+		 */
+		void reset()
+		{
+			numUsed = 0;
+			active.clear();
+			visited.clear();
+		}
 
 		/**
-		 * Method to sort SearchVertex objects by their cost.
+		 * Method to get a SearchVertex from the memory.
+		 * The arguments are the same as those of the SearchVertex constructor.
+		 * @return a SearchVertex that is valid until the next reset().
 		 */
-		public int compareTo(Object svo)
+		SearchVertex newVertex(double x, double y, int z, int whichContact, Point2D [] cuts, int cl, Wavefront w)
 		{
-			SearchVertex sv = (SearchVertex)svo;
-			int diff = cost - sv.cost;
-			if (diff != 0) return diff;
-			if (w != null)
+			if (numUsed >= pool.length)
 			{
-				double thisDist = Math.abs(xv-w.toX) + Math.abs(yv-w.toY) + Math.abs(zv-w.toZ);
-				double otherDist = Math.abs(sv.xv-w.toX) + Math.abs(sv.yv-w.toY) + Math.abs(sv.zv-w.toZ);
-				if (thisDist < otherDist) return -1;
-				if (thisDist > otherDist) return 1;
+				SearchVertex [] newPool = new SearchVertex[pool.length*2];
+				System.arraycopy(pool, 0, newPool, 0, pool.length);
+				pool = newPool;
+			}
+			SearchVertex sv = pool[numUsed];
+			if (sv == null) pool[numUsed] = sv = new SearchVertex(x, y, z, whichContact, cuts, cl, w); else
+				sv.init(x, y, z, whichContact, cuts, cl, w);
+			numUsed++;
+			return sv;
+		}
+	}
+
+	/**
+	 * Class to queue the active vertices of a search.
+	 * It is a binary heap ordered by cost, then by distance to the destination,
+	 * then by the order of insertion.  The keys are kept in primitive arrays.
+	 */
+	private static class VertexHeap
+	{
+		private SearchVertex [] vertices = new SearchVertex[1024];
+		private int [] costs = new int[1024];
+		private double [] dists = new double[1024];
+		private long [] seqs = new long[1024];
+		private int size;
+		private long nextSeq;
+
+		int size() { return size; }
+
+		void clear()
+		{
+			for(int i=0; i<size; i++) vertices[i] = null;
+			size = 0;
+			nextSeq = 0;
+		}
+
+		void add(SearchVertex sv, int cost, double dist)
+		{
+			if (size >= vertices.length)
+			{
+				int newLen = vertices.length * 2;
+				SearchVertex [] newVertices = new SearchVertex[newLen];
+				int [] newCosts = new int[newLen];
+				double [] newDists = new double[newLen];
+				long [] newSeqs = new long[newLen];
+				System.arraycopy(vertices, 0, newVertices, 0, size);
+				System.arraycopy(costs, 0, newCosts, 0, size);
+				System.arraycopy(dists, 0, newDists, 0, size);
+				System.arraycopy(seqs, 0, newSeqs, 0, size);
+				vertices = newVertices;   costs = newCosts;   dists = newDists;   seqs = newSeqs;
+			}
+			long seq = nextSeq++;
+
+			// sift up
+			int i = size++;
+			while (i > 0)
+			{
+				int parent = (i-1) >> 1;
+				if (!less(cost, dist, seq, parent)) break;
+				move(parent, i);
+				i = parent;
+			}
+			vertices[i] = sv;   costs[i] = cost;   dists[i] = dist;   seqs[i] = seq;
+		}
+
+		SearchVertex poll()
+		{
+			if (size == 0) return null;
+			SearchVertex result = vertices[0];
+			size--;
+			int cost = costs[size];
+			double dist = dists[size];
+			long seq = seqs[size];
+			SearchVertex sv = vertices[size];
+			vertices[size] = null;
+
+			// sift down
+			int i = 0;
+			if (size > 0)
+			{
+				for(;;)
+				{
+					int child = i*2 + 1;
+					if (child >= size) break;
+					if (child+1 < size && less(costs[child+1], dists[child+1], seqs[child+1], child)) child++;
+					if (!less(costs[child], dists[child], seqs[child], cost, dist, seq)) break;
+					move(child, i);
+					i = child;
+				}
+				vertices[i] = sv;   costs[i] = cost;   dists[i] = dist;   seqs[i] = seq;
+			}
+			return result;
+		}
+
+		private void move(int from, int to)
+		{
+			vertices[to] = vertices[from];   costs[to] = costs[from];   dists[to] = dists[from];   seqs[to] = seqs[from];
+		}
+
+		private boolean less(int cost, double dist, long seq, int index)
+		{
+			return less(cost, dist, seq, costs[index], dists[index], seqs[index]);
+		}
+
+		private static boolean less(int cost1, double dist1, long seq1, int cost2, double dist2, long seq2)
+		{
+			if (cost1 != cost2) return cost1 < cost2;
+			if (dist1 != dist2) return dist1 < dist2;
+			return seq1 < seq2;
+		}
+	}
+
+	/**
+	 * Class to hold a set of (a, b, c) coordinates with an optional value for each.
+	 * It uses open addressing in primitive arrays, and entries are stamped with a
+	 * generation number so that clearing the table does not touch the arrays.
+	 */
+	private static class CoordinateTable
+	{
+		private long [] keyA, keyB;
+		private int [] keyC;
+		private int [] stamps;
+		private double [] values;
+		private int generation = 1;
+		private int size;
+
+		CoordinateTable(boolean hasValues)
+		{
+			allocate(1024, hasValues);
+		}
+
+		private void allocate(int capacity, boolean hasValues)
+		{
+			keyA = new long[capacity];
+			keyB = new long[capacity];
+			keyC = new int[capacity];
+			stamps = new int[capacity];
+			values = hasValues ? new double[capacity] : null;
+		}
+
+		void clear()
+		{
+			size = 0;
+			generation++;
+			if (generation == 0)
+			{
+				for(int i=0; i<stamps.length; i++) stamps[i] = 0;
+				generation = 1;
 			}
-			return 0;
 		}
+
+		/**
+		 * Method to find the slot of a coordinate.
+		 * @return the slot of the coordinate if it is in the table,
+		 * otherwise the complement of the free slot where it belongs.
+		 */
+		private int find(long a, long b, int c)
+		{
+			long h = a * 0x9E3779B97F4A7C15L + b * 0xC2B2AE3D27D4EB4FL + c * 0x165667B1L;
+			h ^= h >>> 29;
+			int mask = stamps.length - 1;
+			for(int i = (int)h & mask; ; i = (i+1) & mask)
+			{
+				if (stamps[i] != generation) return ~i;
+				if (keyA[i] == a && keyB[i] == b && keyC[i] == c) return i;
+			}
+		}
+
+		private int insert(double a, double b, int c)
+		{
+			long la = Double.doubleToLongBits(a), lb = Double.doubleToLongBits(b);
+			int slot = find(la, lb, c);
+			if (slot >= 0) return slot;
+			if ((size+1) * 2 > stamps.length)
+			{
+				grow();
+				slot = find(la, lb, c);
+			}
+			slot = ~slot;
+			keyA[slot] = la;   keyB[slot] = lb;   keyC[slot] = c;
+			stamps[slot] = generation;
+			size++;
+			return slot;
+		}
+
+		private void grow()
+		{
+			long [] oldA = keyA, oldB = keyB;
+			int [] oldC = keyC, oldStamps = stamps;
+			double [] oldValues = values;
+			allocate(oldStamps.length * 2, oldValues != null);
+			for(int i=0; i<oldStamps.length; i++)
+			{
+				if (oldStamps[i] != generation) continue;
+				int slot = ~find(oldA[i], oldB[i], oldC[i]);
+				keyA[slot] = oldA[i];   keyB[slot] = oldB[i];   keyC[slot] = oldC[i];
+				stamps[slot] = generation;
+				if (values != null) values[slot] = oldValues[i];
+			}
+		}
+
+		boolean contains(double a, double b, int c)
+		{
+			return find(Double.doubleToLongBits(a), Double.doubleToLongBits(b), c) >= 0;
+		}
+
+		void add(double a, double b, int c) { insert(a, b, c); }
+
+		/**
+		 * Method to get the value of a coordinate.
+		 * @return the value, or NaN if the coordinate is not in the table.
+		 */
+		double get(double a, double b, int c)
+		{
+			int slot = find(Double.doubleToLongBits(a), Double.doubleToLongBits(b), c);
+			return slot >= 0 ? values[slot] : Double.NaN;
+		}
+
+		void put(double a, double b, int c, double value)
+		{
+			int slot = insert(a, b, c);
+			values[slot] = value;
+		}
+
+		int getCapacity() { return stamps.length; }
+
+		boolean isUsed(int slot) { return stamps[slot] == generation; }
+
+		double getA(int slot) { return Double.longBitsToDouble(keyA[slot]); }
+
+		double getB(int slot) { return Double.longBitsToDouble(keyB[slot]); }
+
+		int getC(int slot) { return keyC[slot]; }
 	}
 
 //	/**
@@ -3071,37 +3441,33 @@ public class SeaOfGatesEngine
 //		}
 //	}
 
-	private void showSearchVertices(Map<Integer,Set<Integer>> [] planes, boolean horiz)
+	private void showSearchVertices(CoordinateTable visited, boolean horiz)
 	{
 		EditWindow_ wnd = Job.getUserInterface().getCurrentEditWindow_();
-		for(int i=0; i<numMetalLayers; i++)
+		for(int slot=0; slot<visited.getCapacity(); slot++)
 		{
-			double offset = i;
+			if (!visited.isUsed(slot)) continue;
+			double xv = visited.getA(slot);
+			double yv = visited.getB(slot);
+			if (!FULLGRAIN)
+			{
+				xv /= GRANULARITY;
+				yv /= GRANULARITY;
+			}
+			double offset = visited.getC(slot);
 			offset -= (numMetalLayers-2) / 2.0;
 			offset /= numMetalLayers+2;
-			Map<Integer,Set<Integer>> plane = planes[i];
-			if (plane == null) continue;
-			for(Integer y : plane.keySet())
+			Point2D pt1, pt2;
+			if (horiz)
 			{
-				double yv = y.doubleValue();
-				Set<Integer> row = plane.get(y);
-				for(Iterator<Integer> it = row.iterator(); it.hasNext(); )
-				{
-					Integer x = it.next();
-					double xv = x.doubleValue();
-					Point2D pt1, pt2;
-					if (horiz)
-					{
-						pt1 = new Point2D.Double(xv-0.5, yv+offset);
-						pt2 = new Point2D.Double(xv+0.5, yv+offset);
-					} else
-					{
-						pt1 = new Point2D.Double(xv+offset, yv-0.5);
-						pt2 = new Point2D.Double(xv+offset, yv+0.5);
-					}
-					wnd.addHighlightLine(pt1, pt2, cell, false, false);
-				}
+				pt1 = new Point2D.Double(xv-0.5, yv+offset);
+				pt2 = new Point2D.Double(xv+0.5, yv+offset);
+			} else
+			{
+				pt1 = new Point2D.Double(xv+offset, yv-0.5);
+				pt2 = new Point2D.Double(xv+offset, yv+0.5);
 			}
+			wnd.addHighlightLine(pt1, pt2, cell, false, false);
 		}
 	}
 }
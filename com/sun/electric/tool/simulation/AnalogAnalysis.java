@@ -35,6 +35,7 @@ public class AnalogAnalysis extends Analysis<AnalogSignal> {
 	/** all sweeps in this Analysis */							private List<Object> sweeps;
 	/** the common time array (if there is common time) */		private double [] commonTime;
 	/** the common time array (if there is common time) */		private HashMap<AnalogSignal,Waveform[]> waveformCache = new HashMap<AnalogSignal,Waveform[]>();
+	/** off-heap sample stores, one per sweep */				private List<WaveformStore> waveformStores = new ArrayList<WaveformStore>();
 
 	/**
 	 * Constructor for a collection of analog simulation data.
@@ -60,6 +61,10 @@ public class AnalogAnalysis extends Analysis<AnalogSignal> {
 	{
 		super.finished();
 		if (sweeps != null) sweeps.clear();
+		waveformCache.clear();
+		for (WaveformStore store : waveformStores)
+			store.close();
+		waveformStores.clear();
 	}
 
 	@Override
@@ -204,8 +209,32 @@ public class AnalogAnalysis extends Analysis<AnalogSignal> {
 		return waveforms[sweep];
 	}
 
+	/**
+	 * Method to add the sample store of the next sweep of this analysis.
+	 * Signals of this analysis which have no explicit waveform are loaded
+	 * lazily from the stores, the signal index in the analysis being its index in each store.
+	 * @param store the finished store with the samples of one sweep.
+	 */
+	public void addWaveformStore(WaveformStore store)
+	{
+		waveformStores.add(store);
+		setBoundsDirty();
+	}
+
+	/**
+	 * Method to tell whether the samples of this analysis are kept in WaveformStores.
+	 * @return true if this analysis has WaveformStores.
+	 */
+	public boolean hasWaveformStores() { return !waveformStores.isEmpty(); }
+
 	protected Waveform[] loadWaveforms(AnalogSignal signal)
 	{
-		throw new UnsupportedOperationException();
+		if (waveformStores.isEmpty())
+			throw new UnsupportedOperationException();
+		int sigIndex = signal.getIndexInAnalysis();
+		Waveform[] waveforms = new Waveform[waveformStores.size()];
+		for (int sweep = 0; sweep < waveforms.length; sweep++)
+			waveforms[sweep] = waveformStores.get(sweep).getWaveform(sigIndex);
+		return waveforms;
 	}
 }
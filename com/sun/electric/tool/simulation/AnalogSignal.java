@@ -107,6 +107,36 @@ public class AnalogSignal extends Signal implements MultiSweepSignal
                     highValue = approx.getSample(btns.eventWithMaxValue).getValue();
                 continue;
             }
+			if (waveform instanceof ColumnarNewSignal)
+			{
+				// the store knows the extent of the data, so the samples need not be paged in
+				ColumnarNewSignal cns = (ColumnarNewSignal)waveform;
+				WaveformStore store = cns.getStore();
+				int numEvents = store.getNumEvents();
+				if (numEvents == 0) continue;
+				if (sweep == 0)
+				{
+					leftEdge = store.getTime(0);
+					rightEdge = store.getTime(numEvents-1);
+				}
+				double lowVal = store.getMinValue(cns.getSignalIndex());
+				double highVal = store.getMaxValue(cns.getSignalIndex());
+				if (first)
+				{
+					first = false;
+					lowTime = store.getMinTime();
+					highTime = store.getMaxTime();
+					lowValue = lowVal;
+					highValue = highVal;
+				} else
+				{
+					if (store.getMinTime() < lowTime) lowTime = store.getMinTime();
+					if (store.getMaxTime() > highTime) highTime = store.getMaxTime();
+					if (lowVal < lowValue) lowValue = lowVal;
+					if (highVal > highValue) highValue = highVal;
+				}
+				continue;
+			}
 
 			for(int i=0, numEvents = waveform.getNumEvents(); i<numEvents; i++)
 			{
@@ -0,0 +1,151 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: ColumnarNewSignal.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.simulation;
+
+/**
+ * A waveform whose samples are read on demand from a WaveformStore.
+ * Nothing but the store reference and the signal index is kept on the heap.
+ */
+public class ColumnarNewSignal extends NewSignalSimpleImpl implements Waveform {
+
+    private final WaveformStore store;
+    private final int signal;
+    private final NewSignal.Approximation<ScalarSample> preferredApproximation = new ColumnarApproximation();
+
+    ColumnarNewSignal(WaveformStore store, int signal) {
+        this.store = store;
+        this.signal = signal;
+    }
+
+    /**
+     * Method to return the store which holds the samples of this waveform.
+     * @return the store of this waveform.
+     */
+    public WaveformStore getStore() { return store; }
+
+    /**
+     * Method to return the index of this waveform in its store.
+     * @return the signal index in the store.
+     */
+    public int getSignalIndex() { return signal; }
+
+    public int getNumEvents() { return store.getNumEvents(); }
+
+    public void getEvent(int index, double[] result) {
+        result[0] = store.getTime(index);
+        result[1] = result[2] = store.getValue(signal, index);
+    }
+
+    public NewSignal.Approximation<ScalarSample> getPreferredApproximation() {
+        return preferredApproximation;
+    }
+
+    /**
+     * Returns the events which are needed to draw this waveform in [t0,t1] with numRegions pixels.
+     * When there are few events in the window they are returned as they are.
+     * Otherwise every pixel gets its lowest and highest value, taken from the min/max pyramid
+     * of the store, so the cost depends on the number of pixels rather than on the number of events.
+     */
+    public NewSignal.Approximation<ScalarSample>
+        getPixelatedApproximation(double t0, double t1, int numRegions) {
+        int numEvents = store.getNumEvents();
+        if (numEvents == 0 || numRegions <= 0 || t1 <= t0) return preferredApproximation;
+
+        // include one event beyond each side so that lines leave the window
+        int e0 = store.findEvent(t0);
+        int e1 = Math.min(numEvents - 1, store.findEvent(t1) + 1);
+        if (e1 - e0 + 1 <= numRegions*4) return new EventRangeApproximation(e0, e1);
+        return new MinMaxApproximation(t0, t1, numRegions, e0, e1);
+    }
+
+    private class EventRangeApproximation implements NewSignal.Approximation<ScalarSample> {
+        private final int e0;
+        private final int numEvents;
+        EventRangeApproximation(int e0, int e1) {
+            this.e0 = e0;
+            this.numEvents = e1 - e0 + 1;
+        }
+        public int getNumEvents() { return numEvents; }
+        public double getTime(int index) { return store.getTime(e0 + index); }
+        public ScalarSample getSample(int index) { return new ScalarSample(store.getValue(signal, e0 + index)); }
+        public int getTimeNumerator(int index) { throw new RuntimeException("not implemented"); }
+        public int getTimeDenominator() { throw new RuntimeException("not implemented"); }
+        public int getEventWithMaxValue() { throw new RuntimeException("not implemented"); }
+        public int getEventWithMinValue() { throw new RuntimeException("not implemented"); }
+    }
+
+    /**
+     * Up to two events per pixel: the lowest and the highest value of the events in the pixel.
+     * They are ordered so that the trace continues from the value nearest to the previous pixel.
+     */
+    private class MinMaxApproximation implements NewSignal.Approximation<ScalarSample> {
+        private final double[] times;
+        private final double[] values;
+        private final int numEvents;
+        MinMaxApproximation(double t0, double t1, int numRegions, int e0, int e1) {
+            times = new double[numRegions*2 + 2];
+            values = new double[numRegions*2 + 2];
+            double[] range = new double[2];
+            int n = 0;
+            times[n] = store.getTime(e0);
+            values[n++] = store.getValue(signal, e0);
+            int from = e0 + 1;
+            for (int i = 0; i < numRegions && from < e1; i++) {
+                int to = i == numRegions - 1 ? e1 : Math.min(e1, store.findEvent(t0 + ((i+1)*(t1-t0))/numRegions) + 1);
+                if (to <= from) continue;
+                store.getValueRange(signal, from, to, range);
+                double time = store.getTime(from);
+                double last = values[n-1];
+                boolean lowFirst = Math.abs(range[0] - last) <= Math.abs(range[1] - last);
+                times[n] = time;
+                values[n++] = lowFirst ? range[0] : range[1];
+                if (range[0] != range[1]) {
+                    times[n] = time;
+                    values[n++] = lowFirst ? range[1] : range[0];
+                }
+                from = to;
+            }
+            times[n] = store.getTime(e1);
+            values[n++] = store.getValue(signal, e1);
+            numEvents = n;
+        }
+        public int getNumEvents() { return numEvents; }
+        public double getTime(int index) { return times[index]; }
+        public ScalarSample getSample(int index) { return new ScalarSample(values[index]); }
+        public int getTimeNumerator(int index) { throw new RuntimeException("not implemented"); }
+        public int getTimeDenominator() { throw new RuntimeException("not implemented"); }
+        public int getEventWithMaxValue() { throw new RuntimeException("not implemented"); }
+        public int getEventWithMinValue() { throw new RuntimeException("not implemented"); }
+    }
+
+    private class ColumnarApproximation implements NewSignal.Approximation<ScalarSample> {
+        public int getNumEvents() { return store.getNumEvents(); }
+        public double getTime(int index) { return store.getTime(index); }
+        public ScalarSample getSample(int index) { return new ScalarSample(store.getValue(signal, index)); }
+        public int getTimeNumerator(int index) { throw new RuntimeException("not implemented"); }
+        public int getTimeDenominator() { throw new RuntimeException("not implemented"); }
+        public int getEventWithMaxValue() { return store.getEventWithMaxValue(signal); }
+        public int getEventWithMinValue() { return store.getEventWithMinValue(signal); }
+    }
+}
@@ -0,0 +1,528 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: WaveformStore.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class to hold the samples of all signals of one analysis (or one sweep of it)
+ * outside of the Java heap.
+ * Simulation readers append events row by row. The rows are gathered into groups
+ * which are written to a temporary file in columnar order: a group starts with the
+ * time column, followed by one value column per signal, followed by a table of
+ * column offsets. A value column which is constant in the group is collapsed to
+ * a single value. Values are kept in single precision, or in double precision
+ * for readers whose source data is double, so that no sample loses precision.
+ * When the store is finished, the file is memory-mapped, so signals are paged in
+ * only when they are displayed.
+ * <P>
+ * While events are added, the store also builds a pyramid of lowest and highest values.
+ * The first level summarizes blocks of BASEBLOCK events, and every further level
+ * summarizes pairs of blocks of the level below. Each level is itself a WaveformStore
+ * whose columns are pairs of lowest and highest values, so the value range of any
+ * span of events is found by reading a few summaries instead of all of its samples.
+ */
+public class WaveformStore
+{
+	/** maximal number of bytes in one group of events */	private static final int GROUPBYTES = 64*1024*1024;
+	/** minimal number of bytes in one group of summaries */	private static final int MINGROUPBYTES = 1024*1024;
+	/** maximal number of events in one group */			private static final int MAXGROUPEVENTS = 65536;
+	/** number of events summarized by the first level */	private static final int BASEBLOCK = 64;
+
+	/** the number of columns in this store */				private final int numSignals;
+	/** the number of bytes in one value (4 or 8) */		private final int valueBytes;
+	/** true if columns are pairs of lowest and highest */	private final boolean pairs;
+	/** number of events summarized by one summary event */	private final int fanIn;
+	/** maximal number of bytes in one group */				private final int groupBytes;
+	/** the next level of the min/max pyramid */			private WaveformStore summary;
+	/** the time of the block being summarized */			private double blockTime;
+	/** lowest values in the block being summarized */		private final double[] blockMin;
+	/** highest values in the block being summarized */		private final double[] blockMax;
+	/** the event passed to the summary */					private final double[] summaryRow;
+	/** single precision event widened for addEvent */		private double[] widenedRow;
+	/** the number of events in a full group */				private final int groupEvents;
+	/** the temporary file with the groups */				private File file;
+	/** the temporary file while writing */					private RandomAccessFile raf;
+	/** the group being filled */							private ByteBuffer groupBuffer;
+	/** column offsets while a group is compacted */		private int[] columnOffsets;
+	/** the number of events in the group being filled */	private int eventsInGroup;
+	/** the number of groups written to the file */			private int numGroups;
+	/** file positions of the written groups */				private long[] groupPositions = new long[16];
+	/** the mapped groups after the store is finished */	private ByteBuffer[] groups;
+	/** the total number of events */						private int numEvents;
+	/** the lowest and highest time */						private double minTime, maxTime;
+	/** the event with lowest value of each signal */		private final int[] eventWithMinValue;
+	/** the event with highest value of each signal */		private final int[] eventWithMaxValue;
+	/** the lowest value of each signal */					private final double[] minValues;
+	/** the highest value of each signal */					private final double[] maxValues;
+
+	/**
+	 * Constructor creates an empty store and its temporary file.
+	 * Values are kept in single precision.
+	 * @param numSignals the number of signals in every event.
+	 * @throws IOException if the temporary file cannot be created.
+	 */
+	public WaveformStore(int numSignals)
+		throws IOException
+	{
+		this(numSignals, false);
+	}
+
+	/**
+	 * Constructor creates an empty store and its temporary file.
+	 * @param numSignals the number of signals in every event.
+	 * @param doublePrecision true to keep values in double precision, false for single precision.
+	 * @throws IOException if the temporary file cannot be created.
+	 */
+	public WaveformStore(int numSignals, boolean doublePrecision)
+		throws IOException
+	{
+		this(numSignals, doublePrecision ? 8 : 4, false, BASEBLOCK, GROUPBYTES);
+	}
+
+	/**
+	 * Constructor creates an empty store for one level of the min/max pyramid or for the signal values.
+	 * @param numSignals the number of columns in every event.
+	 * @param valueBytes the number of bytes in one value, 4 for single and 8 for double precision.
+	 * @param pairs true if the columns are pairs of lowest and highest values.
+	 * @param fanIn the number of events summarized by one event of the next level.
+	 * @param groupBytes the maximal number of bytes in one group of events.
+	 * @throws IOException if the temporary file cannot be created.
+	 */
+	private WaveformStore(int numSignals, int valueBytes, boolean pairs, int fanIn, int groupBytes)
+		throws IOException
+	{
+		this.numSignals = numSignals;
+		this.valueBytes = valueBytes;
+		this.pairs = pairs;
+		this.fanIn = fanIn;
+		this.groupBytes = groupBytes;
+		int numSummarized = pairs ? numSignals/2 : numSignals;
+		blockMin = new double[numSummarized];
+		blockMax = new double[numSummarized];
+		summaryRow = new double[numSummarized*2];
+		groupEvents = Math.max(1, Math.min(MAXGROUPEVENTS, groupBytes / (8 + valueBytes*numSignals)));
+		eventWithMinValue = new int[numSignals];
+		eventWithMaxValue = new int[numSignals];
+		minValues = new double[numSignals];
+		maxValues = new double[numSignals];
+		minTime = maxTime = 0;
+		file = File.createTempFile("elecwave", ".tmp");
+		file.deleteOnExit();
+		raf = new RandomAccessFile(file, "rw");
+		groupBuffer = ByteBuffer.allocateDirect(groupEvents*(8 + valueBytes*numSignals) + (numSignals+1)*4);
+		groupBuffer.order(ByteOrder.nativeOrder());
+		columnOffsets = new int[numSignals+1];
+	}
+
+	/**
+	 * Method to append an event with single precision values to this store.
+	 * @param time the time of the event.
+	 * @param values array with the values of all signals at this event.
+	 * @param firstValue the index in "values" of the value of the first signal.
+	 * @throws IOException if the group cannot be written.
+	 */
+	public void addEvent(double time, float[] values, int firstValue)
+		throws IOException
+	{
+		if (widenedRow == null) widenedRow = new double[numSignals];
+		for(int i=0; i<numSignals; i++) widenedRow[i] = values[firstValue + i];
+		addEvent(time, widenedRow, 0);
+	}
+
+	/**
+	 * Method to append an event to this store.
+	 * In a single precision store the values are rounded to float.
+	 * @param time the time of the event.
+	 * @param values array with the values of all signals at this event.
+	 * @param firstValue the index in "values" of the value of the first signal.
+	 * @throws IOException if the group cannot be written.
+	 */
+	public void addEvent(double time, double[] values, int firstValue)
+		throws IOException
+	{
+		if (groups != null) throw new IllegalStateException("store is finished");
+		if (numEvents == 0 || time < minTime) minTime = time;
+		if (numEvents == 0 || time > maxTime) maxTime = time;
+		groupBuffer.putDouble(eventsInGroup*8, time);
+		int columnBase = groupEvents*8 + eventsInGroup*valueBytes;
+		for(int i=0; i<numSignals; i++)
+		{
+			double value = values[firstValue + i];
+			int pos = columnBase + i*groupEvents*valueBytes;
+			if (valueBytes == 8) groupBuffer.putDouble(pos, value); else
+			{
+				// keep the statistics consistent with what is stored
+				value = (float)value;
+				groupBuffer.putFloat(pos, (float)value);
+			}
+			if (numEvents == 0 || value < minValues[i]) { minValues[i] = value;   eventWithMinValue[i] = numEvents; }
+			if (numEvents == 0 || value > maxValues[i]) { maxValues[i] = value;   eventWithMaxValue[i] = numEvents; }
+		}
+
+		// accumulate the block of the next pyramid level
+		boolean blockStart = numEvents % fanIn == 0;
+		if (blockStart) blockTime = time;
+		for(int i=0; i<blockMin.length; i++)
+		{
+			double low = pairs ? values[firstValue + i*2] : values[firstValue + i];
+			double high = pairs ? values[firstValue + i*2 + 1] : low;
+			if (valueBytes == 4) { low = (float)low;   high = (float)high; }
+			if (blockStart || low < blockMin[i]) blockMin[i] = low;
+			if (blockStart || high > blockMax[i]) blockMax[i] = high;
+		}
+
+		numEvents++;
+		eventsInGroup++;
+		if (eventsInGroup == groupEvents) writeGroup();
+		if (numEvents % fanIn == 0) addSummary();
+	}
+
+	/**
+	 * Method to pass the block being summarized to the next level of the min/max pyramid.
+	 * The level is created when its first event arrives.
+	 */
+	private void addSummary()
+		throws IOException
+	{
+		if (summary == null)
+			summary = new WaveformStore(summaryRow.length, valueBytes, true, 2, Math.max(MINGROUPBYTES, groupBytes/2));
+		for(int i=0; i<blockMin.length; i++)
+		{
+			summaryRow[i*2] = blockMin[i];
+			summaryRow[i*2 + 1] = blockMax[i];
+		}
+		summary.addEvent(blockTime, summaryRow, 0);
+	}
+
+	/**
+	 * Method to compact the group being filled and to append it to the temporary file.
+	 * Columns are moved down to follow each other, constant columns are reduced
+	 * to one value, and the table of column offsets is placed after the columns.
+	 * Every column moves to a lower position, so the compaction is done in place.
+	 */
+	private void writeGroup()
+		throws IOException
+	{
+		int n = eventsInGroup;
+		int dst = n*8;
+		for(int i=0; i<numSignals; i++)
+		{
+			int src = groupEvents*8 + i*groupEvents*valueBytes;
+			columnOffsets[i] = dst;
+			if (valueBytes == 8)
+			{
+				long first = groupBuffer.getLong(src);
+				boolean constant = true;
+				for(int j=1; j<n && constant; j++)
+					constant = groupBuffer.getLong(src + j*8) == first;
+				if (constant)
+				{
+					groupBuffer.putLong(dst, first);
+					dst += 8;
+				} else
+				{
+					for(int j=0; j<n; j++)
+						groupBuffer.putLong(dst + j*8, groupBuffer.getLong(src + j*8));
+					dst += n*8;
+				}
+			} else
+			{
+				int first = groupBuffer.getInt(src);
+				boolean constant = true;
+				for(int j=1; j<n && constant; j++)
+					constant = groupBuffer.getInt(src + j*4) == first;
+				if (constant)
+				{
+					groupBuffer.putInt(dst, first);
+					dst += 4;
+				} else
+				{
+					for(int j=0; j<n; j++)
+						groupBuffer.putInt(dst + j*4, groupBuffer.getInt(src + j*4));
+					dst += n*4;
+				}
+			}
+		}
+		columnOffsets[numSignals] = dst;
+		for(int i=0; i<=numSignals; i++)
+			groupBuffer.putInt(dst + i*4, columnOffsets[i]);
+		dst += (numSignals+1)*4;
+
+		if (numGroups == groupPositions.length)
+		{
+			long[] newPositions = new long[numGroups*2];
+			System.arraycopy(groupPositions, 0, newPositions, 0, numGroups);
+			groupPositions = newPositions;
+		}
+		FileChannel channel = raf.getChannel();
+		long position = channel.size();
+		groupPositions[numGroups++] = position;
+		groupBuffer.clear();
+		groupBuffer.limit(dst);
+		while (groupBuffer.hasRemaining())
+			position += channel.write(groupBuffer, position);
+		groupBuffer.clear();
+		eventsInGroup = 0;
+	}
+
+	/**
+	 * Method to finish writing this store.
+	 * The last group is written and all groups are mapped into memory.
+	 * No events may be added afterwards.
+	 * @throws IOException if the temporary file cannot be written or mapped.
+	 */
+	public void finish()
+		throws IOException
+	{
+		if (groups != null) return;
+		if (eventsInGroup > 0) writeGroup();
+		if (summary != null)
+		{
+			// the last, partial block is summarized as well, so that the pyramid covers all events
+			if (numEvents % fanIn != 0) addSummary();
+			summary.finish();
+		}
+		groupBuffer = null;
+		columnOffsets = null;
+		FileChannel channel = raf.getChannel();
+		long size = channel.size();
+		ByteBuffer[] mapped = new ByteBuffer[numGroups];
+		for(int g=0; g<numGroups; g++)
+		{
+			long end = g+1 < numGroups ? groupPositions[g+1] : size;
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, groupPositions[g], end - groupPositions[g]);
+			buf.order(ByteOrder.nativeOrder());
+			mapped[g] = buf;
+		}
+		groups = mapped;
+
+		// the mappings stay valid after the file is closed
+		raf.close();
+		raf = null;
+	}
+
+	/**
+	 * Method to release the temporary file of this store.
+	 */
+	public void close()
+	{
+		if (summary != null) summary.close();
+		summary = null;
+		groups = null;
+		groupBuffer = null;
+		if (raf != null)
+		{
+			try
+			{
+				raf.close();
+			} catch (IOException e) {}
+			raf = null;
+		}
+		if (file != null)
+		{
+			// on some systems the file cannot be deleted while it is mapped, it is then deleted on exit
+			file.delete();
+			file = null;
+		}
+	}
+
+	/**
+	 * Method to return the number of signals in this store.
+	 * @return the number of signals in this store.
+	 */
+	public int getNumSignals() { return numSignals; }
+
+	/**
+	 * Method to return the number of events in this store.
+	 * @return the number of events in this store.
+	 */
+	public int getNumEvents() { return numEvents; }
+
+	/**
+	 * Method to return the lowest time in this store.
+	 * @return the lowest time in this store.
+	 */
+	public double getMinTime() { return minTime; }
+
+	/**
+	 * Method to return the highest time in this store.
+	 * @return the highest time in this store.
+	 */
+	public double getMaxTime() { return maxTime; }
+
+	/**
+	 * Method to return the lowest value of a signal.
+	 * @param signal the signal index.
+	 * @return the lowest value of the signal.
+	 */
+	public double getMinValue(int signal) { return minValues[signal]; }
+
+	/**
+	 * Method to return the highest value of a signal.
+	 * @param signal the signal index.
+	 * @return the highest value of the signal.
+	 */
+	public double getMaxValue(int signal) { return maxValues[signal]; }
+
+	/**
+	 * Method to return the event with the lowest value of a signal.
+	 * @param signal the signal index.
+	 * @return the event with the lowest value of the signal.
+	 */
+	public int getEventWithMinValue(int signal) { return eventWithMinValue[signal]; }
+
+	/**
+	 * Method to return the event with the highest value of a signal.
+	 * @param signal the signal index.
+	 * @return the event with the highest value of the signal.
+	 */
+	public int getEventWithMaxValue(int signal) { return eventWithMaxValue[signal]; }
+
+	/**
+	 * Method to return the time of an event.
+	 * The store must be finished.
+	 * @param event the event index.
+	 * @return the time of the event.
+	 */
+	public double getTime(int event)
+	{
+		return groups[event / groupEvents].getDouble((event % groupEvents)*8);
+	}
+
+	/**
+	 * Method to return the value of a signal at an event.
+	 * The store must be finished.
+	 * @param signal the signal index.
+	 * @param event the event index.
+	 * @return the value of the signal at the event.
+	 */
+	public double getValue(int signal, int event)
+	{
+		ByteBuffer group = groups[event / groupEvents];
+		int table = group.limit() - (numSignals+1)*4 + signal*4;
+		int start = group.getInt(table);
+		boolean constant = group.getInt(table + 4) - start == valueBytes;
+		if (valueBytes == 8)
+			return group.getDouble(constant ? start : start + (event % groupEvents)*8);
+		return group.getFloat(constant ? start : start + (event % groupEvents)*4);
+	}
+
+	/**
+	 * Method to find the last event at or before a given time.
+	 * The store must be finished.
+	 * @param time the time to find.
+	 * @return the index of the last event whose time is not greater than "time",
+	 * or 0 if all events are later.
+	 */
+	public int findEvent(double time)
+	{
+		int low = 0, high = numEvents - 1;
+		if (high < 0 || getTime(0) >= time) return 0;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (getTime(mid) <= time) low = mid; else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Method to compute the lowest and highest value of a signal in a span of events.
+	 * Only the events at the ends of the span which are not aligned to blocks of the min/max pyramid
+	 * are read from the samples; the rest of the span is covered by a few pyramid summaries.
+	 * The store must be finished.
+	 * @param signal the signal index.
+	 * @param from the first event of the span.
+	 * @param to the event after the last event of the span.
+	 * @param range array of length 2 to return (lowValue, highValue).
+	 */
+	public void getValueRange(int signal, int from, int to, double[] range)
+	{
+		range[0] = Double.POSITIVE_INFINITY;
+		range[1] = Double.NEGATIVE_INFINITY;
+		int r0 = (from + fanIn - 1) / fanIn;
+		int r1 = to / fanIn;
+		if (summary == null || r0 >= r1)
+		{
+			addSamples(signal, from, to, range);
+			return;
+		}
+		addSamples(signal, from, r0*fanIn, range);
+		addSamples(signal, r1*fanIn, to, range);
+
+		// descend the pyramid, taking the unpaired summaries at both ends of each level
+		WaveformStore level = summary;
+		while (r0 < r1)
+		{
+			if (level.summary == null)
+			{
+				for(int r=r0; r<r1; r++) level.addPairRange(signal, r, range);
+				break;
+			}
+			if ((r0 & 1) != 0) level.addPairRange(signal, r0++, range);
+			if ((r1 & 1) != 0) level.addPairRange(signal, --r1, range);
+			r0 >>= 1;
+			r1 >>= 1;
+			level = level.summary;
+		}
+	}
+
+	private void addSamples(int signal, int from, int to, double[] range)
+	{
+		for(int e=from; e<to; e++)
+		{
+			double value = getValue(signal, e);
+			if (value < range[0]) range[0] = value;
+			if (value > range[1]) range[1] = value;
+		}
+	}
+
+	private void addPairRange(int signal, int event, double[] range)
+	{
+		double low = getValue(signal*2, event);
+		double high = getValue(signal*2 + 1, event);
+		if (low < range[0]) range[0] = low;
+		if (high > range[1]) range[1] = high;
+	}
+
+	/**
+	 * Method to return the waveform of a signal in this store.
+	 * The waveform reads its samples directly from the store.
+	 * @param signal the signal index.
+	 * @return the waveform of the signal.
+	 */
+	public Waveform getWaveform(int signal)
+	{
+		if (groups == null) throw new IllegalStateException("store is not finished");
+		return new ColumnarNewSignal(this, signal);
+	}
+}
@@ -37,6 +37,7 @@ import com.sun.electric.database.topology.NodeInst;
 import com.sun.electric.database.variable.VarContext;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.PrintStream;
@@ -67,8 +68,17 @@ public abstract class ErrorHighlight implements Serializable {
 
     public Cell getCell(EDatabase database) { return cellId != null ? database.getCell(cellId) : null; }
 
+    CellId getCellId() { return cellId; }
+
     VarContext getVarContext() { return context; }
 
+    /**
+     * Method to return the bounds of this highlight in its cell.
+     * @param database database to find highlighted objects.
+     * @return the bounds or null if they are unknown or the highlighted object doesn't exist anymore.
+     */
+    Rectangle2D getBounds(EDatabase database) { return null; }
+
     boolean containsObject(Cell cell, Object obj) { return false; }
 
     Object getObject(EDatabase database) { return null; }
@@ -292,6 +302,22 @@ class ErrorHighPoly extends ErrorHighlight
 
     Cell getOrigCell(EDatabase database) { return origCellId != null ? database.getCell(origCellId) : null; }
 
+    @Override
+    Rectangle2D getBounds(EDatabase database)
+    {
+        Rectangle2D bounds = null;
+        for (ErrorHighlight line : linesList)
+        {
+            Rectangle2D lineBounds = line.getBounds(database);
+            if (lineBounds == null) return null;
+            if (bounds == null)
+                bounds = lineBounds;
+            else
+                bounds.add(lineBounds);
+        }
+        return bounds;
+    }
+
     public void addToHighlighter(Highlighter h, EDatabase database)
     {
         for (ErrorHighlight line : linesList)
@@ -328,6 +354,14 @@ class ErrorHighLine extends ErrorHighlight {
         p2 = x2;
     }
 
+    @Override
+    Rectangle2D getBounds(EDatabase database)
+    {
+        Rectangle2D bounds = new Rectangle2D.Double(p1.getX(), p1.getY(), 0, 0);
+        bounds.add(p2);
+        return bounds;
+    }
+
     public static void writeXmlHeader(String indent, PrintStream ps)
     {
         ps.println(indent + "<!ELEMENT ERRORTYPELINE ANY>");
@@ -384,6 +418,12 @@ class ErrorHighPoint extends ErrorHighlight {
         this.point = p;
     }
 
+    @Override
+    Rectangle2D getBounds(EDatabase database)
+    {
+        return new Rectangle2D.Double(point.getX(), point.getY(), 0, 0);
+    }
+
     public void addToHighlighter(Highlighter h, EDatabase database)
     {
         double consize = 5;
@@ -447,6 +487,16 @@ class ErrorHighNode extends ErrorHighlight {
         return cell.getNodeById(nodeId);
     }
 
+    @Override
+    Rectangle2D getBounds(EDatabase database)
+    {
+        Geometric geom = (Geometric)getObject(database);
+        if (geom == null) return null;
+        Rectangle2D bounds = new Rectangle2D.Double();
+        bounds.setRect(geom.getBounds());
+        return bounds;
+    }
+
     public static void writeXmlHeader(String indent, PrintStream ps)
     {
         ps.println(indent + "<!ELEMENT ERRORTYPEGEOM ANY>");
@@ -509,6 +559,16 @@ class ErrorHighArc extends ErrorHighlight {
         return cell.getArcById(arcId);
     }
 
+    @Override
+    Rectangle2D getBounds(EDatabase database)
+    {
+        Geometric geom = (Geometric)getObject(database);
+        if (geom == null) return null;
+        Rectangle2D bounds = new Rectangle2D.Double();
+        bounds.setRect(geom.getBounds());
+        return bounds;
+    }
+
     void writeXmlDescription(String tabs, PrintStream msg, EDatabase database)
     {
         ArcInst ai = (ArcInst)getObject(database);
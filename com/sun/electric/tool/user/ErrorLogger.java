@@ -40,6 +40,7 @@ import com.sun.electric.database.variable.VarContext;
 import com.sun.electric.tool.Job;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -159,6 +160,35 @@ public class ErrorLogger implements Serializable
 
         public int getSortKey() { return sortKey; }
 
+        /**
+         * Method to tell whether this log touches some regions.
+         * Highlights whose bounds are unknown, for example highlights of deleted objects,
+         * touch any region of their cell.
+         * @param database database to find highlighted objects.
+         * @param regions map from cell to regions of that cell.
+         * @return true if some highlight of this log intersects a region of its cell.
+         */
+        public boolean touches(EDatabase database, Map<CellId,List<Rectangle2D>> regions)
+        {
+            if (highlights.length == 0)
+                return logCellId != null && regions.containsKey(logCellId);
+            for (ErrorHighlight eh : highlights)
+            {
+                List<Rectangle2D> cellRegions = regions.get(eh.getCellId());
+                if (cellRegions == null) continue;
+                Rectangle2D bounds = eh.getBounds(database);
+                if (bounds == null) return true;
+                for (Rectangle2D region : cellRegions)
+                {
+                    // highlights might be degenerated rectangles
+                    if (bounds.getMinX() <= region.getMaxX() && region.getMinX() <= bounds.getMaxX() &&
+                        bounds.getMinY() <= region.getMaxY() && region.getMinY() <= bounds.getMaxY())
+                        return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * Compare objects lexicographically based on string comparator CASE_INSENSITIVE_ORDER
          * This method doesn't guarantee (compare(x, y)==0) == (x.equals(y))
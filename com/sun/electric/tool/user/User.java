@@ -2609,6 +2609,25 @@ public class User extends Listener
 	 */
 	public static boolean isFactoryUseCellGreekingImages() { return cacheUseCellGreekingImages.getBooleanFactoryValue(); }
 
+	private static Pref cachePersistentVectorCache = Pref.makeBooleanPref("PersistentVectorCache", tool.prefs, true);
+	/**
+	 * Method to tell whether to keep the display cache of libraries in files next to the libraries.
+	 * When on, libraries that were displayed before paint without rebuilding the shapes of unchanged cells.
+	 * The default is "true".
+	 * @return true to keep the display cache of libraries in files.
+	 */
+	public static boolean isPersistentVectorCache() { return cachePersistentVectorCache.getBoolean(); }
+	/**
+	 * Method to set whether to keep the display cache of libraries in files next to the libraries.
+	 * @param on true to keep the display cache of libraries in files.
+	 */
+	public static void setPersistentVectorCache(boolean on) { cachePersistentVectorCache.setBoolean(on); }
+	/**
+	 * Method to tell whether to keep the display cache of libraries in files, by default.
+	 * @return true to keep the display cache of libraries in files, by default.
+	 */
+	public static boolean isFactoryPersistentVectorCache() { return cachePersistentVectorCache.getBooleanFactoryValue(); }
+
 	private static Pref cacheGreekSizeLimit = Pref.makeDoublePref("GreekSizeLimit", tool.prefs, 3);
 	/**
 	 * Method to tell the smallest object that can be drawn.
@@ -96,6 +96,9 @@ public class DRCTab extends PreferencePanel
         // Interactive logging
         drcInteractive.setSelected(dp.interactiveLog);
 
+        // Geometry merging algorithm
+        drcManhattanMerge.setSelected(dp.manhattanMerge);
+
 		requestedDRCClearDates = false;
 		drcClearValidDates.addActionListener(new ActionListener()
 		{
@@ -108,6 +111,8 @@ public class DRCTab extends PreferencePanel
 
         // Setting the multi-threaded option
         drcMultiDRC.setSelected(dp.isMultiThreaded);
+        drcTiledMultiDRC.setSelected(dp.isTiledMultiThreaded);
+        drcTiledMultiDRC.setEnabled(dp.isMultiThreaded);
     }
 
 	/**
@@ -142,12 +147,15 @@ public class DRCTab extends PreferencePanel
         dp.storeDatesInMemory = !drcDateOnCells.isSelected();
         // Interactive logging
         dp.interactiveLog = drcInteractive.isSelected();
+        // Geometry merging algorithm
+        dp.manhattanMerge = drcManhattanMerge.isSelected();
 
 		if (requestedDRCClearDates) DRC.resetDRCDates(true);
 
         // drcMultiDRC.setSelected(DRC.isMultiThreaded());
         // Setting MTDRC option
         dp.isMultiThreaded = drcMultiDRC.isSelected();
+        dp.isTiledMultiThreaded = drcTiledMultiDRC.isSelected();
         putPrefs(dp);
         ClickZoomWireListener.theOne.readPrefs();
     }
@@ -166,6 +174,7 @@ public class DRCTab extends PreferencePanel
         dp.errorType = factoryDp.errorType;
         dp.errorLoggingType = factoryDp.errorLoggingType;
         dp.isMultiThreaded = factoryDp.isMultiThreaded;
+        dp.isTiledMultiThreaded = factoryDp.isTiledMultiThreaded;
 
 		dp.storeDatesInMemory = factoryDp.storeDatesInMemory;
         dp.ignoreCenterCuts = factoryDp.ignoreCenterCuts;
@@ -173,6 +182,7 @@ public class DRCTab extends PreferencePanel
         dp.ignoreExtensionRuleChecking = factoryDp.ignoreExtensionRuleChecking;
         dp.interactiveLog = factoryDp.interactiveLog;
         dp.minAreaAlgoOption = factoryDp.minAreaAlgoOption;
+        dp.manhattanMerge = factoryDp.manhattanMerge;
         putPrefs(dp);
         ClickZoomWireListener.theOne.readPrefs();
 	}
@@ -199,6 +209,7 @@ public class DRCTab extends PreferencePanel
         loggingLabel = new javax.swing.JLabel();
         loggingCombo = new javax.swing.JComboBox();
         drcMultiDRC = new javax.swing.JCheckBox();
+        drcTiledMultiDRC = new javax.swing.JCheckBox();
         BothPanel = new javax.swing.JPanel();
         drcIgnoreCenterCuts = new javax.swing.JCheckBox();
         drcIgnoreExtensionRules = new javax.swing.JCheckBox();
@@ -208,6 +219,7 @@ public class DRCTab extends PreferencePanel
         drcClearValidDates = new javax.swing.JButton();
         areaAlgoLabel = new javax.swing.JLabel();
         areaAlgoCombo = new javax.swing.JComboBox();
+        drcManhattanMerge = new javax.swing.JCheckBox();
 
         setTitle("Tool Options");
         setName(""); // NOI18N
@@ -320,9 +332,18 @@ public class DRCTab extends PreferencePanel
         gridBagConstraints.gridy = 5;
         gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
-        gridBagConstraints.insets = new java.awt.Insets(1, 4, 4, 4);
+        gridBagConstraints.insets = new java.awt.Insets(1, 4, 1, 4);
         HierPanel.add(drcMultiDRC, gridBagConstraints);
 
+        drcTiledMultiDRC.setText("Split top cell into tiles");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 6;
+        gridBagConstraints.gridwidth = 2;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(1, 30, 4, 4);
+        HierPanel.add(drcTiledMultiDRC, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 1;
@@ -407,6 +428,15 @@ public class DRCTab extends PreferencePanel
         gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
         BothPanel.add(areaAlgoCombo, gridBagConstraints);
 
+        drcManhattanMerge.setText("Merge geometry with Manhattan scanline engine");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 7;
+        gridBagConstraints.gridwidth = 2;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(1, 4, 4, 4);
+        BothPanel.add(drcManhattanMerge, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 2;
@@ -434,7 +464,8 @@ public class DRCTab extends PreferencePanel
 	}//GEN-LAST:event_closeDialog
 
         private void drcMultiDRCActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_drcMultiDRCActionPerformed
-            // TODO add your handling code here:
+            // tiles are only used by multi-threaded DRC
+            drcTiledMultiDRC.setEnabled(drcMultiDRC.isSelected());
 }//GEN-LAST:event_drcMultiDRCActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -455,7 +486,9 @@ public class DRCTab extends PreferencePanel
     private javax.swing.JCheckBox drcIncrementalOn;
     private javax.swing.JCheckBox drcInteractive;
     private javax.swing.JCheckBox drcInteractiveDrag;
+    private javax.swing.JCheckBox drcManhattanMerge;
     private javax.swing.JCheckBox drcMultiDRC;
+    private javax.swing.JCheckBox drcTiledMultiDRC;
     private javax.swing.ButtonGroup errorTypeGroup;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JComboBox loggingCombo;
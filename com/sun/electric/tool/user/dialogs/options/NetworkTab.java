@@ -85,6 +85,7 @@ public class NetworkTab extends PreferencePanel
 		extractCellPattern.setText(Extract.getCellExpandPattern());
 		extractFlattenPCells.setSelected(Extract.isFlattenPcells());
 		extractPureLayer.setSelected(Extract.isUsePureLayerNodes());
+		extractManhattanMerge.setSelected(Extract.isManhattanMerge());
 
 		// project preferences
 		netIgnoreResistors.setSelected(getBoolean(ignoreResistorsSetting));
@@ -124,6 +125,9 @@ public class NetworkTab extends PreferencePanel
 		nowBoolean = extractPureLayer.isSelected();
 		if (Extract.isUsePureLayerNodes() != nowBoolean) Extract.setUsePureLayerNodes(nowBoolean);
 
+		nowBoolean = extractManhattanMerge.isSelected();
+		if (Extract.isManhattanMerge() != nowBoolean) Extract.setManhattanMerge(nowBoolean);
+
 		// project preferences
         setBoolean(ignoreResistorsSetting, netIgnoreResistors.isSelected());
         setBoolean(includeDateAndVersionInOutputSetting, generalIncludeDateAndVersion.isSelected());
@@ -154,6 +158,8 @@ public class NetworkTab extends PreferencePanel
 			Extract.setFlattenPcells(Extract.isFactoryFlattenPcells());
 		if (Extract.isFactoryUsePureLayerNodes() != Extract.isUsePureLayerNodes())
 			Extract.setUsePureLayerNodes(Extract.isFactoryUsePureLayerNodes());
+		if (Extract.isFactoryManhattanMerge() != Extract.isManhattanMerge())
+			Extract.setManhattanMerge(Extract.isFactoryManhattanMerge());
 	}
 
 	/** This method is called from within the constructor to
@@ -185,6 +191,7 @@ public class NetworkTab extends PreferencePanel
         jLabel2 = new javax.swing.JLabel();
         extractFlattenPCells = new javax.swing.JCheckBox();
         extractPureLayer = new javax.swing.JCheckBox();
+        extractManhattanMerge = new javax.swing.JCheckBox();
         projectSettings = new javax.swing.JPanel();
         generalIncludeDateAndVersion = new javax.swing.JCheckBox();
         netIgnoreResistors = new javax.swing.JCheckBox();
@@ -347,6 +354,15 @@ public class NetworkTab extends PreferencePanel
         gridBagConstraints.insets = new java.awt.Insets(2, 4, 2, 4);
         nodeExtractionPreferences.add(extractPureLayer, gridBagConstraints);
 
+        extractManhattanMerge.setText("Merge geometry with Manhattan scanline engine");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 9;
+        gridBagConstraints.gridwidth = 3;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(2, 4, 4, 4);
+        nodeExtractionPreferences.add(extractManhattanMerge, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 2;
@@ -405,6 +421,7 @@ public class NetworkTab extends PreferencePanel
     private javax.swing.JCheckBox extractFlattenPCells;
     private javax.swing.JCheckBox extractGridAlign;
     private javax.swing.JCheckBox extractIgnoreTiny;
+    private javax.swing.JCheckBox extractManhattanMerge;
     private javax.swing.JRadioButton extractIgnoreWellSelect;
     private javax.swing.JRadioButton extractNeedProperActive;
     private javax.swing.JCheckBox extractPureLayer;
@@ -71,6 +71,7 @@ import com.sun.electric.tool.user.dialogs.ChangeCurrentLib;
 import com.sun.electric.tool.user.dialogs.OpenFile;
 import com.sun.electric.tool.user.dialogs.OptionReconcile;
 import com.sun.electric.tool.user.projectSettings.ProjSettings;
+import com.sun.electric.tool.user.redisplay.VectorCache;
 import com.sun.electric.tool.user.ui.EditWindow;
 import com.sun.electric.tool.user.ui.ElectricPrinter;
 import com.sun.electric.tool.user.ui.ErrorLoggerTree;
@@ -1709,6 +1710,15 @@ public class FileMenu {
 			// save changes to waveform window signals
 			WaveformWindow.preserveSignalOrder();
 
+			// save display cache of libraries (a failure here must not prevent quitting)
+			try
+			{
+				VectorCache.theCache.saveCacheFiles();
+			} catch (Throwable e)
+			{
+				System.out.println("Can't save display cache: " + e);
+			}
+
 			ActivityLogger.finished();
             System.exit(0);
         }
@@ -74,6 +74,7 @@ import com.sun.electric.tool.compaction.Compaction;
 import com.sun.electric.tool.drc.AssuraDrcErrors;
 import com.sun.electric.tool.drc.CalibreDrcErrors;
 import com.sun.electric.tool.drc.DRC;
+import com.sun.electric.tool.drc.DeltaDRC;
 import com.sun.electric.tool.drc.MTDRCLayoutTool;
 import com.sun.electric.tool.erc.ERCAntenna;
 import com.sun.electric.tool.erc.ERCWellCheck;
@@ -184,7 +185,7 @@ public class ToolMenu
 
 		//------------------- DRC
 
-			// mnemonic keys available:  B  EFG IJK MNOPQR  UVWXYZ
+			// mnemonic keys available:  B  EFG IJK MNOPQ   UVWXYZ
             new EMenu("_DRC",
 		        new EMenuItem("Check _Hierarchically", KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0))
                 { public void run() {
@@ -197,7 +198,7 @@ public class ToolMenu
                     }
                     else
                     {
-                        DRC.checkDRCHierarchically(dp, cell, null, null, GeometryHandler.GHMode.ALGO_SWEEP, false);
+                        DRC.checkDRCHierarchically(dp, cell, null, null, dp.getMergeMode(), false);
                     }
                 }},
 		        new EMenuItem("Check _Selection Hierarchically") { public void run() {
@@ -205,7 +206,16 @@ public class ToolMenu
                     if (wnd == null) return;
                     DRC.DRCPreferences dp = new DRC.DRCPreferences(false);
                     DRC.checkDRCHierarchically(dp, wnd.getCell(), wnd.getHighlightedEObjs(true, true),
-                            wnd.getHighlightedArea(), GeometryHandler.GHMode.ALGO_SWEEP, false); }},
+                            wnd.getHighlightedArea(), dp.getMergeMode(), false); }},
+                new EMenuItem("Recheck Changed _Regions") { public void run() {
+                    Cell cell = Job.getUserInterface().needCurrentCell();
+                    if (cell == null) return;
+                    if (!cell.isLayout())
+                    {
+                        System.out.println("Incremental check of changed regions is only available for layout");
+                        return;
+                    }
+                    DeltaDRC.checkDRCIncrementally(new DRC.DRCPreferences(false), cell); }},
                 new EMenuItem("Add _Skip Annotation to Cell") { public void run() {
                    DRC.makeDRCAnnotation(); }},
                 new EMenuItem("Check Area _Coverage") { public void run() {
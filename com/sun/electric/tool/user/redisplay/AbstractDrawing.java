@@ -94,6 +94,7 @@ public abstract class AbstractDrawing {
         PixelDrawing.clearSubCellCache();
         if (layerAlso) {
             LayerDrawing.clearSubCellCache();
+            VectorCache.theCache.clearDensityMaps();
         }
     }
 
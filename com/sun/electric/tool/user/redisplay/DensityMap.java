@@ -0,0 +1,427 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: DensityMap.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.user.redisplay;
+
+import com.sun.electric.technology.Layer;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coverage pyramid of a cached cell in one orientation.
+ * The bounds of the cell are divided into square tiles. The finest level has at most
+ * MAX_RESOLUTION tiles along the longer side of the cell, each next level halves the resolution.
+ * Each tile of each layer keeps a coverage value from 0 (empty) to 255 (fully covered).
+ * A tile touched by any shape has nonzero coverage.
+ * The map includes the contents of expanded subcells and the outlines of unexpanded ones.
+ * The renderer draws the map instead of the geometry when a cell instance is tiny on the screen.
+ */
+class DensityMap {
+    /** Maximal number of tiles along the longer side of a cell. */
+    static final int MAX_RESOLUTION = 32;
+    /** Map of cells which can't be approximated. */
+    static final DensityMap UNAVAILABLE = new DensityMap(0, 0, 1, 1, 1, new Layer[0], new byte[0][][], null);
+
+    /** Coverage of any shape which touches a tile. */
+    private static final float MIN_COVERAGE = 1f / 255;
+    /** Number of segments to approximate a circle. */
+    private static final int CIRCLE_SEGMENTS = 16;
+
+    /** low corner of the tiles in database grid units */
+    final int lX, lY;
+    /** size of the tiles of the finest level in database grid units */
+    private final double tileSize;
+    /** number of tiles of the finest level */
+    private final int nx, ny;
+    /** layers of the map */
+    private final Layer[] layers;
+    /** coverage by layer, level and tile */
+    private final byte[][][] coverage;
+    /** coverage of instance outlines by level and tile, or null */
+    private final byte[][] instanceCoverage;
+
+    private DensityMap(int lX, int lY, double tileSize, int nx, int ny, Layer[] layers, byte[][][] coverage,
+            byte[][] instanceCoverage) {
+        this.lX = lX;
+        this.lY = lY;
+        this.tileSize = tileSize;
+        this.nx = nx;
+        this.ny = ny;
+        this.layers = layers;
+        this.coverage = coverage;
+        this.instanceCoverage = instanceCoverage;
+    }
+
+    /**
+     * Method to choose the coarsest level whose tiles are not larger than a pixel.
+     * @param pixelsPerGrid the number of pixels in a database grid unit.
+     * @return the level.
+     */
+    int getLevel(double pixelsPerGrid) {
+        int numLevels = coverage.length > 0 ? coverage[0].length : instanceCoverage != null ? instanceCoverage.length : 1;
+        int level = 0;
+        while (level + 1 < numLevels && getTileSize(level + 1) * pixelsPerGrid <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Method to return the size of the tiles of a level.
+     * @param level the level.
+     * @return the size of the tiles in database grid units.
+     */
+    double getTileSize(int level) {
+        return tileSize * (1 << level);
+    }
+
+    /**
+     * Method to return the number of tiles of a level along the X axis.
+     * @param level the level.
+     * @return the number of columns of tiles.
+     */
+    int getWidth(int level) {
+        return levelSize(nx, level);
+    }
+
+    /**
+     * Method to return the number of tiles of a level along the Y axis.
+     * @param level the level.
+     * @return the number of rows of tiles.
+     */
+    int getHeight(int level) {
+        return levelSize(ny, level);
+    }
+
+    int getNumLayers() {
+        return layers.length;
+    }
+
+    /**
+     * Method to return a layer of the map.
+     * @param layerIndex the index of the layer.
+     * @return the layer, or null for shapes without a layer.
+     */
+    Layer getLayer(int layerIndex) {
+        return layers[layerIndex];
+    }
+
+    /**
+     * Method to return the coverage of a layer.
+     * Tiles are stored by rows, starting from the low Y.
+     * @param layerIndex the index of the layer.
+     * @param level the level.
+     * @return the coverage of each tile.
+     */
+    byte[] getCoverage(int layerIndex, int level) {
+        return coverage[layerIndex][level];
+    }
+
+    /**
+     * Method to return the coverage of the outlines of unexpanded instances.
+     * @param level the level.
+     * @return the coverage of each tile, or null if there are no unexpanded instances.
+     */
+    byte[] getInstanceCoverage(int level) {
+        return instanceCoverage != null ? instanceCoverage[level] : null;
+    }
+
+    private static int levelSize(int size, int level) {
+        return ((size - 1) >> level) + 1;
+    }
+
+    /**
+     * Class which accumulates coverage of shapes and subcells.
+     */
+    static class Builder {
+        private final int lX, lY;
+        private final double tileSize;
+        private final int nx, ny;
+        private final Map<Layer, float[]> layerCoverage = new HashMap<Layer, float[]>();
+        private final List<Layer> layers = new ArrayList<Layer>();
+        private float[] instanceCoverage;
+
+        /**
+         * Creates a Builder for a cell with given bounds.
+         * @param lX low X of the cell in database grid units.
+         * @param lY low Y of the cell in database grid units.
+         * @param hX high X of the cell in database grid units.
+         * @param hY high Y of the cell in database grid units.
+         */
+        Builder(int lX, int lY, int hX, int hY) {
+            this.lX = lX;
+            this.lY = lY;
+            double size = Math.max(hX - lX, hY - lY);
+            tileSize = Math.max(size / MAX_RESOLUTION, 1);
+            nx = Math.max(1, (int) Math.ceil((hX - lX) / tileSize));
+            ny = Math.max(1, (int) Math.ceil((hY - lY) / tileSize));
+        }
+
+        private float[] getCoverage(Layer layer) {
+            float[] c = layerCoverage.get(layer);
+            if (c == null) {
+                c = new float[nx * ny];
+                layerCoverage.put(layer, c);
+                layers.add(layer);
+            }
+            return c;
+        }
+
+        /**
+         * Method to add a cached shape.
+         * Text is ignored.
+         * @param vb the shape.
+         */
+        void addShape(VectorCache.VectorBase vb) {
+            if (vb instanceof VectorCache.VectorText) {
+                return;
+            }
+            float[] c = getCoverage(vb.layer);
+            if (vb instanceof VectorCache.VectorManhattan) {
+                int[] coords = ((VectorCache.VectorManhattan) vb).coords;
+                for (int i = 0; i < coords.length; i += 4) {
+                    addBox(c, coords[i], coords[i + 1], coords[i + 2], coords[i + 3], 1);
+                }
+            } else if (vb instanceof VectorCache.VectorPolygon) {
+                Point[] points = ((VectorCache.VectorPolygon) vb).points;
+                if (points.length == 0) {
+                    return;
+                }
+                double pLX = points[0].x, pHX = pLX, pLY = points[0].y, pHY = pLY;
+                double area = 0;
+                for (int i = 0; i < points.length; i++) {
+                    Point p = points[i];
+                    Point q = points[(i + 1) % points.length];
+                    area += (double) p.x * q.y - (double) q.x * p.y;
+                    pLX = Math.min(pLX, p.x);
+                    pHX = Math.max(pHX, p.x);
+                    pLY = Math.min(pLY, p.y);
+                    pHY = Math.max(pHY, p.y);
+                }
+                double boxArea = (pHX - pLX) * (pHY - pLY);
+                float weight = boxArea > 0 ? (float) Math.min(1, Math.abs(area) / 2 / boxArea) : 1;
+                addBox(c, pLX, pLY, pHX, pHY, weight);
+            } else if (vb instanceof VectorCache.VectorLine) {
+                VectorCache.VectorLine vl = (VectorCache.VectorLine) vb;
+                addSegment(c, vl.fX, vl.fY, vl.tX, vl.tY);
+            } else if (vb instanceof VectorCache.VectorCross) {
+                VectorCache.VectorCross vcr = (VectorCache.VectorCross) vb;
+                addBox(c, vcr.x, vcr.y, vcr.x, vcr.y, 1);
+            } else if (vb instanceof VectorCache.VectorCircle) {
+                VectorCache.VectorCircle vci = (VectorCache.VectorCircle) vb;
+                double r = Math.hypot(vci.eX - vci.cX, vci.eY - vci.cY);
+                if (vci.nature == 2) {
+                    addBox(c, vci.cX - r, vci.cY - r, vci.cX + r, vci.cY + r, (float) (Math.PI / 4));
+                } else {
+                    addArc(c, vci.cX, vci.cY, r, 0, 2 * Math.PI);
+                }
+            } else if (vb instanceof VectorCache.VectorCircleArc) {
+                VectorCache.VectorCircleArc vca = (VectorCache.VectorCircleArc) vb;
+                double r = Math.hypot(vca.eX1 - vca.cX, vca.eY1 - vca.cY);
+                double a1 = Math.atan2(vca.eY1 - vca.cY, vca.eX1 - vca.cX);
+                double a2 = Math.atan2(vca.eY2 - vca.cY, vca.eX2 - vca.cX);
+                if (a2 <= a1) {
+                    a2 += 2 * Math.PI;
+                }
+                addArc(c, vca.cX, vca.cY, r, a1, a2);
+            }
+        }
+
+        /**
+         * Method to add the outline of an unexpanded instance.
+         * @param outlinePoints the corners of the instance relative to its offset.
+         * @param offX the X offset of the instance.
+         * @param offY the Y offset of the instance.
+         */
+        void addOutline(int[] outlinePoints, int offX, int offY) {
+            if (instanceCoverage == null) {
+                instanceCoverage = new float[nx * ny];
+            }
+            for (int i = 0; i < 4; i++) {
+                int j = (i + 1) % 4;
+                addSegment(instanceCoverage, outlinePoints[i * 2] + offX, outlinePoints[i * 2 + 1] + offY,
+                        outlinePoints[j * 2] + offX, outlinePoints[j * 2 + 1] + offY);
+            }
+        }
+
+        /**
+         * Method to add the map of an expanded instance.
+         * The tiles of the subcell are taken from its coarsest level which is not coarser than this map.
+         * @param subMap the map of the subcell in the orientation of the instance.
+         * @param offX the X offset of the instance.
+         * @param offY the Y offset of the instance.
+         */
+        void addMap(DensityMap subMap, int offX, int offY) {
+            int level = 0;
+            while (level + 1 < levelCount(subMap) && subMap.getTileSize(level + 1) <= tileSize) {
+                level++;
+            }
+            double subTileSize = subMap.getTileSize(level);
+            int subNX = subMap.getWidth(level);
+            int subNY = subMap.getHeight(level);
+            double x0 = subMap.lX + offX;
+            double y0 = subMap.lY + offY;
+            for (int k = -1; k < subMap.getNumLayers(); k++) {
+                byte[] subCoverage = k < 0 ? subMap.getInstanceCoverage(level) : subMap.getCoverage(k, level);
+                if (subCoverage == null) {
+                    continue;
+                }
+                float[] c;
+                if (k >= 0) {
+                    c = getCoverage(subMap.getLayer(k));
+                } else {
+                    if (instanceCoverage == null) {
+                        instanceCoverage = new float[nx * ny];
+                    }
+                    c = instanceCoverage;
+                }
+                for (int j = 0; j < subNY; j++) {
+                    double y = y0 + j * subTileSize;
+                    for (int i = 0; i < subNX; i++) {
+                        int v = subCoverage[j * subNX + i] & 0xFF;
+                        if (v == 0) {
+                            continue;
+                        }
+                        double x = x0 + i * subTileSize;
+                        addBox(c, x, y, x + subTileSize, y + subTileSize, v / 255f);
+                    }
+                }
+            }
+        }
+
+        private static int levelCount(DensityMap map) {
+            if (map.coverage.length > 0) {
+                return map.coverage[0].length;
+            }
+            return map.instanceCoverage != null ? map.instanceCoverage.length : 1;
+        }
+
+        private void addBox(float[] c, double bLX, double bLY, double bHX, double bHY, float weight) {
+            double fLX = (bLX - lX) / tileSize;
+            double fHX = (bHX - lX) / tileSize;
+            double fLY = (bLY - lY) / tileSize;
+            double fHY = (bHY - lY) / tileSize;
+            if (fHX < 0 || fLX > nx || fHY < 0 || fLY > ny) {
+                return;
+            }
+            int iLX = Math.max(0, Math.min(nx - 1, (int) Math.floor(fLX)));
+            int iHX = Math.max(0, Math.min(nx - 1, (int) Math.floor(fHX)));
+            int iLY = Math.max(0, Math.min(ny - 1, (int) Math.floor(fLY)));
+            int iHY = Math.max(0, Math.min(ny - 1, (int) Math.floor(fHY)));
+            for (int j = iLY; j <= iHY; j++) {
+                double dy = Math.min(fHY, j + 1) - Math.max(fLY, j);
+                for (int i = iLX; i <= iHX; i++) {
+                    double dx = Math.min(fHX, i + 1) - Math.max(fLX, i);
+                    c[j * nx + i] += Math.max((float) (dx * dy) * weight, MIN_COVERAGE);
+                }
+            }
+        }
+
+        private void addSegment(float[] c, double fX, double fY, double tX, double tY) {
+            double len = Math.hypot(tX - fX, tY - fY);
+            int steps = (int) Math.ceil(len * 2 / tileSize);
+            for (int s = 0; s <= steps; s++) {
+                double t = steps > 0 ? (double) s / steps : 0;
+                double x = fX + (tX - fX) * t;
+                double y = fY + (tY - fY) * t;
+                addBox(c, x, y, x, y, 1);
+            }
+        }
+
+        private void addArc(float[] c, double cX, double cY, double r, double a1, double a2) {
+            int segments = Math.max(1, (int) Math.ceil(CIRCLE_SEGMENTS * (a2 - a1) / (2 * Math.PI)));
+            double prevX = cX + r * Math.cos(a1);
+            double prevY = cY + r * Math.sin(a1);
+            for (int s = 1; s <= segments; s++) {
+                double a = a1 + (a2 - a1) * s / segments;
+                double x = cX + r * Math.cos(a);
+                double y = cY + r * Math.sin(a);
+                addSegment(c, prevX, prevY, x, y);
+                prevX = x;
+                prevY = y;
+            }
+        }
+
+        /**
+         * Method to make the DensityMap with all levels.
+         * @return the DensityMap.
+         */
+        DensityMap build() {
+            int numLevels = 1;
+            while (levelSize(nx, numLevels - 1) > 1 || levelSize(ny, numLevels - 1) > 1) {
+                numLevels++;
+            }
+            Layer[] layerArray = layers.toArray(new Layer[layers.size()]);
+            byte[][][] coverage = new byte[layerArray.length][][];
+            for (int k = 0; k < layerArray.length; k++) {
+                coverage[k] = makeLevels(layerCoverage.get(layerArray[k]), numLevels);
+            }
+            byte[][] instCoverage = instanceCoverage != null ? makeLevels(instanceCoverage, numLevels) : null;
+            return new DensityMap(lX, lY, tileSize, nx, ny, layerArray, coverage, instCoverage);
+        }
+
+        private byte[][] makeLevels(float[] c, int numLevels) {
+            byte[][] levels = new byte[numLevels][];
+            byte[] finest = new byte[c.length];
+            for (int i = 0; i < c.length; i++) {
+                if (c[i] > 0) {
+                    finest[i] = (byte) Math.min(255, (int) Math.ceil(c[i] * 255));
+                }
+            }
+            levels[0] = finest;
+            for (int level = 1; level < numLevels; level++) {
+                byte[] prev = levels[level - 1];
+                int prevNX = levelSize(nx, level - 1);
+                int prevNY = levelSize(ny, level - 1);
+                int w = levelSize(nx, level);
+                int h = levelSize(ny, level);
+                byte[] cur = new byte[w * h];
+                for (int j = 0; j < h; j++) {
+                    for (int i = 0; i < w; i++) {
+                        int sum = 0;
+                        for (int dj = 0; dj < 2; dj++) {
+                            int pj = j * 2 + dj;
+                            if (pj >= prevNY) {
+                                continue;
+                            }
+                            for (int di = 0; di < 2; di++) {
+                                int pi = i * 2 + di;
+                                if (pi < prevNX) {
+                                    sum += prev[pj * prevNX + pi] & 0xFF;
+                                }
+                            }
+                        }
+                        // round up so that any covered tile stays covered
+                        cur[j * w + i] = (byte) ((sum + 3) / 4);
+                    }
+                }
+                levels[level] = cur;
+            }
+            return levels;
+        }
+    }
+}
@@ -45,6 +45,8 @@ import com.sun.electric.technology.PrimitivePort;
 import com.sun.electric.technology.Technology;
 import com.sun.electric.technology.technologies.Artwork;
 import com.sun.electric.technology.technologies.Generic;
+import com.sun.electric.tool.JobException;
+import com.sun.electric.tool.TaskGroup;
 import com.sun.electric.tool.user.GraphicsPreferences;
 import com.sun.electric.tool.user.User;
 import com.sun.electric.tool.user.UserInterfaceMain;
@@ -193,6 +195,10 @@ class LayerDrawing {
     public static final int SINGLETONSTOADD = 5;
     /** Text size is limited by this. */
     public static final int MAXIMUMTEXTSIZE = 200;
+    /** Minimal number of rows in a band which is rendered by one task. */
+    private static final int MIN_BAND_HEIGHT = 64;
+    /** Shapes of a subcell may extend beyond its bounds by this number of pixels (crosses, thick lines). */
+    private static final int BAND_MARGIN = 8;
 
     private static class PolySeg {
 
@@ -319,6 +325,20 @@ class LayerDrawing {
     private long lastRefreshTime;
     /** the EditWindow being drawn */
     private EditWindow wnd;
+    /** the Drawing being rendered, which may request to abort rendering */
+    private Drawing drawing;
+    /** the offscreen which owns the rasters when this is a part of a parallel rendering */
+    private LayerDrawing master;
+    /** the band of rows which this part of a parallel rendering draws */
+    private int bandLY, bandHY;
+    /** rasters of this part of a parallel rendering which limit drawing to the band */
+    private BandRaster bandRaster, bandInstanceRaster;
+    /** true to draw shapes into rasters */
+    private boolean renderRasters = true;
+    /** true to collect text */
+    private boolean renderText = true;
+    /** true if a parameterized cell was visited */
+    private boolean parameterizedCells;
     /** the size of the top-level EditWindow */
     private static Dimension topSz;
     /** draw layers patterned (depends on scale). */
@@ -388,11 +408,14 @@ class LayerDrawing {
         private VolatileImage vImg;
         private BufferedImage smallImg;
         private int[] smallOpaqueData;
-        /** alpha blender of layer maps */
-        private final AlphaBlender alphaBlender = new AlphaBlender();
+        /** the composed image of the window */
+        private BufferedImage compositeImg;
+        private int[] compositeData;
         // The following fields are produced by "render" method in Job thread.
         private volatile boolean needComposite;
         private volatile DrawingData drawingData;
+        /** true to stop rendering */
+        private volatile boolean stopRendering;
         /** whether any layers are highlighted/dimmed */
         boolean highlightingLayers;
         private final double patternedScaleLimit = User.getPatternedScaleLimit();
@@ -562,24 +585,46 @@ class LayerDrawing {
                 colors.add(new AbstractDrawing.LayerColor(gp.getColor(User.ColorPrefType.GRID)));
                 bits.add(dd.gridRaster.layerBitMap);
             }
-            alphaBlender.init(gp.getColor(User.ColorPrefType.BACKGROUND), colors, bits);
 
-            int width = dd.width;
-            int height = dd.height;
-            int numIntsPerRow = dd.numIntsPerRow;
-            int baseByteIndex = 0;
-            int y = 0;
-            while (y < height) {
-                int h = Math.min(SMALL_IMG_HEIGHT, height - y);
-                int baseIndex = 0;
-                for (int k = 0; k < h; k++) {
-                    alphaBlender.composeLine(baseByteIndex, 0, width - 1, smallOpaqueData, baseIndex);
-                    baseByteIndex += numIntsPerRow;
-                    baseIndex += width;
-                }
-                g.drawImage(smallImg, 0, y, null);
-                y += h;
+            final int width = dd.width;
+            final int height = dd.height;
+            if (compositeImg == null || compositeImg.getWidth() != width || compositeImg.getHeight() != height) {
+                compositeImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                DataBufferInt compositeDbi = (DataBufferInt) compositeImg.getRaster().getDataBuffer();
+                compositeData = compositeDbi.getData();
+            }
+
+            // compose bands of rows in parallel, each band with its own alpha blender
+            final Color background = gp.getColor(User.ColorPrefType.BACKGROUND);
+            final ArrayList<AbstractDrawing.LayerColor> allColors = colors;
+            final ArrayList<int[]> allBits = bits;
+            final int numIntsPerRow = dd.numIntsPerRow;
+            final int[] opaqueData = compositeData;
+            TaskGroup group = new TaskGroup("Compose layers", true, false);
+            int numBands = Math.max(1, Math.min(group.getNumThreads(), height / MIN_BAND_HEIGHT));
+            for (int i = 0; i < numBands; i++) {
+                final int lY = height * i / numBands;
+                final int hY = height * (i + 1) / numBands;
+                group.submit("Rows " + lY + ".." + (hY - 1), new Runnable() {
+                    public void run() {
+                        AlphaBlender alphaBlender = new AlphaBlender();
+                        alphaBlender.init(background, allColors, allBits);
+                        int baseByteIndex = lY * numIntsPerRow;
+                        int baseIndex = lY * width;
+                        for (int y = lY; y < hY; y++) {
+                            alphaBlender.composeLine(baseByteIndex, 0, width - 1, opaqueData, baseIndex);
+                            baseByteIndex += numIntsPerRow;
+                            baseIndex += width;
+                        }
+                    }
+                });
             }
+            try {
+                group.await();
+            } catch (JobException e) {
+                System.out.println("Composing layers interrupted: " + e.getMessage());
+            }
+            g.drawImage(compositeImg, 0, 0, null);
         }
 
         /**
@@ -958,6 +1003,7 @@ class LayerDrawing {
         @Override
         public void render(Dimension sz, WindowFrame.DisplayAttributes da, GraphicsPreferences gp,
                 DrawingPreferences dp, boolean fullInstantiate, Rectangle2D bounds) {
+            stopRendering = false;
             LayerDrawing offscreen = null;
             if (drawingData != null && drawingData.offscreen.getSize().equals(sz)) {
                 offscreen = drawingData.offscreen;
@@ -973,9 +1019,21 @@ class LayerDrawing {
 //            updateScaleAndOffset();
 
             offscreen.drawImage(this, fullInstantiate, bounds, patternedScaleLimit, alphaBlendingOvercolorLimit);
+            if (stopRendering) {
+                // the window is rendered again soon
+                return;
+            }
             needComposite = true;
             drawingData = new DrawingData(offscreen);
         }
+
+        /**
+         * Method to request that the current rendering be aborted because it must be restarted.
+         */
+        @Override
+        public void abortRendering() {
+            stopRendering = true;
+        }
         private static boolean joglChecked = false;
         private static Class<?> layerDrawerClass;
         private static Method joglShowLayerMethod;
@@ -1348,6 +1406,53 @@ class LayerDrawing {
         numIntsPerRow = (sz.width + Integer.SIZE - 1) / Integer.SIZE;
     }
 
+    /**
+     * Constructor creates a part of a parallel rendering of an offscreen.
+     * The part shares the rasters and the drawing parameters of the offscreen.
+     * @param master the offscreen being rendered.
+     * @param bandLY the first row which this part draws.
+     * @param bandHY the last row which this part draws.
+     * @param renderRasters true to draw shapes into rasters, false to collect text only.
+     */
+    private LayerDrawing(LayerDrawing master, int bandLY, int bandHY, boolean renderRasters) {
+        this.master = master;
+        this.bandLY = bandLY;
+        this.bandHY = bandHY;
+        this.renderRasters = renderRasters;
+        renderText = !renderRasters;
+        bandRaster = new BandRaster(bandLY, bandHY);
+        bandInstanceRaster = new BandRaster(bandLY, bandHY);
+
+        sz = master.sz;
+        total = master.total;
+        numIntsPerRow = master.numIntsPerRow;
+        scale = master.scale;
+        scale_ = master.scale_;
+        originX = master.originX;
+        originY = master.originY;
+        factorX = master.factorX;
+        factorY = master.factorY;
+        globalTextScale = master.globalTextScale;
+        defaultFont = master.defaultFont;
+        varContext = master.varContext;
+        clipLX = master.clipLX;
+        clipHX = master.clipHX;
+        clipLY = master.clipLY;
+        clipHY = master.clipHY;
+        inPlaceSubcellPath = master.inPlaceSubcellPath;
+        inPlaceCurrent = master.inPlaceCurrent;
+        canDrawText = master.canDrawText;
+        canDrawRelativeText = master.canDrawRelativeText;
+        patternedDisplay = master.patternedDisplay;
+        renderedWindow = master.renderedWindow;
+        gp = master.gp;
+        dp = master.dp;
+        textColor = master.textColor;
+        portColorsCache = new HashMap<PrimitivePort, Color>();
+        wnd = master.wnd;
+        drawing = master.drawing;
+    }
+
     void initOrigin(double scale, Point2D offset) {
         this.scale = scale;
         scale_ = (float) (scale / DBMath.GRID);
@@ -1453,6 +1558,7 @@ class LayerDrawing {
         clearImage(renderBounds);
         periodicRefresh = true;
         this.wnd = wnd;
+        this.drawing = drawing;
         objectCount = 0;
         lastRefreshTime = System.currentTimeMillis();
 
@@ -1482,7 +1588,9 @@ class LayerDrawing {
         renderTextList.clear();
         greekTextList.clear();
         crossTextList.clear();
-        drawCell(cell, drawLimitBounds, fullInstantiate, Orientation.IDENT, 0, 0, true, wnd.getVarContext());
+        if (!drawCellInParallel(cell, drawLimitBounds, fullInstantiate, wnd.getVarContext())) {
+            drawCell(cell, drawLimitBounds, fullInstantiate, Orientation.IDENT, 0, 0, true, wnd.getVarContext());
+        }
         // if a grid is requested, overlay it
         if (cell != null && wnd.isGrid()) {
             drawGrid(wnd, drawing.da);
@@ -1755,6 +1863,72 @@ class LayerDrawing {
         return bounds;
     }
 
+    /**
+     * Method to draw the top cell by several tasks of the MultiTaskPool.
+     * A serial pass first walks the hierarchy like drawCell, but draws nothing.
+     * It fills the VectorCache, decides which expanded cells are cached and copies cached cells into the rasters.
+     * Then each task draws the shapes which fall into its band of rows, and one more task collects
+     * the text in the same order as drawCell does.
+     * Drawing ORs bits into rasters, so the image doesn't depend on the order in which the tasks run.
+     * @return false if the cell was not drawn because it can't be drawn in parallel.
+     */
+    private boolean drawCellInParallel(final Cell cell, final Rectangle2D drawLimitBounds, final boolean fullInstantiate,
+            final VarContext context) {
+        TaskGroup group = new TaskGroup("Render " + cell, true);
+        int height = clipHY - clipLY + 1;
+        int numBands = Math.min(group.getNumThreads(), height / MIN_BAND_HEIGHT);
+        if (numBands < 2) {
+            return false;
+        }
+
+        renderRasters = renderText = false;
+        parameterizedCells = false;
+        drawCell(cell, drawLimitBounds, fullInstantiate, Orientation.IDENT, 0, 0, true, context);
+        renderRasters = renderText = true;
+        if (isAborted()) {
+            return true;
+        }
+        // VectorCache rebuilds parameterized cells on each visit, so they can't be shared by tasks
+        if (parameterizedCells) {
+            return false;
+        }
+
+        final LayerDrawing textPart = new LayerDrawing(this, 0, sz.height - 1, false);
+        group.submit("Text", new Runnable() {
+            public void run() {
+                textPart.drawCell(cell, drawLimitBounds, fullInstantiate, Orientation.IDENT, 0, 0, true, context);
+            }
+        });
+        for (int i = 0; i < numBands; i++) {
+            // lines are not clipped by the clip rectangle, so outer bands extend to the window edges
+            int lY = i == 0 ? 0 : clipLY + height * i / numBands;
+            int hY = i == numBands - 1 ? sz.height - 1 : clipLY + height * (i + 1) / numBands - 1;
+            final LayerDrawing part = new LayerDrawing(this, lY, hY, true);
+            group.submit("Rows " + lY + ".." + hY, new Runnable() {
+                public void run() {
+                    part.drawCell(cell, drawLimitBounds, fullInstantiate, Orientation.IDENT, 0, 0, true, context);
+                }
+            });
+        }
+        try {
+            group.await();
+        } catch (JobException e) {
+            System.out.println("Rendering interrupted: " + e.getMessage());
+        }
+        renderTextList.addAll(textPart.renderTextList);
+        greekTextList.addAll(textPart.greekTextList);
+        crossTextList.addAll(textPart.crossTextList);
+        return true;
+    }
+
+    /**
+     * Method to tell whether the Drawing requested to abort this rendering.
+     * @return true to stop rendering.
+     */
+    private boolean isAborted() {
+        return drawing != null && drawing.stopRendering;
+    }
+
     private void periodicRefresh() {
         // handle refreshing
         if (periodicRefresh) {
@@ -1777,9 +1951,15 @@ class LayerDrawing {
         renderedCells++;
 
         VectorCache.VectorCell vc = VectorCache.theCache.drawCell(cell.getId(), orient, context, scale);
+        if (vc.vcg.isParameterized) {
+            parameterizedCells = true;
+        }
 
         // draw all subcells
         for (VectorCache.VectorSubCell vsc : vc.subCells) {
+            if (isAborted()) {
+                return;
+            }
             totalCells++;
 
             // get instance location
@@ -1800,6 +1980,9 @@ class LayerDrawing {
             if (hY < clipLY || lY > clipHY) {
                 continue;
             }
+            if (master != null && (hY < bandLY - BAND_MARGIN || lY > bandHY + BAND_MARGIN)) {
+                continue;
+            }
 
             // see if drawing "down in place"
             boolean onPathDown = inPlaceSubcellPath != null && inPlaceSubcellPath.get(vsc.subCellId.cellIndex);
@@ -1821,7 +2004,10 @@ class LayerDrawing {
                 Orientation subOrient = orient.concatenate(vsc.n.orient);
                 int soX_ = vsc.offsetX + oX;
                 int soY_ = vsc.offsetY + oY;
-                if (!expandedCellCached(subCell, subOrient, soX_, soY_, context, fullInstantiate)) {
+                if (!onPathDown && drawDensityMap(subCellId, subOrient, soX_, soY_, hX - lX, hY - lY, fullInstantiate)) {
+                    // tiny instance is approximated by its density map
+                    tinyCells++;
+                } else if (!expandedCellCached(subCell, subOrient, soX_, soY_, context, fullInstantiate)) {
                     // just draw it directly
                     cellsRendered++;
 //                    NodeInst ni = subCell.getNodeById(vsc.n.nodeId);
@@ -1829,38 +2015,40 @@ class LayerDrawing {
                 }
             } else {
                 // draw the black box of the instance
-                int[] op = subVC.outlinePoints;
-                int p1x = op[0] + soX;
-                int p1y = op[1] + soY;
-                int p2x = op[2] + soX;
-                int p2y = op[3] + soY;
-                int p3x = op[4] + soX;
-                int p3y = op[5] + soY;
-                int p4x = op[6] + soX;
-                int p4y = op[7] + soY;
-                gridToScreen(p1x, p1y, tempPt1);
-                gridToScreen(p2x, p2y, tempPt2);
-                ERaster instanceRaster = getInstanceRaster();
-                drawLine(tempPt1, tempPt2, 0, instanceRaster);
-                gridToScreen(p2x, p2y, tempPt1);
-                gridToScreen(p3x, p3y, tempPt2);
-                drawLine(tempPt1, tempPt2, 0, instanceRaster);
-                gridToScreen(p3x, p3y, tempPt1);
-                gridToScreen(p4x, p4y, tempPt2);
-                drawLine(tempPt1, tempPt2, 0, instanceRaster);
-                gridToScreen(p1x, p1y, tempPt1);
-                gridToScreen(p4x, p4y, tempPt2);
-                drawLine(tempPt1, tempPt2, 0, instanceRaster);
+                if (renderRasters) {
+                    int[] op = subVC.outlinePoints;
+                    int p1x = op[0] + soX;
+                    int p1y = op[1] + soY;
+                    int p2x = op[2] + soX;
+                    int p2y = op[3] + soY;
+                    int p3x = op[4] + soX;
+                    int p3y = op[5] + soY;
+                    int p4x = op[6] + soX;
+                    int p4y = op[7] + soY;
+                    gridToScreen(p1x, p1y, tempPt1);
+                    gridToScreen(p2x, p2y, tempPt2);
+                    ERaster instanceRaster = getInstanceRaster();
+                    drawLine(tempPt1, tempPt2, 0, instanceRaster);
+                    gridToScreen(p2x, p2y, tempPt1);
+                    gridToScreen(p3x, p3y, tempPt2);
+                    drawLine(tempPt1, tempPt2, 0, instanceRaster);
+                    gridToScreen(p3x, p3y, tempPt1);
+                    gridToScreen(p4x, p4y, tempPt2);
+                    drawLine(tempPt1, tempPt2, 0, instanceRaster);
+                    gridToScreen(p1x, p1y, tempPt1);
+                    gridToScreen(p4x, p4y, tempPt2);
+                    drawLine(tempPt1, tempPt2, 0, instanceRaster);
+                }
 
                 // draw the instance name
-                if (canDrawText && gp.isTextVisibilityOn(TextDescriptor.TextType.INSTANCE)) {
+                if (renderText && canDrawText && gp.isTextVisibilityOn(TextDescriptor.TextType.INSTANCE)) {
                     tempRect.setBounds(lX, lY, hX - lX, hY - lY);
                     TextDescriptor descript = vsc.n.protoDescriptor;
                     NodeProto np = VectorCache.theCache.database.getCell(vsc.subCellId);
                     drawText(tempRect, Poly.Type.TEXTBOX, descript, np.describe(false), textColor, null);
                 }
             }
-            if (canDrawText && (topLevel || onPathDown || inPlaceCurrent == cell)) {
+            if (renderText && canDrawText && (topLevel || onPathDown || inPlaceCurrent == cell)) {
                 drawPortList(vsc, subVC, soX, soY, expanded, onPathDown);
             }
 //                drawPortList(vsc, subVC, soX, soY, isExpanded);
@@ -1875,6 +2063,68 @@ class LayerDrawing {
         }
     }
 
+    /**
+     * Method to draw a tiny expanded cell instance from the density map of its cell.
+     * Only instances smaller than the finest resolution of a map are drawn this way, when text is not drawn.
+     * Parts of parallel rendering use only maps which were built by the serial pass.
+     * @param subCellId the cell of the instance.
+     * @param orient the orientation of the instance.
+     * @param oX the X offset of the instance (in database grid coordinates).
+     * @param oY the Y offset of the instance (in database grid coordinates).
+     * @param width the width of the instance on the screen.
+     * @param height the height of the instance on the screen.
+     * @param fullInstantiate true to draw all the way to the bottom of the hierarchy.
+     * @return true if the instance was drawn from the density map.
+     */
+    private boolean drawDensityMap(CellId subCellId, Orientation orient, int oX, int oY, int width, int height, boolean fullInstantiate) {
+        if (canDrawText || inPlaceSubcellPath != null
+                || width >= DensityMap.MAX_RESOLUTION || height >= DensityMap.MAX_RESOLUTION) {
+            return false;
+        }
+        DensityMap dm = VectorCache.theCache.getDensityMap(subCellId, orient, fullInstantiate, scale, master == null);
+        if (dm == null) {
+            return false;
+        }
+        if (!renderRasters) {
+            return true;
+        }
+        int level = dm.getLevel(scale_);
+        int nx = dm.getWidth(level);
+        int ny = dm.getHeight(level);
+        double tileSize = dm.getTileSize(level);
+        double x0 = dm.lX + oX + tileSize / 2;
+        double y0 = dm.lY + oY + tileSize / 2;
+        for (int k = -1; k < dm.getNumLayers(); k++) {
+            byte[] coverage = k < 0 ? dm.getInstanceCoverage(level) : dm.getCoverage(k, level);
+            if (coverage == null) {
+                continue;
+            }
+            ERaster raster = k < 0 ? getInstanceRaster() : getRaster(dm.getLayer(k), null, false);
+            if (raster == null) {
+                continue;
+            }
+            for (int j = 0; j < ny; j++) {
+                int y = (int) Math.round(y0 + j * tileSize);
+                int i = 0;
+                while (i < nx) {
+                    if (coverage[j * nx + i] == 0) {
+                        i++;
+                        continue;
+                    }
+                    // merge a run of covered tiles into one line
+                    int start = i;
+                    while (i < nx && coverage[j * nx + i] != 0) {
+                        i++;
+                    }
+                    gridToScreen((int) Math.round(x0 + start * tileSize), y, tempPt1);
+                    gridToScreen((int) Math.round(x0 + (i - 1) * tileSize), y, tempPt2);
+                    drawBox(tempPt1.x, tempPt2.x, tempPt1.y, tempPt1.y, raster);
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * @return true if the cell is properly handled and need no further processing.
      * False to render the contents recursively.
@@ -1892,6 +2142,11 @@ class LayerDrawing {
 
         ExpandedCellKey expansionKey = new ExpandedCellKey(subCell.getId(), orient);
         ExpandedCellInfo expandedCellCount = expandedCells.get(expansionKey);
+
+        // parts of a parallel rendering follow the serial pass, which already copied the cached cells
+        if (master != null) {
+            return expandedCellCount != null && expandedCellCount.offscreen != null;
+        }
         if (expandedCellCount != null && expandedCellCount.offscreen == null) {
             if (expandedCellCount.tooLarge) {
                 return false;
@@ -2222,7 +2477,7 @@ class LayerDrawing {
         assert !layer.isPseudoLayer();
         TransparentRaster raster = layerRasters.get(layer);
         if (raster == null) {
-            raster = new TransparentRaster(sz.height, numIntsPerRow);
+            raster = master != null ? master.getSharedRaster(layer) : new TransparentRaster(sz.height, numIntsPerRow);
             layerRasters.put(layer, raster);
         }
         if (patternedDisplay && renderedWindow) {
@@ -2242,16 +2497,50 @@ class LayerDrawing {
                 raster = currentPatternedTransparentRaster;
             }
         }
+        if (master != null) {
+            bandRaster.init(raster);
+            return bandRaster;
+        }
         return raster;
     }
 
     ERaster getInstanceRaster() {
         if (instanceRaster == null) {
-            instanceRaster = new TransparentRaster(sz.height, numIntsPerRow);
+            instanceRaster = master != null ? master.getSharedInstanceRaster() : new TransparentRaster(sz.height, numIntsPerRow);
+        }
+        if (master != null) {
+            bandInstanceRaster.init(instanceRaster);
+            return bandInstanceRaster;
         }
         return instanceRaster;
     }
 
+    /**
+     * Method to get a layer raster of this offscreen for a part of a parallel rendering.
+     */
+    private TransparentRaster getSharedRaster(Layer layer) {
+        synchronized (layerRasters) {
+            TransparentRaster raster = layerRasters.get(layer);
+            if (raster == null) {
+                raster = new TransparentRaster(sz.height, numIntsPerRow);
+                layerRasters.put(layer, raster);
+            }
+            return raster;
+        }
+    }
+
+    /**
+     * Method to get the instance raster of this offscreen for a part of a parallel rendering.
+     */
+    private TransparentRaster getSharedInstanceRaster() {
+        synchronized (layerRasters) {
+            if (instanceRaster == null) {
+                instanceRaster = new TransparentRaster(sz.height, numIntsPerRow);
+            }
+            return instanceRaster;
+        }
+    }
+
     ERaster getGridRaster() {
         if (gridRaster == null) {
             gridRaster = new TransparentRaster(sz.height, numIntsPerRow);
@@ -2338,6 +2627,88 @@ class LayerDrawing {
 //            }
 //        }
 //    }
+    /**
+     * ERaster which passes to another ERaster only the pixels in a band of rows.
+     * Parts of a parallel rendering draw through it, so that each row of a raster is written by one thread.
+     */
+    private static class BandRaster implements ERaster {
+
+        private final int bandLY, bandHY;
+        private ERaster raster;
+
+        BandRaster(int bandLY, int bandHY) {
+            this.bandLY = bandLY;
+            this.bandHY = bandHY;
+        }
+
+        void init(ERaster raster) {
+            this.raster = raster;
+        }
+
+        public void fillBox(int lX, int hX, int lY, int hY) {
+            // TransparentRaster fills rows lY..hY-1 of a box which fits into one int
+            boolean singleInt = (lX >> 5) == (hX >> 5);
+            int lastY = singleInt ? hY - 1 : hY;
+            int y1 = Math.max(lY, bandLY);
+            int y2 = Math.min(lastY, bandHY);
+            if (y1 <= y2) {
+                raster.fillBox(lX, hX, y1, singleInt ? y2 + 1 : y2);
+            }
+        }
+
+        public void fillHorLine(int y, int lX, int hX) {
+            if (y >= bandLY && y <= bandHY) {
+                raster.fillHorLine(y, lX, hX);
+            }
+        }
+
+        public void fillVerLine(int x, int lY, int hY) {
+            int y1 = Math.max(lY, bandLY);
+            int y2 = Math.min(hY, bandHY);
+            if (y1 <= y2) {
+                raster.fillVerLine(x, y1, y2);
+            }
+        }
+
+        public void fillPoint(int x, int y) {
+            if (y >= bandLY && y <= bandHY) {
+                raster.fillPoint(x, y);
+            }
+        }
+
+        public void drawHorLine(int y, int lX, int hX) {
+            if (y >= bandLY && y <= bandHY) {
+                raster.drawHorLine(y, lX, hX);
+            }
+        }
+
+        public void drawVerLine(int x, int lY, int hY) {
+            int y1 = Math.max(lY, bandLY);
+            int y2 = Math.min(hY, bandHY);
+            if (y1 <= y2) {
+                raster.drawVerLine(x, y1, y2);
+            }
+        }
+
+        public void drawPoint(int x, int y) {
+            if (y >= bandLY && y <= bandHY) {
+                raster.drawPoint(x, y);
+            }
+        }
+
+        public EGraphics.Outline getOutline() {
+            return raster.getOutline();
+        }
+
+        public void copyBits(TransparentRaster src, int minSrcX, int maxSrcX, int minSrcY, int maxSrcY, int dx, int dy) {
+            int y1 = Math.max(minSrcY, bandLY - dy);
+            int y2 = Math.min(maxSrcY, bandHY - dy);
+            if (y1 <= y2) {
+                raster.copyBits(src, minSrcX, maxSrcX, y1, y2, dx, dy);
+            }
+        }
+    }
+
     /**
      * ERaster for solid transparent layers.
      */
@@ -2804,7 +3175,7 @@ class LayerDrawing {
         }
     }
     // ************************************* RENDERING POLY SHAPES *************************************
-    private static Rectangle tempRect = new Rectangle();
+    private final Rectangle tempRect = new Rectangle();
 
     private void gridToScreen(int dbX, int dbY, Point result) {
         double scrX = (dbX - factorX) * scale_;
@@ -2821,14 +3192,22 @@ class LayerDrawing {
      */
     private void drawList(int oX, int oY, List<VectorCache.VectorBase> shapes) //		throws AbortRenderingException
     {
+        if (!renderRasters && !renderText) {
+            return;
+        }
         EditWindow0 textWnd = wnd != null ? wnd : dummyWnd;
         // render all shapes
         for (VectorCache.VectorBase vb : shapes) {
-//			if (stopRendering) throw new AbortRenderingException();
+            if (isAborted()) {
+                return;
+            }
             // handle refreshing
             periodicRefresh();
 
             if (vb instanceof VectorCache.VectorText) {
+                if (!renderText) {
+                    continue;
+                }
                 VectorCache.VectorText vt = (VectorCache.VectorText) vb;
                 TextDescriptor td = vt.descript;
                 if (td != null && !td.isAbsoluteSize()) {
@@ -2914,6 +3293,9 @@ class LayerDrawing {
                 drawText(tempRect, vt.style, vt.descript, drawString, color, baseNode);
                 continue;
             }
+            if (!renderRasters) {
+                continue;
+            }
 
             ERaster raster = getRaster(vb.layer, vb.graphicsOverride, false);
             if (raster == null) {
@@ -667,30 +667,33 @@ public class PixelDrawing
         clipHY = sz.height - 1;
 		clearImage(null);
 
-        Set<CellId> changedCellsCopy;
-        synchronized (changedCells) {
-            changedCellsCopy = new HashSet<CellId>(changedCells);
-            changedCells.clear();
-        }
-        forceRedraw(changedCellsCopy);
-        VectorCache.theCache.forceRedraw();
-		if (ep.getDisplayAlgorithm() == 0)
+		synchronized (VectorCache.theCache.renderLock)
 		{
-			// reset cached cell counts
-			numberToReconcile = SINGLETONSTOADD;
-			for(ExpandedCellInfo count : expandedCells.values())
-				count.instanceCount = 0;
+            Set<CellId> changedCellsCopy;
+            synchronized (changedCells) {
+                changedCellsCopy = new HashSet<CellId>(changedCells);
+                changedCells.clear();
+            }
+            forceRedraw(changedCellsCopy);
+            VectorCache.theCache.forceRedraw();
+			if (ep.getDisplayAlgorithm() == 0)
+			{
+				// reset cached cell counts
+				numberToReconcile = SINGLETONSTOADD;
+				for(ExpandedCellInfo count : expandedCells.values())
+					count.instanceCount = 0;
 
-			// determine which cells should be cached (must have at least 2 instances)
-			countCell(cell, null, false, Orientation.IDENT, DBMath.MATID);
+				// determine which cells should be cached (must have at least 2 instances)
+				countCell(cell, null, false, Orientation.IDENT, DBMath.MATID);
 
-			// now render it all
-            drawCell(cell, null, false, Orientation.IDENT, DBMath.MATID, cell);
-		} else
-		{
-            VectorDrawing vd = new VectorDrawing(ep.isUseCellGreekingImages());
-			vd.render(this, scale, offset, cell, false, null, null, null, varContext,
-                    ep.getGreekSizeLimit(), ep.getGreekCellSizeLimit());
+				// now render it all
+                drawCell(cell, null, false, Orientation.IDENT, DBMath.MATID, cell);
+			} else
+			{
+                VectorDrawing vd = new VectorDrawing(ep.isUseCellGreekingImages());
+				vd.render(this, scale, offset, cell, false, null, null, null, varContext,
+                        ep.getGreekSizeLimit(), ep.getGreekCellSizeLimit());
+			}
 		}
 
 		// merge transparent image into opaque one
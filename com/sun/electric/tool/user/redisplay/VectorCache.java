@@ -39,10 +39,13 @@ import com.sun.electric.database.geometry.Poly;
 import com.sun.electric.database.hierarchy.Cell;
 import com.sun.electric.database.hierarchy.EDatabase;
 import com.sun.electric.database.hierarchy.Export;
+import com.sun.electric.database.hierarchy.Library;
 import com.sun.electric.database.id.CellId;
 import com.sun.electric.database.id.CellUsage;
+import com.sun.electric.database.id.LibId;
 import com.sun.electric.database.id.PrimitivePortId;
 import com.sun.electric.database.prototype.NodeProto;
+import com.sun.electric.database.text.Setting;
 import com.sun.electric.database.text.TextUtils;
 import com.sun.electric.database.topology.ArcInst;
 import com.sun.electric.database.topology.Connection;
@@ -57,6 +60,8 @@ import com.sun.electric.technology.ArcProto;
 import com.sun.electric.technology.Layer;
 import com.sun.electric.technology.PrimitiveNode;
 import com.sun.electric.technology.PrimitivePort;
+import com.sun.electric.technology.TechFactory;
+import com.sun.electric.technology.TechPool;
 import com.sun.electric.technology.Technology;
 import com.sun.electric.technology.technologies.Generic;
 import com.sun.electric.technology.technologies.Schematics;
@@ -68,6 +73,9 @@ import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
@@ -90,12 +98,16 @@ public class VectorCache {
     public static final VectorCache theCache = new VectorCache(EDatabase.clientDatabase());
     /** database to work. */
     public final EDatabase database;
+    /** lock held while the cache is used for rendering or saved to sidecar files. */
+    public final Object renderLock = new Object();
     /** list of cell expansions. */
     private final ArrayList<VectorCellGroup> cachedCells = new ArrayList<VectorCellGroup>();
     /** list of polygons to include in cells */
     private final Map<CellId, List<VectorBase>> addPolyToCell = new HashMap<CellId, List<VectorBase>>();
     /** list of instances to include in cells */
     private final Map<CellId, List<VectorLine>> addInstToCell = new HashMap<CellId, List<VectorLine>>();
+    /** sidecar files of libraries, null for libraries without valid file */
+    private final Map<LibId, VectorCacheFile> cacheFiles = new HashMap<LibId, VectorCacheFile>();
     /** local shape builder */
     private final ShapeBuilder shapeBuilder = new ShapeBuilder();
     /** List of VectorManhattanBuilders */
@@ -108,6 +120,8 @@ public class VectorCache {
     private double curScale;
     /** True to clear fade images. */
     private boolean clearFadeImages;
+    /** True to clear density maps. */
+    private boolean clearDensityMaps;
     /** True to clear cache. */
     private boolean clearCache;
     /** zero rectangle */
@@ -158,7 +172,7 @@ public class VectorCache {
         int[] coords;
         boolean pureLayer;
 
-        private VectorManhattan(int[] coords, Layer layer, EGraphics graphicsOverride, boolean pureLayer) {
+        VectorManhattan(int[] coords, Layer layer, EGraphics graphicsOverride, boolean pureLayer) {
             super(layer, graphicsOverride);
             this.coords = coords;
             this.pureLayer = pureLayer;
@@ -226,6 +240,11 @@ public class VectorCache {
             }
         }
 
+        VectorPolygon(Point[] points, Layer layer, EGraphics graphicsOverride) {
+            super(layer, graphicsOverride);
+            this.points = points;
+        }
+
         @Override
         boolean isFilled() {
             return true;
@@ -276,6 +295,15 @@ public class VectorCache {
             this.nature = nature;
         }
 
+        VectorCircle(int cX, int cY, int eX, int eY, int nature, Layer layer, EGraphics graphicsOverride) {
+            super(layer, graphicsOverride);
+            this.cX = cX;
+            this.cY = cY;
+            this.eX = eX;
+            this.eY = eY;
+            this.nature = nature;
+        }
+
         @Override
         boolean isFilled() {
             // true for disc nature
@@ -302,6 +330,18 @@ public class VectorCache {
             this.eY2 = databaseToGrid(eY2);
             this.thick = thick;
         }
+
+        VectorCircleArc(int cX, int cY, int eX1, int eY1, int eX2, int eY2, boolean thick,
+                Layer layer, EGraphics graphicsOverride) {
+            super(layer, graphicsOverride);
+            this.cX = cX;
+            this.cY = cY;
+            this.eX1 = eX1;
+            this.eY1 = eY1;
+            this.eX2 = eX2;
+            this.eY2 = eY2;
+            this.thick = thick;
+        }
     }
 
     /**
@@ -357,6 +397,17 @@ public class VectorCache {
                 }
             }
         }
+
+        VectorText(Rectangle bounds, Poly.Type style, TextDescriptor descript, String str, float height, int textType,
+                Layer layer) {
+            super(layer, null);
+            this.bounds = bounds;
+            this.style = style;
+            this.descript = descript;
+            this.str = str;
+            this.height = height;
+            this.textType = textType;
+        }
     }
 
     /**
@@ -373,6 +424,13 @@ public class VectorCache {
             this.y = databaseToGrid(y);
             this.small = small;
         }
+
+        VectorCross(int x, int y, boolean small, Layer layer, EGraphics graphicsOverride) {
+            super(layer, graphicsOverride);
+            this.x = x;
+            this.y = y;
+            this.small = small;
+        }
     }
 
     /**
@@ -392,6 +450,13 @@ public class VectorCache {
             offsetX = databaseToGrid(offset.getX());
             offsetY = databaseToGrid(offset.getY());
         }
+
+        VectorSubCell(ImmutableNodeInst n, int offsetX, int offsetY) {
+            this.n = n;
+            subCellId = (CellId) n.protoId;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
     }
 
     /**
@@ -513,6 +578,12 @@ public class VectorCache {
             }
         }
 
+        void clearDensityMaps() {
+            for (VectorCell vc : orientations.values()) {
+                vc.densityMaps[0] = vc.densityMaps[1] = null;
+            }
+        }
+
         VectorCell getAnyCell() {
             for (VectorCell vc : orientations.values()) {
                 if (vc.valid) {
@@ -619,6 +690,8 @@ public class VectorCache {
         int fadeOffsetX, fadeOffsetY;
         int[] fadeImageColors;
         int fadeImageWid, fadeImageHei;
+        /** density maps without and with full instantiation */
+        DensityMap[] densityMaps = new DensityMap[2];
 
         VectorCell(VectorCellGroup vcg, Orientation orient) {
             this.vcg = vcg;
@@ -709,7 +782,33 @@ public class VectorCache {
             }
         }
 
+        /**
+         * Method to fill this VectorCell from the sidecar file of its Library.
+         * @param cacheFile the sidecar file.
+         * @param stamp the stamp of the current revision of the cell.
+         * @return true if this VectorCell was filled, false if it must be built by init.
+         */
+        private boolean initFromFile(VectorCacheFile cacheFile, long stamp) {
+            long startTime = DEBUG ? System.currentTimeMillis() : 0;
+            vcg.init();
+            updateBounds();
+            clear();
+            maxFeatureSize = 0;
+            vcg.updateExports();
+            if (vcg.isParameterized || !cacheFile.readCell(this, vcg.cellBackup, stamp)) {
+                clear();
+                return false;
+            }
+            valid = true;
+            if (DEBUG) {
+                long stopTime = System.currentTimeMillis();
+                System.out.println((stopTime - startTime) + " read " + vcg.cellId + " " + orient);
+            }
+            return true;
+        }
+
         private void updateBounds() {
+            densityMaps[0] = densityMaps[1] = null;
             lX = lY = Integer.MAX_VALUE;
             hX = hY = Integer.MIN_VALUE;
             ERectangle bounds = vcg.bounds;
@@ -740,6 +839,7 @@ public class VectorCache {
             shapes.clear();
             subCells.clear();
             fadeImageColors = null;
+            densityMaps[0] = densityMaps[1] = null;
         }
 
         private void clearExports() {
@@ -953,12 +1053,252 @@ public class VectorCache {
             Cell cell = database.getCell(cellId);
             if (Job.getDebug() && cell == null)
                 System.out.println("Cell is null in VectorCell.drawCell"); // extra testing
-            if (cell != null && cell.isLinked())
-                vc.init(database.getCell(cellId));
+            if (cell != null && cell.isLinked()) {
+                if (vc.vcg.isParameterized || !readVectorCell(vc, cell))
+                    vc.init(database.getCell(cellId));
+            }
         }
         return vc;
     }
 
+    /**
+     * Method to get the density map of a cached cell.
+     * The map is built on the first request and kept until the cell or its expanded subcells change.
+     * @param cellId the cell.
+     * @param orient the orientation of the cell.
+     * @param fullInstantiate true to expand all subcells.
+     * @param scale the current scale.
+     * @param build false to return only a map which is already built.
+     * @return the density map or null if the cell can't be approximated by a map.
+     */
+    DensityMap getDensityMap(CellId cellId, Orientation orient, boolean fullInstantiate, double scale, boolean build) {
+        VectorCell vc = findVectorCell(cellId, orient);
+        int slot = fullInstantiate ? 1 : 0;
+        DensityMap dm = vc.densityMaps[slot];
+        if (dm == null) {
+            if (!build) {
+                return null;
+            }
+            dm = buildDensityMap(vc, fullInstantiate, scale);
+            vc.densityMaps[slot] = dm;
+        }
+        return dm != DensityMap.UNAVAILABLE ? dm : null;
+    }
+
+    private DensityMap buildDensityMap(VectorCell vc, boolean fullInstantiate, double scale) {
+        CellId cellId = vc.vcg.cellId;
+        Cell cell = database.getCell(cellId);
+        if (cell == null || vc.vcg.isParameterized || vc.vcg.bounds == null) {
+            return DensityMap.UNAVAILABLE;
+        }
+        drawCell(cellId, vc.orient, null, scale);
+        if (!vc.valid || vc.vcg.isParameterized) {
+            return DensityMap.UNAVAILABLE;
+        }
+        DensityMap.Builder b = new DensityMap.Builder(vc.lX, vc.lY, vc.hX, vc.hY);
+        for (VectorBase vb : vc.shapes) {
+            b.addShape(vb);
+        }
+        for (VectorSubCell vsc : vc.subCells) {
+            Orientation subOrient = vc.orient.concatenate(vsc.n.orient);
+            if (fullInstantiate || cell.isExpanded(vsc.n.nodeId)) {
+                DensityMap subMap = getDensityMap(vsc.subCellId, subOrient, fullInstantiate, scale, true);
+                if (subMap == null) {
+                    return DensityMap.UNAVAILABLE;
+                }
+                b.addMap(subMap, vsc.offsetX, vsc.offsetY);
+            } else {
+                VectorCell subVC = findVectorCell(vsc.subCellId, subOrient);
+                b.addOutline(subVC.outlinePoints, vsc.offsetX, vsc.offsetY);
+            }
+        }
+        return b.build();
+    }
+
+    /**
+     * Method to fill a VectorCell from the sidecar file of the Library of its cell.
+     * @param vc the VectorCell of a cell without parameters.
+     * @param cell the cell.
+     * @return true if the VectorCell was filled.
+     */
+    private boolean readVectorCell(VectorCell vc, Cell cell) {
+        CellId cellId = cell.getId();
+        if (addPolyToCell.containsKey(cellId) || addInstToCell.containsKey(cellId)) {
+            return false;
+        }
+        VectorCacheFile cacheFile = getCacheFile(cell.getLibrary());
+        if (cacheFile == null) {
+            return false;
+        }
+        Snapshot snapshot = database.backup();
+        return vc.initFromFile(cacheFile, revisionStamp(snapshot, snapshot.getCell(cellId)));
+    }
+
+    /**
+     * Method to get the opened sidecar file of a Library.
+     * The file is opened on the first request.
+     * @param lib the Library.
+     * @return the sidecar file or null if there is no valid file.
+     */
+    private VectorCacheFile getCacheFile(Library lib) {
+        LibId libId = lib.getId();
+        if (cacheFiles.containsKey(libId)) {
+            return cacheFiles.get(libId);
+        }
+        VectorCacheFile cacheFile = null;
+        File file = getCacheFileName(lib);
+        if (file != null) {
+            cacheFile = VectorCacheFile.open(file, settingsStamp(), database.getTechPool());
+        }
+        cacheFiles.put(libId, cacheFile);
+        return cacheFile;
+    }
+
+    /**
+     * Method to tell where the sidecar file of a Library is.
+     * It is next to the library file.
+     * @param lib the Library.
+     * @return the sidecar file or null if the Library is not in a local file.
+     */
+    private static File getCacheFileName(Library lib) {
+        if (!User.isPersistentVectorCache() || lib.isHidden()) {
+            return null;
+        }
+        URL libFile = lib.getLibFile();
+        if (libFile == null || !libFile.getProtocol().equals("file")) {
+            return null;
+        }
+        File file = TextUtils.getFile(libFile);
+        if (file == null) {
+            return null;
+        }
+        return new File(file.getPath() + VectorCacheFile.SUFFIX);
+    }
+
+    /**
+     * Method to compute a stamp of settings which affect shapes of all cells.
+     * Sidecar files written with other settings are not used.
+     * @return the stamp of settings.
+     */
+    private long settingsStamp() {
+        long stamp = VectorCacheFile.VERSION;
+        for (Map.Entry<Setting, Object> e : database.getEnvironment().getSettings().entrySet()) {
+            stamp += e.getKey().getXmlPath().hashCode() * 31L + String.valueOf(e.getValue()).hashCode();
+        }
+        TechPool techPool = database.getTechPool();
+        for (Technology tech : techPool.values()) {
+            stamp += tech.getTechName().hashCode() * 37L;
+        }
+        for (Map.Entry<TechFactory.Param, Object> e : techPool.getTechParams().entrySet()) {
+            stamp += e.getKey().xmlPath.hashCode() * 41L + String.valueOf(e.getValue()).hashCode();
+        }
+        stamp = stamp * 31 + Double.doubleToLongBits(dummyWnd.getGlobalTextScale());
+        stamp = stamp * 31 + String.valueOf(dummyWnd.getDefaultFont()).hashCode();
+        return stamp;
+    }
+
+    /**
+     * Method to compute a stamp of a cell revision.
+     * The stamp depends on the revision date of the cell and on the revision dates of its subcells,
+     * because the ports shown on instances depend on exports of subcells.
+     * @param snapshot the Snapshot with the cell.
+     * @param cellBackup the cell.
+     * @return the stamp of the cell revision.
+     */
+    private static long revisionStamp(Snapshot snapshot, CellBackup cellBackup) {
+        CellRevision cellRevision = cellBackup.cellRevision;
+        CellId cellId = cellRevision.d.cellId;
+        long stamp = cellRevision.d.revisionDate;
+        stamp = stamp * 31 + cellRevision.nodes.size();
+        stamp = stamp * 31 + cellRevision.arcs.size();
+        stamp = stamp * 31 + cellRevision.exports.size();
+        int[] instCounts = cellRevision.getInstCounts();
+        for (int i = 0; i < instCounts.length; i++) {
+            if (instCounts[i] == 0) {
+                continue;
+            }
+            CellId subCellId = cellId.getUsageIn(i).protoId;
+            CellBackup subCellBackup = snapshot.getCell(subCellId);
+            if (subCellBackup == null) {
+                continue;
+            }
+            stamp += (subCellId.libId.libName.hashCode() * 31L + subCellId.cellName.toString().hashCode()) * 31
+                    + subCellBackup.cellRevision.d.revisionDate;
+        }
+        return stamp;
+    }
+
+    /**
+     * Method to save cached cells into the sidecar files of their Libraries.
+     * Cells of old sidecar files which were not displayed in this session are kept if they didn't change.
+     * This is called when Electric quits. It waits until rendering is finished,
+     * because rendering modifies the cached cells.
+     */
+    public void saveCacheFiles() {
+        synchronized (renderLock) {
+            saveCacheFilesLocked();
+        }
+    }
+
+    private void saveCacheFilesLocked() {
+        Snapshot snapshot = database.backup();
+        long settingsStamp = settingsStamp();
+        for (Iterator<Library> lIt = database.getLibraries(); lIt.hasNext();) {
+            Library lib = lIt.next();
+            File file = getCacheFileName(lib);
+            if (file == null) {
+                continue;
+            }
+            VectorCacheFile cacheFile = getCacheFile(lib);
+            List<VectorCell> cells = new ArrayList<VectorCell>();
+            List<Long> stamps = new ArrayList<Long>();
+            for (Iterator<Cell> cIt = lib.getCells(); cIt.hasNext();) {
+                Cell cell = cIt.next();
+                CellId cellId = cell.getId();
+                CellBackup cellBackup = snapshot.getCell(cellId);
+                if (cellBackup == null || addPolyToCell.containsKey(cellId) || addInstToCell.containsKey(cellId)) {
+                    continue;
+                }
+                long stamp = revisionStamp(snapshot, cellBackup);
+                if (cacheFile != null) {
+                    for (Orientation orient : cacheFile.getOrientations(cell.getCellName().toString())) {
+                        VectorCell vc = findVectorCell(cellId, orient);
+                        if (!vc.valid && !vc.vcg.isParameterized) {
+                            vc.initFromFile(cacheFile, stamp);
+                        }
+                    }
+                }
+                if (cellId.cellIndex >= cachedCells.size()) {
+                    continue;
+                }
+                VectorCellGroup vcg = cachedCells.get(cellId.cellIndex);
+                if (vcg == null || vcg.isParameterized || vcg.cellBackup != cellBackup) {
+                    continue;
+                }
+                for (VectorCell vc : vcg.orientations.values()) {
+                    if (vc.valid && VectorCacheFile.canWrite(vc)) {
+                        cells.add(vc);
+                        stamps.add(Long.valueOf(stamp));
+                    }
+                }
+            }
+            cacheFiles.remove(lib.getId());
+            if (cells.isEmpty()) {
+                file.delete();
+                continue;
+            }
+            long[] stampArray = new long[stamps.size()];
+            for (int i = 0; i < stampArray.length; i++) {
+                stampArray[i] = stamps.get(i).longValue();
+            }
+            try {
+                VectorCacheFile.write(file, settingsStamp, cells, stampArray);
+            } catch (IOException e) {
+                System.out.println("Can't write display cache " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
     public static VectorBase[] drawNode(NodeInst ni) {
         VectorCache cache = new VectorCache(EDatabase.clientDatabase());
         VectorCell vc = cache.newDummyVectorCell();
@@ -1096,6 +1436,7 @@ public class VectorCache {
         BitSet changedExports = new BitSet();
         BitSet changedBounds = new BitSet();
         BitSet changedParams = new BitSet();
+        BitSet changedDensity = new BitSet();
         Set<CellId> changedVisibility = new HashSet<CellId>();
         for (CellId cellId : snapshot.getCellsDownTop()) {
             int cellIndex = cellId.cellIndex;
@@ -1115,6 +1456,7 @@ public class VectorCache {
                 if (cellId.isIcon()) {
                     changedParams.set(cellIndex);
                 }
+                changedDensity.set(cellIndex);
                 changedVis = true;
             } else if (vcg.cellBackup != snapshot.getCell(cellId)) {
                 if (vcg.changedExports()) {
@@ -1128,12 +1470,14 @@ public class VectorCache {
                 }
                 vcg.init();
 //                changedCells.set(cellIndex);
+                changedDensity.set(cellIndex);
                 changedVis = true;
             } else {
                 CellRevision cellRevision = snapshot.getCell(cellId).cellRevision;
                 int[] instCounts = cellRevision.getInstCounts();
                 boolean subExportsChanged = false;
                 boolean subParamsChanged = false;
+                boolean subDensityChanged = false;
                 for (int i = 0; i < instCounts.length; i++) {
                     if (instCounts[i] == 0) {
                         continue;
@@ -1145,9 +1489,18 @@ public class VectorCache {
                     if (changedParams.get(subCellIndex)) {
                         subParamsChanged = true;
                     }
+                    if (changedDensity.get(subCellIndex)) {
+                        subDensityChanged = true;
+                    }
+                }
+                if (subDensityChanged) {
+                    // density maps include the contents of subcells
+                    vcg.clearDensityMaps();
+                    changedDensity.set(cellIndex);
                 }
                 if (vcg.updateBounds(snapshot)) {
                     changedBounds.set(cellIndex);
+                    changedDensity.set(cellIndex);
                     changedVis = true;
                 }
                 if (subExportsChanged && vcg.changedExports()) {
@@ -1198,12 +1551,18 @@ public class VectorCache {
     }
 
     void forceRedraw() {
-        boolean clearCache, clearFadeImages;
+        boolean clearCache, clearFadeImages, clearDensityMaps;
         synchronized (this) {
             clearCache = this.clearCache;
             this.clearCache = false;
             clearFadeImages = this.clearFadeImages;
             this.clearFadeImages = false;
+            clearDensityMaps = this.clearDensityMaps;
+            this.clearDensityMaps = false;
+        }
+        if (clearCache) {
+            // settings may have changed, so check sidecar files again
+            cacheFiles.clear();
         }
         Snapshot snapshot = database.backup();
         for (int cellIndex = 0, size = cachedCells.size(); cellIndex < size; cellIndex++) {
@@ -1220,6 +1579,9 @@ public class VectorCache {
                     vc.fadeImage = false;
                 }
             }
+            if (clearDensityMaps) {
+                vcg.clearDensityMaps();
+            }
             assert vcg.bounds == snapshot.getCellBounds(cellIndex);
 //            vcg.updateBounds(snapshot);
 //            if (!changedCells.contains(vcg.cellId) && vcg.cellBackup == snapshot.getCell(cellIndex)) continue;
@@ -1273,6 +1635,14 @@ public class VectorCache {
         clearFadeImages = true;
     }
 
+    /**
+     * Method called when expansion of cell instances has changed.
+     * Removes all density maps from cached cells.
+     */
+    public synchronized void clearDensityMaps() {
+        clearDensityMaps = true;
+    }
+
     private static int databaseToGrid(double lambdaValue) {
         return (int) DBMath.lambdaToGrid(lambdaValue);
     }
@@ -0,0 +1,574 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: VectorCacheFile.java
+ *
+ * Copyright (c) 2009 Sun Microsystems and Static Free Software
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Electric(tm); see the file COPYING.  If not, write to
+ * the Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, Mass 02111-1307, USA.
+ */
+package com.sun.electric.tool.user.redisplay;
+
+import com.sun.electric.database.CellBackup;
+import com.sun.electric.database.ImmutableNodeInst;
+import com.sun.electric.database.geometry.Orientation;
+import com.sun.electric.database.geometry.Poly;
+import com.sun.electric.database.id.CellId;
+import com.sun.electric.database.variable.MutableTextDescriptor;
+import com.sun.electric.database.variable.TextDescriptor;
+import com.sun.electric.technology.Layer;
+import com.sun.electric.technology.TechPool;
+import com.sun.electric.technology.Technology;
+import com.sun.electric.tool.Job;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sidecar file of a Library with the VectorCells of its cells.
+ * The file is written when Electric quits and is read into memory when the Library is displayed again.
+ * It is not kept open or mapped, so it can be replaced when Electric quits.
+ * Only the index is decoded on open. A VectorCell is decoded when it is first drawn
+ * and only when the stamp of its cell revision matches the stamp in the file.
+ * The file starts with a header, a table of layers, a table of text descriptors and
+ * an index of entries. The entries with shapes and subcells of each VectorCell follow.
+ * The whole file is discarded if it was written with different settings.
+ */
+class VectorCacheFile {
+    /** Magic number of the file. */
+    private static final int MAGIC = 0x45564331;
+    /** Version of the file format. */
+    static final int VERSION = 1;
+    /** Suffix appended to the name of the library file. */
+    static final String SUFFIX = ".vcache";
+
+    private static final byte MANHATTAN = 1;
+    private static final byte POLYGON = 2;
+    private static final byte LINE = 3;
+    private static final byte CIRCLE = 4;
+    private static final byte CIRCLEARC = 5;
+    private static final byte TEXT = 6;
+    private static final byte CROSS = 7;
+
+    /** Layer index of shapes without a layer. */
+    private static final int NO_LAYER = -1;
+
+    private static final Poly.Type[] polyTypes = Poly.Type.values();
+
+    /** the contents of the file */
+    private final ByteBuffer buf;
+    /** position of the first entry */
+    private final int entriesStart;
+    /** layers of the file, null for layers that don't exist any more */
+    private final Layer[] layers;
+    private final TextDescriptor[] descriptors;
+    /** entries of the file by cell name */
+    private final Map<String, List<Entry>> entries = new HashMap<String, List<Entry>>();
+
+    /**
+     * Location of a VectorCell in the file.
+     */
+    private static class Entry {
+        private final Orientation orient;
+        private final long stamp;
+        private final int offset;
+        private final int length;
+
+        private Entry(Orientation orient, long stamp, int offset, int length) {
+            this.orient = orient;
+            this.stamp = stamp;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private VectorCacheFile(ByteBuffer buf, TechPool techPool) throws IOException {
+        this.buf = buf;
+        layers = new Layer[readCount(buf, 4)];
+        for (int i = 0; i < layers.length; i++) {
+            String techName = readUTF(buf);
+            String layerName = readUTF(buf);
+            Technology tech = techPool.findTechnology(techName);
+            layers[i] = tech != null ? tech.findLayer(layerName) : null;
+        }
+        descriptors = new TextDescriptor[readCount(buf, 15)];
+        for (int i = 0; i < descriptors.length; i++) {
+            long bits = buf.getLong();
+            int colorIndex = buf.getInt();
+            boolean isDisplay = buf.get() != 0;
+            String fontName = readUTF(buf);
+            MutableTextDescriptor mtd = new MutableTextDescriptor(bits, colorIndex, isDisplay);
+            int face = 0;
+            if (fontName.length() != 0) {
+                TextDescriptor.ActiveFont af = TextDescriptor.ActiveFont.findActiveFont(fontName);
+                if (af != null) {
+                    face = af.getIndex();
+                }
+            }
+            mtd.setFace(face);
+            descriptors[i] = TextDescriptor.newTextDescriptor(mtd);
+        }
+        int numEntries = readCount(buf, 22);
+        for (int i = 0; i < numEntries; i++) {
+            String cellName = readUTF(buf);
+            int orientCode = buf.getInt();
+            long stamp = buf.getLong();
+            int offset = buf.getInt();
+            int length = buf.getInt();
+            Orientation orient = Orientation.fromJava(orientCode >> 2, (orientCode & 1) != 0, (orientCode & 2) != 0);
+            List<Entry> cellEntries = entries.get(cellName);
+            if (cellEntries == null) {
+                cellEntries = new ArrayList<Entry>();
+                entries.put(cellName, cellEntries);
+            }
+            cellEntries.add(new Entry(orient, stamp, offset, length));
+        }
+        entriesStart = buf.position();
+    }
+
+    /**
+     * Method to open the sidecar file of a Library.
+     * @param file the sidecar file.
+     * @param fingerprint the stamp of settings which affect the shapes.
+     * @param techPool the TechPool to find layers.
+     * @return the VectorCacheFile or null if the file doesn't exist or can't be used.
+     */
+    static VectorCacheFile open(File file, long fingerprint, TechPool techPool) {
+        if (!file.isFile()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int)size);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buf.flip();
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != fingerprint) {
+                return null;
+            }
+            return new VectorCacheFile(buf, techPool);
+        } catch (IOException e) {
+            if (Job.getDebug()) {
+                System.out.println("Can't read " + file + ": " + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            // truncated or inconsistent file
+            if (Job.getDebug()) {
+                System.out.println("Corrupt " + file + ": " + e);
+            }
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to tell the orientations of a cell which are in this file.
+     * @param cellName the name of the cell.
+     * @return list of orientations.
+     */
+    List<Orientation> getOrientations(String cellName) {
+        List<Entry> cellEntries = entries.get(cellName);
+        if (cellEntries == null) {
+            return Collections.emptyList();
+        }
+        List<Orientation> orients = new ArrayList<Orientation>();
+        for (Entry entry : cellEntries) {
+            orients.add(entry.orient);
+        }
+        return orients;
+    }
+
+    /**
+     * Method to fill a cleared VectorCell from this file.
+     * @param vc the VectorCell to fill.
+     * @param cellBackup the current contents of the cell.
+     * @param stamp the stamp of the current revision of the cell.
+     * @return true if the VectorCell was filled, false if the file has no valid entry.
+     */
+    boolean readCell(VectorCache.VectorCell vc, CellBackup cellBackup, long stamp) {
+        List<Entry> cellEntries = entries.get(cellBackup.cellRevision.d.cellId.cellName.toString());
+        if (cellEntries == null) {
+            return false;
+        }
+        for (Entry entry : cellEntries) {
+            if (entry.orient != vc.orient || entry.stamp != stamp) {
+                continue;
+            }
+            try {
+                ByteBuffer b = buf.duplicate();
+                b.position(entriesStart + entry.offset);
+                b.limit(entriesStart + entry.offset + entry.length);
+                return readEntry(b, vc, cellBackup);
+            } catch (RuntimeException e) {
+                // truncated or inconsistent file
+                return false;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean readEntry(ByteBuffer b, VectorCache.VectorCell vc, CellBackup cellBackup) throws IOException {
+        vc.maxFeatureSize = b.getFloat();
+        int numShapes = readCount(b, 5);
+        for (int i = 0; i < numShapes; i++) {
+            byte kind = b.get();
+            int layerIndex = b.getInt();
+            Layer layer = null;
+            if (layerIndex != NO_LAYER) {
+                layer = layers[layerIndex];
+                if (layer == null) {
+                    return false;
+                }
+            }
+            VectorCache.VectorBase vb;
+            switch (kind) {
+                case MANHATTAN:
+                    boolean pureLayer = b.get() != 0;
+                    int[] coords = new int[readCount(b, 4)];
+                    for (int j = 0; j < coords.length; j++) {
+                        coords[j] = b.getInt();
+                    }
+                    vb = new VectorCache.VectorManhattan(coords, layer, null, pureLayer);
+                    break;
+                case POLYGON:
+                    Point[] points = new Point[readCount(b, 8)];
+                    for (int j = 0; j < points.length; j++) {
+                        int x = b.getInt();
+                        points[j] = new Point(x, b.getInt());
+                    }
+                    vb = new VectorCache.VectorPolygon(points, layer, null);
+                    break;
+                case LINE:
+                    vb = new VectorCache.VectorLine(b.getInt(), b.getInt(), b.getInt(), b.getInt(), b.getInt(), layer, null);
+                    break;
+                case CIRCLE:
+                    vb = new VectorCache.VectorCircle(b.getInt(), b.getInt(), b.getInt(), b.getInt(), b.getInt(), layer, null);
+                    break;
+                case CIRCLEARC:
+                    vb = new VectorCache.VectorCircleArc(b.getInt(), b.getInt(), b.getInt(), b.getInt(), b.getInt(), b.getInt(),
+                            b.get() != 0, layer, null);
+                    break;
+                case TEXT:
+                    Rectangle bounds = new Rectangle(b.getInt(), b.getInt(), b.getInt(), b.getInt());
+                    int styleIndex = b.getInt();
+                    Poly.Type style = styleIndex >= 0 ? polyTypes[styleIndex] : null;
+                    int descriptorIndex = b.getInt();
+                    TextDescriptor descript = descriptorIndex >= 0 ? descriptors[descriptorIndex] : null;
+                    String str = b.get() != 0 ? readUTF(b) : null;
+                    float height = b.getFloat();
+                    int textType = b.getInt();
+                    vb = new VectorCache.VectorText(bounds, style, descript, str,
+                            height, textType, layer);
+                    break;
+                case CROSS:
+                    vb = new VectorCache.VectorCross(b.getInt(), b.getInt(), b.get() != 0, layer, null);
+                    break;
+                default:
+                    return false;
+            }
+            vc.shapes.add(vb);
+        }
+        CellBackup.Memoization m = cellBackup.getMemoization();
+        int numSubCells = readCount(b, 16);
+        for (int i = 0; i < numSubCells; i++) {
+            int nodeId = b.getInt();
+            int offsetX = b.getInt();
+            int offsetY = b.getInt();
+            ImmutableNodeInst n = m.getNodeById(nodeId);
+            if (n == null || !(n.protoId instanceof CellId)) {
+                return false;
+            }
+            VectorCache.VectorSubCell vsc = new VectorCache.VectorSubCell(n, offsetX, offsetY);
+            int numShownPorts = readCount(b, 4);
+            for (int j = 0; j < numShownPorts; j++) {
+                vsc.shownPorts.set(b.getInt());
+            }
+            vc.subCells.add(vsc);
+        }
+        return b.remaining() == 0;
+    }
+
+    /**
+     * Method to tell whether a VectorCell can be written to the file.
+     * Shapes with graphics overrides and export text refer to objects which are not saved.
+     * @param vc the VectorCell.
+     * @return true if the VectorCell can be written.
+     */
+    static boolean canWrite(VectorCache.VectorCell vc) {
+        for (VectorCache.VectorBase vb : vc.shapes) {
+            if (vb.graphicsOverride != null) {
+                return false;
+            }
+            if (vb.layer != null && vb.layer.getTechnology() == null) {
+                return false;
+            }
+            if (vb instanceof VectorCache.VectorText && ((VectorCache.VectorText)vb).basePort != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to write the sidecar file of a Library.
+     * The file is written to a temporary file first, which replaces the old file.
+     * @param file the sidecar file.
+     * @param fingerprint the stamp of settings which affect the shapes.
+     * @param cells the VectorCells to write. They must be accepted by canWrite.
+     * @param stamps the stamps of revisions of the cells.
+     * @throws IOException on write error.
+     */
+    static void write(File file, long fingerprint, List<VectorCache.VectorCell> cells, long[] stamps) throws IOException {
+        new Writer().write(file, fingerprint, cells, stamps);
+    }
+
+    /**
+     * Collects tables of layers and text descriptors while writing entries.
+     */
+    private static class Writer {
+        private final Map<Layer, Integer> layers = new HashMap<Layer, Integer>();
+        private final List<Layer> layerList = new ArrayList<Layer>();
+        private final Map<TextDescriptor, Integer> descriptors = new HashMap<TextDescriptor, Integer>();
+        private final List<TextDescriptor> descriptorList = new ArrayList<TextDescriptor>();
+
+        private void write(File file, long fingerprint, List<VectorCache.VectorCell> cells, long[] stamps) throws IOException {
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entryOut = new DataOutputStream(entryBytes);
+            int[] offsets = new int[cells.size() + 1];
+            for (int i = 0; i < cells.size(); i++) {
+                offsets[i] = entryOut.size();
+                writeEntry(entryOut, cells.get(i));
+            }
+            offsets[cells.size()] = entryOut.size();
+            entryOut.flush();
+
+            File tmpFile = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(layerList.size());
+                for (Layer layer : layerList) {
+                    out.writeUTF(layer.getTechnology().getTechName());
+                    out.writeUTF(layer.getName());
+                }
+                out.writeInt(descriptorList.size());
+                for (TextDescriptor td : descriptorList) {
+                    out.writeLong(td.lowLevelGet());
+                    out.writeInt(td.getColorIndex());
+                    out.writeBoolean(td.isDisplay());
+                    int face = td.getFace();
+                    out.writeUTF(face != 0 ? TextDescriptor.ActiveFont.findActiveFont(face).getName() : "");
+                }
+                out.writeInt(cells.size());
+                for (int i = 0; i < cells.size(); i++) {
+                    VectorCache.VectorCell vc = cells.get(i);
+                    out.writeUTF(vc.vcg.cellId.cellName.toString());
+                    Orientation orient = vc.orient;
+                    out.writeInt((orient.getAngle() << 2) | (orient.isXMirrored() ? 1 : 0) | (orient.isYMirrored() ? 2 : 0));
+                    out.writeLong(stamps[i]);
+                    out.writeInt(offsets[i]);
+                    out.writeInt(offsets[i + 1] - offsets[i]);
+                }
+                entryBytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                // some platforms don't rename over an existing file
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    tmpFile.delete();
+                    throw new IOException("Can't rename " + tmpFile);
+                }
+            }
+        }
+
+        private void writeEntry(DataOutputStream out, VectorCache.VectorCell vc) throws IOException {
+            out.writeFloat(vc.maxFeatureSize);
+            out.writeInt(vc.shapes.size());
+            for (VectorCache.VectorBase vb : vc.shapes) {
+                if (vb instanceof VectorCache.VectorManhattan) {
+                    VectorCache.VectorManhattan vm = (VectorCache.VectorManhattan)vb;
+                    writeKind(out, MANHATTAN, vb.layer);
+                    out.writeBoolean(vm.pureLayer);
+                    out.writeInt(vm.coords.length);
+                    for (int c : vm.coords) {
+                        out.writeInt(c);
+                    }
+                } else if (vb instanceof VectorCache.VectorPolygon) {
+                    VectorCache.VectorPolygon vp = (VectorCache.VectorPolygon)vb;
+                    writeKind(out, POLYGON, vb.layer);
+                    out.writeInt(vp.points.length);
+                    for (Point p : vp.points) {
+                        out.writeInt(p.x);
+                        out.writeInt(p.y);
+                    }
+                } else if (vb instanceof VectorCache.VectorLine) {
+                    VectorCache.VectorLine vl = (VectorCache.VectorLine)vb;
+                    writeKind(out, LINE, vb.layer);
+                    out.writeInt(vl.fX);
+                    out.writeInt(vl.fY);
+                    out.writeInt(vl.tX);
+                    out.writeInt(vl.tY);
+                    out.writeInt(vl.texture);
+                } else if (vb instanceof VectorCache.VectorCircle) {
+                    VectorCache.VectorCircle vci = (VectorCache.VectorCircle)vb;
+                    writeKind(out, CIRCLE, vb.layer);
+                    out.writeInt(vci.cX);
+                    out.writeInt(vci.cY);
+                    out.writeInt(vci.eX);
+                    out.writeInt(vci.eY);
+                    out.writeInt(vci.nature);
+                } else if (vb instanceof VectorCache.VectorCircleArc) {
+                    VectorCache.VectorCircleArc vca = (VectorCache.VectorCircleArc)vb;
+                    writeKind(out, CIRCLEARC, vb.layer);
+                    out.writeInt(vca.cX);
+                    out.writeInt(vca.cY);
+                    out.writeInt(vca.eX1);
+                    out.writeInt(vca.eY1);
+                    out.writeInt(vca.eX2);
+                    out.writeInt(vca.eY2);
+                    out.writeBoolean(vca.thick);
+                } else if (vb instanceof VectorCache.VectorText) {
+                    VectorCache.VectorText vt = (VectorCache.VectorText)vb;
+                    writeKind(out, TEXT, vb.layer);
+                    out.writeInt(vt.bounds.x);
+                    out.writeInt(vt.bounds.y);
+                    out.writeInt(vt.bounds.width);
+                    out.writeInt(vt.bounds.height);
+                    out.writeInt(vt.style != null ? vt.style.ordinal() : -1);
+                    out.writeInt(descriptorIndex(vt.descript));
+                    out.writeBoolean(vt.str != null);
+                    if (vt.str != null) {
+                        out.writeUTF(vt.str);
+                    }
+                    out.writeFloat(vt.height);
+                    out.writeInt(vt.textType);
+                } else if (vb instanceof VectorCache.VectorCross) {
+                    VectorCache.VectorCross vcr = (VectorCache.VectorCross)vb;
+                    writeKind(out, CROSS, vb.layer);
+                    out.writeInt(vcr.x);
+                    out.writeInt(vcr.y);
+                    out.writeBoolean(vcr.small);
+                } else {
+                    throw new IOException("Unknown shape " + vb);
+                }
+            }
+            out.writeInt(vc.subCells.size());
+            for (VectorCache.VectorSubCell vsc : vc.subCells) {
+                out.writeInt(vsc.n.nodeId);
+                out.writeInt(vsc.offsetX);
+                out.writeInt(vsc.offsetY);
+                out.writeInt(vsc.shownPorts.cardinality());
+                for (int i = vsc.shownPorts.nextSetBit(0); i >= 0; i = vsc.shownPorts.nextSetBit(i + 1)) {
+                    out.writeInt(i);
+                }
+            }
+        }
+
+        private void writeKind(DataOutputStream out, byte kind, Layer layer) throws IOException {
+            out.writeByte(kind);
+            if (layer == null) {
+                out.writeInt(NO_LAYER);
+                return;
+            }
+            Integer i = layers.get(layer);
+            if (i == null) {
+                i = Integer.valueOf(layerList.size());
+                layers.put(layer, i);
+                layerList.add(layer);
+            }
+            out.writeInt(i.intValue());
+        }
+
+        private int descriptorIndex(TextDescriptor td) {
+            if (td == null) {
+                return -1;
+            }
+            Integer i = descriptors.get(td);
+            if (i == null) {
+                i = Integer.valueOf(descriptorList.size());
+                descriptors.put(td, i);
+                descriptorList.add(td);
+            }
+            return i.intValue();
+        }
+    }
+
+    /**
+     * Reads the number of items of a table or array.
+     * The number is checked against the remaining bytes, so a corrupt file can't cause a huge allocation.
+     * @param b the buffer.
+     * @param minItemSize the smallest number of bytes of an item.
+     * @return the number of items.
+     * @throws IOException if the number is negative or the items can't fit in the buffer.
+     */
+    private static int readCount(ByteBuffer b, int minItemSize) throws IOException {
+        int count = b.getInt();
+        if (count < 0 || (long)count * minItemSize > b.remaining()) {
+            throw new IOException("Bad count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Reads a string written by DataOutput.writeUTF.
+     */
+    private static String readUTF(ByteBuffer buf) throws IOException {
+        int len = buf.getShort() & 0xFFFF;
+        byte[] bytes = new byte[len + 2];
+        bytes[0] = (byte)(len >> 8);
+        bytes[1] = (byte)len;
+        buf.get(bytes, 2, len);
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+}
@@ -1611,26 +1611,29 @@ public class EditWindow extends JPanel
 			logger.entering(RENDER_JOB_CLASS_NAME, "doIt");
 			try {
 				for (;;) {
-					hasTasks = false;
-					Snapshot snapshot = EDatabase.clientDatabase().backup();
-					if (snapshot != oldSnapshot) {
-						endBatch(dp, gp);
-						oldSnapshot = snapshot;
-					}
-					EditWindow wnd = null;
-					for (Iterator<WindowFrame> it = WindowFrame.getWindows(); it.hasNext();) {
-						WindowFrame wf = it.next();
-						WindowContent wc = wf.getContent();
-						if (wc instanceof EditWindow && ((EditWindow) wc).repaintRequest) {
-							wnd = (EditWindow) wc;
+					// the display cache is also saved on quit, so it is only used while holding its lock
+					synchronized (VectorCache.theCache.renderLock) {
+						hasTasks = false;
+						Snapshot snapshot = EDatabase.clientDatabase().backup();
+						if (snapshot != oldSnapshot) {
+							endBatch(dp, gp);
+							oldSnapshot = snapshot;
+						}
+						EditWindow wnd = null;
+						for (Iterator<WindowFrame> it = WindowFrame.getWindows(); it.hasNext();) {
+							WindowFrame wf = it.next();
+							WindowContent wc = wf.getContent();
+							if (wc instanceof EditWindow && ((EditWindow) wc).repaintRequest) {
+								wnd = (EditWindow) wc;
+								break;
+							}
+						}
+						if (wnd == null) {
 							break;
 						}
+						wnd.repaintRequest = false;
+						render(wnd);
 					}
-					if (wnd == null) {
-						break;
-					}
-					wnd.repaintRequest = false;
-					render(wnd);
 				}
 			} finally {
 				RenderJob j = null;
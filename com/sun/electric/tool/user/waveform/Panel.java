@@ -35,6 +35,7 @@ import com.sun.electric.tool.simulation.AnalogAnalysis;
 import com.sun.electric.tool.simulation.AnalogSignal;
 import com.sun.electric.tool.simulation.Analysis;
 import com.sun.electric.tool.simulation.BTreeNewSignal;
+import com.sun.electric.tool.simulation.ColumnarNewSignal;
 import com.sun.electric.tool.simulation.DigitalAnalysis;
 import com.sun.electric.tool.simulation.DigitalSignal;
 import com.sun.electric.tool.simulation.NewSignal;
@@ -1552,7 +1553,7 @@ public class Panel extends JPanel
                 isUsingBTrees = false;                
             } else {
                 Waveform wave = ((AnalogSignal)sig).getWaveform(0);
-                if (!(wave instanceof BTreeNewSignal))
+                if (!(wave instanceof BTreeNewSignal) && !(wave instanceof ColumnarNewSignal))
                     isUsingBTrees = false;
             }
         }
@@ -1606,7 +1607,7 @@ public class Panel extends JPanel
 					Waveform wave = as.getWaveform(s);
                     NewSignal.Approximation pref = wave.getPreferredApproximation();
                     NewSignal.Approximation waveform =
-                        (Simulation.isUseLegacySimulationCode() || wave instanceof WaveformImpl)
+                        (Simulation.isUseLegacySimulationCode() || wave instanceof WaveformImpl || xSignal != null)
                         ? pref
                         : wave.getPixelatedApproximation(convertXScreenToData(0),
                                                          convertXScreenToData(sz.width),